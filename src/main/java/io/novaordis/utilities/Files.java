@@ -2,9 +2,10 @@ package io.novaordis.utilities;
 
 import io.novaordis.utilities.crawler.Collector;
 import io.novaordis.utilities.crawler.Crawler;
+import io.novaordis.utilities.crawler.ForkJoinCrawler;
 import io.novaordis.utilities.crawler.SingleThreadedCrawler;
-import io.novaordis.utilities.file.FileFrame;
 import io.novaordis.utilities.file.FileObliterator;
+import io.novaordis.utilities.file.PathFrame;
 import org.apache.log4j.Logger;
 
 import java.io.File;
@@ -273,23 +274,37 @@ public class Files {
 
     /**
      * Recursively deletes the contents of the given directory. If 'root' flag is true, the root
-     * directory (meaning dir itself) is deleted as well.
+     * directory (meaning dir itself) is deleted as well. Symbolic links are deleted, not followed.
+     *
+     * The only exception is dir itself: if it is a symbolic link to a directory, the link is resolved and the content
+     * of the directory it points to is deleted. If 'root' is true, the link is deleted afterwards, while the directory
+     * it points to is left in place, empty.
      *
      * @return true if operation completed successfully, false otherwise.
      */
     public static boolean rmdir(File dir, boolean root)
     {
-        Collector c = new FileObliterator(dir, root);
-        Crawler crawler = new SingleThreadedCrawler(Crawler.POSTORDER);
+        return rmdir(dir, root, new SingleThreadedCrawler(Crawler.POSTORDER));
+    }
+
+    /**
+     * Same as rmdir(File, boolean), but the tree is deleted by 'parallelism' threads, which is faster for large
+     * trees on storage that serves concurrent requests well. Siblings are deleted in no particular order, but a
+     * directory is only deleted after its content.
+     *
+     * @return true if operation completed successfully, false otherwise.
+     */
+    public static boolean rmdir(File dir, boolean root, int parallelism)
+    {
+        ForkJoinCrawler crawler = new ForkJoinCrawler(Crawler.POSTORDER, parallelism);
+
         try
         {
-            crawler.crawl(new FileFrame(dir), c);
-            return true;
+            return rmdir(dir, root, crawler);
         }
-        catch(Exception e)
+        finally
         {
-            log.info(e.getMessage());
-            return false;
+            crawler.shutdown();
         }
     }
 
@@ -1004,5 +1019,46 @@ public class Files {
 
     // Private ---------------------------------------------------------------------------------------------------------
 
+    private static boolean rmdir(File dir, boolean root, Crawler crawler)
+    {
+        java.nio.file.Path path = dir.toPath();
+
+        if (java.nio.file.Files.isSymbolicLink(path) && java.nio.file.Files.isDirectory(path))
+        {
+            try
+            {
+                if (!rmdir(path.toRealPath().toFile(), false, crawler))
+                {
+                    return false;
+                }
+
+                if (root)
+                {
+                    java.nio.file.Files.delete(path);
+                }
+
+                return true;
+            }
+            catch(IOException e)
+            {
+                log.info("cannot rmdir " + dir + ": " + e);
+                return false;
+            }
+        }
+
+        Collector c = new FileObliterator(dir, root);
+
+        try
+        {
+            crawler.crawl(new PathFrame(dir.toPath()), c);
+            return true;
+        }
+        catch(Exception e)
+        {
+            log.info(e.getMessage());
+            return false;
+        }
+    }
+
     // Inner classes ---------------------------------------------------------------------------------------------------
 }
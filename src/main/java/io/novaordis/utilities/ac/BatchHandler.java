@@ -0,0 +1,27 @@
+package io.novaordis.utilities.ac;
+
+import java.util.List;
+
+/**
+ * A Handler that receives the events drained by the pump in one wake-up as a contiguous batch, so it can amortize
+ * I/O and system calls over many events.
+ *
+ * canHandle() is not consulted by the collector for batch handlers: the whole batch is passed to handleBatch() and
+ * the implementation is responsible for selecting the events it is interested in. handle() is still used when a single
+ * event is processed outside a batch.
+ *
+ * @see HandlerAdapter
+ */
+public interface BatchHandler extends Handler {
+
+    /**
+     * Never this method should throw checked or unchecked exceptions. The upper layer will swallow them as it is not
+     * allowed for the draining pump to stop.
+     *
+     * @param batch the events, in the order they were handed over. Never empty. The list and the Collected instances
+     *              it contains are only valid for the duration of the call, as the collector may reuse them; copy
+     *              what needs to be retained. The list must not be modified.
+     */
+    void handleBatch(List<Collected> batch);
+
+}
@@ -0,0 +1,27 @@
+package io.novaordis.utilities.ac;
+
+/**
+ * What a collector captures on the producer thread, in addition to the payload, when an event is handed over.
+ *
+ * @see CollectorConfiguration#setCaptureMode(CaptureMode)
+ */
+public enum CaptureMode {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    /**
+     * The timestamp is read with System.currentTimeMillis() and the thread name with Thread.getName(), on the
+     * producer thread. The default.
+     */
+    PRECISE,
+
+    /**
+     * The timestamp is read from a CoarseClock, so it may lag behind the real time by up to the clock's resolution,
+     * and only the numeric thread id is captured. The thread name is resolved lazily, on the pump side, through a
+     * cached id-to-name map. The name is the one the thread had when it was first resolved, and it can't be resolved
+     * at all if the thread died before its first event was processed, in which case a "thread-<id>" placeholder is
+     * used.
+     */
+    COARSE,
+    ;
+}
@@ -0,0 +1,127 @@
+package io.novaordis.utilities.ac;
+
+/**
+ * A millisecond clock that is read with a single volatile read. The time is refreshed periodically by a daemon thread,
+ * so it may lag behind System.currentTimeMillis() by up to the resolution, and it advances in steps of roughly the
+ * resolution.
+ *
+ * All collectors that do not configure their own clock share the default instance, so the refreshing thread is paid
+ * for only once.
+ *
+ * @see CaptureMode#COARSE
+ */
+public class CoarseClock {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final long DEFAULT_RESOLUTION_MS = 10L;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    private static CoarseClock defaultInstance;
+
+    /**
+     * @return the shared clock, which is started on first use and never stopped.
+     */
+    public static synchronized CoarseClock getDefault() {
+
+        if (defaultInstance == null) {
+
+            defaultInstance = new CoarseClock(DEFAULT_RESOLUTION_MS);
+        }
+
+        return defaultInstance;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final long resolutionMs;
+
+    private volatile long millis;
+
+    private volatile boolean running;
+
+    private final Thread thread;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Starts the refreshing thread.
+     */
+    public CoarseClock(long resolutionMs) {
+
+        if (resolutionMs <= 0) {
+
+            throw new IllegalArgumentException("invalid resolution " + resolutionMs);
+        }
+
+        this.resolutionMs = resolutionMs;
+        this.millis = System.currentTimeMillis();
+        this.running = true;
+        this.thread = new Thread(this::refresh, "Coarse Clock (" + resolutionMs + " ms)");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the time, in milliseconds since the epoch, as of the last refresh.
+     */
+    public long millis() {
+
+        return millis;
+    }
+
+    public long getResolutionMs() {
+
+        return resolutionMs;
+    }
+
+    /**
+     * Stops the refreshing thread. The clock stops advancing.
+     */
+    public void stop() {
+
+        running = false;
+        thread.interrupt();
+    }
+
+    public boolean isRunning() {
+
+        return running;
+    }
+
+    @Override
+    public String toString() {
+
+        return "CoarseClock[" + resolutionMs + " ms]";
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void refresh() {
+
+        while(running) {
+
+            try {
+
+                Thread.sleep(resolutionMs);
+            }
+            catch(InterruptedException e) {
+
+                // stop() or spurious, the loop condition decides
+                continue;
+            }
+
+            millis = System.currentTimeMillis();
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -1,15 +1,53 @@
 package io.novaordis.utilities.ac;
 
+/**
+ * An event, as handed over to a collector: the payload plus what was captured on the producer thread.
+ *
+ * A numeric sample handed over with handOverLong() or handOverDouble() is carried as primitives - a key and a value -
+ * and has no payload.
+ *
+ * Instances handed to handlers belong to the collector, which may reuse them once the handlers return.
+ *
+ * @see CaptureMode
+ * @see PrimitiveHandler
+ * @see CollectorConfiguration#setPoolCapacity(int)
+ */
 public class Collected {
 
     // Constants -------------------------------------------------------------------------------------------------------
 
+    private static final byte OBJECT = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+
     // Static ----------------------------------------------------------------------------------------------------------
 
+    static Collected ofLong(long timestamp, long threadId, int key, long value) {
+
+        Collected c = new Collected(timestamp, threadId, null);
+        c.setLong(timestamp, threadId, key, value);
+        return c;
+    }
+
+    static Collected ofDouble(long timestamp, long threadId, int key, double value) {
+
+        Collected c = new Collected(timestamp, threadId, null);
+        c.setDouble(timestamp, threadId, key, value);
+        return c;
+    }
+
     // Attributes ------------------------------------------------------------------------------------------------------
 
+    // OBJECT, LONG or DOUBLE
+    private byte kind;
+    private int key;
+    // the value, or the raw bits of the double value
+    private long value;
+
     private long timeStamp;
     private String threadName;
+    // -1 if the thread was identified by name at capture time
+    private long threadId;
     private Object payload;
 
     // Constructors ----------------------------------------------------------------------------------------------------
@@ -21,25 +59,168 @@ public class Collected {
 
     public Collected(long timestamp, String threadName, Object o) {
 
-        this.timeStamp = timestamp;
-        this.threadName = threadName;
-        this.payload = o;
+        set(timestamp, threadName, o);
+    }
+
+    /**
+     * The thread name will be resolved from the thread id when first requested.
+     *
+     * @see CaptureMode#COARSE
+     */
+    public Collected(long timestamp, long threadId, Object o) {
+
+        set(timestamp, threadId, o);
     }
 
     // Public ----------------------------------------------------------------------------------------------------------
 
+    /**
+     * @return the payload, always null for numeric samples.
+     */
     public Object getPayload() {
         return payload;
     }
 
+    /**
+     * @return true if this is a numeric sample handed over with handOverLong() or handOverDouble().
+     */
+    public boolean isPrimitive() {
+
+        return kind != OBJECT;
+    }
+
+    /**
+     * @return true if this is a numeric sample handed over with handOverDouble().
+     */
+    public boolean isDouble() {
+
+        return kind == DOUBLE;
+    }
+
+    /**
+     * Relevant only for numeric samples.
+     */
+    public int getKey() {
+
+        return key;
+    }
+
+    /**
+     * Relevant only for numeric samples handed over with handOverLong().
+     */
+    public long getLongValue() {
+
+        return value;
+    }
+
+    /**
+     * Relevant only for numeric samples handed over with handOverDouble().
+     */
+    public double getDoubleValue() {
+
+        return Double.longBitsToDouble(value);
+    }
+
     public long getTimeStamp() {
         return timeStamp;
     }
 
+    /**
+     * If only the thread id was captured, the name is resolved on the first invocation, on the invoking thread, and
+     * then cached.
+     */
     public String getThreadName() {
+
+        if (threadName == null && threadId >= 0) {
+
+            threadName = ThreadNames.resolve(threadId);
+        }
+
         return threadName;
     }
 
+    /**
+     * @return the id of the originating thread, or -1 if the thread was identified by name at capture time.
+     */
+    public long getThreadId() {
+
+        return threadId;
+    }
+
+    /**
+     * @return an independent copy, for handlers that retain events beyond the invocation they received them in. The
+     *         payload is not copied.
+     */
+    public Collected copy() {
+
+        Collected c = new Collected(timeStamp, threadName, payload);
+        c.kind = kind;
+        c.key = key;
+        c.value = value;
+        c.threadId = threadId;
+        return c;
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * Used by implementations that pre-allocate Collected instances and reuse them, to avoid allocating on the
+     * handOver() path.
+     */
+    void set(long timestamp, String threadName, Object o) {
+
+        this.kind = OBJECT;
+        this.timeStamp = timestamp;
+        this.threadName = threadName;
+        this.threadId = -1L;
+        this.payload = o;
+    }
+
+    /**
+     * @see Collected#set(long, String, Object)
+     */
+    void set(long timestamp, long threadId, Object o) {
+
+        this.kind = OBJECT;
+        this.timeStamp = timestamp;
+        this.threadName = null;
+        this.threadId = threadId;
+        this.payload = o;
+    }
+
+    /**
+     * @see Collected#set(long, String, Object)
+     */
+    void setLong(long timestamp, long threadId, int key, long value) {
+
+        set(timestamp, threadId, null);
+        this.kind = LONG;
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * @see Collected#set(long, String, Object)
+     */
+    void setDouble(long timestamp, long threadId, int key, double value) {
+
+        set(timestamp, threadId, null);
+        this.kind = DOUBLE;
+        this.key = key;
+        this.value = Double.doubleToRawLongBits(value);
+    }
+
+    /**
+     * Releases the references, so a reused instance does not prevent the payload from being garbage collected.
+     */
+    void clear() {
+
+        this.kind = OBJECT;
+        this.threadName = null;
+        this.threadId = -1L;
+        this.payload = null;
+    }
+
     // Protected -------------------------------------------------------------------------------------------------------
 
     // Private ---------------------------------------------------------------------------------------------------------
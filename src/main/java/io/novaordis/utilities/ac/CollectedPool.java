@@ -0,0 +1,178 @@
+package io.novaordis.utilities.ac;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of Collected instances, shared by the producers, which acquire them on the hand over path, and the
+ * pumps, which release them after the handlers processed them. The pool is filled up at construction, and neither
+ * acquiring nor releasing allocates, so in steady state a pooled collector does not produce garbage per event.
+ *
+ * The instances are kept in a shared free list, whose lock is taken once per batch, not once per event: a pump
+ * releases a whole batch under one acquisition, and a producer takes several instances at a time into a cache of its
+ * own, from which it acquires without synchronization. A producer that stops handing over events keeps the few
+ * instances it cached, which are still counted as available.
+ *
+ * The pool does not track the instances it hands out: the instances that are dropped or otherwise never released
+ * are left to the garbage collector, and their place is taken by new instances allocated when the pool runs dry. An
+ * instance released into a full pool is left to the garbage collector as well.
+ *
+ * @see CollectorConfiguration#setPoolCapacity(int)
+ */
+class CollectedPool {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // the most instances a producer takes from the shared free list at a time
+    static final int MAX_REFILL_SIZE = 32;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final int capacity;
+
+    // a small pool is not spread over the producers' caches
+    private final int refillSize;
+
+    // a stack, guarded by its own monitor
+    private final Collected[] free;
+    private int freeCount;
+
+    // the shared free list and the producers' caches
+    private final LongAdder available;
+
+    private final ThreadLocal<Cache> cache;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    CollectedPool(int capacity) {
+
+        if (capacity <= 0) {
+
+            throw new IllegalArgumentException("invalid pool capacity " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.refillSize = Math.max(1, Math.min(MAX_REFILL_SIZE, capacity / 64));
+        this.free = new Collected[capacity];
+        this.available = new LongAdder();
+        this.cache = ThreadLocal.withInitial(() -> new Cache(refillSize));
+
+        for(int i = 0; i < capacity; i ++) {
+
+            free[freeCount ++] = new Collected(-1L, (String)null, null);
+        }
+
+        available.add(capacity);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return "CollectedPool[" + size() + "/" + capacity + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * @return a cleared instance, or null if the pool is empty.
+     */
+    Collected acquire() {
+
+        Cache c = cache.get();
+
+        if (c.count == 0 && !refill(c)) {
+
+            return null;
+        }
+
+        Collected result = c.instances[-- c.count];
+        c.instances[c.count] = null;
+        available.decrement();
+        return result;
+    }
+
+    /**
+     * Clears the instances, so the pool does not keep their payloads reachable, and returns them to the pool.
+     */
+    void release(List<Collected> events) {
+
+        int size = events.size();
+
+        //noinspection ForLoopReplaceableByForEach
+        for(int i = 0; i < size; i ++) {
+
+            events.get(i).clear();
+        }
+
+        int released;
+
+        synchronized(free) {
+
+            released = Math.min(size, capacity - freeCount);
+
+            for(int i = 0; i < released; i ++) {
+
+                free[freeCount ++] = events.get(i);
+            }
+        }
+
+        available.add(released);
+    }
+
+    int getCapacity() {
+
+        return capacity;
+    }
+
+    /**
+     * @return the number of instances available in the pool, including the ones cached by producers.
+     */
+    int size() {
+
+        return (int)available.sum();
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Moves at most refillSize instances from the shared free list into the cache.
+     *
+     * @return false if the shared free list is empty.
+     */
+    private boolean refill(Cache c) {
+
+        synchronized(free) {
+
+            int n = Math.min(refillSize, freeCount);
+            freeCount -= n;
+            System.arraycopy(free, freeCount, c.instances, 0, n);
+            Arrays.fill(free, freeCount, freeCount + n, null);
+            c.count = n;
+        }
+
+        return c.count > 0;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * The instances a producer took from the shared free list and did not hand out yet. Only accessed by its thread.
+     */
+    private static class Cache {
+
+        final Collected[] instances;
+        int count;
+
+        Cache(int size) {
+
+            this.instances = new Collected[size];
+        }
+    }
+}
@@ -19,7 +19,127 @@ public interface Collector {
     boolean handOver(Object o);
 
     /**
-     * Registers an external handler. Same handler can be registered multiple times.
+     * Hand over the object to be processed on a different thread, and report what happened to it.
+     *
+     * @return the outcome. If the outcome is not accepted, you should expect no further processing of the handed over
+     *         object.
+     *
+     * The default implementation delegates to handOver(Object), and reports a rejection as REJECTED_DISPOSED.
+     *
+     * @see HandOverOutcome#isAccepted()
+     */
+    default HandOverOutcome handOverWithOutcome(Object o) {
+
+        return handOver(o) ? HandOverOutcome.ACCEPTED : HandOverOutcome.REJECTED_DISPOSED;
+    }
+
+    /**
+     * Hand over the object with the given priority. If the collector has priority lanes, the event is placed in the
+     * lane of its priority, and is processed before the events waiting in lower lanes. Otherwise, the priority is
+     * ignored. Events with a priority other than NORMAL bypass the producer buffer, if producer batching is enabled.
+     *
+     * @param priority must not be null.
+     *
+     * @return same as handOverWithOutcome(Object).
+     *
+     * The default implementation ignores the priority.
+     *
+     * @see CollectorConfiguration#setPriorityLanes(boolean)
+     */
+    default HandOverOutcome handOverWithOutcome(Object o, Priority priority) {
+
+        if (priority == null) {
+
+            throw new IllegalArgumentException("null priority");
+        }
+
+        return handOverWithOutcome(o);
+    }
+
+    /**
+     * Publishes the events the calling thread handed over and that are still held in its producer buffer, if producer
+     * batching is enabled. A noop otherwise.
+     *
+     * @return the outcome of the publication: the first outcome that was not accepted, if there was one, ACCEPTED
+     *         otherwise, including when there was nothing to publish. REJECTED_DISPOSED if dispose() was called.
+     *
+     * The default implementation does not buffer, so it has nothing to publish.
+     *
+     * @see CollectorConfiguration#setProducerBatchSize(int)
+     */
+    default HandOverOutcome flush() {
+
+        return HandOverOutcome.ACCEPTED;
+    }
+
+    /**
+     * Hands over a numeric sample, without boxing it (optional operation). The sample is delivered to the registered
+     * PrimitiveHandlers only. Samples are processed in hand over order relative to each other, but not necessarily
+     * relative to the regular events handed over by the same thread.
+     *
+     * RING_BUFFER collectors write the sample into a pre-allocated slot, so neither the producer nor the pump allocate
+     * memory for it. The other collector types allocate one Collected instance per sample, but do not box the value.
+     *
+     * A collector that does not support numeric samples rejects them, as a disposed collector does.
+     *
+     * @return same as handOver(Object).
+     *
+     * The default implementation does not support numeric samples, and returns false.
+     *
+     * @see PrimitiveHandler
+     */
+    default boolean handOverLong(int key, long value) {
+
+        return false;
+    }
+
+    /**
+     * Optional operation.
+     *
+     * @see Collector#handOverLong(int, long)
+     */
+    default boolean handOverDouble(int key, double value) {
+
+        return false;
+    }
+
+    /**
+     * @return the number of handOver() invocations that had the given outcome, since the collector was created.
+     *
+     * The default implementation does not keep outcome counters, and returns 0.
+     */
+    default long getOutcomeCount(HandOverOutcome outcome) {
+
+        return 0L;
+    }
+
+    /**
+     * @return the number of events lost because of insufficient queue capacity, since the collector was created. An
+     *         unbounded collector always returns 0.
+     *
+     * The default implementation does not keep outcome counters, and returns 0.
+     *
+     * @see HandOverOutcome#isDrop()
+     */
+    default long getDroppedCount() {
+
+        return 0L;
+    }
+
+    /**
+     * @return the collector's health statistics: counters, queue depth, lag and per-handler latencies. Also available
+     *         over JMX while the collector is active. May return null if the implementation does not keep metrics.
+     *
+     * The default implementation does not keep metrics, and returns null.
+     */
+    default CollectorMetrics getMetrics() {
+
+        return null;
+    }
+
+    /**
+     * Registers an external handler. Same handler can be registered multiple times. Handlers can be registered and
+     * unregistered from any thread, while events are being processed.
      *
      * @return false if dispose() was previously called on this instance - and the handler will not be registered.
      */
@@ -39,4 +159,36 @@ public interface Collector {
      */
     void dispose();
 
+    /**
+     * Disposes of the collector without losing the events already handed over, if possible: stops accepting events,
+     * publishes the producer buffers, lets the pump drain the queue, in batches, and only then closes the handlers, as
+     * dispose() does. If the queue is not drained within the timeout, the remaining events are abandoned.
+     *
+     * Must not be invoked from a handler, as the pump would wait for itself.
+     *
+     * @param timeoutMs the maximum time to wait for the queue to drain. 0 means do not wait, which is the same as
+     *                  dispose(), but with a report.
+     *
+     * @exception IllegalArgumentException if the timeout is negative.
+     *
+     * @return the number of flushed and abandoned events. If the collector was already disposed, an empty report.
+     *
+     * The default implementation delegates to dispose(), without waiting, and returns a report whose counts are
+     * unknown.
+     *
+     * @see DisposeReport#isCountKnown()
+     */
+    default DisposeReport dispose(long timeoutMs) {
+
+        if (timeoutMs < 0) {
+
+            throw new IllegalArgumentException("negative timeout " + timeoutMs);
+        }
+
+        long t0 = System.currentTimeMillis();
+        dispose();
+        return new DisposeReport(DisposeReport.UNKNOWN_COUNT, DisposeReport.UNKNOWN_COUNT,
+                System.currentTimeMillis() - t0);
+    }
+
 }
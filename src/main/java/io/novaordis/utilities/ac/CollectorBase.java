@@ -0,0 +1,838 @@
+package io.novaordis.utilities.ac;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Functionality shared by all Collector implementations: handler management, the draining thread lifecycle, the
+ * maintenance checks, the metrics and the disposal protocol. Subclasses supply the queueing mechanism and the pump.
+ *
+ * The maintenance checks of all collectors run on a single shared scheduler thread.
+ *
+ * If producer batching is enabled, each producer thread accumulates its events in its own buffer and publishes them to
+ * the queue as one unit, so the producers contend on the queue once per batch instead of once per event. The units
+ * are expanded back into individual events before they reach the handlers.
+ *
+ * If pooling is enabled, the Collected instances are acquired from a pool when the events are captured, and released
+ * back into the pool after the handlers processed the batch they were part of.
+ *
+ * @see CollectorExecutors
+ * @see CollectorConfiguration#setProducerBatchSize(int)
+ * @see CollectorConfiguration#setPoolCapacity(int)
+ */
+public abstract class CollectorBase implements Collector {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final long PUMP_SLEEP_AFTER_INTERRUPTED_EXCEPTION_MS = 100L;
+
+    public static final int QUEUE_SIZE_WARNING_THRESHOLD = 1000;
+    public static final long MAINTENANCE_PERIOD_MS = 20000L;
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+
+    public static final long DEFAULT_PRODUCER_FLUSH_DEADLINE_MS = 10L;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private String name;
+
+    private int drainingThreadPriority;
+
+    private Thread[] drainingThreads;
+
+    // the periodic check, run by the shared maintenance scheduler
+    private ScheduledFuture<?> maintenanceTask;
+
+    protected Handlers handlers;
+
+    protected volatile boolean outOfBusiness;
+
+    // set by a draining dispose, while the pumps are expected to empty the queue and exit
+    volatile boolean draining;
+
+    // set by a draining dispose while it publishes the producer buffers, which are accepted although out of business
+    private volatile boolean publishingBuffers;
+
+    // the maximum number of events the pump takes off the queue in one wake-up
+    protected final int maxBatchSize;
+
+    protected final CollectorMetrics metrics;
+
+    private final CaptureMode captureMode;
+
+    // null in PRECISE capture mode
+    private final CoarseClock coarseClock;
+
+    // 1 means producer batching is disabled
+    private final int producerBatchSize;
+
+    private final long producerFlushDeadlineMs;
+
+    // null if producer batching is disabled
+    private final ThreadLocal<ProducerBuffer> producerBuffer;
+
+    // all producer buffers, for the deadline sweep
+    private final Set<ProducerBuffer> producerBuffers;
+
+    // the periodic deadline sweep, run by the shared maintenance scheduler
+    private ScheduledFuture<?> producerFlushTask;
+
+    // null if handler isolation is disabled
+    private final LaneConfiguration laneConfiguration;
+
+    // set on the first numeric sample that travels through the queue as a Collected instance, so the pump only
+    // looks for samples in its batches if there may be any
+    private volatile boolean queuedSamples;
+
+    // null if pooling is disabled
+    private final CollectedPool pool;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    protected CollectorBase(String name, CollectorConfiguration configuration) {
+
+        if (configuration == null) {
+
+            throw new IllegalArgumentException("null configuration");
+        }
+
+        this.outOfBusiness = false;
+        this.draining = false;
+        this.publishingBuffers = false;
+        this.name = name;
+        this.drainingThreadPriority = configuration.getDrainingThreadPriority();
+        this.maxBatchSize = configuration.getMaxBatchSize();
+        this.handlers = new Handlers();
+        this.metrics = new CollectorMetrics(this, handlers);
+        this.captureMode = configuration.getCaptureMode();
+        this.coarseClock = CaptureMode.COARSE.equals(captureMode) ? configuration.getCoarseClock() : null;
+        this.producerBatchSize = configuration.getProducerBatchSize();
+        this.producerFlushDeadlineMs = configuration.getProducerFlushDeadlineMs();
+        this.producerBuffers = ConcurrentHashMap.newKeySet();
+        this.laneConfiguration = configuration.getHandlerIsolation();
+        this.pool = configuration.getPoolCapacity() == 0 ? null : new CollectedPool(configuration.getPoolCapacity());
+        this.producerBuffer = producerBatchSize == 1 ? null : ThreadLocal.withInitial(() -> {
+
+            ProducerBuffer b = new ProducerBuffer(
+                    this, Thread.currentThread(), getPartitionCount(), producerBatchSize, producerFlushDeadlineMs);
+            producerBuffers.add(b);
+            return b;
+        });
+    }
+
+    // Collector interface ---------------------------------------------------------------------------------------------
+
+    @Override
+    public String getName() {
+
+        return name;
+    }
+
+    @Override
+    public String getThreadName() {
+
+        return drainingThreads == null || drainingThreads.length == 0 ? null : drainingThreads[0].getName();
+    }
+
+    @Override
+    public boolean handOver(Object o) {
+
+        return handOverWithOutcome(o).isAccepted();
+    }
+
+    /**
+     * If producer batching is enabled and the event was only buffered, ACCEPTED is returned, and the outcome of the
+     * publication is only accounted for in the metrics.
+     */
+    @Override
+    public HandOverOutcome handOverWithOutcome(Object o) {
+
+        if (producerBuffer != null && !outOfBusiness) {
+
+            // the outcome is recorded when the buffer is published
+            return producerBuffer.get().append(capture(o), partitionOf(o));
+        }
+
+        HandOverOutcome outcome = outOfBusiness ? HandOverOutcome.REJECTED_DISPOSED : enqueue(o);
+        metrics.recordOutcome(outcome);
+        return outcome;
+    }
+
+    @Override
+    public HandOverOutcome handOverWithOutcome(Object o, Priority priority) {
+
+        if (priority == null) {
+
+            throw new IllegalArgumentException("null priority");
+        }
+
+        if (Priority.NORMAL.equals(priority)) {
+
+            return handOverWithOutcome(o);
+        }
+
+        HandOverOutcome outcome = outOfBusiness ? HandOverOutcome.REJECTED_DISPOSED : enqueue(o, priority);
+        metrics.recordOutcome(outcome);
+        return outcome;
+    }
+
+    @Override
+    public boolean handOverLong(int key, long value) {
+
+        Collected c = newCollected();
+        c.setLong(timestamp(), Thread.currentThread().getId(), key, value);
+        return handOverSample(c);
+    }
+
+    @Override
+    public boolean handOverDouble(int key, double value) {
+
+        Collected c = newCollected();
+        c.setDouble(timestamp(), Thread.currentThread().getId(), key, value);
+        return handOverSample(c);
+    }
+
+    @Override
+    public HandOverOutcome flush() {
+
+        if (producerBuffer == null) {
+
+            return HandOverOutcome.ACCEPTED;
+        }
+
+        if (outOfBusiness) {
+
+            return HandOverOutcome.REJECTED_DISPOSED;
+        }
+
+        return producerBuffer.get().flush();
+    }
+
+    @Override
+    public long getOutcomeCount(HandOverOutcome outcome) {
+
+        return metrics.getOutcomeCount(outcome);
+    }
+
+    @Override
+    public long getDroppedCount() {
+
+        return metrics.getDroppedCount();
+    }
+
+    /**
+     * If handler isolation is enabled, the handler is registered wrapped in its own HandlerLane, unless it is already
+     * a HandlerLane.
+     */
+    @Override
+    public boolean registerHandler(Handler h) {
+
+        if (outOfBusiness) {
+
+            return false;
+        }
+
+        if (laneConfiguration != null && h != null && !(h instanceof HandlerLane)) {
+
+            h = new HandlerLane(h, laneConfiguration);
+        }
+
+        if (!handlers.add(h)) {
+
+            return false;
+        }
+
+        metrics.handlersChanged();
+        return true;
+    }
+
+    /**
+     * If handler isolation is enabled, the handler's lane is removed and stopped. The events still in the lane are
+     * discarded.
+     *
+     * @see Collector#unregisterHandler(Handler)
+     */
+    @Override
+    public boolean unregisterHandler(Handler h) {
+
+        if (!handlers.remove(h)) {
+
+            return false;
+        }
+
+        metrics.handlersChanged();
+        return true;
+    }
+
+    @Override
+    public CollectorMetrics getMetrics() {
+
+        return metrics;
+    }
+
+    @Override
+    public void dispose() {
+
+        outOfBusiness = true;
+        draining = false;
+        stopPump();
+
+        if (maintenanceTask != null) {
+
+            maintenanceTask.cancel(false);
+        }
+
+        if (producerFlushTask != null) {
+
+            producerFlushTask.cancel(false);
+        }
+
+        // buffered events are dropped, like the ones still in the queue
+        for(ProducerBuffer b: producerBuffers) {
+
+            b.discard();
+        }
+
+        producerBuffers.clear();
+
+        metrics.unregister();
+        handlers.close();
+    }
+
+    /**
+     * @see Collector#dispose(long)
+     */
+    @Override
+    public DisposeReport dispose(long timeoutMs) {
+
+        if (timeoutMs < 0) {
+
+            throw new IllegalArgumentException("negative timeout " + timeoutMs);
+        }
+
+        if (outOfBusiness) {
+
+            return new DisposeReport(0L, 0L, 0L);
+        }
+
+        long t0 = System.nanoTime();
+        long deadline = t0 + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        long dequeued = metrics.getDequeuedCount();
+
+        // the pumps are told to exit only after the producer buffers were published, or they may exit before the last
+        // batches reach the queue; publishing waits for room in the queue no longer than the timeout
+        publishingBuffers = true;
+        outOfBusiness = true;
+
+        try {
+
+            for(ProducerBuffer b: producerBuffers) {
+
+                b.flush(deadline);
+            }
+        }
+        catch(InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+
+        publishingBuffers = false;
+        draining = true;
+        wakeUpPumps();
+
+        boolean drained = false;
+
+        try {
+
+            drained = awaitDrained(deadline);
+        }
+        catch(InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+
+        // events appended to a producer buffer concurrently with the dispose stay there
+        long abandoned = (drained ? 0L : getQueueSize()) + getProducerBufferedCount();
+
+        dispose();
+
+        return new DisposeReport(
+                metrics.getDequeuedCount() - dequeued, abandoned,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0));
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the number of events that were handed over but not yet picked up by the pump.
+     */
+    public abstract int getQueueSize();
+
+    /**
+     * @return the number of events waiting in the lane of the given priority. Collectors without priority lanes keep
+     *         all events in the NORMAL lane.
+     */
+    public int getQueueSize(Priority priority) {
+
+        return Priority.NORMAL.equals(priority) ? getQueueSize() : 0;
+    }
+
+    public CaptureMode getCaptureMode() {
+
+        return captureMode;
+    }
+
+    /**
+     * @return the number of events handed over per producer batch. 1 means producer batching is disabled.
+     */
+    public int getProducerBatchSize() {
+
+        return producerBatchSize;
+    }
+
+    public long getProducerFlushDeadlineMs() {
+
+        return producerFlushDeadlineMs;
+    }
+
+    @Override
+    public String toString() {
+
+        return "Collector[" + name + "], thread=" + getThreadName();
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * @return null if pooling is disabled.
+     */
+    CollectedPool getPool() {
+
+        return pool;
+    }
+
+    /**
+     * Creates the queue of a subclass. If pooling is enabled and the queue is bounded, the queue is an
+     * ArrayBlockingQueue, which, unlike a LinkedBlockingQueue, does not allocate a node for each event, at the price
+     * of allocating the whole capacity upfront.
+     *
+     * @param capacity Integer.MAX_VALUE means unbounded.
+     */
+    BlockingQueue<Collected> newQueue(int capacity) {
+
+        if (pool != null && capacity != Integer.MAX_VALUE) {
+
+            return new ArrayBlockingQueue<>(capacity);
+        }
+
+        return new LinkedBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Places a producer batch in the queue, as one unit, and accounts for the outcome of each of its events. Invoked
+     * by the producer buffers.
+     */
+    HandOverOutcome publish(ProducerBatch batch) {
+
+        HandOverOutcome outcome =
+                outOfBusiness && !publishingBuffers ? HandOverOutcome.REJECTED_DISPOSED : enqueue(batch);
+        metrics.recordOutcome(outcome, batch.size());
+        return outcome;
+    }
+
+    /**
+     * Publishes a producer batch only if the queue has room for it right away, and accounts for the outcome of its
+     * events if it does. Invoked by the deadline sweep, which runs on the shared maintenance scheduler and must never
+     * wait for a full collector.
+     *
+     * @return false if the batch was not placed in the queue, and must stay buffered.
+     */
+    boolean tryPublish(ProducerBatch batch) {
+
+        if ((outOfBusiness && !publishingBuffers) || !tryEnqueue(batch)) {
+
+            return false;
+        }
+
+        metrics.recordOutcome(HandOverOutcome.ACCEPTED, batch.size());
+        return true;
+    }
+
+    /**
+     * Places a producer batch in the queue, as one unit. All events of the batch map onto batch.getPartition().
+     *
+     * @return the outcome, which applies to all events of the batch.
+     */
+    abstract HandOverOutcome enqueue(ProducerBatch batch);
+
+    /**
+     * Places a producer batch in the queue, as one unit, if that can be done without waiting. The overflow policy
+     * does not apply: if there is no room, the batch is left to its producer.
+     *
+     * @return false if the batch was not placed in the queue.
+     */
+    abstract boolean tryEnqueue(ProducerBatch batch);
+
+    /**
+     * Places an already captured event in the queue. Invoked by handOverWithOutcome(), only if the collector is not
+     * disposed.
+     *
+     * @see CollectorBase#enqueue(Object)
+     */
+    abstract HandOverOutcome offer(Collected c);
+
+    /**
+     * @return the number of events buffered by the producer threads and not yet published.
+     */
+    int getProducerBufferedCount() {
+
+        int count = 0;
+
+        for(ProducerBuffer b: producerBuffers) {
+
+            count += b.size();
+        }
+
+        return count;
+    }
+
+    /**
+     * Waits for the pumps to drain the queue, once the draining flag is set. The draining threads exit as soon as they
+     * find their queue empty, so the queue is drained, and the last batch processed, when all of them have exited.
+     * Collectors without draining threads must override it.
+     *
+     * @param deadline the System.nanoTime() value after which to stop waiting.
+     *
+     * @return true if the queue was drained before the deadline.
+     */
+    boolean awaitDrained(long deadline) throws InterruptedException {
+
+        for(Thread t: drainingThreads) {
+
+            long remaining = deadline - System.nanoTime();
+
+            if (remaining > 0) {
+
+                TimeUnit.NANOSECONDS.timedJoin(t, remaining);
+            }
+
+            if (t.isAlive()) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Starts the draining threads and schedules the maintenance checks. Must be called by the subclass constructors,
+     * after the subclass state the pumps depend on was initialized.
+     *
+     * @param pumps one draining thread is started for each pump. May be empty, for collectors that do not own threads.
+     */
+    protected void start(Runnable... pumps) {
+
+        drainingThreads = new Thread[pumps.length];
+
+        for(int i = 0; i < pumps.length; i ++) {
+
+            String threadName = "' Collector '" + name + "' Draining Thread" + (pumps.length == 1 ? "" : " #" + i);
+            Thread t = new Thread(pumps[i], threadName);
+            t.setDaemon(true);
+
+            if (drainingThreadPriority != -1) {
+
+                t.setPriority(drainingThreadPriority);
+            }
+
+            drainingThreads[i] = t;
+        }
+
+        for(Thread t: drainingThreads) {
+
+            t.start();
+        }
+
+        this.maintenanceTask = CollectorExecutors.getMaintenanceScheduler().scheduleAtFixedRate(() -> {
+
+            int size = getQueueSize();
+
+            if (size > QUEUE_SIZE_WARNING_THRESHOLD) {
+
+                System.err.println("[warning] collector " + name + " queue over " + size + " entries");
+            }
+
+        }, MAINTENANCE_PERIOD_MS, MAINTENANCE_PERIOD_MS, TimeUnit.MILLISECONDS);
+
+        if (producerBuffer != null) {
+
+            this.producerFlushTask = CollectorExecutors.getMaintenanceScheduler().scheduleAtFixedRate(
+                    this::flushExpiredProducerBuffers, producerFlushDeadlineMs, producerFlushDeadlineMs,
+                    TimeUnit.MILLISECONDS);
+        }
+
+        metrics.register();
+    }
+
+    /**
+     * Places the object in the queue, to be processed on the draining thread. Invoked by handOverWithOutcome(), only
+     * if the collector is not disposed.
+     *
+     * @return the outcome. REJECTED_DISPOSED may be returned if the collector was disposed while the producer was
+     *         waiting.
+     */
+    protected abstract HandOverOutcome enqueue(Object o);
+
+    /**
+     * Places the object in the lane of the given priority. Invoked by handOverWithOutcome(Object, Priority) for
+     * priorities other than NORMAL, only if the collector is not disposed. Collectors without priority lanes ignore
+     * the priority.
+     */
+    protected HandOverOutcome enqueue(Object o, Priority priority) {
+
+        return enqueue(o);
+    }
+
+    /**
+     * Signals the pump to exit its draining loop. Invoked by dispose().
+     */
+    protected abstract void stopPump();
+
+    /**
+     * Invoked by a draining dispose, after the draining flag was set, so that pumps blocked waiting for events notice
+     * it. Pumps that wait with a timeout do not need to be woken up.
+     */
+    protected void wakeUpPumps() {
+    }
+
+    /**
+     * Producer buffers keep a separate run for each partition, so a producer batch never spans partitions.
+     *
+     * @return 1, unless the implementation partitions its events.
+     */
+    protected int getPartitionCount() {
+
+        return 1;
+    }
+
+    /**
+     * @return the partition the payload maps onto, between 0 and getPartitionCount() - 1.
+     */
+    protected int partitionOf(Object payload) {
+
+        return 0;
+    }
+
+    /**
+     * @return the partition the key of a numeric sample maps onto, between 0 and getPartitionCount() - 1.
+     */
+    protected int partitionOfKey(int key) {
+
+        return 0;
+    }
+
+    /**
+     * @return the hand over timestamp, according to the capture mode. Must be invoked on the producer thread.
+     */
+    protected long timestamp() {
+
+        return coarseClock == null ? System.currentTimeMillis() : coarseClock.millis();
+    }
+
+    /**
+     * Captures a handed over object, according to the capture mode. Must be invoked on the producer thread.
+     */
+    protected Collected capture(Object o) {
+
+        // assign timestamp at the collection time, as object may spend time in the queue waiting to be processed
+
+        Collected c = newCollected();
+
+        if (coarseClock == null) {
+
+            c.set(System.currentTimeMillis(), Thread.currentThread().getName(), o);
+        }
+        else {
+
+            c.set(coarseClock.millis(), Thread.currentThread().getId(), o);
+        }
+
+        return c;
+    }
+
+    /**
+     * Pushes the event to handlers, never letting an exception escape, as the pump must not stop.
+     */
+    protected void process(Collected c) {
+
+        if (producerBuffer != null && c.getPayload() instanceof ProducerBatch) {
+
+            processBatch(Collections.singletonList(c));
+            return;
+        }
+
+        try {
+
+            metrics.record(c);
+
+            if (c.isPrimitive()) {
+
+                handlers.processPrimitive(c);
+                return;
+            }
+
+            // even if the underlying implementation throws unchecked exception, the pump must handle them without
+            // stopping
+            handlers.process(c);
+        }
+        catch(Throwable t) {
+
+            // never stop the pump as the queue may grow out of control; keep consuming, even if we discard everything
+            // we consume
+            System.err.println("[warning] collector " + name + " is failing to process events: " + t);
+        }
+    }
+
+    /**
+     * Pushes the batch to handlers, never letting an exception escape, as the pump must not stop. If pooling is
+     * enabled, the events are released into the pool once all handlers returned.
+     */
+    protected void processBatch(List<Collected> batch) {
+
+        if (producerBuffer != null) {
+
+            batch = ProducerBatch.expand(batch);
+        }
+
+        try {
+
+            metrics.recordBatch(batch);
+
+            handlers.processBatch(queuedSamples ? processSamples(batch) : batch);
+        }
+        catch(Throwable t) {
+
+            System.err.println("[warning] collector " + name + " is failing to process events: " + t);
+        }
+
+        if (pool != null) {
+
+            pool.release(batch);
+        }
+    }
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return a pooled instance, if pooling is enabled and the pool is not empty, or a new one otherwise. The instance
+     *         must be populated with one of the set*() methods.
+     */
+    private Collected newCollected() {
+
+        if (pool == null) {
+
+            return new Collected(-1L, (String)null, null);
+        }
+
+        Collected c = pool.acquire();
+
+        if (c == null) {
+
+            metrics.recordPoolMiss();
+            c = new Collected(-1L, (String)null, null);
+        }
+
+        return c;
+    }
+
+    private boolean handOverSample(Collected c) {
+
+        if (!queuedSamples) {
+
+            queuedSamples = true;
+        }
+
+        if (producerBuffer != null && !outOfBusiness) {
+
+            return producerBuffer.get().append(c, partitionOfKey(c.getKey())).isAccepted();
+        }
+
+        HandOverOutcome outcome = outOfBusiness ? HandOverOutcome.REJECTED_DISPOSED : offer(c);
+        metrics.recordOutcome(outcome);
+        return outcome.isAccepted();
+    }
+
+    /**
+     * Dispatches the numeric samples of the batch to the PrimitiveHandlers.
+     *
+     * @return the given batch if it contains no samples, or a new list with the rest of the events.
+     */
+    private List<Collected> processSamples(List<Collected> batch) {
+
+        List<Collected> events = null;
+
+        for(int i = 0; i < batch.size(); i ++) {
+
+            Collected c = batch.get(i);
+
+            if (c.isPrimitive()) {
+
+                if (events == null) {
+
+                    events = new ArrayList<>(batch.subList(0, i));
+                }
+
+                handlers.processPrimitive(c);
+            }
+            else if (events != null) {
+
+                events.add(c);
+            }
+        }
+
+        return events == null ? batch : events;
+    }
+
+    /**
+     * Publishes the runs of the producers that did not hand over anything since their deadline expired, and forgets
+     * the buffers of the producer threads that died.
+     */
+    private void flushExpiredProducerBuffers() {
+
+        long now = timestamp();
+
+        for(ProducerBuffer b: producerBuffers) {
+
+            try {
+
+                b.flushExpired(now);
+            }
+            catch(Throwable t) {
+
+                System.err.println("[warning] collector " + name + " failed to flush " + b + ": " + t);
+            }
+
+            if (b.isAbandoned()) {
+
+                producerBuffers.remove(b);
+            }
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
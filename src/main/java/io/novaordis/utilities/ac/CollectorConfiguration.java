@@ -0,0 +1,538 @@
+package io.novaordis.utilities.ac;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Configuration used by the CollectorFactory to select and configure a Collector implementation. The defaults
+ * produce the same collector as CollectorFactory.getInstance(String).
+ *
+ * Not thread safe, it is supposed to be populated and then passed to the factory on the same thread.
+ *
+ * @see CollectorFactory#getInstance(String, CollectorConfiguration)
+ */
+public class CollectorConfiguration {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private CollectorType type;
+
+    private int drainingThreadPriority;
+
+    private int maxBatchSize;
+
+    private int ringBufferCapacity;
+
+    private WaitStrategy waitStrategy;
+
+    private int capacity;
+
+    private OverflowPolicy overflowPolicy;
+
+    private int partitionCount;
+
+    private KeyExtractor keyExtractor;
+
+    private CaptureMode captureMode;
+
+    private CoarseClock coarseClock;
+
+    private Executor executor;
+
+    private int producerBatchSize;
+
+    private long producerFlushDeadlineMs;
+
+    private LaneConfiguration handlerIsolation;
+
+    private SpillConfiguration spill;
+
+    private int poolCapacity;
+
+    private boolean priorityLanes;
+
+    private int starvationLimit;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public CollectorConfiguration() {
+
+        this.type = CollectorType.QUEUE;
+        this.drainingThreadPriority = -1;
+        this.maxBatchSize = CollectorBase.DEFAULT_MAX_BATCH_SIZE;
+        this.ringBufferCapacity = RingBufferCollector.DEFAULT_CAPACITY;
+        this.waitStrategy = WaitStrategy.PARK;
+        this.capacity = Integer.MAX_VALUE;
+        this.overflowPolicy = OverflowPolicies.block();
+        this.partitionCount = Runtime.getRuntime().availableProcessors();
+        this.keyExtractor = null;
+        this.captureMode = CaptureMode.PRECISE;
+        this.coarseClock = null;
+        this.executor = null;
+        this.producerBatchSize = 1;
+        this.producerFlushDeadlineMs = CollectorBase.DEFAULT_PRODUCER_FLUSH_DEADLINE_MS;
+        this.handlerIsolation = null;
+        this.spill = null;
+        this.poolCapacity = 0;
+        this.priorityLanes = false;
+        this.starvationLimit = CollectorImpl.DEFAULT_STARVATION_LIMIT;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public CollectorType getType() {
+
+        return type;
+    }
+
+    public void setType(CollectorType type) {
+
+        if (type == null) {
+
+            throw new IllegalArgumentException("null collector type");
+        }
+
+        this.type = type;
+    }
+
+    /**
+     * @return between Thread.MIN_PRIORITY and Thread.MAX_PRIORITY, or -1 for default priority.
+     */
+    public int getDrainingThreadPriority() {
+
+        return drainingThreadPriority;
+    }
+
+    /**
+     * @param drainingThreadPriority between Thread.MIN_PRIORITY and Thread.MAX_PRIORITY. If -1, use default priority.
+     */
+    public void setDrainingThreadPriority(int drainingThreadPriority) {
+
+        this.drainingThreadPriority = drainingThreadPriority;
+    }
+
+    /**
+     * @return the maximum number of events the pump takes off the queue in one wake-up and passes to the handlers as
+     *         a batch.
+     */
+    public int getMaxBatchSize() {
+
+        return maxBatchSize;
+    }
+
+    /**
+     * @param maxBatchSize the maximum number of events the pump takes off the queue in one wake-up and passes to the
+     *                     handlers as a batch. 1 disables batching.
+     *
+     * @see BatchHandler
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+
+        if (maxBatchSize <= 0) {
+
+            throw new IllegalArgumentException("invalid maximum batch size " + maxBatchSize);
+        }
+
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Relevant only for RING_BUFFER collectors.
+     */
+    public int getRingBufferCapacity() {
+
+        return ringBufferCapacity;
+    }
+
+    /**
+     * Relevant only for RING_BUFFER collectors. The value will be rounded up to the nearest power of two.
+     */
+    public void setRingBufferCapacity(int ringBufferCapacity) {
+
+        if (ringBufferCapacity <= 0) {
+
+            throw new IllegalArgumentException("invalid ring buffer capacity " + ringBufferCapacity);
+        }
+
+        this.ringBufferCapacity = ringBufferCapacity;
+    }
+
+    /**
+     * Relevant only for RING_BUFFER collectors.
+     */
+    public WaitStrategy getWaitStrategy() {
+
+        return waitStrategy;
+    }
+
+    /**
+     * Relevant only for RING_BUFFER collectors.
+     */
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+
+        if (waitStrategy == null) {
+
+            throw new IllegalArgumentException("null wait strategy");
+        }
+
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Relevant only for QUEUE and PARTITIONED collectors. For PARTITIONED collectors, it applies to each partition.
+     *
+     * @return the maximum number of events that can wait in the queue. Integer.MAX_VALUE means unbounded.
+     */
+    public int getCapacity() {
+
+        return capacity;
+    }
+
+    /**
+     * Relevant only for QUEUE and PARTITIONED collectors. For PARTITIONED collectors, it applies to each partition.
+     *
+     * @param capacity the maximum number of events that can wait in the queue. Integer.MAX_VALUE means unbounded.
+     */
+    public void setCapacity(int capacity) {
+
+        if (capacity <= 0) {
+
+            throw new IllegalArgumentException("invalid capacity " + capacity);
+        }
+
+        this.capacity = capacity;
+    }
+
+    /**
+     * Relevant only for bounded QUEUE and PARTITIONED collectors.
+     */
+    public OverflowPolicy getOverflowPolicy() {
+
+        return overflowPolicy;
+    }
+
+    /**
+     * Relevant only for bounded QUEUE and PARTITIONED collectors.
+     *
+     * @see OverflowPolicies
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+
+        if (overflowPolicy == null) {
+
+            throw new IllegalArgumentException("null overflow policy");
+        }
+
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Relevant only for PARTITIONED collectors. Defaults to the number of available processors.
+     */
+    public int getPartitionCount() {
+
+        return partitionCount;
+    }
+
+    /**
+     * Relevant only for PARTITIONED collectors.
+     */
+    public void setPartitionCount(int partitionCount) {
+
+        if (partitionCount <= 0) {
+
+            throw new IllegalArgumentException("invalid partition count " + partitionCount);
+        }
+
+        this.partitionCount = partitionCount;
+    }
+
+    /**
+     * Relevant only for PARTITIONED collectors.
+     *
+     * @return may be null if not set.
+     */
+    public KeyExtractor getKeyExtractor() {
+
+        return keyExtractor;
+    }
+
+    /**
+     * Relevant only for PARTITIONED collectors, where it is required.
+     */
+    public void setKeyExtractor(KeyExtractor keyExtractor) {
+
+        this.keyExtractor = keyExtractor;
+    }
+
+    public CaptureMode getCaptureMode() {
+
+        return captureMode;
+    }
+
+    /**
+     * Applies to all collector types. Defaults to PRECISE.
+     */
+    public void setCaptureMode(CaptureMode captureMode) {
+
+        if (captureMode == null) {
+
+            throw new IllegalArgumentException("null capture mode");
+        }
+
+        this.captureMode = captureMode;
+    }
+
+    /**
+     * Relevant only in COARSE capture mode.
+     *
+     * @return the clock the timestamps are read from. Unless set otherwise, the shared default clock.
+     */
+    public CoarseClock getCoarseClock() {
+
+        return coarseClock == null ? CoarseClock.getDefault() : coarseClock;
+    }
+
+    /**
+     * Relevant only in COARSE capture mode.
+     *
+     * @param coarseClock null means the shared default clock.
+     */
+    public void setCoarseClock(CoarseClock coarseClock) {
+
+        this.coarseClock = coarseClock;
+    }
+
+    /**
+     * Relevant only for EXECUTOR collectors.
+     *
+     * @return the executor that drains the collector. Unless set otherwise, the shared default executor.
+     */
+    public Executor getExecutor() {
+
+        return executor == null ? CollectorExecutors.getDefaultExecutor() : executor;
+    }
+
+    /**
+     * Relevant only for EXECUTOR collectors. The executor must run the submitted tasks eventually, and should not run
+     * them on the submitting thread, as that would be the producer thread.
+     *
+     * @param executor null means the shared default executor.
+     */
+    public void setExecutor(Executor executor) {
+
+        this.executor = executor;
+    }
+
+    /**
+     * @return the number of events a producer thread buffers before publishing them to the queue as one unit. 1 means
+     *         producer batching is disabled, which is the default.
+     */
+    public int getProducerBatchSize() {
+
+        return producerBatchSize;
+    }
+
+    /**
+     * Applies to all collector types. When enabled, each producer thread appends the events it hands over to a buffer
+     * of its own, and the buffer is published to the queue as one unit when it holds producerBatchSize events, when
+     * its oldest event is older than the flush deadline, or when the producer calls Collector.flush(). Per-thread
+     * ordering and the hand over timestamps are preserved. Only handOver() calls that fill a buffer touch the queue,
+     * so producers contend on it far less under heavy fan-in, at the cost of up to a flush deadline of extra latency.
+     *
+     * While batching, the queue capacity, the overflow policy, the queue size and maxBatchSize count units, not events,
+     * and the outcome of a unit applies to all its events. handOver() reports ACCEPTED for the events it buffers.
+     *
+     * @param producerBatchSize 1 disables producer batching.
+     *
+     * @see Collector#flush()
+     */
+    public void setProducerBatchSize(int producerBatchSize) {
+
+        if (producerBatchSize <= 0) {
+
+            throw new IllegalArgumentException("invalid producer batch size " + producerBatchSize);
+        }
+
+        this.producerBatchSize = producerBatchSize;
+    }
+
+    /**
+     * Relevant only if producer batching is enabled.
+     */
+    public long getProducerFlushDeadlineMs() {
+
+        return producerFlushDeadlineMs;
+    }
+
+    /**
+     * Relevant only if producer batching is enabled.
+     *
+     * @param producerFlushDeadlineMs the maximum time an event may wait in a producer buffer. The deadline is enforced
+     *                                by a periodic sweep, so idle producers' events may wait up to twice as long.
+     */
+    public void setProducerFlushDeadlineMs(long producerFlushDeadlineMs) {
+
+        if (producerFlushDeadlineMs <= 0) {
+
+            throw new IllegalArgumentException("invalid producer flush deadline " + producerFlushDeadlineMs);
+        }
+
+        this.producerFlushDeadlineMs = producerFlushDeadlineMs;
+    }
+
+    /**
+     * @return the settings of the lanes created for the registered handlers, or null if handler isolation is
+     *         disabled, which is the default.
+     */
+    public LaneConfiguration getHandlerIsolation() {
+
+        return handlerIsolation;
+    }
+
+    /**
+     * Applies to all collector types. When enabled, each handler registered with the collector is wrapped in its own
+     * HandlerLane, with its own bounded queue, worker thread, latency budget and circuit breaker, so a slow handler
+     * does not delay the others. Handlers that are already HandlerLanes are registered as they are, which allows
+     * settings specific to a handler.
+     *
+     * @param laneConfiguration the settings of the lanes. null disables handler isolation.
+     */
+    public void setHandlerIsolation(LaneConfiguration laneConfiguration) {
+
+        this.handlerIsolation = laneConfiguration;
+    }
+
+    /**
+     * Relevant only for QUEUE collectors.
+     *
+     * @return the disk spill settings, or null if spilling is disabled, which is the default.
+     */
+    public SpillConfiguration getSpill() {
+
+        return spill;
+    }
+
+    /**
+     * Relevant only for QUEUE collectors. When enabled, once the in-memory queue holds the high watermark number of
+     * events, newly handed over events are appended to segment files on disk instead, and the pump replays them, in
+     * order, after it has drained the in-memory queue. Spilling stops when the pump has caught up with the spill. The
+     * spilled payloads must be supported by the spill serializer, and reach the handlers as deserialized copies.
+     *
+     * While spilling, the producers serialize the payloads and write to disk under a lock, so spilling trades hand
+     * over latency for bounded heap usage. The high watermark must not exceed the capacity.
+     *
+     * @param spillConfiguration the spill settings. null disables spilling.
+     */
+    public void setSpill(SpillConfiguration spillConfiguration) {
+
+        this.spill = spillConfiguration;
+    }
+
+    /**
+     * Relevant only for QUEUE, PARTITIONED and EXECUTOR collectors.
+     *
+     * @return the number of pooled Collected instances. 0 means pooling is disabled, which is the default.
+     */
+    public int getPoolCapacity() {
+
+        return poolCapacity;
+    }
+
+    /**
+     * Relevant only for QUEUE, PARTITIONED and EXECUTOR collectors; RING_BUFFER collectors reuse their slots anyway,
+     * and refuse a configuration that enables pooling. When enabled, the Collected instances that carry the events
+     * are taken from a pool on the hand over path, and returned to the pool after the last handler processed them, so
+     * the collector does not allocate an instance per event.
+     *
+     * The ownership contract is the one already stated by BatchHandler: the Collected instances passed to
+     * handleBatch() belong to the collector, and are only valid for the duration of the call. A handler that retains
+     * events must retain their payloads, or Collected.copy() copies. The payloads are never pooled or modified.
+     *
+     * In PRECISE capture mode, the thread name is captured for each event, which may allocate, so COARSE capture
+     * mode is needed for a collector that produces no garbage per event.
+     *
+     * @param poolCapacity the number of pooled instances. It should accommodate the events that may be queued at the
+     *                     same time; beyond that, instances are allocated as if pooling was disabled. 0 disables
+     *                     pooling.
+     *
+     * @see BatchHandler#handleBatch(java.util.List)
+     * @see Collected#copy()
+     */
+    public void setPoolCapacity(int poolCapacity) {
+
+        if (poolCapacity < 0) {
+
+            throw new IllegalArgumentException("invalid pool capacity " + poolCapacity);
+        }
+
+        this.poolCapacity = poolCapacity;
+    }
+
+    /**
+     * Relevant only for QUEUE collectors.
+     */
+    public boolean isPriorityLanes() {
+
+        return priorityLanes;
+    }
+
+    /**
+     * Relevant only for QUEUE collectors, and not compatible with spilling. When enabled, the collector keeps a
+     * separate lane for each Priority, each bounded by the capacity and subject to the overflow policy, and the pump
+     * always serves the highest non-empty lane, except for a lower lane that was passed over for starvation limit
+     * batches in a row, which is served next. Events handed over without a priority go to the NORMAL lane.
+     *
+     * @see Priority
+     * @see Collector#handOverWithOutcome(Object, Priority)
+     * @see CollectorConfiguration#setStarvationLimit(int)
+     */
+    public void setPriorityLanes(boolean priorityLanes) {
+
+        this.priorityLanes = priorityLanes;
+    }
+
+    /**
+     * Relevant only for QUEUE collectors with priority lanes.
+     */
+    public int getStarvationLimit() {
+
+        return starvationLimit;
+    }
+
+    /**
+     * Relevant only for QUEUE collectors with priority lanes.
+     *
+     * @param starvationLimit the number of consecutive batches the pump may take from higher lanes while a lower lane
+     *                        has events waiting, before it serves one batch from the lower lane. A lower limit bounds
+     *                        the delay of the low priority events, a higher limit the delay of the high priority
+     *                        events, which may have to wait for a whole batch of lower priority events.
+     */
+    public void setStarvationLimit(int starvationLimit) {
+
+        if (starvationLimit <= 0) {
+
+            throw new IllegalArgumentException("invalid starvation limit " + starvationLimit);
+        }
+
+        this.starvationLimit = starvationLimit;
+    }
+
+    @Override
+    public String toString() {
+
+        return "CollectorConfiguration[" + type + "]";
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,98 @@
+package io.novaordis.utilities.ac;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads shared by all collectors in the JVM:
+ *
+ * 1. The maintenance scheduler, a single daemon thread that runs the periodic checks of every collector.
+ * 2. The default draining executor, a fixed pool of daemon threads that drains all EXECUTOR collectors that were not
+ *    configured with their own executor.
+ *
+ * Both are created on first use and are never shut down. They are handed out only within this package, so that no
+ * caller can shut them down for every collector in the JVM.
+ *
+ * @see CollectorType#EXECUTOR
+ */
+public class CollectorExecutors {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    /**
+     * The number of threads of the default draining executor.
+     */
+    public static final int DEFAULT_EXECUTOR_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    private static ScheduledExecutorService maintenanceScheduler;
+
+    private static ExecutorService defaultExecutor;
+
+    static synchronized ScheduledExecutorService getMaintenanceScheduler() {
+
+        if (maintenanceScheduler == null) {
+
+            maintenanceScheduler = Executors.newSingleThreadScheduledExecutor(
+                    new DaemonThreadFactory("Collector Maintenance Scheduler"));
+        }
+
+        return maintenanceScheduler;
+    }
+
+    static synchronized ExecutorService getDefaultExecutor() {
+
+        if (defaultExecutor == null) {
+
+            defaultExecutor = Executors.newFixedThreadPool(
+                    DEFAULT_EXECUTOR_THREADS, new DaemonThreadFactory("Collector Executor"));
+        }
+
+        return defaultExecutor;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private CollectorExecutors() {
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * Names the threads after the given name, numbering all but the first, and makes them daemons.
+     */
+    static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger counter;
+
+        DaemonThreadFactory(String name) {
+
+            this.name = name;
+            this.counter = new AtomicInteger();
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+
+            int n = counter.getAndIncrement();
+            Thread t = new Thread(r, n == 0 ? name : name + " #" + n);
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -27,6 +27,57 @@ public class CollectorFactory {
         return new CollectorImpl(name, drainThreadPriority);
     }
 
+    /**
+     * Returns a bounded Collector instance with the given name. The name will be used as a component of the name of
+     * the pump thread.
+     *
+     * @param capacity the maximum number of events that can wait in the queue.
+     * @param overflowPolicy decides what happens to handed over events when the queue is full.
+     *
+     * @see OverflowPolicies
+     */
+    public static Collector getInstance(String name, int capacity, OverflowPolicy overflowPolicy) {
+
+        return new CollectorImpl(name, -1, capacity, overflowPolicy);
+    }
+
+    /**
+     * Returns a Collector instance with the given name, whose implementation is selected by the configuration. The
+     * name will be used as a component of the name of the pump thread.
+     *
+     * @see CollectorConfiguration
+     */
+    public static Collector getInstance(String name, CollectorConfiguration configuration) {
+
+        if (configuration == null) {
+
+            throw new IllegalArgumentException("null configuration");
+        }
+
+        CollectorType type = configuration.getType();
+
+        if (CollectorType.QUEUE.equals(type)) {
+
+            return new CollectorImpl(name, configuration);
+        }
+        else if (CollectorType.RING_BUFFER.equals(type)) {
+
+            return new RingBufferCollector(name, configuration);
+        }
+        else if (CollectorType.PARTITIONED.equals(type)) {
+
+            return new PartitionedCollector(name, configuration);
+        }
+        else if (CollectorType.EXECUTOR.equals(type)) {
+
+            return new ExecutorCollector(name, configuration);
+        }
+        else {
+
+            throw new IllegalArgumentException("unsupported collector type " + type);
+        }
+    }
+
 
     // Attributes ------------------------------------------------------------------------------------------------------
 
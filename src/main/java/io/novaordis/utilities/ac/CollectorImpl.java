@@ -1,32 +1,47 @@
 package io.novaordis.utilities.ac;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
-public class CollectorImpl implements Collector {
+/**
+ * A Collector backed by a LinkedBlockingQueue, drained by a dedicated thread. The queue can be bounded, in which case
+ * the overflow policy applies, and it can spill to disk once it passes a high watermark. Alternatively, the collector
+ * can keep a queue per priority class, and serve the higher priority queues first.
+ *
+ * @see CollectorConfiguration#setSpill(SpillConfiguration)
+ * @see CollectorConfiguration#setPriorityLanes(boolean)
+ */
+public class CollectorImpl extends CollectorBase {
 
     // Constants -------------------------------------------------------------------------------------------------------
 
-    public static final long PUMP_SLEEP_AFTER_INTERRUPTED_EXCEPTION_MS = 100L;
+    public static final int DEFAULT_STARVATION_LIMIT = 16;
 
     // Static ----------------------------------------------------------------------------------------------------------
 
     // Attributes ------------------------------------------------------------------------------------------------------
 
-    private String name;
-
+    // the NORMAL lane, if priority lanes are enabled
     private final BlockingQueue<Collected> collectionQueue;
 
-    private Pump pump;
-    private Thread drainingThread;
+    // indexed by Priority ordinal; null if priority lanes are disabled
+    private final BlockingQueue<Collected>[] lanes;
+
+    private final int capacity;
+
+    private final OverflowPolicy overflowPolicy;
 
-    private Handlers handlers;
+    private QueuePump pump;
 
-    private Timer maintenanceTimer;
+    // null if spilling is disabled
+    private final SpillQueue spill;
 
-    private volatile boolean outOfBusiness;
+    private final int highWatermark;
+
+    // true from the moment the queue reaches the high watermark until the pump catches up with the spill; written
+    // under the spill queue's lock, read without it on the hand over fast path
+    private volatile boolean spilling;
 
     // Constructors ----------------------------------------------------------------------------------------------------
 
@@ -43,166 +58,391 @@ public class CollectorImpl implements Collector {
      */
     public CollectorImpl(final String name, int drainingThreadPriority) {
 
-        this.outOfBusiness = false;
-        this.name = name;
-        collectionQueue = new LinkedBlockingQueue<Collected>();
+        this(name, drainingThreadPriority, Integer.MAX_VALUE, OverflowPolicies.block());
+    }
+
+    /**
+     * Constructs a bounded collector.
+     *
+     * @param drainingThreadPriority - between Thread.MIN_PRIORITY and Thread.MAX_PRIORITY. If -1, use default priority.
+     * @param capacity the maximum number of events that can wait in the queue. Integer.MAX_VALUE means unbounded.
+     * @param overflowPolicy decides what happens to handed over events when the queue is full.
+     *
+     * @see OverflowPolicies
+     */
+    public CollectorImpl(final String name, int drainingThreadPriority, int capacity, OverflowPolicy overflowPolicy) {
+
+        this(name, configuration(drainingThreadPriority, capacity, overflowPolicy));
+    }
+
+    /**
+     * @see CollectorConfiguration
+     */
+    public CollectorImpl(String name, CollectorConfiguration configuration) {
+
+        super(name, configuration);
+
+        this.capacity = configuration.getCapacity();
+        this.overflowPolicy = configuration.getOverflowPolicy();
+
+        SpillConfiguration spillConfiguration = configuration.getSpill();
+
+        if (configuration.isPriorityLanes()) {
 
-        this.handlers = new Handlers();
+            if (spillConfiguration != null) {
 
-        this.pump = new Pump();
-        drainingThread = new Thread(pump, "' Collector '" + name + "' Draining Thread");
-        drainingThread.setDaemon(true);
+                throw new IllegalArgumentException("priority lanes and spilling cannot be enabled at the same time");
+            }
+
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            BlockingQueue<Collected>[] queues = new BlockingQueue[Priority.values().length];
+
+            this.lanes = queues;
 
-        if (drainingThreadPriority != -1) {
+            for(int i = 0; i < lanes.length; i ++) {
+
+                lanes[i] = newQueue(capacity);
+            }
 
-            drainingThread.setPriority(drainingThreadPriority);
+            this.collectionQueue = lanes[Priority.NORMAL.ordinal()];
         }
+        else {
 
-        drainingThread.start();
+            this.lanes = null;
+            this.collectionQueue = newQueue(capacity);
+        }
 
-        this.maintenanceTimer = new Timer("Collector '" + name + "' Maintenance Timer", true);
+        if (spillConfiguration == null) {
 
-        maintenanceTimer.schedule(new TimerTask() {
+            this.spill = null;
+            this.highWatermark = Integer.MAX_VALUE;
+            this.pump = lanes == null ?
+                    new QueuePump(this, collectionQueue) :
+                    new PriorityPump(this, lanes, configuration.getStarvationLimit());
+        }
+        else {
 
-            @Override
-            public void run() {
+            if (spillConfiguration.getHighWatermark() > capacity) {
 
-                int size = collectionQueue.size();
+                throw new IllegalArgumentException(
+                        "spill high watermark " + spillConfiguration.getHighWatermark() + " exceeds capacity " +
+                                capacity);
+            }
 
-                if (size > 1000) {
+            try {
 
-                    System.err.println("[warning] collector " + name + " queue over " + size + " entries");
-                }
+                this.spill = new SpillQueue(spillConfiguration);
             }
-        }, 20000L, 20000L);
+            catch(IOException e) {
+
+                throw new IllegalArgumentException("cannot spill into " + spillConfiguration.getDirectory(), e);
+            }
+
+            this.highWatermark = spillConfiguration.getHighWatermark();
+            this.pump = new SpillingPump();
+        }
+
+        start(pump);
     }
 
-    // Collector interface ---------------------------------------------------------------------------------------------
+    // CollectorBase overrides -----------------------------------------------------------------------------------------
 
     @Override
-    public String getName() {
+    protected HandOverOutcome enqueue(Object o) {
 
-        return name;
+        return offer(capture(o));
     }
 
     @Override
-    public String getThreadName() {
+    HandOverOutcome enqueue(ProducerBatch batch) {
 
-        return drainingThread == null ? null : drainingThread.getName();
+        return offer(batch.wrap());
     }
 
+    /**
+     * While spilling, the batch is left to its producer, as the spill path writes to disk under the spill lock.
+     */
     @Override
-    public boolean handOver(Object o) {
+    boolean tryEnqueue(ProducerBatch batch) {
 
-        if (outOfBusiness) {
+        if (spill != null && (spilling || collectionQueue.size() >= highWatermark)) {
 
             return false;
         }
 
-        // assign timestamp at the collection time, as object may spend time in the queue waiting to be processed
+        if (!collectionQueue.offer(batch.wrap())) {
+
+            return false;
+        }
 
-        long timestamp = System.currentTimeMillis();
-        collectionQueue.add(new Collected(timestamp, o));
+        pump.signal();
         return true;
     }
 
     @Override
-    public boolean registerHandler(Handler h) {
+    protected HandOverOutcome enqueue(Object o, Priority priority) {
+
+        if (lanes == null) {
+
+            return enqueue(o);
+        }
+
+        return offer(lanes[priority.ordinal()], capture(o));
+    }
+
+    @Override
+    HandOverOutcome offer(Collected c) {
+
+        if (spill != null) {
 
-        return !outOfBusiness && handlers.add(h);
+            return offerOrSpill(c);
+        }
+
+        return offer(collectionQueue, c);
     }
 
     /**
-     * @see Collector#unregisterHandler(Handler)
+     * Includes the spilled events.
      */
     @Override
-    public boolean unregisterHandler(Handler h) {
+    public int getQueueSize() {
+
+        if (lanes != null) {
+
+            long size = 0;
+
+            for(BlockingQueue<Collected> lane: lanes) {
+
+                size += lane.size();
+            }
+
+            return (int)Math.min(Integer.MAX_VALUE, size);
+        }
+
+        if (spill == null) {
+
+            return collectionQueue.size();
+        }
+
+        return (int)Math.min(Integer.MAX_VALUE, collectionQueue.size() + spill.size());
+    }
+
+    @Override
+    public int getQueueSize(Priority priority) {
+
+        if (lanes == null) {
+
+            return super.getQueueSize(priority);
+        }
+
+        return lanes[priority.ordinal()].size();
+    }
+
+    @Override
+    protected void wakeUpPumps() {
 
-        return handlers.remove(h);
+        pump.wakeUp();
     }
 
     @Override
-    public void dispose() {
+    protected void stopPump() {
 
-        outOfBusiness = true;
         pump.stop();
-        maintenanceTimer.cancel();
-        handlers.close();
+
+        // nobody is going to drain the queue from now on; release the producers that might be blocked on a full queue
+        if (lanes == null) {
+
+            collectionQueue.clear();
+        }
+        else {
+
+            for(BlockingQueue<Collected> lane: lanes) {
+
+                lane.clear();
+            }
+        }
+
+        pump.wakeUp();
+
+        if (spill != null) {
+
+            // the spilled events are dropped, like the ones in the queue
+            spill.close();
+        }
     }
 
     // Public ----------------------------------------------------------------------------------------------------------
 
-    @Override
-    public String toString() {
+    /**
+     * @return the maximum number of events that can wait in the queue. Integer.MAX_VALUE means unbounded.
+     */
+    public int getCapacity() {
+
+        return capacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+
+        return overflowPolicy;
+    }
+
+    /**
+     * @return true if the collector keeps a queue per priority class.
+     */
+    public boolean isPriorityLanes() {
 
-        return "Collector[" + name + "], thread=" + getThreadName();
+        return lanes != null;
+    }
+
+    /**
+     * @return true if spilling to disk is enabled.
+     */
+    public boolean isSpillEnabled() {
+
+        return spill != null;
+    }
+
+    /**
+     * @return the number of spilled events not yet replayed. 0 if spilling is disabled.
+     */
+    public long getSpillSize() {
+
+        return spill == null ? 0L : spill.size();
     }
 
     // Package Protected -----------------------------------------------------------------------------------------------
 
+    /**
+     * @return the number of spill segment files currently on disk. 0 if spilling is disabled.
+     */
+    int getSpillSegmentCount() {
+
+        return spill == null ? 0 : spill.getSegmentCount();
+    }
+
     // Protected -------------------------------------------------------------------------------------------------------
 
     // Private ---------------------------------------------------------------------------------------------------------
 
-    // Inner classes ---------------------------------------------------------------------------------------------------
+    private HandOverOutcome offer(BlockingQueue<Collected> queue, Collected c) {
 
-    private class Pump implements Runnable {
+        HandOverOutcome outcome;
 
-        private volatile boolean active;
+        try {
 
-        Pump() {
+            outcome = OverflowPolicies.enqueue(overflowPolicy, queue, c, metrics);
+        }
+        catch(InterruptedException e) {
 
-            this.active = true;
+            Thread.currentThread().interrupt();
+            return HandOverOutcome.DROPPED_INTERRUPTED;
         }
 
-        @Override
-        public void run() {
+        pump.signal();
+        return outcome;
+    }
 
-            // attempt to read the queue forever and dump everything that comes from it
+    /**
+     * Once the queue reaches the high watermark, the events are spilled until the pump catches up with the spill, so
+     * the pump, which drains the queue before replaying the spill, sees the events in hand over order.
+     *
+     * While the collector is not spilling and the queue is under the high watermark, the event is queued without
+     * taking the spill lock, so the producers neither serialize on it nor wait for the pump's disk reads. A producer
+     * that saw the flag down may still queue its event after the flag went up; such an event is concurrent with the
+     * ones spilled in the meantime, and the events of each producer keep their order. Otherwise the decision and the
+     * enqueueing are done under the spill lock, so no event can slip into the queue while the pump is replaying, and
+     * the overflow policy never waits under the lock.
+     */
+    private HandOverOutcome offerOrSpill(Collected c) {
 
-            //noinspection InfiniteLoopStatement
-            while(active) {
+        if (!spilling && collectionQueue.size() < highWatermark) {
+
+            return offer(collectionQueue, c);
+        }
 
-                Collected c;
+        synchronized(spill) {
+
+            if (!spilling && collectionQueue.size() < highWatermark) {
 
                 try {
 
-                    c = collectionQueue.take();
+                    return OverflowPolicies.enqueue(overflowPolicy, collectionQueue, c, metrics);
                 }
                 catch(InterruptedException e) {
 
-                    // nothing, sleep a bit and go back to the queue
+                    Thread.currentThread().interrupt();
+                    return HandOverOutcome.DROPPED_INTERRUPTED;
+                }
+            }
 
-                    try {
+            spilling = true;
 
-                        Thread.sleep(PUMP_SLEEP_AFTER_INTERRUPTED_EXCEPTION_MS);
-                    }
-                    catch(InterruptedException e2) {
+            try {
 
-                        // nothing
-                    }
+                int bytes = spill.append(c);
+                metrics.recordSpilled(c.getPayload() instanceof ProducerBatch ?
+                        ((ProducerBatch)c.getPayload()).size() : 1, bytes);
+                return HandOverOutcome.ACCEPTED;
+            }
+            catch(IOException | IllegalArgumentException e) {
 
-                    continue;
-                }
+                System.err.println("[warning] " + this + " failed to spill " + c.getPayload() + ": " + e);
+                return HandOverOutcome.DROPPED_SPILL_FAILED;
+            }
+        }
+    }
 
-                try {
+    /**
+     * Invoked by the pump when the queue is empty. Stops spilling if the spill is empty as well.
+     *
+     * @return true if spilled events were added to the batch.
+     */
+    private boolean replay(List<Collected> batch) {
 
-                    // even if the underlying implementation throws unchecked exception, the pump must handle them
-                    // without stopping
-                    handlers.process(c);
-                }
-                catch(Throwable t) {
+        synchronized(spill) {
 
-                    // never stop the pump as the collectionQueue may grow out of control; keep consuming, even if
-                    // we discard everything we consume
-                    System.err.println("[warning] collector " + name + " is failing to process events: " + t);
-                }
+            int size = batch.size();
+
+            // events whose payload fails to deserialize are skipped, so a poll may come back empty
+            while(batch.size() == size && spill.size() > 0) {
+
+                int bytes = spill.poll(batch, maxBatchSize);
+                metrics.recordReplayed(batch.size() - size, bytes);
+            }
+
+            if (batch.size() == size) {
+
+                spilling = false;
+                return false;
             }
+
+            return true;
         }
+    }
 
-        void stop() {
+    private static CollectorConfiguration configuration(
+            int drainingThreadPriority, int capacity, OverflowPolicy overflowPolicy) {
+
+        CollectorConfiguration c = new CollectorConfiguration();
+        c.setDrainingThreadPriority(drainingThreadPriority);
+        c.setCapacity(capacity);
+        c.setOverflowPolicy(overflowPolicy);
+        return c;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private class SpillingPump extends QueuePump {
+
+        SpillingPump() {
+
+            super(CollectorImpl.this, collectionQueue);
+        }
+
+        @Override
+        boolean refill(List<Collected> batch) {
 
-            active = false;
+            return replay(batch);
         }
     }
 }
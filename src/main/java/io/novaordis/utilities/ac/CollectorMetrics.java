@@ -0,0 +1,533 @@
+package io.novaordis.utilities.ac;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The health statistics of a collector:
+ *
+ * 1. hand over outcome counters, which give the enqueued, dropped and rejected counts. The events discarded from the
+ *    queue to make room for newer ones are counted separately, as each such outcome may account for several of them.
+ * 2. the dequeued count, incremented when the pump hands events to handlers.
+ * 3. the current queue depth and the peak queue depth. The peak is sampled each time the pump picks up a batch, and
+ *    includes the batch. For collectors with priority lanes, the current depth of each lane as well.
+ * 4. the end-to-end lag: the interval between the moment an event was handed over and the moment the pump hands it
+ *    to handlers, in milliseconds.
+ * 5. per-handler invocation latency and failure counts, as HandlerMetrics.
+ * 6. for collectors that spill to disk, the number of events and bytes spilled, and the number of events and bytes
+ *    replayed from the spill.
+ * 7. for pooled collectors, the number of Collected instances allocated because the pool was empty.
+ *
+ * Recording does not allocate and does not lock. Producers only touch striped counters.
+ *
+ * While the collector is active, the metrics are registered as an MBean named
+ * io.novaordis.utilities.ac:type=Collector,name=<collector-name>,id=<n>, and each handler's metrics are registered as
+ * io.novaordis.utilities.ac:type=CollectorHandler,collector=<collector-name>,id=<n>,handler=<handler>. The id makes
+ * the names unique when several collectors share a name. JMX failures are reported on stderr and otherwise ignored,
+ * the metrics remain available programmatically.
+ *
+ * @see Collector#getMetrics()
+ * @see HandlerMetrics
+ */
+public class CollectorMetrics implements CollectorMetricsMBean {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final String JMX_DOMAIN = "io.novaordis.utilities.ac";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    private static final AtomicInteger instanceCounter = new AtomicInteger();
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final CollectorBase collector;
+
+    private final Handlers handlers;
+
+    private final int id;
+
+    // indexed by HandOverOutcome ordinal; striped, so concurrent producers do not contend on the same counter
+    private final LongAdder[] outcomeCounters;
+
+    private final LongAdder dequeued;
+
+    // the queued events discarded to make room for newer ones
+    private final LongAdder evicted;
+
+    private final LongAccumulator peakDepth;
+
+    // milliseconds
+    private final LatencyHistogram lag;
+
+    private volatile long lastLag;
+
+    private final LongAdder spilled;
+    private final LongAdder spilledBytes;
+    private final LongAdder replayed;
+    private final LongAdder replayedBytes;
+    private final LongAdder poolMisses;
+
+    private ObjectName objectName;
+
+    private final Map<HandlerMetrics, ObjectName> handlerObjectNames;
+
+    // makes the handler MBean names unique when the same handler is registered several times
+    private int handlerCounter;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    CollectorMetrics(CollectorBase collector, Handlers handlers) {
+
+        this.collector = collector;
+        this.handlers = handlers;
+        this.id = instanceCounter.incrementAndGet();
+        this.outcomeCounters = new LongAdder[HandOverOutcome.values().length];
+
+        for(int i = 0; i < outcomeCounters.length; i ++) {
+
+            outcomeCounters[i] = new LongAdder();
+        }
+
+        this.dequeued = new LongAdder();
+        this.evicted = new LongAdder();
+        this.peakDepth = new LongAccumulator(Math::max, 0L);
+        this.lag = new LatencyHistogram();
+        this.spilled = new LongAdder();
+        this.spilledBytes = new LongAdder();
+        this.replayed = new LongAdder();
+        this.replayedBytes = new LongAdder();
+        this.poolMisses = new LongAdder();
+        this.handlerObjectNames = new IdentityHashMap<>();
+    }
+
+    // CollectorMetricsMBean implementation ----------------------------------------------------------------------------
+
+    @Override
+    public String getName() {
+
+        return collector.getName();
+    }
+
+    /**
+     * @return the number of events accepted by the collector.
+     */
+    @Override
+    public long getEnqueuedCount() {
+
+        return getOutcomeCount(HandOverOutcome.ACCEPTED) + getOutcomeCount(HandOverOutcome.ACCEPTED_OLDEST_DROPPED);
+    }
+
+    /**
+     * @return the number of events the pump handed to handlers.
+     */
+    @Override
+    public long getDequeuedCount() {
+
+        return dequeued.sum();
+    }
+
+    /**
+     * @return the handed over events that were discarded, plus the queued events that were evicted to make room for
+     *         them.
+     *
+     * @see Collector#getDroppedCount()
+     */
+    @Override
+    public long getDroppedCount() {
+
+        long result = evicted.sum();
+
+        for(HandOverOutcome o: HandOverOutcome.values()) {
+
+            // the outcome is counted for the accepted event, the evicted ones are counted separately
+            if (o.isDrop() && !o.isAccepted()) {
+
+                result += outcomeCounters[o.ordinal()].sum();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the number of events handed over after the collector was disposed.
+     */
+    @Override
+    public long getRejectedCount() {
+
+        return getOutcomeCount(HandOverOutcome.REJECTED_DISPOSED);
+    }
+
+    /**
+     * @return the number of handler invocations that threw an exception.
+     */
+    @Override
+    public long getHandlerFailureCount() {
+
+        return handlers.getFailureCount();
+    }
+
+    @Override
+    public int getQueueDepth() {
+
+        return collector.getQueueSize();
+    }
+
+    @Override
+    public int getHighPriorityQueueDepth() {
+
+        return collector.getQueueSize(Priority.HIGH);
+    }
+
+    @Override
+    public int getNormalPriorityQueueDepth() {
+
+        return collector.getQueueSize(Priority.NORMAL);
+    }
+
+    @Override
+    public int getLowPriorityQueueDepth() {
+
+        return collector.getQueueSize(Priority.LOW);
+    }
+
+    @Override
+    public long getPeakQueueDepth() {
+
+        return Math.max(peakDepth.get(), getQueueDepth());
+    }
+
+    /**
+     * @return the lag of the last event handed to handlers.
+     */
+    @Override
+    public long getLastLagMs() {
+
+        return lastLag;
+    }
+
+    @Override
+    public long getP99LagMs() {
+
+        return lag.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getMaxLagMs() {
+
+        return lag.getMax();
+    }
+
+    /**
+     * @return the number of queued events discarded to make room for newer ones, by the DROP_OLDEST policy.
+     */
+    @Override
+    public long getEvictedCount() {
+
+        return evicted.sum();
+    }
+
+    /**
+     * @return the number of events written to the disk spill.
+     */
+    @Override
+    public long getSpilledCount() {
+
+        return spilled.sum();
+    }
+
+    @Override
+    public long getSpilledBytes() {
+
+        return spilledBytes.sum();
+    }
+
+    /**
+     * @return the number of events read back from the disk spill.
+     */
+    @Override
+    public long getReplayedCount() {
+
+        return replayed.sum();
+    }
+
+    @Override
+    public long getReplayedBytes() {
+
+        return replayedBytes.sum();
+    }
+
+    /**
+     * @return the number of Collected instances allocated on the hand over path because the pool was empty. Always 0
+     *         if pooling is disabled.
+     */
+    @Override
+    public long getPoolMissCount() {
+
+        return poolMisses.sum();
+    }
+
+    @Override
+    public void resetPeaks() {
+
+        peakDepth.reset();
+        lag.reset();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public long getOutcomeCount(HandOverOutcome outcome) {
+
+        return outcomeCounters[outcome.ordinal()].sum();
+    }
+
+    /**
+     * @return the lag histogram, in milliseconds.
+     */
+    public LatencyHistogram getLag() {
+
+        return lag;
+    }
+
+    /**
+     * @return the statistics of the currently registered handlers, in registration order.
+     */
+    public List<HandlerMetrics> getHandlerMetrics() {
+
+        return handlers.getHandlerMetrics();
+    }
+
+    /**
+     * @return the name under which the metrics are registered with the platform MBean server, or null if they are not
+     *         registered.
+     */
+    public synchronized ObjectName getObjectName() {
+
+        return objectName;
+    }
+
+    @Override
+    public String toString() {
+
+        return "CollectorMetrics[" + getName() + "]";
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    void recordOutcome(HandOverOutcome outcome) {
+
+        outcomeCounters[outcome.ordinal()].increment();
+    }
+
+    /**
+     * Records the same outcome for several events, handed over as a unit.
+     */
+    void recordOutcome(HandOverOutcome outcome, int count) {
+
+        outcomeCounters[outcome.ordinal()].add(count);
+    }
+
+    void recordEvicted(long count) {
+
+        evicted.add(count);
+    }
+
+    void recordSpilled(int count, long bytes) {
+
+        spilled.add(count);
+        spilledBytes.add(bytes);
+    }
+
+    void recordReplayed(int count, long bytes) {
+
+        replayed.add(count);
+        replayedBytes.add(bytes);
+    }
+
+    void recordPoolMiss() {
+
+        poolMisses.increment();
+    }
+
+    /**
+     * Invoked by the pump before the batch is handed to handlers.
+     */
+    void recordBatch(List<Collected> batch) {
+
+        int size = batch.size();
+
+        if (size == 0) {
+
+            return;
+        }
+
+        dequeued.add(size);
+        peakDepth.accumulate(size + collector.getQueueSize());
+
+        long now = System.currentTimeMillis();
+        long l = 0;
+
+        //noinspection ForLoopReplaceableByForEach
+        for(int i = 0; i < size; i ++) {
+
+            l = now - batch.get(i).getTimeStamp();
+            lag.record(l);
+        }
+
+        lastLag = l;
+    }
+
+    /**
+     * Invoked by the pump before the event is handed to handlers.
+     */
+    void record(Collected c) {
+
+        dequeued.increment();
+        peakDepth.accumulate(1 + collector.getQueueSize());
+
+        long l = System.currentTimeMillis() - c.getTimeStamp();
+        lag.record(l);
+        lastLag = l;
+    }
+
+    /**
+     * Registers the collector MBean and the MBeans of the currently registered handlers.
+     */
+    synchronized void register() {
+
+        if (objectName != null) {
+
+            return;
+        }
+
+        try {
+
+            ObjectName on = new ObjectName(
+                    JMX_DOMAIN + ":type=Collector,name=" + ObjectName.quote(getName()) + ",id=" + id);
+
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            objectName = on;
+        }
+        catch(JMException e) {
+
+            System.err.println("[warning] failed to register " + this + " with JMX: " + e);
+            return;
+        }
+
+        handlersChanged();
+    }
+
+    /**
+     * Brings the handler MBeans in sync with the registered handlers. Invoked after handlers are registered or
+     * unregistered.
+     */
+    synchronized void handlersChanged() {
+
+        if (objectName == null) {
+
+            return;
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        List<HandlerMetrics> current = handlers.getHandlerMetrics();
+
+        for(HandlerMetrics m: current) {
+
+            if (handlerObjectNames.containsKey(m)) {
+
+                continue;
+            }
+
+            try {
+
+                ObjectName on = new ObjectName(
+                        JMX_DOMAIN + ":type=CollectorHandler,collector=" + ObjectName.quote(getName()) + ",id=" + id +
+                                ",handler=" + ObjectName.quote(m.getHandler() + " #" + handlerCounter ++));
+
+                server.registerMBean(m, on);
+                handlerObjectNames.put(m, on);
+            }
+            catch(JMException e) {
+
+                System.err.println("[warning] failed to register " + m.getHandler() + " metrics with JMX: " + e);
+            }
+        }
+
+        Iterator<Map.Entry<HandlerMetrics, ObjectName>> i = handlerObjectNames.entrySet().iterator();
+
+        while(i.hasNext()) {
+
+            Map.Entry<HandlerMetrics, ObjectName> e = i.next();
+
+            if (!containsInstance(current, e.getKey())) {
+
+                unregister(server, e.getValue());
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Unregisters all MBeans.
+     */
+    synchronized void unregister() {
+
+        if (objectName == null) {
+
+            return;
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        for(ObjectName on: handlerObjectNames.values()) {
+
+            unregister(server, on);
+        }
+
+        handlerObjectNames.clear();
+        unregister(server, objectName);
+        objectName = null;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static boolean containsInstance(List<HandlerMetrics> list, HandlerMetrics m) {
+
+        for(HandlerMetrics hm: list) {
+
+            if (hm == m) {
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void unregister(MBeanServer server, ObjectName on) {
+
+        try {
+
+            server.unregisterMBean(on);
+        }
+        catch(JMException e) {
+
+            System.err.println("[warning] failed to unregister " + on + ": " + e);
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
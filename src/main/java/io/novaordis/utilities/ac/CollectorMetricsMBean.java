@@ -0,0 +1,55 @@
+package io.novaordis.utilities.ac;
+
+/**
+ * The JMX view of a CollectorMetrics instance.
+ *
+ * @see CollectorMetrics
+ */
+public interface CollectorMetricsMBean {
+
+    String getName();
+
+    long getEnqueuedCount();
+
+    long getDequeuedCount();
+
+    long getDroppedCount();
+
+    long getRejectedCount();
+
+    long getEvictedCount();
+
+    long getHandlerFailureCount();
+
+    int getQueueDepth();
+
+    int getHighPriorityQueueDepth();
+
+    int getNormalPriorityQueueDepth();
+
+    int getLowPriorityQueueDepth();
+
+    long getPeakQueueDepth();
+
+    long getLastLagMs();
+
+    long getP99LagMs();
+
+    long getMaxLagMs();
+
+    long getSpilledCount();
+
+    long getSpilledBytes();
+
+    long getReplayedCount();
+
+    long getReplayedBytes();
+
+    long getPoolMissCount();
+
+    /**
+     * Resets the peak queue depth and the lag statistics.
+     */
+    void resetPeaks();
+
+}
@@ -0,0 +1,41 @@
+package io.novaordis.utilities.ac;
+
+/**
+ * The Collector implementations that can be obtained from the CollectorFactory.
+ *
+ * @see CollectorFactory#getInstance(String, CollectorConfiguration)
+ */
+public enum CollectorType {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    /**
+     * A linked blocking queue, unbounded by default, drained by a dedicated thread.
+     *
+     * @see CollectorImpl
+     */
+    QUEUE,
+
+    /**
+     * A pre-allocated, lock-free multi-producer/single-consumer ring buffer drained by a dedicated thread.
+     *
+     * @see RingBufferCollector
+     */
+    RING_BUFFER,
+
+    /**
+     * N linked blocking queues, each drained by its own thread. Events are assigned to queues by key.
+     *
+     * @see PartitionedCollector
+     */
+    PARTITIONED,
+
+    /**
+     * A linked blocking queue drained by tasks submitted to an executor, usually shared with other collectors. The
+     * collector does not own any thread.
+     *
+     * @see ExecutorCollector
+     */
+    EXECUTOR,
+    ;
+}
@@ -0,0 +1,102 @@
+package io.novaordis.utilities.ac;
+
+/**
+ * The result of a draining dispose: how many events were delivered to handlers while the collector was draining,
+ * and how many were still queued when the deadline expired, and were therefore lost. Collectors that do not track
+ * their events report both counts as UNKNOWN_COUNT.
+ *
+ * @see Collector#dispose(long)
+ */
+public class DisposeReport {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    /**
+     * The value of the counts reported by a collector that does not know how many events it flushed and abandoned.
+     */
+    public static final long UNKNOWN_COUNT = -1L;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final long flushedCount;
+
+    private final long abandonedCount;
+
+    private final long durationMs;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public DisposeReport(long flushedCount, long abandonedCount, long durationMs) {
+
+        this.flushedCount = flushedCount;
+        this.abandonedCount = abandonedCount;
+        this.durationMs = durationMs;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the number of events handed to handlers between the moment dispose was invoked and the moment the
+     *         handlers were closed.
+     */
+    public long getFlushedCount() {
+
+        return flushedCount;
+    }
+
+    /**
+     * @return the number of events still queued when the deadline expired. If producer batching is enabled, queued
+     *         producer batches count as one event each. Collectors that release queue space only after the batch was
+     *         processed also count the batch the handlers were busy with.
+     */
+    public long getAbandonedCount() {
+
+        return abandonedCount;
+    }
+
+    /**
+     * @return true if nothing was abandoned. false if the counts are unknown.
+     */
+    public boolean isComplete() {
+
+        return abandonedCount == 0;
+    }
+
+    /**
+     * @return false if the collector could not tell how many events it flushed and abandoned.
+     */
+    public boolean isCountKnown() {
+
+        return flushedCount != UNKNOWN_COUNT && abandonedCount != UNKNOWN_COUNT;
+    }
+
+    /**
+     * @return how long the dispose took, handler closing included.
+     */
+    public long getDurationMs() {
+
+        return durationMs;
+    }
+
+    @Override
+    public String toString() {
+
+        if (!isCountKnown()) {
+
+            return "flushed and abandoned unknown in " + durationMs + " ms";
+        }
+
+        return "flushed " + flushedCount + ", abandoned " + abandonedCount + " in " + durationMs + " ms";
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -1,5 +1,7 @@
 package io.novaordis.utilities.ac;
 
+import java.util.List;
+
 public interface Distributor {
 
     /**
@@ -13,4 +15,14 @@ public interface Distributor {
      * @see Handler#handle(long timestamp, String originatorThreadName, Object o)
      */
     void process(Collected c);
+
+    /**
+     * Pushes a batch of collected instances, in order, to *all* registered handlers. Batch handlers receive the whole
+     * batch in one call, plain handlers receive each event they would accept individually.
+     *
+     * Never this method should throw checked or unchecked exceptions.
+     *
+     * @see BatchHandler#handleBatch(List)
+     */
+    void processBatch(List<Collected> batch);
 }
@@ -0,0 +1,272 @@
+package io.novaordis.utilities.ac;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A Collector that does not own a thread. Its queue is drained by a task submitted to an executor, which is normally
+ * shared by many collectors. The task is submitted only when events are pending, and at most one task per collector
+ * is submitted or running at any time, so the events are delivered in order and handlers are never invoked
+ * concurrently by the same collector, exactly as with a dedicated draining thread.
+ *
+ * A task drains at most one batch, then, if more events are pending, it resubmits itself at the end of the executor's
+ * queue. This way a busy collector does not monopolize an executor thread, and the executor threads are shared fairly
+ * between the collectors that have pending events.
+ *
+ * An idle collector costs no thread and no CPU, so a large number of collectors can be drained by a small pool. The
+ * price is latency: an event may wait for other collectors' batches to be processed before being picked up, and each
+ * batch involves an executor hand off.
+ *
+ * The queue can be bounded, in which case the overflow policy applies, as with CollectorImpl.
+ *
+ * @see CollectorConfiguration#getExecutor()
+ */
+public class ExecutorCollector extends CollectorBase {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final BlockingQueue<Collected> queue;
+
+    private final int capacity;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final Executor executor;
+
+    // true while a drain task is submitted or running
+    private final AtomicBoolean scheduled;
+
+    private final DrainTask drainTask;
+
+    // set by stopPump(); the drain tasks keep running after the collector stops accepting events, while it is draining
+    private volatile boolean stopped;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Constructs an unbounded collector drained by the default shared executor.
+     */
+    public ExecutorCollector(String name) {
+
+        this(name, configuration());
+    }
+
+    /**
+     * @see CollectorConfiguration
+     */
+    public ExecutorCollector(String name, CollectorConfiguration configuration) {
+
+        super(name, configuration);
+
+        this.capacity = configuration.getCapacity();
+        this.overflowPolicy = configuration.getOverflowPolicy();
+        this.executor = configuration.getExecutor();
+        this.queue = newQueue(capacity);
+        this.scheduled = new AtomicBoolean(false);
+        this.drainTask = new DrainTask();
+        this.stopped = false;
+
+        start();
+    }
+
+    // CollectorBase overrides -----------------------------------------------------------------------------------------
+
+    @Override
+    protected HandOverOutcome enqueue(Object o) {
+
+        return offer(capture(o));
+    }
+
+    @Override
+    HandOverOutcome enqueue(ProducerBatch batch) {
+
+        return offer(batch.wrap());
+    }
+
+    @Override
+    boolean tryEnqueue(ProducerBatch batch) {
+
+        if (!queue.offer(batch.wrap())) {
+
+            return false;
+        }
+
+        schedule();
+        return true;
+    }
+
+    @Override
+    HandOverOutcome offer(Collected c) {
+
+        HandOverOutcome outcome;
+
+        try {
+
+            outcome = OverflowPolicies.enqueue(overflowPolicy, queue, c, metrics);
+        }
+        catch(InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            return HandOverOutcome.DROPPED_INTERRUPTED;
+        }
+
+        if (outcome.isAccepted()) {
+
+            schedule();
+        }
+
+        return outcome;
+    }
+
+    @Override
+    public int getQueueSize() {
+
+        return queue.size();
+    }
+
+    @Override
+    protected void stopPump() {
+
+        stopped = true;
+
+        // a task that is already running completes its current batch and does not resubmit itself
+
+        // nobody is going to drain the queue from now on; release the producers that might be blocked on a full queue
+        queue.clear();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the maximum number of events that can wait in the queue. Integer.MAX_VALUE means unbounded.
+     */
+    public int getCapacity() {
+
+        return capacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+
+        return overflowPolicy;
+    }
+
+    public Executor getExecutor() {
+
+        return executor;
+    }
+
+    /**
+     * @return null, the collector does not have a dedicated draining thread.
+     */
+    @Override
+    public String getThreadName() {
+
+        return null;
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * There is no draining thread to wait for: the queue is drained when it is empty and no drain task is submitted or
+     * running, as a running task may still be processing the last batch.
+     */
+    @Override
+    boolean awaitDrained(long deadline) throws InterruptedException {
+
+        // in case a submission was rejected
+        schedule();
+
+        while(!queue.isEmpty() || scheduled.get()) {
+
+            if (System.nanoTime() - deadline >= 0) {
+
+                return false;
+            }
+
+            Thread.sleep(1L);
+        }
+
+        return true;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Submits the drain task, unless it is already submitted or running.
+     */
+    private void schedule() {
+
+        if (!scheduled.compareAndSet(false, true)) {
+
+            return;
+        }
+
+        try {
+
+            executor.execute(drainTask);
+        }
+        catch(RejectedExecutionException e) {
+
+            scheduled.set(false);
+
+            System.err.println(
+                    "[warning] collector " + getName() + " failed to submit its drain task, " + getQueueSize() +
+                            " events pending: " + e);
+        }
+    }
+
+    private static CollectorConfiguration configuration() {
+
+        CollectorConfiguration c = new CollectorConfiguration();
+        c.setType(CollectorType.EXECUTOR);
+        return c;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private class DrainTask implements Runnable {
+
+        // only one task runs at a time, so the batch can be reused
+        private final List<Collected> batch = new ArrayList<>();
+
+        @Override
+        public void run() {
+
+            try {
+
+                if (!stopped) {
+
+                    queue.drainTo(batch, maxBatchSize);
+
+                    if (!batch.isEmpty()) {
+
+                        processBatch(batch);
+                    }
+                }
+            }
+            finally {
+
+                batch.clear();
+                scheduled.set(false);
+            }
+
+            // events handed over after drainTo() but before scheduled was cleared did not submit a task, this
+            // invocation is responsible for them
+
+            if (!stopped && !queue.isEmpty()) {
+
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package io.novaordis.utilities.ac;
+
+/**
+ * The outcome of a handOver. Collectors keep a counter per outcome.
+ *
+ * @see Collector#handOverWithOutcome(Object)
+ * @see Collector#getOutcomeCount(HandOverOutcome)
+ */
+public enum HandOverOutcome {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    /**
+     * The event was accepted for processing.
+     */
+    ACCEPTED(true, false),
+
+    /**
+     * The event was accepted for processing, but the queue was full so the oldest queued events were discarded to make
+     * room for it. The discarded events are counted by CollectorMetrics#getEvictedCount().
+     */
+    ACCEPTED_OLDEST_DROPPED(true, true),
+
+    /**
+     * The queue was full and the event was discarded.
+     */
+    DROPPED_QUEUE_FULL(false, true),
+
+    /**
+     * The producer waited for space in the queue, but the wait timed out and the event was discarded.
+     */
+    DROPPED_TIMEOUT(false, true),
+
+    /**
+     * The queue was over its sampling threshold and the event was not selected by sampling.
+     */
+    DROPPED_SAMPLING(false, true),
+
+    /**
+     * The producer was interrupted while waiting for space in the queue. The interrupted status of the thread is
+     * preserved.
+     */
+    DROPPED_INTERRUPTED(false, true),
+
+    /**
+     * The event had to be spilled to disk, but its payload could not be serialized, or it could not be written.
+     */
+    DROPPED_SPILL_FAILED(false, true),
+
+    /**
+     * The collector was disposed.
+     */
+    REJECTED_DISPOSED(false, false),
+    ;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private boolean accepted;
+    private boolean drop;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    HandOverOutcome(boolean accepted, boolean drop) {
+
+        this.accepted = accepted;
+        this.drop = drop;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return true if the handed over event will be processed.
+     */
+    public boolean isAccepted() {
+
+        return accepted;
+    }
+
+    /**
+     * @return true if the outcome implies the loss of an event because of insufficient queue capacity - either the
+     *         handed over event or an older one.
+     */
+    public boolean isDrop() {
+
+        return drop;
+    }
+}
@@ -0,0 +1,100 @@
+package io.novaordis.utilities.ac;
+
+import java.util.List;
+
+/**
+ * Adapts a plain Handler to the BatchHandler contract, by offering each event of the batch to the delegate
+ * individually. Failures are contained per event, so one misbehaving event does not prevent the rest of the batch from
+ * reaching the delegate.
+ */
+public class HandlerAdapter implements BatchHandler {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private Handler delegate;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public HandlerAdapter(Handler delegate) {
+
+        if (delegate == null) {
+
+            throw new IllegalArgumentException("null delegate");
+        }
+
+        this.delegate = delegate;
+    }
+
+    // BatchHandler implementation -------------------------------------------------------------------------------------
+
+    @Override
+    public void handleBatch(List<Collected> batch) {
+
+        //noinspection ForLoopReplaceableByForEach
+        for(int i = 0; i < batch.size(); i ++) {
+
+            // precaution to allow the rest of the batch to be processed in case the delegate misbehaves
+
+            try {
+
+                Collected c = batch.get(i);
+                Object payload = c.getPayload();
+
+                if (delegate.canHandle(payload)) {
+
+                    delegate.handle(c.getTimeStamp(), c.getThreadName(), payload);
+                }
+            }
+            catch(Throwable t) {
+
+                System.err.println("[warning] handler " + delegate + " failed to process event: " + t);
+            }
+        }
+    }
+
+    // Handler implementation ------------------------------------------------------------------------------------------
+
+    @Override
+    public boolean canHandle(Object o) {
+
+        return delegate.canHandle(o);
+    }
+
+    @Override
+    public void handle(long timestamp, String originatorThreadName, Object o) {
+
+        delegate.handle(timestamp, originatorThreadName, o);
+    }
+
+    @Override
+    public void close() {
+
+        delegate.close();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public Handler getDelegate() {
+
+        return delegate;
+    }
+
+    @Override
+    public String toString() {
+
+        return delegate.toString();
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,540 @@
+package io.novaordis.utilities.ac;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Isolates a handler from the other handlers registered with the same collector: the collector's pump only places the
+ * events in the lane's bounded queue, and the handler is invoked on the lane's own worker thread. A slow handler
+ * fills up its own lane, where its overflow policy applies, instead of delaying the other handlers and growing the
+ * collector's queue.
+ *
+ * Each invocation is measured against the lane's latency budget. After a number of consecutive invocations that
+ * exceed the budget, or fail, the circuit breaker opens: the queued events are discarded and the incoming ones are
+ * shed without being queued. Once the open interval elapses, the breaker lets events through on probation
+ * (HALF_OPEN): the first invocation within budget closes it, the first one over budget opens it again.
+ *
+ * Numeric samples are forwarded only if the isolated handler is a PrimitiveHandler. Unlike on the collector's own
+ * path, they are copied into the lane, which allocates.
+ *
+ * Lanes are created by the collector for every registered handler if handler isolation is enabled, or they can be
+ * registered explicitly, with settings specific to the handler.
+ *
+ * @see LaneConfiguration
+ * @see CollectorConfiguration#setHandlerIsolation(LaneConfiguration)
+ */
+public class HandlerLane implements BatchHandler, PrimitiveHandler {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final long WORKER_POLL_INTERVAL_MS = 100L;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final Handler handler;
+
+    private final BlockingQueue<Collected> queue;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final int maxBatchSize;
+
+    private final long latencyBudgetNs;
+
+    private final int breakerThreshold;
+
+    private final long breakerOpenMs;
+
+    private final AtomicReference<CircuitState> state;
+
+    // the moment the breaker may let events through again, when OPEN
+    private volatile long openUntil;
+
+    // only accessed by the worker thread
+    private int consecutiveViolations;
+
+    private final LongAdder dropped;
+    private final LongAdder shed;
+    private final LongAdder processed;
+    private final LongAdder budgetViolations;
+    private final LongAdder failures;
+
+    private volatile boolean active;
+
+    // whether to close the handler when the worker exits
+    private volatile boolean closeHandler;
+
+    private final Thread worker;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Starts the worker thread.
+     */
+    public HandlerLane(Handler handler, LaneConfiguration configuration) {
+
+        if (handler == null) {
+
+            throw new IllegalArgumentException("null handler");
+        }
+
+        if (configuration == null) {
+
+            throw new IllegalArgumentException("null lane configuration");
+        }
+
+        this.handler = handler;
+        this.queue = new LinkedBlockingQueue<>(configuration.getCapacity());
+        this.overflowPolicy = configuration.getOverflowPolicy();
+        this.maxBatchSize = configuration.getMaxBatchSize();
+        this.latencyBudgetNs = TimeUnit.MILLISECONDS.toNanos(configuration.getLatencyBudgetMs());
+        this.breakerThreshold = configuration.getBreakerThreshold();
+        this.breakerOpenMs = configuration.getBreakerOpenMs();
+        this.state = new AtomicReference<>(CircuitState.CLOSED);
+        this.dropped = new LongAdder();
+        this.shed = new LongAdder();
+        this.processed = new LongAdder();
+        this.budgetViolations = new LongAdder();
+        this.failures = new LongAdder();
+        this.active = true;
+
+        this.worker = new Thread(new Worker(), "Handler Lane '" + handler + "'");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // BatchHandler implementation -------------------------------------------------------------------------------------
+
+    @Override
+    public boolean canHandle(Object o) {
+
+        return accepts(o);
+    }
+
+    /**
+     * Invoked on the collector's pump thread, places the event in the lane.
+     */
+    @Override
+    public void handle(long timestamp, String originatorThreadName, Object o) {
+
+        offer(new Collected(timestamp, originatorThreadName, o));
+    }
+
+    /**
+     * Invoked on the collector's pump thread, places the events the handler accepts in the lane.
+     */
+    @Override
+    public void handleBatch(List<Collected> batch) {
+
+        //noinspection ForLoopReplaceableByForEach
+        for(int i = 0; i < batch.size(); i ++) {
+
+            Collected c = batch.get(i);
+
+            if (accepts(c.getPayload())) {
+
+                // the collector may reuse the instance
+                offer(c.copy());
+            }
+        }
+    }
+
+    /**
+     * Invoked on the collector's pump thread, places the sample in the lane.
+     */
+    @Override
+    public void handleLong(long timestamp, long threadId, int key, long value) {
+
+        if (handler instanceof PrimitiveHandler) {
+
+            offer(Collected.ofLong(timestamp, threadId, key, value));
+        }
+    }
+
+    /**
+     * Invoked on the collector's pump thread, places the sample in the lane.
+     */
+    @Override
+    public void handleDouble(long timestamp, long threadId, int key, double value) {
+
+        if (handler instanceof PrimitiveHandler) {
+
+            offer(Collected.ofDouble(timestamp, threadId, key, value));
+        }
+    }
+
+    /**
+     * Stops the worker after it processes the events already in the lane, then closes the handler, on the worker
+     * thread. Does not wait.
+     */
+    @Override
+    public void close() {
+
+        closeHandler = true;
+        active = false;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public Handler getHandler() {
+
+        return handler;
+    }
+
+    public CircuitState getCircuitState() {
+
+        return state.get();
+    }
+
+    /**
+     * @return the number of events waiting in the lane.
+     */
+    public int getQueueSize() {
+
+        return queue.size();
+    }
+
+    /**
+     * @return the number of events lost because the lane was full.
+     */
+    public long getDroppedCount() {
+
+        return dropped.sum();
+    }
+
+    /**
+     * @return the number of events discarded because the circuit breaker was open.
+     */
+    public long getShedCount() {
+
+        return shed.sum();
+    }
+
+    /**
+     * @return the number of events the handler was invoked with.
+     */
+    public long getProcessedCount() {
+
+        return processed.sum();
+    }
+
+    /**
+     * @return the number of invocations that exceeded the latency budget.
+     */
+    public long getBudgetViolationCount() {
+
+        return budgetViolations.sum();
+    }
+
+    /**
+     * @return the number of invocations that failed.
+     */
+    public long getFailureCount() {
+
+        return failures.sum();
+    }
+
+    /**
+     * @return the name of the lane's worker thread.
+     */
+    public String getThreadName() {
+
+        return worker.getName();
+    }
+
+    @Override
+    public String toString() {
+
+        return "HandlerLane[" + handler + "]";
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * Stops the worker without closing the handler, discarding the events still in the lane. Used when the handler is
+     * unregistered.
+     */
+    void stop() {
+
+        active = false;
+        queue.clear();
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private boolean accepts(Object o) {
+
+        if (handler instanceof BatchHandler) {
+
+            // batch handlers get all events, as they do when not isolated
+            return true;
+        }
+
+        if (handler instanceof TypedHandler) {
+
+            Class<?>[] acceptedTypes = ((TypedHandler)handler).getAcceptedTypes();
+
+            if (o == null || acceptedTypes == null) {
+
+                return false;
+            }
+
+            for(Class<?> c: acceptedTypes) {
+
+                if (c.isInstance(o)) {
+
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        return handler.canHandle(o);
+    }
+
+    private void offer(Collected c) {
+
+        if (!active || !admit()) {
+
+            shed.increment();
+            return;
+        }
+
+        try {
+
+            if (overflowPolicy.enqueue(queue, c).isDrop()) {
+
+                dropped.increment();
+            }
+        }
+        catch(InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            dropped.increment();
+        }
+    }
+
+    /**
+     * @return false if the breaker is open.
+     */
+    private boolean admit() {
+
+        if (state.get() != CircuitState.OPEN) {
+
+            return true;
+        }
+
+        if (System.currentTimeMillis() < openUntil) {
+
+            return false;
+        }
+
+        state.compareAndSet(CircuitState.OPEN, CircuitState.HALF_OPEN);
+        return true;
+    }
+
+    /**
+     * Invoked on the worker thread after each handler invocation.
+     */
+    private void assess(long elapsedNs, int count, boolean failed) {
+
+        boolean violation = failed || elapsedNs > latencyBudgetNs * count;
+
+        if (!violation) {
+
+            consecutiveViolations = 0;
+            state.compareAndSet(CircuitState.HALF_OPEN, CircuitState.CLOSED);
+            return;
+        }
+
+        if (!failed) {
+
+            budgetViolations.increment();
+        }
+
+        consecutiveViolations ++;
+
+        if (state.get() == CircuitState.HALF_OPEN || consecutiveViolations >= breakerThreshold) {
+
+            open();
+        }
+    }
+
+    private void open() {
+
+        openUntil = System.currentTimeMillis() + breakerOpenMs;
+        state.set(CircuitState.OPEN);
+        consecutiveViolations = 0;
+
+        List<Collected> discarded = new ArrayList<>();
+        queue.drainTo(discarded);
+        shed.add(discarded.size());
+
+        System.err.println(
+                "[warning] " + this + " circuit breaker opened, shedding load for " + breakerOpenMs + " ms");
+    }
+
+    private static boolean containsSamples(List<Collected> batch) {
+
+        //noinspection ForLoopReplaceableByForEach
+        for(int i = 0; i < batch.size(); i ++) {
+
+            if (batch.get(i).isPrimitive()) {
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    public enum CircuitState {
+
+        /**
+         * Events are let through.
+         */
+        CLOSED,
+
+        /**
+         * Events are shed.
+         */
+        OPEN,
+
+        /**
+         * Events are let through on probation.
+         */
+        HALF_OPEN,
+    }
+
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+
+            List<Collected> batch = new ArrayList<>(maxBatchSize);
+
+            while(active || !queue.isEmpty()) {
+
+                try {
+
+                    Collected c = queue.poll(WORKER_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+                    if (c == null) {
+
+                        continue;
+                    }
+
+                    batch.add(c);
+                    queue.drainTo(batch, maxBatchSize - 1);
+                }
+                catch(InterruptedException e) {
+
+                    // nothing, go back to the lane
+                    continue;
+                }
+
+                if (handler instanceof BatchHandler && !containsSamples(batch)) {
+
+                    invoke(batch);
+                }
+                else {
+
+                    int i = 0;
+
+                    for(; i < batch.size() && state.get() != CircuitState.OPEN; i ++) {
+
+                        invoke(batch.get(i));
+                    }
+
+                    // the breaker opened in the middle of the batch
+                    shed.add(batch.size() - i);
+                }
+
+                batch.clear();
+            }
+
+            if (closeHandler) {
+
+                try {
+
+                    handler.close();
+                }
+                catch(Throwable t) {
+
+                    System.err.println("[warning] handler " + handler + " failed to close: " + t);
+                }
+            }
+        }
+
+        private void invoke(List<Collected> batch) {
+
+            boolean failed = false;
+            long t0 = System.nanoTime();
+
+            try {
+
+                ((BatchHandler)handler).handleBatch(batch);
+                processed.add(batch.size());
+            }
+            catch(Throwable t) {
+
+                failed = true;
+                failures.increment();
+                System.err.println("[warning] handler " + handler + " failed to process batch: " + t);
+            }
+
+            assess(System.nanoTime() - t0, batch.size(), failed);
+        }
+
+        private void invoke(Collected c) {
+
+            boolean failed = false;
+            long t0 = System.nanoTime();
+
+            try {
+
+                if (c.isDouble()) {
+
+                    ((PrimitiveHandler)handler).handleDouble(
+                            c.getTimeStamp(), c.getThreadId(), c.getKey(), c.getDoubleValue());
+                }
+                else if (c.isPrimitive()) {
+
+                    ((PrimitiveHandler)handler).handleLong(
+                            c.getTimeStamp(), c.getThreadId(), c.getKey(), c.getLongValue());
+                }
+                else if (handler instanceof BatchHandler) {
+
+                    ((BatchHandler)handler).handleBatch(Collections.singletonList(c));
+                }
+                else {
+
+                    handler.handle(c.getTimeStamp(), c.getThreadName(), c.getPayload());
+                }
+
+                processed.increment();
+            }
+            catch(Throwable t) {
+
+                failed = true;
+                failures.increment();
+                System.err.println("[warning] handler " + handler + " failed to process event: " + t);
+            }
+
+            assess(System.nanoTime() - t0, 1, failed);
+        }
+    }
+}
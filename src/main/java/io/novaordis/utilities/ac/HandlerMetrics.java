@@ -0,0 +1,121 @@
+package io.novaordis.utilities.ac;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Processing statistics for one registered handler: how many times it was invoked, how many invocations failed, and
+ * how long the invocations took. A BatchHandler invocation is a handleBatch() call, so its latency is the latency of
+ * processing the entire batch.
+ *
+ * @see CollectorMetrics
+ */
+public class HandlerMetrics implements HandlerMetricsMBean {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final Handler handler;
+
+    private final LatencyHistogram latency;
+
+    private final LongAdder failures;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    HandlerMetrics(Handler handler) {
+
+        this.handler = handler;
+        this.latency = new LatencyHistogram();
+        this.failures = new LongAdder();
+    }
+
+    // HandlerMetricsMBean implementation ------------------------------------------------------------------------------
+
+    @Override
+    public String getHandler() {
+
+        return String.valueOf(handler);
+    }
+
+    /**
+     * @return the number of invocations, successful or failed.
+     */
+    @Override
+    public long getInvocationCount() {
+
+        return latency.getCount() + failures.sum();
+    }
+
+    @Override
+    public long getFailureCount() {
+
+        return failures.sum();
+    }
+
+    @Override
+    public long getMeanLatencyNs() {
+
+        return (long)latency.getMean();
+    }
+
+    @Override
+    public long getP50LatencyNs() {
+
+        return latency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getP99LatencyNs() {
+
+        return latency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getMaxLatencyNs() {
+
+        return latency.getMax();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public Handler getHandlerInstance() {
+
+        return handler;
+    }
+
+    /**
+     * @return the processing latency histogram of the successful invocations, in nanoseconds.
+     */
+    public LatencyHistogram getLatency() {
+
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+
+        return handler + ": " + latency + ", failures=" + getFailureCount();
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    void recordInvocation(long latencyNs) {
+
+        latency.record(latencyNs);
+    }
+
+    void recordFailure() {
+
+        failures.increment();
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
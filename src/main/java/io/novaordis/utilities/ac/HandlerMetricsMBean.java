@@ -0,0 +1,24 @@
+package io.novaordis.utilities.ac;
+
+/**
+ * The JMX view of a HandlerMetrics instance. Latencies are expressed in nanoseconds.
+ *
+ * @see HandlerMetrics
+ */
+public interface HandlerMetricsMBean {
+
+    String getHandler();
+
+    long getInvocationCount();
+
+    long getFailureCount();
+
+    long getMeanLatencyNs();
+
+    long getP50LatencyNs();
+
+    long getP99LatencyNs();
+
+    long getMaxLatencyNs();
+
+}
@@ -2,11 +2,32 @@ package io.novaordis.utilities.ac;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Not thread safe on account of better performance. Normally it should not be accessed concurrently, all the
- * initialization is done before events are pushed to handlers. To review this.
+ * Dispatches events to handlers through a routing index: the list of handlers that may be interested in a payload is
+ * resolved once per payload class and cached, so dispatching an event is one map lookup followed by a direct loop.
+ * Handlers that declare their accepted types up front (TypedHandlers) are resolved entirely by the index and never
+ * asked canHandle(). Other handlers are still asked canHandle() for each event.
+ *
+ * Thread safe. The registered handlers and the routing index are published as an immutable snapshot through a
+ * volatile reference. add() and remove() can be called from any thread, at any time: they build a new snapshot under a
+ * lock and swap it in. The dispatching path takes no locks, it reads the current snapshot once per call and works with
+ * it until the end of the call, so a handler that is being removed may still receive the events of a batch that was
+ * already in progress.
+ *
+ * Each invocation is timed and each failure is counted, per handler. The statistics are available as HandlerMetrics.
+ *
+ * Numeric samples are dispatched with processPrimitive(), to the PrimitiveHandlers only, without allocating.
+ *
+ * @see TypedHandler
+ * @see PrimitiveHandler
+ * @see HandlerMetrics
  */
 public class Handlers implements Distributor {
 
@@ -16,13 +37,21 @@ public class Handlers implements Distributor {
 
     // Attributes ------------------------------------------------------------------------------------------------------
 
-    private List<Handler> handlers;
+    // serializes mutations
+    private final Object lock;
+
+    private volatile Snapshot snapshot;
+
+    // the failures of all handlers, including the ones that were removed
+    private final LongAdder failures;
 
     // Constructors ----------------------------------------------------------------------------------------------------
 
     public Handlers() {
 
-        this.handlers = new ArrayList<>();
+        this.lock = new Object();
+        this.snapshot = new Snapshot(new Handler[0], new HandlerMetrics[0]);
+        this.failures = new LongAdder();
     }
 
     // Distributor implementation --------------------------------------------------------------------------------------
@@ -33,41 +62,170 @@ public class Handlers implements Distributor {
     @Override
     public void process(Collected c) {
 
-        for(Handler h: handlers) {
+        Snapshot s = snapshot;
+
+        Object payload = c.getPayload();
+
+        Route route = payload == null ? s.allNullRoute : s.route(s.allRoutes, s.all, payload.getClass());
+
+        route.dispatch(c.getTimeStamp(), c.getThreadName(), payload, failures);
+    }
+
+    /**
+     * @see Distributor#processBatch(List)
+     */
+    @Override
+    public void processBatch(List<Collected> batch) {
+
+        if (batch.isEmpty()) {
+
+            return;
+        }
+
+        Snapshot s = snapshot;
+
+        for(int i = 0; i < s.batchHandlers.length; i ++) {
+
+            BatchHandler h = s.batchHandlers[i];
+            HandlerMetrics m = s.batch.metrics[i];
+
+            // precaution to allow the other handlers to run in case one misbehaves
+
+            try {
+
+                long t0 = System.nanoTime();
+                h.handleBatch(batch);
+                m.recordInvocation(System.nanoTime() - t0);
+            }
+            catch(Throwable t) {
+
+                m.recordFailure();
+                failures.increment();
+                System.err.println("[warning] handler " + h + " failed to process batch: " + t);
+            }
+        }
+
+        if (s.plain.handlers.length == 0) {
+
+            return;
+        }
+
+        //noinspection ForLoopReplaceableByForEach
+        for(int i = 0; i < batch.size(); i ++) {
+
+            Collected c = batch.get(i);
+            Object payload = c.getPayload();
+
+            Route route = payload == null ? s.plainNullRoute : s.route(s.plainRoutes, s.plain, payload.getClass());
+
+            route.dispatch(c.getTimeStamp(), c.getThreadName(), payload, failures);
+        }
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Dispatches a numeric sample to the PrimitiveHandlers, in registration order.
+     *
+     * @see Collected#isPrimitive()
+     */
+    public void processPrimitive(Collected c) {
+
+        Candidates primitive = snapshot.primitive;
+
+        for(int i = 0; i < primitive.handlers.length; i ++) {
+
+            PrimitiveHandler h = (PrimitiveHandler)primitive.handlers[i];
+            HandlerMetrics m = primitive.metrics[i];
 
             // precaution to allow the other handlers to run in case one misbehaves
 
             try {
 
-                Object payload = c.getPayload();
+                long t0 = System.nanoTime();
 
-                if (h.canHandle(payload)) {
+                if (c.isDouble()) {
 
-                    h.handle(c.getTimeStamp(), c.getThreadName(), payload);
+                    h.handleDouble(c.getTimeStamp(), c.getThreadId(), c.getKey(), c.getDoubleValue());
                 }
+                else {
+
+                    h.handleLong(c.getTimeStamp(), c.getThreadId(), c.getKey(), c.getLongValue());
+                }
+
+                m.recordInvocation(System.nanoTime() - t0);
             }
             catch(Throwable t) {
 
-                System.err.println("[warning] handler " + h + " failed to process event: " + t);
+                m.recordFailure();
+                failures.increment();
+                System.err.println("[warning] handler " + h + " failed to process sample: " + t);
             }
         }
     }
 
-    // Public ----------------------------------------------------------------------------------------------------------
-
     public boolean add(Handler h) {
 
-        return handlers.add(h);
+        if (h == null) {
+
+            throw new IllegalArgumentException("null handler");
+        }
+
+        synchronized (lock) {
+
+            Handler[] current = snapshot.all.handlers;
+            Handler[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = h;
+
+            HandlerMetrics[] currentMetrics = snapshot.all.metrics;
+            HandlerMetrics[] updatedMetrics = Arrays.copyOf(currentMetrics, currentMetrics.length + 1);
+            updatedMetrics[currentMetrics.length] = new HandlerMetrics(h);
+
+            snapshot = new Snapshot(updated, updatedMetrics);
+            return true;
+        }
     }
 
+    /**
+     * Removes the handler, or, if the handler is not registered directly, the first lane that isolates it. A lane
+     * found this way was created by the collector, and it is stopped. A lane registered explicitly is stopped when its
+     * last registration is removed. Stopping a lane does not close the handler it isolates.
+     */
     public boolean remove(Handler h) {
 
-        return handlers.remove(h);
+        synchronized (lock) {
+
+            int i = indexOf(h);
+
+            if (i >= 0) {
+
+                remove(i);
+
+                if (h instanceof HandlerLane && indexOf(h) < 0) {
+
+                    ((HandlerLane)h).stop();
+                }
+
+                return true;
+            }
+
+            i = indexOfLane(h);
+
+            if (i >= 0) {
+
+                HandlerLane lane = (HandlerLane)snapshot.all.handlers[i];
+                remove(i);
+                lane.stop();
+                return true;
+            }
+
+            return false;
+        }
     }
 
     public void close() {
 
-        for(Handler h: handlers) {
+        for(Handler h: snapshot.all.handlers) {
 
             // precaution to allow the other handlers to notified of shutdown in case one misbehaves
 
@@ -82,10 +240,300 @@ public class Handlers implements Distributor {
         }
     }
 
+    /**
+     * @return a snapshot of the registered handlers, in registration order.
+     */
+    public List<Handler> getHandlers() {
+
+        return Collections.unmodifiableList(Arrays.asList(snapshot.all.handlers));
+    }
+
+    /**
+     * @return the statistics of the registered handlers, in registration order. A handler registered several times
+     *         has a HandlerMetrics instance for each registration.
+     */
+    public List<HandlerMetrics> getHandlerMetrics() {
+
+        return Collections.unmodifiableList(Arrays.asList(snapshot.all.metrics));
+    }
+
+    /**
+     * @return the number of failed handler invocations, including the ones of handlers that were since removed.
+     */
+    public long getFailureCount() {
+
+        return failures.sum();
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * @return the number of payload classes currently present in the routing index. Used for testing.
+     */
+    int getRouteCount() {
+
+        Snapshot s = snapshot;
+        return s.allRoutes.size() + s.plainRoutes.size();
+    }
+
     // Protected -------------------------------------------------------------------------------------------------------
 
     // Private ---------------------------------------------------------------------------------------------------------
 
+    /**
+     * Must be called while holding the lock.
+     */
+    private int indexOf(Handler h) {
+
+        Handler[] current = snapshot.all.handlers;
+
+        for(int i = 0; i < current.length; i ++) {
+
+            if (current[i].equals(h)) {
+
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private int indexOfLane(Handler h) {
+
+        Handler[] current = snapshot.all.handlers;
+
+        for(int i = 0; i < current.length; i ++) {
+
+            if (current[i] instanceof HandlerLane && ((HandlerLane)current[i]).getHandler().equals(h)) {
+
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void remove(int i) {
+
+        Handler[] current = snapshot.all.handlers;
+        HandlerMetrics[] currentMetrics = snapshot.all.metrics;
+
+        Handler[] updated = new Handler[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, i);
+        System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+
+        HandlerMetrics[] updatedMetrics = new HandlerMetrics[current.length - 1];
+        System.arraycopy(currentMetrics, 0, updatedMetrics, 0, i);
+        System.arraycopy(currentMetrics, i + 1, updatedMetrics, i, current.length - i - 1);
+
+        snapshot = new Snapshot(updated, updatedMetrics);
+    }
+
     // Inner classes ---------------------------------------------------------------------------------------------------
 
+    /**
+     * An immutable view of the registered handlers, plus the routing index built for it. The index is populated
+     * lazily, but each snapshot owns its own index, so replacing the snapshot invalidates the index.
+     */
+    private static class Snapshot {
+
+        // in registration order
+        final Candidates all;
+        final Candidates batch;
+        final Candidates plain;
+        final Candidates primitive;
+        final BatchHandler[] batchHandlers;
+
+        final ConcurrentMap<Class<?>, Route> allRoutes;
+        final ConcurrentMap<Class<?>, Route> plainRoutes;
+        final Route allNullRoute;
+        final Route plainNullRoute;
+
+        Snapshot(Handler[] handlers, HandlerMetrics[] metrics) {
+
+            List<Handler> batch = new ArrayList<>();
+            List<HandlerMetrics> batchMetrics = new ArrayList<>();
+            List<Handler> plain = new ArrayList<>();
+            List<HandlerMetrics> plainMetrics = new ArrayList<>();
+            List<Handler> primitive = new ArrayList<>();
+            List<HandlerMetrics> primitiveMetrics = new ArrayList<>();
+
+            for(int i = 0; i < handlers.length; i ++) {
+
+                if (handlers[i] instanceof PrimitiveHandler) {
+
+                    primitive.add(handlers[i]);
+                    primitiveMetrics.add(metrics[i]);
+                }
+
+                if (handlers[i] instanceof BatchHandler) {
+
+                    batch.add(handlers[i]);
+                    batchMetrics.add(metrics[i]);
+                }
+                else {
+
+                    plain.add(handlers[i]);
+                    plainMetrics.add(metrics[i]);
+                }
+            }
+
+            this.all = new Candidates(handlers, metrics);
+            this.batch = new Candidates(batch, batchMetrics);
+            this.plain = new Candidates(plain, plainMetrics);
+            this.primitive = new Candidates(primitive, primitiveMetrics);
+            this.batchHandlers = batch.toArray(new BatchHandler[batch.size()]);
+            this.allRoutes = new ConcurrentHashMap<>();
+            this.plainRoutes = new ConcurrentHashMap<>();
+            this.allNullRoute = Route.resolve(this.all, null);
+            this.plainNullRoute = Route.resolve(this.plain, null);
+        }
+
+        Route route(ConcurrentMap<Class<?>, Route> routes, Candidates candidates, Class<?> type) {
+
+            Route route = routes.get(type);
+
+            if (route == null) {
+
+                // concurrent resolutions of the same class yield equivalent routes, no need to coordinate
+                route = Route.resolve(candidates, type);
+                routes.put(type, route);
+            }
+
+            return route;
+        }
+    }
+
+    /**
+     * Handlers and their metrics, as parallel arrays.
+     */
+    private static class Candidates {
+
+        final Handler[] handlers;
+        final HandlerMetrics[] metrics;
+
+        Candidates(Handler[] handlers, HandlerMetrics[] metrics) {
+
+            this.handlers = handlers;
+            this.metrics = metrics;
+        }
+
+        Candidates(List<Handler> handlers, List<HandlerMetrics> metrics) {
+
+            this(handlers.toArray(new Handler[handlers.size()]), metrics.toArray(new HandlerMetrics[metrics.size()]));
+        }
+    }
+
+    /**
+     * The handlers that may be interested in a payload type, in registration order.
+     */
+    private static class Route {
+
+        /**
+         * @param type the payload type, or null for null payloads.
+         */
+        static Route resolve(Candidates candidates, Class<?> type) {
+
+            List<Handler> selected = new ArrayList<>();
+            List<HandlerMetrics> selectedMetrics = new ArrayList<>();
+            List<Boolean> check = new ArrayList<>();
+
+            for(int i = 0; i < candidates.handlers.length; i ++) {
+
+                Handler h = candidates.handlers[i];
+
+                if (h instanceof TypedHandler) {
+
+                    if (type != null && accepts((TypedHandler)h, type)) {
+
+                        selected.add(h);
+                        selectedMetrics.add(candidates.metrics[i]);
+                        check.add(false);
+                    }
+                }
+                else {
+
+                    // no up front declaration, we'll have to ask on every event
+                    selected.add(h);
+                    selectedMetrics.add(candidates.metrics[i]);
+                    check.add(true);
+                }
+            }
+
+            Route r = new Route();
+            r.handlers = selected.toArray(new Handler[selected.size()]);
+            r.metrics = selectedMetrics.toArray(new HandlerMetrics[selectedMetrics.size()]);
+            r.checkCanHandle = new boolean[check.size()];
+
+            for(int i = 0; i < r.checkCanHandle.length; i ++) {
+
+                r.checkCanHandle[i] = check.get(i);
+            }
+
+            return r;
+        }
+
+        private static boolean accepts(TypedHandler h, Class<?> type) {
+
+            Class<?>[] acceptedTypes = h.getAcceptedTypes();
+
+            if (acceptedTypes == null) {
+
+                return false;
+            }
+
+            for(Class<?> c: acceptedTypes) {
+
+                if (c.isAssignableFrom(type)) {
+
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private Handler[] handlers;
+        private HandlerMetrics[] metrics;
+        private boolean[] checkCanHandle;
+
+        void dispatch(long timestamp, String threadName, Object payload, LongAdder failures) {
+
+            int i = 0;
+
+            // a single protected region for the whole loop; if a handler misbehaves, we report it and resume with the
+            // next handler, to allow the others to run
+
+            while(i < handlers.length) {
+
+                try {
+
+                    for(; i < handlers.length; i ++) {
+
+                        Handler h = handlers[i];
+
+                        if (!checkCanHandle[i] || h.canHandle(payload)) {
+
+                            long t0 = System.nanoTime();
+                            h.handle(timestamp, threadName, payload);
+                            metrics[i].recordInvocation(System.nanoTime() - t0);
+                        }
+                    }
+                }
+                catch(Throwable t) {
+
+                    metrics[i].recordFailure();
+                    failures.increment();
+                    System.err.println("[warning] handler " + handlers[i] + " failed to process event: " + t);
+                    i ++;
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,20 @@
+package io.novaordis.utilities.ac;
+
+/**
+ * Extracts a key from a handed over payload. Used to route events with the same key along the same path, for example
+ * to the same partition of a PartitionedCollector.
+ *
+ * Implementations must be thread safe and cheap, as they are invoked on the producer threads.
+ *
+ * @see PartitionedCollector
+ */
+public interface KeyExtractor {
+
+    /**
+     * @param payload the handed over instance. Be prepared for the possibility that it is null.
+     *
+     * @return the key, which will be used for its hashCode() and equals(). May be null.
+     */
+    Object getKey(Object payload);
+
+}
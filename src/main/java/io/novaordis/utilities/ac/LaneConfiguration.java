@@ -0,0 +1,186 @@
+package io.novaordis.utilities.ac;
+
+/**
+ * The settings of a handler lane: the lane's queue, its overflow policy, the handler's latency budget and the circuit
+ * breaker thresholds.
+ *
+ * Not thread safe, it is supposed to be populated and then passed to the lane or to the collector configuration on
+ * the same thread. The lane copies the values it needs, so an instance can be reused.
+ *
+ * @see HandlerLane
+ * @see CollectorConfiguration#setHandlerIsolation(LaneConfiguration)
+ */
+public class LaneConfiguration {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    public static final long DEFAULT_LATENCY_BUDGET_MS = 1000L;
+
+    public static final int DEFAULT_BREAKER_THRESHOLD = 5;
+
+    public static final long DEFAULT_BREAKER_OPEN_MS = 5000L;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private int capacity;
+
+    private OverflowPolicy overflowPolicy;
+
+    private int maxBatchSize;
+
+    private long latencyBudgetMs;
+
+    private int breakerThreshold;
+
+    private long breakerOpenMs;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public LaneConfiguration() {
+
+        this.capacity = DEFAULT_CAPACITY;
+        this.overflowPolicy = OverflowPolicies.dropNewest();
+        this.maxBatchSize = CollectorBase.DEFAULT_MAX_BATCH_SIZE;
+        this.latencyBudgetMs = DEFAULT_LATENCY_BUDGET_MS;
+        this.breakerThreshold = DEFAULT_BREAKER_THRESHOLD;
+        this.breakerOpenMs = DEFAULT_BREAKER_OPEN_MS;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the maximum number of events that can wait in the lane.
+     */
+    public int getCapacity() {
+
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+
+        if (capacity <= 0) {
+
+            throw new IllegalArgumentException("invalid capacity " + capacity);
+        }
+
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the policy applied when the lane is full. Defaults to dropping the newest event.
+     */
+    public OverflowPolicy getOverflowPolicy() {
+
+        return overflowPolicy;
+    }
+
+    /**
+     * The policy is applied on the collector's pump thread, so a blocking policy would let the slow handler stall the
+     * other handlers again, once its lane fills up.
+     *
+     * @see OverflowPolicies
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+
+        if (overflowPolicy == null) {
+
+            throw new IllegalArgumentException("null overflow policy");
+        }
+
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @return the maximum number of events the lane worker takes off the lane in one wake-up.
+     */
+    public int getMaxBatchSize() {
+
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+
+        if (maxBatchSize <= 0) {
+
+            throw new IllegalArgumentException("invalid maximum batch size " + maxBatchSize);
+        }
+
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @return the time the handler is expected to spend on an event, in milliseconds. A batch handler's budget for a
+     *         batch is the per-event budget multiplied by the batch size.
+     */
+    public long getLatencyBudgetMs() {
+
+        return latencyBudgetMs;
+    }
+
+    public void setLatencyBudgetMs(long latencyBudgetMs) {
+
+        if (latencyBudgetMs <= 0) {
+
+            throw new IllegalArgumentException("invalid latency budget " + latencyBudgetMs);
+        }
+
+        this.latencyBudgetMs = latencyBudgetMs;
+    }
+
+    /**
+     * @return the number of consecutive invocations that exceed the budget, or fail, after which the circuit breaker
+     *         opens.
+     */
+    public int getBreakerThreshold() {
+
+        return breakerThreshold;
+    }
+
+    public void setBreakerThreshold(int breakerThreshold) {
+
+        if (breakerThreshold <= 0) {
+
+            throw new IllegalArgumentException("invalid breaker threshold " + breakerThreshold);
+        }
+
+        this.breakerThreshold = breakerThreshold;
+    }
+
+    /**
+     * @return how long the circuit breaker stays open, shedding all events, before it lets events through again on
+     *         probation.
+     */
+    public long getBreakerOpenMs() {
+
+        return breakerOpenMs;
+    }
+
+    public void setBreakerOpenMs(long breakerOpenMs) {
+
+        if (breakerOpenMs <= 0) {
+
+            throw new IllegalArgumentException("invalid breaker open interval " + breakerOpenMs);
+        }
+
+        this.breakerOpenMs = breakerOpenMs;
+    }
+
+    @Override
+    public String toString() {
+
+        return "LaneConfiguration[capacity=" + capacity + ", budget=" + latencyBudgetMs + " ms]";
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
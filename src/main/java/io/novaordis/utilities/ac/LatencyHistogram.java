@@ -0,0 +1,206 @@
+package io.novaordis.utilities.ac;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative long values with log-linear buckets: values below 2 * SUB_BUCKETS are counted exactly,
+ * and every power of two above that is split into SUB_BUCKETS equal buckets, so the relative error of a reported
+ * percentile is at most 1/SUB_BUCKETS, over the entire long range, using a fixed number of counters.
+ *
+ * Recording does not allocate and does not lock, and can be done concurrently from several threads. The statistics
+ * are read without stopping the recording threads, so they are not an atomic snapshot: the count, the total and the
+ * buckets may reflect slightly different sets of values.
+ */
+public class LatencyHistogram {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // log2(SUB_BUCKETS)
+    public static final int SUB_BUCKET_BITS = 3;
+
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the index of the bucket that counts the value. The value must be non-negative.
+     */
+    static int bucketIndex(long value) {
+
+        if (value < SUB_BUCKETS) {
+
+            return (int)value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+
+        // the top SUB_BUCKET_BITS + 1 bits, in [SUB_BUCKETS, 2 * SUB_BUCKETS)
+        int mantissa = (int)(value >>> shift);
+
+        return shift * SUB_BUCKETS + mantissa;
+    }
+
+    /**
+     * @return the largest value counted by the bucket.
+     */
+    static long bucketUpperBound(int index) {
+
+        if (index < SUB_BUCKETS) {
+
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        long mantissa = index % SUB_BUCKETS + SUB_BUCKETS;
+        long lowerBound = mantissa << shift;
+
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final AtomicLongArray buckets;
+
+    private final AtomicLong count;
+
+    private final AtomicLong total;
+
+    private final AtomicLong max;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public LatencyHistogram() {
+
+        this.buckets = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new AtomicLong();
+        this.total = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @param value negative values are recorded as 0.
+     */
+    public void record(long value) {
+
+        if (value < 0) {
+
+            value = 0;
+        }
+
+        buckets.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+
+        long m;
+
+        while(value > (m = max.get())) {
+
+            if (max.compareAndSet(m, value)) {
+
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return the number of recorded values.
+     */
+    public long getCount() {
+
+        return count.get();
+    }
+
+    /**
+     * @return the largest recorded value, or 0 if nothing was recorded.
+     */
+    public long getMax() {
+
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the recorded values, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+
+        long c = count.get();
+        return c == 0 ? 0d : (double)total.get() / c;
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     *
+     * @return an upper bound for the given percentile of the recorded values, which is never larger than the largest
+     *         recorded value. 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+
+        if (percentile < 0 || percentile > 100) {
+
+            throw new IllegalArgumentException("invalid percentile " + percentile);
+        }
+
+        long n = 0;
+
+        for(int i = 0; i < BUCKET_COUNT; i ++) {
+
+            n += buckets.get(i);
+        }
+
+        if (n == 0) {
+
+            return 0L;
+        }
+
+        long rank = Math.max(1L, (long)Math.ceil(percentile / 100d * n));
+        long seen = 0;
+
+        for(int i = 0; i < BUCKET_COUNT; i ++) {
+
+            seen += buckets.get(i);
+
+            if (seen >= rank) {
+
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    /**
+     * Clears the recorded values. Values recorded concurrently with reset() may be partially lost.
+     */
+    public void reset() {
+
+        for(int i = 0; i < BUCKET_COUNT; i ++) {
+
+            buckets.set(i, 0L);
+        }
+
+        count.set(0L);
+        total.set(0L);
+        max.set(0L);
+    }
+
+    @Override
+    public String toString() {
+
+        return "count=" + getCount() + ", mean=" + (long)getMean() + ", p50=" + getValueAtPercentile(50) +
+                ", p99=" + getValueAtPercentile(99) + ", max=" + getMax();
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
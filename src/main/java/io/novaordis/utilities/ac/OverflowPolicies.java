@@ -0,0 +1,288 @@
+package io.novaordis.utilities.ac;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The standard overflow policies.
+ *
+ * @see OverflowPolicy
+ */
+public class OverflowPolicies {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * The producer blocks until space becomes available. No events are lost.
+     */
+    public static OverflowPolicy block() {
+
+        return new Block();
+    }
+
+    /**
+     * The producer blocks until space becomes available, but no longer than the timeout. If the timeout expires, the
+     * event is discarded.
+     */
+    public static OverflowPolicy blockWithTimeout(long timeoutMs) {
+
+        if (timeoutMs < 0) {
+
+            throw new IllegalArgumentException("negative timeout " + timeoutMs);
+        }
+
+        return new BlockWithTimeout(timeoutMs);
+    }
+
+    /**
+     * If the queue is full, the handed over event is discarded. The producer never blocks.
+     */
+    public static OverflowPolicy dropNewest() {
+
+        return new DropNewest();
+    }
+
+    /**
+     * If the queue is full, the oldest queued events are discarded to make room for the handed over event. The
+     * producer never blocks.
+     */
+    public static OverflowPolicy dropOldest() {
+
+        return new DropOldest();
+    }
+
+    /**
+     * Once the queue occupancy exceeds the threshold, events are accepted with the given probability. If the queue is
+     * full, the event is discarded. The producer never blocks.
+     *
+     * @param probability the probability to accept an event once the threshold was passed, between 0 and 1.
+     * @param threshold the queue occupancy, expressed as a fraction of the capacity (between 0 and 1), above which
+     *                  sampling kicks in.
+     */
+    public static OverflowPolicy sample(double probability, double threshold) {
+
+        if (probability < 0 || probability > 1) {
+
+            throw new IllegalArgumentException("invalid probability " + probability);
+        }
+
+        if (threshold < 0 || threshold > 1) {
+
+            throw new IllegalArgumentException("invalid threshold " + threshold);
+        }
+
+        return new Sample(probability, threshold);
+    }
+
+    /**
+     * Applies the policy on behalf of a collector, and records in the metrics the queued events the policy discarded
+     * to make room for the handed over one.
+     */
+    static HandOverOutcome enqueue(
+            OverflowPolicy policy, BlockingQueue<Collected> queue, Collected c, CollectorMetrics metrics)
+            throws InterruptedException {
+
+        if (policy instanceof DropOldest) {
+
+            return ((DropOldest)policy).enqueue(queue, c, metrics);
+        }
+
+        HandOverOutcome outcome = policy.enqueue(queue, c);
+
+        if (HandOverOutcome.ACCEPTED_OLDEST_DROPPED.equals(outcome)) {
+
+            // a custom policy does not tell how many events it discarded
+            metrics.recordEvicted(1L);
+        }
+
+        return outcome;
+    }
+
+    /**
+     * @return the number of events a queued element stands for: the size of a producer batch, 0 for the pump's
+     *         wake-up sentinel, 1 otherwise.
+     */
+    static int eventCount(Collected c) {
+
+        if (c == QueuePump.WAKE_UP) {
+
+            return 0;
+        }
+
+        Object payload = c.getPayload();
+        return payload instanceof ProducerBatch ? ((ProducerBatch)payload).size() : 1;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private OverflowPolicies() {
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private static class Block implements OverflowPolicy {
+
+        @Override
+        public HandOverOutcome enqueue(BlockingQueue<Collected> queue, Collected c) throws InterruptedException {
+
+            queue.put(c);
+            return HandOverOutcome.ACCEPTED;
+        }
+
+        @Override
+        public String toString() {
+
+            return "BLOCK";
+        }
+    }
+
+    private static class BlockWithTimeout implements OverflowPolicy {
+
+        private long timeoutMs;
+
+        BlockWithTimeout(long timeoutMs) {
+
+            this.timeoutMs = timeoutMs;
+        }
+
+        @Override
+        public HandOverOutcome enqueue(BlockingQueue<Collected> queue, Collected c) throws InterruptedException {
+
+            return queue.offer(c, timeoutMs, TimeUnit.MILLISECONDS) ?
+                    HandOverOutcome.ACCEPTED : HandOverOutcome.DROPPED_TIMEOUT;
+        }
+
+        @Override
+        public String toString() {
+
+            return "BLOCK_WITH_TIMEOUT(" + timeoutMs + " ms)";
+        }
+    }
+
+    private static class DropNewest implements OverflowPolicy {
+
+        @Override
+        public HandOverOutcome enqueue(BlockingQueue<Collected> queue, Collected c) {
+
+            return queue.offer(c) ? HandOverOutcome.ACCEPTED : HandOverOutcome.DROPPED_QUEUE_FULL;
+        }
+
+        @Override
+        public String toString() {
+
+            return "DROP_NEWEST";
+        }
+    }
+
+    private static class DropOldest implements OverflowPolicy {
+
+        @Override
+        public HandOverOutcome enqueue(BlockingQueue<Collected> queue, Collected c) {
+
+            return enqueue(queue, c, null);
+        }
+
+        /**
+         * @param metrics records the number of discarded events. May be null.
+         */
+        HandOverOutcome enqueue(BlockingQueue<Collected> queue, Collected c, CollectorMetrics metrics) {
+
+            if (queue.offer(c)) {
+
+                return HandOverOutcome.ACCEPTED;
+            }
+
+            // other producers may compete for the space we free up, so we may need more than one attempt
+
+            long dropped = 0L;
+            boolean wakeUp = false;
+
+            while(true) {
+
+                Collected oldest = queue.poll();
+
+                if (oldest == QueuePump.WAKE_UP) {
+
+                    // the sentinel keeps the room it frees, it is put back after the event
+                    wakeUp = true;
+                    continue;
+                }
+
+                if (oldest != null) {
+
+                    dropped += eventCount(oldest);
+                }
+
+                if (queue.offer(c)) {
+
+                    break;
+                }
+            }
+
+            if (wakeUp) {
+
+                // may only fail if other producers filled the queue in the meantime, in which case the pump is not
+                // blocked waiting for events and does not need the sentinel
+                queue.offer(QueuePump.WAKE_UP);
+            }
+
+            if (metrics != null && dropped > 0) {
+
+                metrics.recordEvicted(dropped);
+            }
+
+            return dropped > 0 ? HandOverOutcome.ACCEPTED_OLDEST_DROPPED : HandOverOutcome.ACCEPTED;
+        }
+
+        @Override
+        public String toString() {
+
+            return "DROP_OLDEST";
+        }
+    }
+
+    private static class Sample implements OverflowPolicy {
+
+        private double probability;
+        private double threshold;
+
+        Sample(double probability, double threshold) {
+
+            this.probability = probability;
+            this.threshold = threshold;
+        }
+
+        @Override
+        public HandOverOutcome enqueue(BlockingQueue<Collected> queue, Collected c) {
+
+            int size = queue.size();
+            int capacity = size + queue.remainingCapacity();
+
+            if (size > threshold * capacity && ThreadLocalRandom.current().nextDouble() >= probability) {
+
+                return HandOverOutcome.DROPPED_SAMPLING;
+            }
+
+            return queue.offer(c) ? HandOverOutcome.ACCEPTED : HandOverOutcome.DROPPED_QUEUE_FULL;
+        }
+
+        @Override
+        public String toString() {
+
+            return "SAMPLE(" + probability + " over " + threshold + ")";
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package io.novaordis.utilities.ac;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Decides what happens when an event is handed over to a bounded collector. The standard policies are available from
+ * OverflowPolicies, but custom implementations can be supplied.
+ *
+ * Implementations must be thread safe, as they are invoked concurrently by all producer threads.
+ *
+ * @see OverflowPolicies
+ */
+public interface OverflowPolicy {
+
+    /**
+     * Attempts to place the event in the bounded queue.
+     *
+     * @return the outcome. Must not be REJECTED_DISPOSED, that outcome is reserved for the collector.
+     *
+     * @exception InterruptedException if the policy waits and the producer thread is interrupted while waiting.
+     */
+    HandOverOutcome enqueue(BlockingQueue<Collected> queue, Collected c) throws InterruptedException;
+
+}
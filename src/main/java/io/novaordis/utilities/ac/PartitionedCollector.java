@@ -0,0 +1,225 @@
+package io.novaordis.utilities.ac;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A Collector that spreads the events over N partitions, each with its own queue and draining thread. The partition is
+ * selected by hashing the key a user-supplied KeyExtractor extracts from the payload, so events with the same key are
+ * always processed, in hand over order, by the same pump, while events with different keys can be processed in
+ * parallel. Events with a null key go to partition 0.
+ *
+ * Registered handlers are invoked concurrently from all draining threads, so they must be thread safe.
+ *
+ * The capacity and the overflow policy apply to each partition individually.
+ *
+ * @see KeyExtractor
+ */
+public class PartitionedCollector extends CollectorBase {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the partition the key maps onto.
+     */
+    static int partition(Object key, int partitionCount) {
+
+        if (key == null) {
+
+            return 0;
+        }
+
+        // spread the higher bits, some hashCode() implementations vary mostly in them
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return (h & 0x7fffffff) % partitionCount;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final KeyExtractor keyExtractor;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final BlockingQueue<Collected>[] partitions;
+
+    private final QueuePump[] pumps;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @see CollectorConfiguration#setPartitionCount(int)
+     * @see CollectorConfiguration#setKeyExtractor(KeyExtractor)
+     */
+    public PartitionedCollector(String name, CollectorConfiguration configuration) {
+
+        super(name, configuration);
+
+        this.keyExtractor = configuration.getKeyExtractor();
+
+        if (keyExtractor == null) {
+
+            throw new IllegalArgumentException("a partitioned collector requires a key extractor");
+        }
+
+        this.overflowPolicy = configuration.getOverflowPolicy();
+
+        int partitionCount = configuration.getPartitionCount();
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        BlockingQueue<Collected>[] queues = new BlockingQueue[partitionCount];
+
+        this.partitions = queues;
+        this.pumps = new QueuePump[partitionCount];
+
+        for(int i = 0; i < partitionCount; i ++) {
+
+            partitions[i] = newQueue(configuration.getCapacity());
+            pumps[i] = new QueuePump(this, partitions[i]);
+        }
+
+        start(pumps);
+    }
+
+    // CollectorBase overrides -----------------------------------------------------------------------------------------
+
+    @Override
+    protected HandOverOutcome enqueue(Object o) {
+
+        return offer(partitions[partitionOf(o)], capture(o));
+    }
+
+    @Override
+    HandOverOutcome enqueue(ProducerBatch batch) {
+
+        return offer(partitions[batch.getPartition()], batch.wrap());
+    }
+
+    @Override
+    boolean tryEnqueue(ProducerBatch batch) {
+
+        return partitions[batch.getPartition()].offer(batch.wrap());
+    }
+
+    @Override
+    HandOverOutcome offer(Collected c) {
+
+        int p = c.isPrimitive() ? partitionOfKey(c.getKey()) : partitionOf(c.getPayload());
+        return offer(partitions[p], c);
+    }
+
+    @Override
+    protected int partitionOf(Object payload) {
+
+        return partition(keyExtractor.getKey(payload), partitions.length);
+    }
+
+    /**
+     * Numeric samples are partitioned by their key, without involving the key extractor.
+     */
+    @Override
+    protected int partitionOfKey(int key) {
+
+        int h = key ^ (key >>> 16);
+        return (h & 0x7fffffff) % partitions.length;
+    }
+
+    /**
+     * @return the total number of events waiting in all partitions.
+     */
+    @Override
+    public int getQueueSize() {
+
+        int size = 0;
+
+        for(BlockingQueue<Collected> p: partitions) {
+
+            size += p.size();
+        }
+
+        return size;
+    }
+
+    @Override
+    protected void wakeUpPumps() {
+
+        for(QueuePump p: pumps) {
+
+            p.wakeUp();
+        }
+    }
+
+    @Override
+    protected void stopPump() {
+
+        for(int i = 0; i < pumps.length; i ++) {
+
+            pumps[i].stop();
+
+            // nobody is going to drain the queue from now on; release the producers that might be blocked on it
+            partitions[i].clear();
+            pumps[i].wakeUp();
+        }
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public int getPartitionCount() {
+
+        return partitions.length;
+    }
+
+    /**
+     * @return the number of events waiting in the given partition.
+     *
+     * @exception ArrayIndexOutOfBoundsException if the partition index is invalid.
+     */
+    public int getQueueSize(int partition) {
+
+        return partitions[partition].size();
+    }
+
+    /**
+     * @return a snapshot of the number of events waiting in each partition, indexed by partition.
+     */
+    public int[] getQueueSizes() {
+
+        int[] result = new int[partitions.length];
+
+        for(int i = 0; i < partitions.length; i ++) {
+
+            result[i] = partitions[i].size();
+        }
+
+        return result;
+    }
+
+    public KeyExtractor getKeyExtractor() {
+
+        return keyExtractor;
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private HandOverOutcome offer(BlockingQueue<Collected> partition, Collected c) {
+
+        try {
+
+            return OverflowPolicies.enqueue(overflowPolicy, partition, c, metrics);
+        }
+        catch(InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            return HandOverOutcome.DROPPED_INTERRUPTED;
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
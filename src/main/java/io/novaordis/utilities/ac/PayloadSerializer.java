@@ -0,0 +1,26 @@
+package io.novaordis.utilities.ac;
+
+/**
+ * Converts payloads to bytes and back, for handlers and collectors that store events outside the heap.
+ *
+ * Implementations must be thread safe.
+ *
+ * @see PayloadSerializers
+ */
+public interface PayloadSerializer {
+
+    /**
+     * @param payload may be null.
+     *
+     * @return the serialized form. Must not be null.
+     *
+     * @exception IllegalArgumentException if the payload cannot be serialized by this serializer.
+     */
+    byte[] serialize(Object payload);
+
+    /**
+     * @exception IllegalArgumentException if the bytes cannot be deserialized by this serializer.
+     */
+    Object deserialize(byte[] bytes, int offset, int length);
+
+}
@@ -0,0 +1,144 @@
+package io.novaordis.utilities.ac;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The standard payload serializers.
+ *
+ * @see PayloadSerializer
+ */
+public class PayloadSerializers {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Stores the UTF-8 encoded toString() representation of the payload. Payloads are deserialized as Strings, and null
+     * payloads are deserialized as null. Cheap, and sufficient when the payloads are only meant to be looked at.
+     */
+    public static PayloadSerializer toStringSerializer() {
+
+        return new ToStringSerializer();
+    }
+
+    /**
+     * Uses Java serialization. The payloads must be Serializable, and are deserialized as instances of their original
+     * classes, which must be available to the reader.
+     */
+    public static PayloadSerializer javaSerializer() {
+
+        return new JavaSerializer();
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private PayloadSerializers() {
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private static class ToStringSerializer implements PayloadSerializer {
+
+        // a null payload is distinguished from the "null" string by a leading marker byte
+        private static final byte NULL = 0;
+        private static final byte NOT_NULL = 1;
+
+        @Override
+        public byte[] serialize(Object payload) {
+
+            if (payload == null) {
+
+                return new byte[] { NULL };
+            }
+
+            byte[] s = payload.toString().getBytes(StandardCharsets.UTF_8);
+            byte[] result = new byte[s.length + 1];
+            result[0] = NOT_NULL;
+            System.arraycopy(s, 0, result, 1, s.length);
+            return result;
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes, int offset, int length) {
+
+            if (length < 1) {
+
+                throw new IllegalArgumentException("invalid serialized payload length " + length);
+            }
+
+            if (bytes[offset] == NULL) {
+
+                return null;
+            }
+
+            return new String(bytes, offset + 1, length - 1, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String toString() {
+
+            return "TO_STRING";
+        }
+    }
+
+    private static class JavaSerializer implements PayloadSerializer {
+
+        @Override
+        public byte[] serialize(Object payload) {
+
+            if (payload != null && !(payload instanceof Serializable)) {
+
+                throw new IllegalArgumentException(payload.getClass().getName() + " is not Serializable");
+            }
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+            try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+
+                oos.writeObject(payload);
+            }
+            catch(IOException e) {
+
+                throw new IllegalArgumentException("failed to serialize " + payload, e);
+            }
+
+            return baos.toByteArray();
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes, int offset, int length) {
+
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+
+                return ois.readObject();
+            }
+            catch(IOException | ClassNotFoundException e) {
+
+                throw new IllegalArgumentException("failed to deserialize payload", e);
+            }
+        }
+
+        @Override
+        public String toString() {
+
+            return "JAVA";
+        }
+    }
+}
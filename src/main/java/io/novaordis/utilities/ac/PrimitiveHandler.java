@@ -0,0 +1,28 @@
+package io.novaordis.utilities.ac;
+
+/**
+ * A handler for the numeric samples handed over with Collector.handOverLong() and Collector.handOverDouble(). The
+ * samples are delivered as primitives, to the PrimitiveHandlers only, so no object is created for them on the way.
+ * PrimitiveHandlers receive the regular events too, as any other handler.
+ *
+ * As with handle(), implementations must not throw exceptions, and must be thread safe if they are registered with
+ * a collector that has more than one draining thread.
+ *
+ * @see Collector#handOverLong(int, long)
+ * @see Collector#handOverDouble(int, double)
+ */
+public interface PrimitiveHandler extends Handler {
+
+    /**
+     * @param timestamp the hand over timestamp.
+     * @param threadId the id of the thread that handed over the sample.
+     */
+    void handleLong(long timestamp, long threadId, int key, long value);
+
+    /**
+     * @param timestamp the hand over timestamp.
+     * @param threadId the id of the thread that handed over the sample.
+     */
+    void handleDouble(long timestamp, long threadId, int key, double value);
+
+}
@@ -0,0 +1,23 @@
+package io.novaordis.utilities.ac;
+
+/**
+ * The priority class of a handed over event. A collector with priority lanes keeps each class in its own lane, and
+ * the pump serves the higher lanes first, so control events - shutdown markers, configuration changes, error signals
+ * - do not queue behind routine traffic. Events handed over without a priority are NORMAL.
+ *
+ * The order of the events is only preserved within a lane.
+ *
+ * @see Collector#handOverWithOutcome(Object, Priority)
+ * @see CollectorConfiguration#setPriorityLanes(boolean)
+ */
+public enum Priority {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    HIGH,
+
+    NORMAL,
+
+    LOW,
+    ;
+}
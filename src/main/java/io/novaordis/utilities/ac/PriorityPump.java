@@ -0,0 +1,159 @@
+package io.novaordis.utilities.ac;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drains the priority lanes of a collector. Each batch is taken from a single lane: the highest non-empty one, unless
+ * a lower lane was passed over for starvation limit batches in a row while it had events waiting, in which case that
+ * lane is served. When all lanes are empty, the pump parks, and the producers unpark it after they place an event in
+ * a lane.
+ *
+ * @see CollectorConfiguration#setPriorityLanes(boolean)
+ */
+class PriorityPump extends QueuePump {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // indexed by Priority ordinal
+    private final BlockingQueue<Collected>[] lanes;
+
+    private final int starvationLimit;
+
+    // the number of consecutive batches taken from higher lanes while the lane had events waiting; only accessed by
+    // the pump thread
+    private final int[] passedOver;
+
+    private volatile Thread thread;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    PriorityPump(CollectorBase collector, BlockingQueue<Collected>[] lanes, int starvationLimit) {
+
+        super(collector, null);
+
+        this.lanes = lanes;
+        this.starvationLimit = starvationLimit;
+        this.passedOver = new int[lanes.length];
+    }
+
+    // QueuePump overrides ---------------------------------------------------------------------------------------------
+
+    @Override
+    public void run() {
+
+        thread = Thread.currentThread();
+        super.run();
+    }
+
+    @Override
+    int drain(List<Collected> batch, int max) {
+
+        int lane = select();
+
+        if (lane < 0) {
+
+            return 0;
+        }
+
+        int drained = lanes[lane].drainTo(batch, max);
+
+        passedOver[lane] = 0;
+
+        for(int i = lane + 1; i < lanes.length; i ++) {
+
+            if (!lanes[i].isEmpty()) {
+
+                passedOver[i] ++;
+            }
+        }
+
+        return drained;
+    }
+
+    /**
+     * Parks until a producer or wakeUp() unparks the pump. The lanes are checked after the pump announced it is
+     * waiting, and the producers check the announcement after they placed the event, so no event is left behind.
+     */
+    @Override
+    Collected await() throws InterruptedException {
+
+        for(BlockingQueue<Collected> lane: lanes) {
+
+            if (!lane.isEmpty()) {
+
+                return null;
+            }
+        }
+
+        LockSupport.park(this);
+
+        if (Thread.interrupted()) {
+
+            throw new InterruptedException();
+        }
+
+        return null;
+    }
+
+    @Override
+    void wakeUp() {
+
+        Thread t = thread;
+
+        if (t != null) {
+
+            LockSupport.unpark(t);
+        }
+    }
+
+    @Override
+    void signal() {
+
+        if (isWaiting()) {
+
+            wakeUp();
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the index of the lane to serve, or -1 if all lanes are empty.
+     */
+    private int select() {
+
+        int highest = -1;
+
+        for(int i = 0; i < lanes.length; i ++) {
+
+            if (lanes[i].isEmpty()) {
+
+                continue;
+            }
+
+            if (highest < 0) {
+
+                highest = i;
+            }
+            else if (passedOver[i] >= starvationLimit) {
+
+                return i;
+            }
+        }
+
+        return highest;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,119 @@
+package io.novaordis.utilities.ac;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A run of events handed over by the same producer thread, published to the pump as one unit when producer batching
+ * is enabled. The unit travels through the collector's queue as the payload of a single Collected, and is expanded
+ * back into the original events, in hand over order and with their original timestamps, before they reach handlers.
+ *
+ * @see CollectorConfiguration#setProducerBatchSize(int)
+ */
+class ProducerBatch {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the given list if it does not contain producer batches, or a new list where each producer batch was
+     *         replaced by its events.
+     */
+    static List<Collected> expand(List<Collected> batch) {
+
+        List<Collected> result = null;
+
+        for(int i = 0; i < batch.size(); i ++) {
+
+            Collected c = batch.get(i);
+            Object payload = c.getPayload();
+
+            if (payload instanceof ProducerBatch) {
+
+                if (result == null) {
+
+                    result = new ArrayList<>(batch.size() + ((ProducerBatch)payload).size);
+                    result.addAll(batch.subList(0, i));
+                }
+
+                ((ProducerBatch)payload).addTo(result);
+            }
+            else if (result != null) {
+
+                result.add(c);
+            }
+        }
+
+        return result == null ? batch : result;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final Collected[] events;
+
+    private final int size;
+
+    // the partition all the events map onto
+    private final int partition;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param events the batch takes ownership of the array.
+     */
+    ProducerBatch(Collected[] events, int size, int partition) {
+
+        this.events = events;
+        this.size = size;
+        this.partition = partition;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return "ProducerBatch[" + size + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    int size() {
+
+        return size;
+    }
+
+    int getPartition() {
+
+        return partition;
+    }
+
+    Collected get(int index) {
+
+        return events[index];
+    }
+
+    /**
+     * @return the unit to be placed in the collector's queue, timestamped with the first event's timestamp.
+     */
+    Collected wrap() {
+
+        return new Collected(events[0].getTimeStamp(), (String)null, this);
+    }
+
+    void addTo(List<Collected> list) {
+
+        for(int i = 0; i < size; i ++) {
+
+            list.add(events[i]);
+        }
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
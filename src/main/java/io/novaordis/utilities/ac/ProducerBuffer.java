@@ -0,0 +1,285 @@
+package io.novaordis.utilities.ac;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The events a producer thread handed over to a collector and that were not yet published, one run per partition.
+ * Each producer thread has its own buffer, so appending only touches memory owned by the producer. The buffer is
+ * published as a ProducerBatch when a run fills up, when the oldest event of a run is older than the flush deadline,
+ * or when the producer calls flush().
+ *
+ * The deadline is checked by the producer on each hand over and by the collector's periodic sweep, which publishes
+ * the runs of producers that stopped handing over events. The lock is only contended while a sweep is in progress,
+ * so on the hand over path it costs an uncontended lock acquisition on a cache line the producer already owns.
+ *
+ * The sweep runs on the maintenance scheduler shared by all collectors, so it never waits: it skips the buffer if the
+ * owner holds the lock, as the owner publishes its runs itself, and it leaves a run buffered if the queue has no room
+ * for it right away. The owner holds the lock while it publishes, which may wait according to the overflow policy,
+ * so the runs of a producer reach the queue in hand over order. A timed dispose publishes the same way as the sweep,
+ * retrying until its deadline.
+ *
+ * @see CollectorConfiguration#setProducerBatchSize(int)
+ */
+class ProducerBuffer {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // how long a timed flush parks between two attempts to place a run in a full queue
+    private static final long RETRY_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final CollectorBase collector;
+
+    private final Thread owner;
+
+    private final int batchSize;
+
+    private final long flushDeadlineMs;
+
+    private final ReentrantLock lock;
+
+    // indexed by partition
+    private final Collected[][] pending;
+    private final int[] counts;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    ProducerBuffer(CollectorBase collector, Thread owner, int partitionCount, int batchSize, long flushDeadlineMs) {
+
+        this.collector = collector;
+        this.owner = owner;
+        this.batchSize = batchSize;
+        this.flushDeadlineMs = flushDeadlineMs;
+        this.lock = new ReentrantLock();
+        this.pending = new Collected[partitionCount][];
+        this.counts = new int[partitionCount];
+
+        for(int i = 0; i < partitionCount; i ++) {
+
+            pending[i] = new Collected[batchSize];
+        }
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return "ProducerBuffer[" + owner.getName() + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * @return ACCEPTED if the event was buffered, or the outcome of the publication, if appending the event filled
+     *         the run.
+     */
+    HandOverOutcome append(Collected c, int partition) {
+
+        lock.lock();
+
+        try {
+
+            int count = counts[partition];
+
+            if (count > 0 && c.getTimeStamp() - pending[partition][0].getTimeStamp() >= flushDeadlineMs) {
+
+                // the deadline expired between two hand overs; the outcome is accounted for in the metrics
+                publish(partition);
+                count = 0;
+            }
+
+            pending[partition][count ++] = c;
+            counts[partition] = count;
+
+            return count == batchSize ? publish(partition) : HandOverOutcome.ACCEPTED;
+        }
+        finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Publishes all runs, in partition order.
+     *
+     * @return the first outcome that was not ACCEPTED, or ACCEPTED if all runs were accepted or there was nothing to
+     *         publish.
+     */
+    HandOverOutcome flush() {
+
+        lock.lock();
+
+        try {
+
+            HandOverOutcome result = HandOverOutcome.ACCEPTED;
+
+            for(int i = 0; i < pending.length; i ++) {
+
+                if (counts[i] > 0) {
+
+                    HandOverOutcome outcome = publish(i);
+
+                    if (result.isAccepted()) {
+
+                        result = outcome;
+                    }
+                }
+            }
+
+            return result;
+        }
+        finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Publishes all runs, in partition order, waiting for the lock and for room in the queue no longer than the
+     * deadline. Invoked by a timed dispose; the runs that could not be published in time stay buffered.
+     *
+     * @param deadline the System.nanoTime() value after which to stop waiting.
+     */
+    void flush(long deadline) throws InterruptedException {
+
+        if (!lock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+
+            return;
+        }
+
+        try {
+
+            for(int i = 0; i < pending.length; i ++) {
+
+                while(counts[i] > 0 && !collector.tryPublish(new ProducerBatch(pending[i], counts[i], i))) {
+
+                    long remaining = deadline - System.nanoTime();
+
+                    if (remaining <= 0) {
+
+                        return;
+                    }
+
+                    LockSupport.parkNanos(Math.min(remaining, RETRY_INTERVAL_NS));
+                }
+
+                if (counts[i] > 0) {
+
+                    detach(i);
+                }
+            }
+        }
+        finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Publishes the runs whose oldest event is older than the deadline, without waiting: if the owner holds the lock
+     * the buffer is skipped, and a run the queue has no room for stays buffered, for the next sweep or the owner's
+     * next hand over.
+     *
+     * @param now a timestamp read from the same clock as the events' timestamps.
+     */
+    void flushExpired(long now) {
+
+        if (!lock.tryLock()) {
+
+            return;
+        }
+
+        try {
+
+            for(int i = 0; i < pending.length; i ++) {
+
+                if (counts[i] > 0 && now - pending[i][0].getTimeStamp() >= flushDeadlineMs) {
+
+                    if (collector.tryPublish(new ProducerBatch(pending[i], counts[i], i))) {
+
+                        detach(i);
+                    }
+                }
+            }
+        }
+        finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the buffered events.
+     */
+    void discard() {
+
+        lock.lock();
+
+        try {
+
+            for(int i = 0; i < pending.length; i ++) {
+
+                Arrays.fill(pending[i], 0, counts[i], null);
+                counts[i] = 0;
+            }
+        }
+        finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Not locked, the result may be stale by the time it is returned.
+     */
+    int size() {
+
+        int size = 0;
+
+        for(int c: counts) {
+
+            size += c;
+        }
+
+        return size;
+    }
+
+    /**
+     * @return true if the owner thread died and there is nothing left to publish.
+     */
+    boolean isAbandoned() {
+
+        return !owner.isAlive() && size() == 0;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private HandOverOutcome publish(int partition) {
+
+        ProducerBatch batch = new ProducerBatch(pending[partition], counts[partition], partition);
+        detach(partition);
+
+        return collector.publish(batch);
+    }
+
+    /**
+     * The batch took over the run's array, the next run starts in a fresh one.
+     */
+    private void detach(int partition) {
+
+        pending[partition] = new Collected[batchSize];
+        counts[partition] = 0;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,218 @@
+package io.novaordis.utilities.ac;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drains a blocking queue on a dedicated thread, in batches of at most maxBatchSize events, and pushes the batches to
+ * the collector's handlers. Subclasses that drain more than one queue override drain(), await() and wakeUp().
+ */
+class QueuePump implements Runnable {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // placed in the queue to release a pump blocked in take(), never handed to handlers
+    static final Collected WAKE_UP = new Collected(0L, (String)null, null);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final CollectorBase collector;
+
+    // null if the subclass overrides drain(), await() and wakeUp()
+    private final BlockingQueue<Collected> queue;
+
+    private volatile boolean active;
+
+    // true while the pump is blocked, or about to block, in take()
+    private volatile boolean waiting;
+
+    // the number of WAKE_UPs placed in the queue and not yet taken out; the pump only filters its batches while
+    // there are any
+    private final AtomicInteger wakeUps;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    QueuePump(CollectorBase collector, BlockingQueue<Collected> queue) {
+
+        this.collector = collector;
+        this.queue = queue;
+        this.active = true;
+        this.wakeUps = new AtomicInteger();
+    }
+
+    // Runnable implementation -----------------------------------------------------------------------------------------
+
+    @Override
+    public void run() {
+
+        int maxBatchSize = collector.maxBatchSize;
+
+        List<Collected> batch = new ArrayList<>(maxBatchSize);
+
+        // attempt to read the queue forever and dump everything that comes from it
+
+        while(active) {
+
+            if (drain(batch, maxBatchSize) == 0 && !refill(batch)) {
+
+                if (collector.draining) {
+
+                    // everything handed over before the draining dispose was processed
+                    break;
+                }
+
+                Collected c;
+
+                // the flags are checked after announcing the wait, and wakeUp() checks the announcement after setting
+                // them, so either the pump sees the flags or wakeUp() sees the pump waiting
+                waiting = true;
+
+                try {
+
+                    if (!active || collector.draining) {
+
+                        continue;
+                    }
+
+                    c = await();
+                }
+                catch(InterruptedException e) {
+
+                    // nothing, sleep a bit and go back to the queue
+
+                    try {
+
+                        Thread.sleep(CollectorBase.PUMP_SLEEP_AFTER_INTERRUPTED_EXCEPTION_MS);
+                    }
+                    catch(InterruptedException e2) {
+
+                        // nothing
+                    }
+
+                    continue;
+                }
+                finally {
+
+                    waiting = false;
+                }
+
+                if (c == WAKE_UP) {
+
+                    wakeUps.decrementAndGet();
+                    continue;
+                }
+
+                if (c == null) {
+
+                    continue;
+                }
+
+                // take whatever else accumulated in the queue since the last wake-up, without blocking
+
+                batch.add(c);
+                drain(batch, maxBatchSize - 1);
+            }
+
+            if (wakeUps.get() > 0) {
+
+                int size = batch.size();
+
+                if (batch.removeIf(e -> e == WAKE_UP)) {
+
+                    wakeUps.addAndGet(batch.size() - size);
+                }
+            }
+
+            if (!batch.isEmpty()) {
+
+                collector.processBatch(batch);
+            }
+
+            batch.clear();
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    void stop() {
+
+        active = false;
+    }
+
+    /**
+     * Releases the pump if it is blocked waiting for events, so it notices that it was stopped or that the collector
+     * is draining. Must be invoked after the flag the pump is expected to notice was set.
+     */
+    void wakeUp() {
+
+        if (waiting) {
+
+            wakeUps.incrementAndGet();
+
+            if (!queue.offer(WAKE_UP)) {
+
+                // the queue is full, so the pump is not blocked
+                wakeUps.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Moves at most max events into the batch, without blocking.
+     *
+     * @return the number of events added to the batch.
+     */
+    int drain(List<Collected> batch, int max) {
+
+        return queue.drainTo(batch, max);
+    }
+
+    /**
+     * Blocks until an event is available, or until the pump is woken up.
+     *
+     * @return the next event, WAKE_UP, or null if the pump should just drain again.
+     */
+    Collected await() throws InterruptedException {
+
+        return queue.take();
+    }
+
+    /**
+     * Invoked by the producers after they placed an event in the queue. The pump blocks in take(), so the queue
+     * itself releases it.
+     */
+    void signal() {
+
+        // noop
+    }
+
+    /**
+     * @return true if the pump is blocked, or about to block, in await().
+     */
+    boolean isWaiting() {
+
+        return waiting;
+    }
+
+    /**
+     * Invoked when the queue is empty, before the pump blocks waiting for events. Subclasses that keep events outside
+     * the queue use it to hand them to the pump.
+     *
+     * @return true if events were added to the batch.
+     */
+    boolean refill(List<Collected> batch) {
+
+        return false;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,224 @@
+package io.novaordis.utilities.ac;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A pre-allocated, multi-producer/single-consumer ring of Collected slots.
+ *
+ * Producers claim a sequence by CAS-ing the producer cursor, fill the corresponding slot and then publish the sequence
+ * into the slot's availability entry. The single consumer walks the sequences in order, reads a slot only after its
+ * sequence was published, and advances the consumer cursor, which frees the slot for producers. No locks are involved
+ * and no memory is allocated after construction.
+ *
+ * The slot contents must not be accessed by the consumer after release() is called.
+ */
+class RingBuffer {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the smallest power of two greater or equal with the argument.
+     */
+    static int toPowerOfTwo(int capacity) {
+
+        if (capacity <= 0) {
+
+            throw new IllegalArgumentException("invalid ring buffer capacity " + capacity);
+        }
+
+        int result = Integer.highestOneBit(capacity);
+        return result == capacity ? result : result << 1;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final int capacity;
+    private final int mask;
+
+    private final Collected[] slots;
+
+    // the sequence that was last published into each slot
+    private final AtomicLongArray published;
+
+    // the next sequence to be claimed by a producer
+    private final AtomicLong producerCursor;
+
+    // the next sequence to be consumed; written only by the consumer
+    private final AtomicLong consumerCursor;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param capacity will be rounded up to the nearest power of two.
+     */
+    RingBuffer(int capacity) {
+
+        this.capacity = toPowerOfTwo(capacity);
+        this.mask = this.capacity - 1;
+        this.slots = new Collected[this.capacity];
+        this.published = new AtomicLongArray(this.capacity);
+
+        for(int i = 0; i < this.capacity; i ++) {
+
+            slots[i] = new Collected(-1L, null, null);
+            published.set(i, -1L);
+        }
+
+        this.producerCursor = new AtomicLong(0L);
+        this.consumerCursor = new AtomicLong(0L);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    int getCapacity() {
+
+        return capacity;
+    }
+
+    /**
+     * @return the number of claimed but not yet consumed slots. It is a snapshot, may be stale by the time it is used.
+     */
+    int size() {
+
+        long size = producerCursor.get() - consumerCursor.get();
+        return size < 0 ? 0 : (int)size;
+    }
+
+    // producer side ---------------------------------------------------------------------------------------------------
+
+    /**
+     * Attempts to claim the next slot.
+     *
+     * @return the claimed sequence, or -1 if the ring is full.
+     */
+    long tryClaim() {
+
+        while(true) {
+
+            long sequence = producerCursor.get();
+
+            if (sequence - capacity >= consumerCursor.get()) {
+
+                return -1L;
+            }
+
+            if (producerCursor.compareAndSet(sequence, sequence + 1)) {
+
+                return sequence;
+            }
+        }
+    }
+
+    /**
+     * Fills the slot corresponding to a previously claimed sequence and makes it visible to the consumer. Must be
+     * called exactly once for each claimed sequence, otherwise the consumer will stall at that sequence.
+     */
+    void publish(long sequence, long timestamp, String threadName, Object payload) {
+
+        int index = (int)sequence & mask;
+        slots[index].set(timestamp, threadName, payload);
+
+        // the ordered write makes the slot content visible before the sequence
+        published.lazySet(index, sequence);
+    }
+
+    /**
+     * Same as publish(long, long, String, Object), for events captured with the thread id instead of the thread name.
+     *
+     * @see CaptureMode#COARSE
+     */
+    void publish(long sequence, long timestamp, long threadId, Object payload) {
+
+        int index = (int)sequence & mask;
+        slots[index].set(timestamp, threadId, payload);
+        published.lazySet(index, sequence);
+    }
+
+    /**
+     * Same as publish(long, long, String, Object), for numeric samples.
+     */
+    void publishLong(long sequence, long timestamp, long threadId, int key, long value) {
+
+        int index = (int)sequence & mask;
+        slots[index].setLong(timestamp, threadId, key, value);
+        published.lazySet(index, sequence);
+    }
+
+    /**
+     * Same as publish(long, long, String, Object), for numeric samples.
+     */
+    void publishDouble(long sequence, long timestamp, long threadId, int key, double value) {
+
+        int index = (int)sequence & mask;
+        slots[index].setDouble(timestamp, threadId, key, value);
+        published.lazySet(index, sequence);
+    }
+
+    // consumer side ---------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the next published slot, in sequence order, or null if the next sequence was not published yet. The slot
+     *         must be released with release() after it has been processed, and before the next call to poll().
+     */
+    Collected poll() {
+
+        return peek(0);
+    }
+
+    /**
+     * @param offset the position relative to the next sequence to be consumed.
+     *
+     * @return the published slot at the given offset, or null if that sequence was not published yet. The consumer
+     *         can use it to collect a batch of contiguous published slots, which must then be released together.
+     */
+    Collected peek(int offset) {
+
+        if (offset >= capacity) {
+
+            return null;
+        }
+
+        long sequence = consumerCursor.get() + offset;
+        int index = (int)sequence & mask;
+
+        if (published.get(index) != sequence) {
+
+            return null;
+        }
+
+        return slots[index];
+    }
+
+    /**
+     * Releases the slot returned by the last poll(), making it available to producers.
+     */
+    void release() {
+
+        release(1);
+    }
+
+    /**
+     * Releases count slots, starting with the next sequence to be consumed, making them available to producers.
+     */
+    void release(int count) {
+
+        long sequence = consumerCursor.get();
+
+        for(int i = 0; i < count; i ++) {
+
+            slots[(int)(sequence + i) & mask].clear();
+        }
+
+        consumerCursor.lazySet(sequence + count);
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,370 @@
+package io.novaordis.utilities.ac;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Collector backed by a pre-allocated multi-producer/single-consumer ring buffer. handOver() does not allocate and
+ * does not lock: the producer claims a slot with a CAS, fills it and publishes it. The pump thread waits for events
+ * using the configured wait strategy. If the ring is full, the producer waits for the pump to free up slots using the
+ * same strategy, except BUSY_SPIN, which is downgraded to YIELD on the producer side: spinning producers would steal
+ * cycles from the very pump they are waiting for.
+ *
+ * The ring is bounded by construction, and a full ring always blocks the producer, so events are never dropped.
+ *
+ * Numeric samples handed over with handOverLong() and handOverDouble() are written as primitives into the slots, and
+ * the pump dispatches them to PrimitiveHandlers straight from the slots, so at steady state neither the producers nor
+ * the pump allocate memory for them. Producer batching, if enabled, takes precedence and does allocate.
+ *
+ * The slots are the ring's own Collected pool, so the collector does not support the configurable pooling.
+ *
+ * @see RingBuffer
+ * @see WaitStrategy
+ */
+public class RingBufferCollector extends CollectorBase {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final RingBuffer ringBuffer;
+
+    private final WaitStrategy waitStrategy;
+
+    private final WaitStrategy producerWaitStrategy;
+
+    private Pump pump;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Constructs a collector with the default capacity, PARK wait strategy and default draining thread priority.
+     */
+    public RingBufferCollector(String name) {
+
+        this(name, DEFAULT_CAPACITY, WaitStrategy.PARK, -1);
+    }
+
+    /**
+     * @param capacity the ring buffer capacity. Will be rounded up to the nearest power of two.
+     * @param drainingThreadPriority - between Thread.MIN_PRIORITY and Thread.MAX_PRIORITY. If -1, use default priority.
+     */
+    public RingBufferCollector(String name, int capacity, WaitStrategy waitStrategy, int drainingThreadPriority) {
+
+        this(name, configuration(capacity, waitStrategy, drainingThreadPriority));
+    }
+
+    /**
+     * @see CollectorConfiguration
+     *
+     * @exception IllegalArgumentException if the configuration enables pooling.
+     */
+    public RingBufferCollector(String name, CollectorConfiguration configuration) {
+
+        super(name, checkNotPooled(configuration));
+
+        this.ringBuffer = new RingBuffer(configuration.getRingBufferCapacity());
+        this.waitStrategy = configuration.getWaitStrategy();
+        this.producerWaitStrategy = WaitStrategy.BUSY_SPIN.equals(waitStrategy) ? WaitStrategy.YIELD : waitStrategy;
+        this.pump = new Pump();
+
+        start(pump);
+    }
+
+    // CollectorBase overrides -----------------------------------------------------------------------------------------
+
+    @Override
+    protected HandOverOutcome enqueue(Object o) {
+
+        // assign timestamp at the collection time, as object may spend time in the ring waiting to be processed
+
+        long timestamp = timestamp();
+
+        long sequence = claim();
+
+        if (sequence < 0) {
+
+            return HandOverOutcome.REJECTED_DISPOSED;
+        }
+
+        if (CaptureMode.COARSE.equals(getCaptureMode())) {
+
+            ringBuffer.publish(sequence, timestamp, Thread.currentThread().getId(), o);
+        }
+        else {
+
+            ringBuffer.publish(sequence, timestamp, Thread.currentThread().getName(), o);
+        }
+
+        return HandOverOutcome.ACCEPTED;
+    }
+
+    /**
+     * Writes the sample into a slot, does not allocate.
+     */
+    @Override
+    public boolean handOverLong(int key, long value) {
+
+        if (getProducerBatchSize() > 1) {
+
+            return super.handOverLong(key, value);
+        }
+
+        HandOverOutcome outcome = HandOverOutcome.REJECTED_DISPOSED;
+
+        if (!outOfBusiness) {
+
+            long timestamp = timestamp();
+            long sequence = claim();
+
+            if (sequence >= 0) {
+
+                ringBuffer.publishLong(sequence, timestamp, Thread.currentThread().getId(), key, value);
+                outcome = HandOverOutcome.ACCEPTED;
+            }
+        }
+
+        metrics.recordOutcome(outcome);
+        return outcome.isAccepted();
+    }
+
+    /**
+     * Writes the sample into a slot, does not allocate.
+     */
+    @Override
+    public boolean handOverDouble(int key, double value) {
+
+        if (getProducerBatchSize() > 1) {
+
+            return super.handOverDouble(key, value);
+        }
+
+        HandOverOutcome outcome = HandOverOutcome.REJECTED_DISPOSED;
+
+        if (!outOfBusiness) {
+
+            long timestamp = timestamp();
+            long sequence = claim();
+
+            if (sequence >= 0) {
+
+                ringBuffer.publishDouble(sequence, timestamp, Thread.currentThread().getId(), key, value);
+                outcome = HandOverOutcome.ACCEPTED;
+            }
+        }
+
+        metrics.recordOutcome(outcome);
+        return outcome.isAccepted();
+    }
+
+    @Override
+    HandOverOutcome offer(Collected c) {
+
+        long sequence = claim();
+
+        if (sequence < 0) {
+
+            return HandOverOutcome.REJECTED_DISPOSED;
+        }
+
+        if (c.isDouble()) {
+
+            ringBuffer.publishDouble(sequence, c.getTimeStamp(), c.getThreadId(), c.getKey(), c.getDoubleValue());
+        }
+        else if (c.isPrimitive()) {
+
+            ringBuffer.publishLong(sequence, c.getTimeStamp(), c.getThreadId(), c.getKey(), c.getLongValue());
+        }
+        else if (c.getThreadId() >= 0) {
+
+            ringBuffer.publish(sequence, c.getTimeStamp(), c.getThreadId(), c.getPayload());
+        }
+        else {
+
+            ringBuffer.publish(sequence, c.getTimeStamp(), c.getThreadName(), c.getPayload());
+        }
+
+        return HandOverOutcome.ACCEPTED;
+    }
+
+    /**
+     * The batch occupies a single slot.
+     */
+    @Override
+    HandOverOutcome enqueue(ProducerBatch batch) {
+
+        long sequence = claim();
+
+        if (sequence < 0) {
+
+            return HandOverOutcome.REJECTED_DISPOSED;
+        }
+
+        ringBuffer.publish(sequence, batch.get(0).getTimeStamp(), (String)null, batch);
+        return HandOverOutcome.ACCEPTED;
+    }
+
+    @Override
+    boolean tryEnqueue(ProducerBatch batch) {
+
+        long sequence = ringBuffer.tryClaim();
+
+        if (sequence < 0) {
+
+            return false;
+        }
+
+        ringBuffer.publish(sequence, batch.get(0).getTimeStamp(), (String)null, batch);
+        return true;
+    }
+
+    @Override
+    public int getQueueSize() {
+
+        return ringBuffer.size();
+    }
+
+    @Override
+    protected void stopPump() {
+
+        pump.stop();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the actual capacity of the ring buffer, which is a power of two.
+     */
+    public int getCapacity() {
+
+        return ringBuffer.getCapacity();
+    }
+
+    public WaitStrategy getWaitStrategy() {
+
+        return waitStrategy;
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Waits for a free slot.
+     *
+     * @return the claimed sequence, or -1 if the collector was disposed while waiting.
+     */
+    private long claim() {
+
+        long sequence;
+        int attempt = 0;
+
+        while((sequence = ringBuffer.tryClaim()) < 0) {
+
+            if (outOfBusiness) {
+
+                return -1L;
+            }
+
+            attempt = producerWaitStrategy.idle(attempt);
+        }
+
+        return sequence;
+    }
+
+    private static CollectorConfiguration configuration(
+            int capacity, WaitStrategy waitStrategy, int drainingThreadPriority) {
+
+        CollectorConfiguration c = new CollectorConfiguration();
+        c.setType(CollectorType.RING_BUFFER);
+        c.setRingBufferCapacity(capacity);
+        c.setWaitStrategy(waitStrategy);
+        c.setDrainingThreadPriority(drainingThreadPriority);
+        return c;
+    }
+
+    private static CollectorConfiguration checkNotPooled(CollectorConfiguration configuration) {
+
+        if (configuration != null && configuration.getPoolCapacity() != 0) {
+
+            throw new IllegalArgumentException("ring buffer collectors do not support pooling, they reuse their slots");
+        }
+
+        return configuration;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private class Pump implements Runnable {
+
+        private volatile boolean active;
+
+        Pump() {
+
+            this.active = true;
+        }
+
+        @Override
+        public void run() {
+
+            // the batch holds references to ring slots, it does not copy them
+            List<Collected> batch = new ArrayList<>(maxBatchSize);
+
+            int attempt = 0;
+
+            while(active) {
+
+                Collected c;
+                int slots = 0;
+
+                while(slots < maxBatchSize && (c = ringBuffer.peek(slots)) != null) {
+
+                    slots ++;
+
+                    if (c.isPrimitive()) {
+
+                        // samples are dispatched from the slot, as soon as they are found
+                        process(c);
+                    }
+                    else {
+
+                        batch.add(c);
+                    }
+                }
+
+                if (slots == 0) {
+
+                    if (draining) {
+
+                        // everything handed over before the draining dispose was processed
+                        break;
+                    }
+
+                    attempt = waitStrategy.idle(attempt);
+                    continue;
+                }
+
+                attempt = 0;
+
+                if (!batch.isEmpty()) {
+
+                    processBatch(batch);
+                }
+
+                ringBuffer.release(slots);
+                batch.clear();
+            }
+        }
+
+        void stop() {
+
+            active = false;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package io.novaordis.utilities.ac;
+
+import java.io.File;
+
+/**
+ * The settings of a collector's disk spill: where the spill segments are written, the in-memory queue size above which
+ * events are spilled, the segment size and the serializer used to write the payloads.
+ *
+ * Not thread safe, it is supposed to be populated and then passed to the collector configuration on the same thread.
+ * The collector copies the values it needs, so an instance can be reused.
+ *
+ * @see CollectorConfiguration#setSpill(SpillConfiguration)
+ */
+public class SpillConfiguration {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final String DEFAULT_PREFIX = "spill";
+
+    public static final int DEFAULT_HIGH_WATERMARK = 10000;
+
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private File directory;
+
+    private String prefix;
+
+    private int highWatermark;
+
+    private int segmentSize;
+
+    private PayloadSerializer serializer;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param directory the directory the spill segments are written into. Will be created if it does not exist.
+     */
+    public SpillConfiguration(File directory) {
+
+        setDirectory(directory);
+        this.prefix = DEFAULT_PREFIX;
+        this.highWatermark = DEFAULT_HIGH_WATERMARK;
+        this.segmentSize = DEFAULT_SEGMENT_SIZE;
+        this.serializer = PayloadSerializers.javaSerializer();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public File getDirectory() {
+
+        return directory;
+    }
+
+    public void setDirectory(File directory) {
+
+        if (directory == null) {
+
+            throw new IllegalArgumentException("null directory");
+        }
+
+        this.directory = directory;
+    }
+
+    /**
+     * @return the prefix of the segment file names.
+     */
+    public String getPrefix() {
+
+        return prefix;
+    }
+
+    /**
+     * Collectors spilling into the same directory must use different prefixes. Segment files with this prefix found
+     * in the directory when the collector starts are left over by a previous run, and are deleted.
+     */
+    public void setPrefix(String prefix) {
+
+        if (prefix == null || prefix.isEmpty()) {
+
+            throw new IllegalArgumentException("null or empty prefix");
+        }
+
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return the number of events in the in-memory queue above which newly handed over events are spilled to disk.
+     */
+    public int getHighWatermark() {
+
+        return highWatermark;
+    }
+
+    /**
+     * @param highWatermark must not exceed the collector's capacity.
+     */
+    public void setHighWatermark(int highWatermark) {
+
+        if (highWatermark <= 0) {
+
+            throw new IllegalArgumentException("invalid high watermark " + highWatermark);
+        }
+
+        this.highWatermark = highWatermark;
+    }
+
+    /**
+     * @return the size, in bytes, above which a spill segment is closed and a new one is started.
+     */
+    public int getSegmentSize() {
+
+        return segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+
+        if (segmentSize <= 0) {
+
+            throw new IllegalArgumentException("invalid segment size " + segmentSize);
+        }
+
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * @return the serializer the spilled payloads are written with. Defaults to Java serialization, so the replayed
+     *         payloads are instances of their original classes.
+     */
+    public PayloadSerializer getSerializer() {
+
+        return serializer;
+    }
+
+    /**
+     * Payloads the serializer cannot handle are dropped if they have to be spilled.
+     *
+     * @see PayloadSerializers
+     */
+    public void setSerializer(PayloadSerializer serializer) {
+
+        if (serializer == null) {
+
+            throw new IllegalArgumentException("null serializer");
+        }
+
+        this.serializer = serializer;
+    }
+
+    @Override
+    public String toString() {
+
+        return "SpillConfiguration[" + directory + "/" + prefix + "]";
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
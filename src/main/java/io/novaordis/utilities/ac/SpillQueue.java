@@ -0,0 +1,553 @@
+package io.novaordis.utilities.ac;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * An append-only, segmented, on-disk FIFO of events, used by collectors to move events out of the heap when the pump
+ * falls behind.
+ *
+ * The events are written in segment files named <prefix>-<index>.spill, as length-prefixed records:
+ *
+ *   int length (of what follows, not including the length itself), byte kind, long timestamp, long thread id,
+ *   int thread name length (-1 for no name), UTF-8 thread name, and either int key and long value bits (numeric
+ *   samples) or the serialized payload (regular events).
+ *
+ * Appended records accumulate in a write buffer, which is written to the current segment when it fills up, or when
+ * the reader catches up with it. When the current segment exceeds the segment size, a new segment is started. A
+ * segment is deleted as soon as all its events were read, and the last segment is deleted when the queue becomes
+ * empty, so an idle queue leaves no files behind.
+ *
+ * Producer batches are spilled as their individual events, all or nothing, in the same segment. The methods are
+ * synchronized.
+ *
+ * @see SpillConfiguration
+ */
+class SpillQueue {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    static final String SEGMENT_SUFFIX = ".spill";
+
+    private static final byte OBJECT = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+
+    // kind + timestamp + thread id + thread name length
+    private static final int RECORD_FIXED_LENGTH = 21;
+
+    // key + value
+    private static final int SAMPLE_LENGTH = 12;
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    static String segmentName(String prefix, long index) {
+
+        return prefix + "-" + String.format("%010d", index) + SEGMENT_SUFFIX;
+    }
+
+    static boolean isSegmentName(String prefix, String name) {
+
+        if (!name.startsWith(prefix + "-") || !name.endsWith(SEGMENT_SUFFIX)) {
+
+            return false;
+        }
+
+        String index = name.substring(prefix.length() + 1, name.length() - SEGMENT_SUFFIX.length());
+
+        if (index.isEmpty()) {
+
+            return false;
+        }
+
+        for(int i = 0; i < index.length(); i ++) {
+
+            if (!Character.isDigit(index.charAt(i))) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final File directory;
+
+    private final String prefix;
+
+    private final int segmentSize;
+
+    private final PayloadSerializer serializer;
+
+    // oldest first, the last one is the one being written
+    private final ArrayDeque<Segment> segments;
+
+    private long nextSegmentIndex;
+
+    // records appended to the last segment, but not yet written to its file
+    private ByteBuffer writeBuffer;
+
+    private ByteBuffer readBuffer;
+
+    // the number of events in the queue
+    private long size;
+
+    private boolean closed;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Creates the directory if it does not exist, and deletes the segments left over by a previous run.
+     */
+    SpillQueue(SpillConfiguration configuration) throws IOException {
+
+        this.directory = configuration.getDirectory();
+        this.prefix = configuration.getPrefix();
+        this.segmentSize = configuration.getSegmentSize();
+        this.serializer = configuration.getSerializer();
+        this.segments = new ArrayDeque<>();
+        this.writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        this.readBuffer = ByteBuffer.allocate(1024);
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+
+            throw new IOException("failed to create directory " + directory);
+        }
+
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+
+            for(File f: files) {
+
+                if (f.isFile() && isSegmentName(prefix, f.getName())) {
+
+                    System.err.println("[warning] " + this + " deleting stale spill segment " + f);
+
+                    if (!f.delete()) {
+
+                        throw new IOException("failed to delete stale spill segment " + f);
+                    }
+                }
+            }
+        }
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return "SpillQueue[" + directory + "/" + prefix + "]";
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * A producer batch is appended all or nothing: all its events are serialized, and room for all of them is made in
+     * the write buffer, before any is appended, so a failure leaves the queue unchanged.
+     *
+     * @return the number of bytes the event, or all the events of the producer batch, occupy on disk.
+     *
+     * @exception IllegalArgumentException if a payload cannot be serialized.
+     * @exception IOException if the event could not be written, or if the queue was closed.
+     */
+    synchronized int append(Collected c) throws IOException {
+
+        if (closed) {
+
+            throw new IOException(this + " closed");
+        }
+
+        ProducerBatch batch = c.getPayload() instanceof ProducerBatch ? (ProducerBatch)c.getPayload() : null;
+
+        int count = batch == null ? 1 : batch.size();
+
+        byte[][] names = new byte[count][];
+        byte[][] serialized = new byte[count][];
+        int bytes = 0;
+
+        for(int i = 0; i < count; i ++) {
+
+            Collected e = batch == null ? c : batch.get(i);
+
+            // threads captured by id are resolved to names on replay, as they would have been without spilling
+            names[i] = e.getThreadId() >= 0 || e.getThreadName() == null ?
+                    null : e.getThreadName().getBytes(StandardCharsets.UTF_8);
+
+            serialized[i] = e.isPrimitive() ? null : serializer.serialize(e.getPayload());
+
+            bytes += 4 + recordLength(names[i], serialized[i]);
+        }
+
+        // the events of a producer batch go to the same segment
+        Segment segment = segments.peekLast();
+
+        if (segment == null || segment.failed || (segment.records > 0 && segment.length + bytes > segmentSize)) {
+
+            segment = openNextSegment();
+        }
+
+        if (writeBuffer.remaining() < bytes) {
+
+            flush();
+
+            if (writeBuffer.capacity() < bytes) {
+
+                writeBuffer = ByteBuffer.allocate(bytes);
+            }
+        }
+
+        for(int i = 0; i < count; i ++) {
+
+            put(batch == null ? c : batch.get(i), names[i], serialized[i]);
+        }
+
+        segment.length += bytes;
+        segment.records += count;
+        size += count;
+
+        return bytes;
+    }
+
+    /**
+     * Reads events, in the order they were appended, and deletes the segments that were entirely read. Events whose
+     * payload cannot be deserialized are reported on stderr and skipped. If a segment cannot be read, the problem is
+     * reported on stderr and the rest of the segment is skipped.
+     *
+     * @param max the maximum number of events to read.
+     *
+     * @return the number of bytes read.
+     */
+    synchronized int poll(List<Collected> destination, int max) {
+
+        int bytes = 0;
+
+        for(int i = 0; i < max && size > 0; i ++) {
+
+            Segment segment = segments.peekFirst();
+
+            if (segment.read == segment.records) {
+
+                delete(segments.pollFirst());
+                i --;
+                continue;
+            }
+
+            try {
+
+                if (segment.readPosition == segment.written) {
+
+                    // the reader caught up with the write buffer
+                    flush();
+                }
+
+                bytes += read(segment, destination);
+            }
+            catch(IOException e) {
+
+                System.err.println(
+                        "[warning] " + this + " failed to read " + segment.file + " at " + segment.readPosition + ", " +
+                                (segment.records - segment.read) + " spilled events lost: " + e);
+
+                size -= segment.records - segment.read;
+                segment.read = segment.records;
+                segment.failed = true;
+
+                if (segment == segments.peekLast()) {
+
+                    writeBuffer.clear();
+                }
+            }
+        }
+
+        if (size == 0) {
+
+            // the next spill starts a new segment
+            while(!segments.isEmpty()) {
+
+                delete(segments.pollFirst());
+            }
+
+            writeBuffer.clear();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * @return the number of events in the queue.
+     */
+    synchronized long size() {
+
+        return size;
+    }
+
+    /**
+     * @return the number of segment files currently on disk.
+     */
+    synchronized int getSegmentCount() {
+
+        return segments.size();
+    }
+
+    /**
+     * Discards the events in the queue and deletes the segments. Appending after close fails.
+     */
+    synchronized void close() {
+
+        closed = true;
+
+        while(!segments.isEmpty()) {
+
+            delete(segments.pollFirst());
+        }
+
+        writeBuffer.clear();
+        size = 0;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Reads the record at the segment's read position.
+     *
+     * @return the length of the record, including the length prefix.
+     */
+    private int read(Segment segment, List<Collected> destination) throws IOException {
+
+        ByteBuffer b = readBuffer;
+        b.clear();
+        b.limit(4);
+        readFully(segment.channel, b, segment.readPosition);
+
+        int length = b.getInt(0);
+
+        if (length < RECORD_FIXED_LENGTH || segment.readPosition + 4 + length > segment.written) {
+
+            throw new IOException("invalid record length " + length);
+        }
+
+        if (readBuffer.capacity() < length) {
+
+            readBuffer = ByteBuffer.allocate(Math.max(length, 2 * readBuffer.capacity()));
+        }
+
+        b = readBuffer;
+        b.clear();
+        b.limit(length);
+        readFully(segment.channel, b, segment.readPosition + 4);
+        b.flip();
+
+        segment.readPosition += 4 + length;
+        segment.read ++;
+        size --;
+
+        byte kind = b.get();
+        long timestamp = b.getLong();
+        long threadId = b.getLong();
+        int nameLength = b.getInt();
+
+        if (nameLength > b.remaining()) {
+
+            throw new IOException("invalid thread name length " + nameLength);
+        }
+
+        String threadName = null;
+
+        if (nameLength >= 0) {
+
+            threadName = new String(b.array(), b.position(), nameLength, StandardCharsets.UTF_8);
+            b.position(b.position() + nameLength);
+        }
+
+        if (kind == LONG || kind == DOUBLE) {
+
+            if (b.remaining() != SAMPLE_LENGTH) {
+
+                throw new IOException("invalid sample record length " + length);
+            }
+
+            int key = b.getInt();
+            long value = b.getLong();
+
+            destination.add(kind == LONG ?
+                    Collected.ofLong(timestamp, threadId, key, value) :
+                    Collected.ofDouble(timestamp, threadId, key, Double.longBitsToDouble(value)));
+
+            return 4 + length;
+        }
+
+        if (kind != OBJECT) {
+
+            throw new IOException("invalid record kind " + kind);
+        }
+
+        Object payload;
+
+        try {
+
+            payload = serializer.deserialize(b.array(), b.position(), b.remaining());
+        }
+        catch(IllegalArgumentException e) {
+
+            System.err.println("[warning] " + this + " failed to deserialize spilled payload, skipping it: " + e);
+            return 4 + length;
+        }
+
+        destination.add(threadId >= 0 ?
+                new Collected(timestamp, threadId, payload) : new Collected(timestamp, threadName, payload));
+
+        return 4 + length;
+    }
+
+    /**
+     * @return the length of the record, not including the length prefix.
+     */
+    private static int recordLength(byte[] name, byte[] serialized) {
+
+        return RECORD_FIXED_LENGTH + (name == null ? 0 : name.length) +
+                (serialized == null ? SAMPLE_LENGTH : serialized.length);
+    }
+
+    /**
+     * Appends the record to the write buffer, which must have room for it.
+     */
+    private void put(Collected c, byte[] name, byte[] serialized) {
+
+        writeBuffer.putInt(recordLength(name, serialized));
+        writeBuffer.put(c.isDouble() ? DOUBLE : c.isPrimitive() ? LONG : OBJECT);
+        writeBuffer.putLong(c.getTimeStamp());
+        writeBuffer.putLong(c.getThreadId());
+        writeBuffer.putInt(name == null ? -1 : name.length);
+
+        if (name != null) {
+
+            writeBuffer.put(name);
+        }
+
+        if (serialized == null) {
+
+            writeBuffer.putInt(c.getKey());
+            writeBuffer.putLong(c.isDouble() ? Double.doubleToRawLongBits(c.getDoubleValue()) : c.getLongValue());
+        }
+        else {
+
+            writeBuffer.put(serialized);
+        }
+    }
+
+    /**
+     * Writes the content of the write buffer to the last segment.
+     */
+    private void flush() throws IOException {
+
+        Segment segment = segments.peekLast();
+
+        if (segment == null || writeBuffer.position() == 0) {
+
+            return;
+        }
+
+        writeBuffer.flip();
+
+        try {
+
+            while(writeBuffer.hasRemaining()) {
+
+                segment.written += segment.channel.write(writeBuffer, segment.written);
+            }
+        }
+        finally {
+
+            writeBuffer.clear();
+        }
+    }
+
+    private Segment openNextSegment() throws IOException {
+
+        flush();
+
+        File f = new File(directory, segmentName(prefix, nextSegmentIndex ++));
+
+        FileChannel channel = FileChannel.open(
+                f.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        Segment s = new Segment(f, channel);
+        segments.add(s);
+        return s;
+    }
+
+    private void delete(Segment s) {
+
+        try {
+
+            s.channel.close();
+        }
+        catch(IOException e) {
+
+            System.err.println("[warning] " + this + " failed to close " + s.file + ": " + e);
+        }
+
+        if (!s.file.delete()) {
+
+            System.err.println("[warning] " + this + " failed to delete " + s.file);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer b, long position) throws IOException {
+
+        while(b.hasRemaining()) {
+
+            int n = channel.read(b, position);
+
+            if (n < 0) {
+
+                throw new EOFException("unexpected end of file at " + position);
+            }
+
+            position += n;
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private static class Segment {
+
+        private final File file;
+        private final FileChannel channel;
+
+        // bytes appended, including the ones still in the write buffer
+        private long length;
+
+        // bytes written to the file
+        private long written;
+
+        private long readPosition;
+
+        private int records;
+        private int read;
+
+        // no longer appended to, after a read failure
+        private boolean failed;
+
+        Segment(File file, FileChannel channel) {
+
+            this.file = file;
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package io.novaordis.utilities.ac;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves thread ids to thread names, for events captured in COARSE mode. The names are cached: a cache miss causes
+ * the live threads to be enumerated and all of them to be added to the cache, so the enumeration cost is paid once
+ * per new thread, not once per event. The cached names are not verified against the live threads: a name may be
+ * stale if the thread was renamed after it was cached, and, as Thread.getId() allows the id of a terminated thread to
+ * be reused, it may belong to the dead thread that had the id before. Every enumeration overwrites the cached names
+ * with those of the live threads, so such a name is corrected by the next cache miss for any id.
+ *
+ * An id that is still unknown after an enumeration belongs to a thread that died. Its "thread-<id>" fallback is cached
+ * as well, so the events of a dead producer do not cause an enumeration each.
+ *
+ * Thread safe.
+ *
+ * @see CaptureMode#COARSE
+ */
+final class ThreadNames {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // dead threads are never evicted individually; past this size the cache is rebuilt from the live threads
+    static final int MAX_CACHE_SIZE = 10000;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    private static final Map<Long, String> cache = new ConcurrentHashMap<>();
+
+    private static final AtomicLong refreshCount = new AtomicLong();
+
+    /**
+     * @return the name of the thread with the given id, or "thread-<id>" if no live thread has that id.
+     */
+    static String resolve(long threadId) {
+
+        String name = cache.get(threadId);
+
+        if (name != null) {
+
+            return name;
+        }
+
+        refresh();
+
+        name = cache.get(threadId);
+
+        if (name == null) {
+
+            // the thread died before it could be enumerated; the fallback is subject to the same size bound
+            name = "thread-" + threadId;
+            cache.putIfAbsent(threadId, name);
+        }
+
+        return name;
+    }
+
+    /**
+     * Used for testing.
+     */
+    static int getCacheSize() {
+
+        return cache.size();
+    }
+
+    /**
+     * Used for testing.
+     */
+    static long getRefreshCount() {
+
+        return refreshCount.get();
+    }
+
+    private static synchronized void refresh() {
+
+        if (cache.size() > MAX_CACHE_SIZE) {
+
+            cache.clear();
+        }
+
+        refreshCount.incrementAndGet();
+
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+
+        while(root.getParent() != null) {
+
+            root = root.getParent();
+        }
+
+        Thread[] threads = new Thread[root.activeCount() + 16];
+        int count;
+
+        // enumerate() silently truncates, retry with a larger array until everything fits
+        while((count = root.enumerate(threads, true)) == threads.length) {
+
+            threads = new Thread[threads.length * 2];
+        }
+
+        for(int i = 0; i < count; i ++) {
+
+            cache.put(threads[i].getId(), threads[i].getName());
+        }
+    }
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private ThreadNames() {
+    }
+
+}
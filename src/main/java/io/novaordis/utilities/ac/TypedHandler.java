@@ -0,0 +1,20 @@
+package io.novaordis.utilities.ac;
+
+/**
+ * A Handler that declares up front the payload types it accepts. Handlers uses the declaration to resolve, once per
+ * payload class, which handlers an event must be dispatched to: a TypedHandler receives all non-null payloads that are
+ * instances of (or of subclasses of) one of its accepted types, and canHandle() is not invoked for them on the
+ * dispatching path.
+ *
+ * The declaration is read when the routing index is built, so it must not change while the handler is registered.
+ *
+ * @see Handlers
+ */
+public interface TypedHandler extends Handler {
+
+    /**
+     * @return the accepted payload types. null or an empty array means that the handler accepts nothing.
+     */
+    Class<?>[] getAcceptedTypes();
+
+}
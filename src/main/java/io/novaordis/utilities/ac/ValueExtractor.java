@@ -0,0 +1,17 @@
+package io.novaordis.utilities.ac;
+
+/**
+ * Extracts a numeric sample from a handed over payload.
+ *
+ * @see WindowedAggregator
+ */
+public interface ValueExtractor {
+
+    /**
+     * @param payload the handed over instance. Be prepared for the possibility that it is null.
+     *
+     * @return the sample, or Double.NaN if the payload does not carry a sample and must be ignored.
+     */
+    double getValue(Object payload);
+
+}
@@ -0,0 +1,72 @@
+package io.novaordis.utilities.ac;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The way a thread waits for a ring buffer condition to change: the pump thread waiting for events to be published,
+ * or a producer waiting for the pump to free up space. The strategies trade CPU usage against latency.
+ *
+ * @see RingBufferCollector
+ */
+public enum WaitStrategy {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Lowest latency, burns a full core while waiting. Use only if the pump thread can have a dedicated core.
+     */
+    BUSY_SPIN,
+
+    /**
+     * Spins for a while, then yields the processor to other threads on each subsequent attempt.
+     */
+    YIELD,
+
+    /**
+     * Spins for a while, then parks the thread for PARK_NANOS on each subsequent attempt. Lowest CPU usage, the
+     * latency is bounded by PARK_NANOS.
+     */
+    PARK,
+    ;
+
+    public static final int SPIN_TRIES = 100;
+
+    public static final long PARK_NANOS = 100000L;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Waits once. The caller is supposed to re-check the condition it is waiting for after each invocation.
+     *
+     * @param attempt the number of consecutive unsuccessful attempts so far, starting with 0. Reset it to 0 after the
+     *                condition is met.
+     *
+     * @return the attempt counter to be passed on the next invocation. It saturates, so it never overflows no matter
+     *         how long the wait.
+     */
+    public int idle(int attempt) {
+
+        if (attempt < SPIN_TRIES) {
+
+            return attempt + 1;
+        }
+
+        if (this == BUSY_SPIN) {
+
+            return attempt;
+        }
+
+        if (this == YIELD) {
+
+            Thread.yield();
+        }
+        else {
+
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+
+        return attempt;
+    }
+}
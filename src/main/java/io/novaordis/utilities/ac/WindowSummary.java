@@ -0,0 +1,145 @@
+package io.novaordis.utilities.ac;
+
+/**
+ * The statistics of the samples of one key, over one window. Emitted by WindowedAggregator.
+ *
+ * The toString() representation is a comma-separated line, so summaries can be sent to CSV sinks as they are:
+ * key, window start, window end, count, sum, min, max, mean, followed by the percentiles, in the configured order.
+ *
+ * Immutable.
+ *
+ * @see WindowedAggregator
+ */
+public class WindowSummary {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final Object key;
+    private final long windowStart;
+    private final long windowEnd;
+    private final long count;
+    private final double sum;
+    private final double min;
+    private final double max;
+
+    private final double[] percentileLevels;
+    private final double[] percentiles;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    WindowSummary(Object key, long windowStart, long windowEnd, long count, double sum, double min, double max,
+                  double[] percentileLevels, double[] percentiles) {
+
+        this.key = key;
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+        this.percentileLevels = percentileLevels;
+        this.percentiles = percentiles;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the key, as returned by the aggregator's KeyExtractor. May be null.
+     */
+    public Object getKey() {
+
+        return key;
+    }
+
+    /**
+     * @return the start of the window, inclusive, in milliseconds.
+     */
+    public long getWindowStart() {
+
+        return windowStart;
+    }
+
+    /**
+     * @return the end of the window, exclusive, in milliseconds.
+     */
+    public long getWindowEnd() {
+
+        return windowEnd;
+    }
+
+    public long getCount() {
+
+        return count;
+    }
+
+    public double getSum() {
+
+        return sum;
+    }
+
+    public double getMin() {
+
+        return min;
+    }
+
+    public double getMax() {
+
+        return max;
+    }
+
+    public double getMean() {
+
+        return sum / count;
+    }
+
+    /**
+     * @param level one of the levels the aggregator was configured with, for example 99.0.
+     *
+     * @return the value at the given percentile. Exact if the window holds at most the aggregator's sample limit for
+     *         this key, estimated from a uniform sample otherwise.
+     *
+     * @exception IllegalArgumentException if the aggregator was not configured to compute the given percentile.
+     */
+    public double getPercentile(double level) {
+
+        for(int i = 0; i < percentileLevels.length; i ++) {
+
+            if (percentileLevels[i] == level) {
+
+                return percentiles[i];
+            }
+        }
+
+        throw new IllegalArgumentException("percentile " + level + " not computed");
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(key).append(", ").append(windowStart).append(", ").append(windowEnd).append(", ").append(count).
+                append(", ").append(sum).append(", ").append(min).append(", ").append(max).append(", ").
+                append(getMean());
+
+        for(double p: percentiles) {
+
+            sb.append(", ").append(p);
+        }
+
+        return sb.toString();
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
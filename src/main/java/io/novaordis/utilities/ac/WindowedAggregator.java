@@ -0,0 +1,900 @@
+package io.novaordis.utilities.ac;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A handler that collapses numeric samples into per-key, per-window statistics - count, sum, min, max and
+ * percentiles - and emits one WindowSummary per key and window to its downstream handlers, instead of passing on the
+ * individual events.
+ *
+ * Windows are defined by their length and by the slide, the interval at which a window is emitted. If the slide
+ * equals the length, the windows are tumbling; if it is shorter, the windows are sliding and overlap. The length must
+ * be a multiple of the slide. Internally, samples are accumulated in panes one slide long, and a window is the merge
+ * of the last length/slide panes, so each sample is only recorded once.
+ *
+ * The statistics are kept in primitive arrays, indexed by a slot assigned to each key on its first occurrence; keys
+ * are only hashed once per event, and recording a sample does not allocate. Percentiles are computed exactly from the
+ * samples, as long as a key has at most sampleLimit samples in a pane. Beyond that, a uniform reservoir sample is kept
+ * and the percentiles are estimated. A key that had no samples for a whole window is evicted and its slot is reused,
+ * so the memory is bounded by the keys active within a window, and closing a pane only walks the keys that have
+ * samples in the window.
+ *
+ * Windows are assigned by event time - the hand over timestamp. A pane is closed, and the window that ends with it is
+ * emitted, when the first event past its end arrives, or, when events stop coming, one slide after its end, by a
+ * periodic check. Events older than the current pane are counted into the current pane.
+ *
+ * Thread safe. Events, the periodic check and close() are serialized, so downstream handlers are never invoked
+ * concurrently. The periodic check runs on the aggregator's own daemon emitter thread, which is stopped by close(),
+ * so slow downstream handlers delay neither the shared maintenance scheduler nor the draining of other collectors.
+ *
+ * @see WindowSummary
+ * @see KeyExtractor
+ * @see ValueExtractor
+ */
+public class WindowedAggregator implements BatchHandler {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final double[] DEFAULT_PERCENTILES = { 50.0, 90.0, 99.0 };
+
+    public static final int DEFAULT_SAMPLE_LIMIT = 1024;
+
+    public static final String EMITTER_THREAD_NAME = "Windowed Aggregator Emitter";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // stands for the null key in the key index
+    private static final Object NULL_KEY = new Object();
+
+    /**
+     * @return a tumbling window aggregator.
+     */
+    public static WindowedAggregator tumbling(KeyExtractor keyExtractor, ValueExtractor valueExtractor, long windowMs) {
+
+        return new WindowedAggregator(keyExtractor, valueExtractor, windowMs, windowMs);
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final KeyExtractor keyExtractor;
+
+    private final ValueExtractor valueExtractor;
+
+    private final long windowMs;
+
+    private final long slideMs;
+
+    private final KeyIndex keys;
+
+    // a ring of windowMs/slideMs panes; the current pane is the one that starts at currentPaneStart
+    private final Pane[] panes;
+
+    private long currentPaneStart;
+
+    private double[] percentileLevels;
+
+    private int sampleLimit;
+
+    // xorshift state, for reservoir sampling
+    private long random;
+
+    // the start of the last pane each key was seen in, by slot
+    private long[] lastSeen;
+
+    // the keys of the pane cleared last; those not seen again by the time the next pane closes are evicted
+    private int[] idle;
+    private int idleCount;
+
+    // scratch space for collecting the keys of a window
+    private int[] windowSlots;
+
+    // scratch space for merging the samples of a window
+    private double[] merged;
+
+    private final Handlers downstream;
+
+    private final List<Collected> emitted;
+
+    private long emittedCount;
+
+    private long lateCount;
+
+    private boolean closed;
+
+    // runs the periodic check
+    private final ScheduledExecutorService emitter;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Starts the emitter thread, which periodically emits the windows of keys that stopped receiving events.
+     *
+     * @param keyExtractor the samples are aggregated per key. May return null, which is a valid key.
+     * @param windowMs the window length.
+     * @param slideMs the interval at which windows are emitted. Must divide windowMs. Equal to windowMs for tumbling
+     *                windows.
+     */
+    public WindowedAggregator(KeyExtractor keyExtractor, ValueExtractor valueExtractor, long windowMs, long slideMs) {
+
+        if (keyExtractor == null) {
+
+            throw new IllegalArgumentException("null key extractor");
+        }
+
+        if (valueExtractor == null) {
+
+            throw new IllegalArgumentException("null value extractor");
+        }
+
+        if (slideMs <= 0 || windowMs < slideMs || windowMs % slideMs != 0) {
+
+            throw new IllegalArgumentException(
+                    "the window length (" + windowMs + " ms) must be a positive multiple of the slide (" +
+                            slideMs + " ms)");
+        }
+
+        this.keyExtractor = keyExtractor;
+        this.valueExtractor = valueExtractor;
+        this.windowMs = windowMs;
+        this.slideMs = slideMs;
+        this.keys = new KeyIndex();
+        this.panes = new Pane[(int)(windowMs / slideMs)];
+
+        for(int i = 0; i < panes.length; i ++) {
+
+            panes[i] = new Pane();
+        }
+
+        this.currentPaneStart = Long.MIN_VALUE;
+        this.percentileLevels = DEFAULT_PERCENTILES.clone();
+        this.sampleLimit = DEFAULT_SAMPLE_LIMIT;
+        this.random = System.nanoTime() | 1L;
+        this.lastSeen = new long[0];
+        this.idle = new int[0];
+        this.windowSlots = new int[0];
+        this.merged = new double[0];
+        this.downstream = new Handlers();
+        this.emitted = new ArrayList<>();
+        this.emitter = Executors.newSingleThreadScheduledExecutor(
+                new CollectorExecutors.DaemonThreadFactory(EMITTER_THREAD_NAME));
+
+        emitter.scheduleAtFixedRate(this::tick, slideMs, slideMs, TimeUnit.MILLISECONDS);
+    }
+
+    // BatchHandler implementation -------------------------------------------------------------------------------------
+
+    @Override
+    public boolean canHandle(Object o) {
+
+        return true;
+    }
+
+    @Override
+    public synchronized void handle(long timestamp, String originatorThreadName, Object o) {
+
+        record(timestamp, o);
+        emit();
+    }
+
+    @Override
+    public synchronized void handleBatch(List<Collected> batch) {
+
+        //noinspection ForLoopReplaceableByForEach
+        for(int i = 0; i < batch.size(); i ++) {
+
+            Collected c = batch.get(i);
+            record(c.getTimeStamp(), c.getPayload());
+        }
+
+        emit();
+    }
+
+    /**
+     * Emits the windows that contain data, as if time advanced past the end of the current pane, then closes the
+     * downstream handlers. Stops the emitter thread.
+     */
+    @Override
+    public void close() {
+
+        emitter.shutdown();
+
+        synchronized(this) {
+
+            if (closed) {
+
+                return;
+            }
+
+            if (currentPaneStart != Long.MIN_VALUE) {
+
+                advanceTo(currentPaneStart + windowMs);
+            }
+
+            closed = true;
+        }
+
+        downstream.close();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Downstream handlers receive WindowSummary payloads, timestamped with the end of their window.
+     */
+    public boolean addDownstream(Handler h) {
+
+        return downstream.add(h);
+    }
+
+    public boolean removeDownstream(Handler h) {
+
+        return downstream.remove(h);
+    }
+
+    public List<Handler> getDownstream() {
+
+        return downstream.getHandlers();
+    }
+
+    /**
+     * @param levels the percentiles to compute, between 0 (exclusive) and 100 (inclusive). May be empty.
+     */
+    public synchronized void setPercentiles(double... levels) {
+
+        for(double l: levels) {
+
+            if (!(l > 0.0 && l <= 100.0)) {
+
+                throw new IllegalArgumentException("invalid percentile " + l);
+            }
+        }
+
+        this.percentileLevels = levels.clone();
+    }
+
+    /**
+     * @param sampleLimit the maximum number of samples kept per key and pane for percentile computation.
+     */
+    public synchronized void setSampleLimit(int sampleLimit) {
+
+        if (sampleLimit <= 0) {
+
+            throw new IllegalArgumentException("invalid sample limit " + sampleLimit);
+        }
+
+        this.sampleLimit = sampleLimit;
+    }
+
+    public long getWindowMs() {
+
+        return windowMs;
+    }
+
+    public long getSlideMs() {
+
+        return slideMs;
+    }
+
+    /**
+     * @return the number of keys currently tracked. Keys that had no samples for a whole window are evicted.
+     */
+    public synchronized int getKeyCount() {
+
+        return keys.size();
+    }
+
+    /**
+     * @return the number of summaries emitted so far.
+     */
+    public synchronized long getEmittedCount() {
+
+        return emittedCount;
+    }
+
+    /**
+     * @return the number of events that were older than the current pane, and were counted into it.
+     */
+    public synchronized long getLateCount() {
+
+        return lateCount;
+    }
+
+    /**
+     * Closes all panes that end at or before the given time, emitting the corresponding windows.
+     */
+    public synchronized void advanceTo(long timestamp) {
+
+        if (closed || currentPaneStart == Long.MIN_VALUE) {
+
+            return;
+        }
+
+        advance(align(timestamp));
+        emit();
+    }
+
+    @Override
+    public String toString() {
+
+        return "WindowedAggregator[" + windowMs + "/" + slideMs + " ms]";
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void record(long timestamp, Object payload) {
+
+        if (closed) {
+
+            return;
+        }
+
+        double value = valueExtractor.getValue(payload);
+
+        if (Double.isNaN(value)) {
+
+            return;
+        }
+
+        long paneStart = align(timestamp);
+
+        if (currentPaneStart == Long.MIN_VALUE) {
+
+            currentPaneStart = paneStart;
+        }
+        else if (paneStart > currentPaneStart) {
+
+            advance(paneStart);
+        }
+        else if (paneStart < currentPaneStart) {
+
+            lateCount ++;
+        }
+
+        Object key = keyExtractor.getKey(payload);
+        int slot = keys.slot(key == null ? NULL_KEY : key);
+
+        if (slot >= lastSeen.length) {
+
+            lastSeen = Arrays.copyOf(lastSeen, Math.max(keys.slotCount(), lastSeen.length * 2));
+        }
+
+        lastSeen[slot] = currentPaneStart;
+
+        Pane p = panes[paneIndex(currentPaneStart)];
+        p.ensureCapacity(keys.slotCount());
+        p.add(slot, value, sampleLimit, nextRandom());
+    }
+
+    /**
+     * Runs on the emitter thread. Closes the panes of the keys that stopped receiving events.
+     */
+    private void tick() {
+
+        try {
+
+            advanceTo(System.currentTimeMillis() - slideMs);
+        }
+        catch(Throwable t) {
+
+            // an exception would cancel the periodic check
+            System.err.println("[warning] " + this + " failed to emit: " + t);
+        }
+    }
+
+    /**
+     * Closes panes until the given pane becomes the current one.
+     */
+    private void advance(long paneStart) {
+
+        while(currentPaneStart < paneStart) {
+
+            closeCurrentPane();
+
+            if (isEmpty()) {
+
+                // nothing left to emit until new samples arrive, jump over the empty panes
+                currentPaneStart = paneStart;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Queues the summaries of the window that ends with the current pane, then makes the oldest pane the current one.
+     * Only the keys that have samples in the window are walked, in slot order.
+     */
+    private void closeCurrentPane() {
+
+        long windowEnd = currentPaneStart + slideMs;
+        long windowStart = windowEnd - windowMs;
+
+        int n = 0;
+
+        for(Pane p: panes) {
+
+            n += p.usedCount;
+        }
+
+        if (windowSlots.length < n) {
+
+            windowSlots = new int[Math.max(n, windowSlots.length * 2)];
+        }
+
+        n = 0;
+
+        for(Pane p: panes) {
+
+            System.arraycopy(p.used, 0, windowSlots, n, p.usedCount);
+            n += p.usedCount;
+        }
+
+        Arrays.sort(windowSlots, 0, n);
+
+        for(int i = 0; i < n; i ++) {
+
+            int slot = windowSlots[i];
+
+            if (i > 0 && slot == windowSlots[i - 1]) {
+
+                continue;
+            }
+
+            long count = 0L;
+            double sum = 0.0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            int sampleCount = 0;
+
+            for(Pane p: panes) {
+
+                if (slot < p.capacity() && p.count[slot] > 0) {
+
+                    count += p.count[slot];
+                    sum += p.sum[slot];
+                    min = Math.min(min, p.min[slot]);
+                    max = Math.max(max, p.max[slot]);
+                    sampleCount += p.sampleCount[slot];
+                }
+            }
+
+            if (count == 0L) {
+
+                continue;
+            }
+
+            double[] percentiles = percentiles(slot, sampleCount);
+            Object key = keys.key(slot);
+
+            WindowSummary s = new WindowSummary(
+                    key == NULL_KEY ? null : key, windowStart, windowEnd, count, sum, min, max,
+                    percentileLevels, percentiles);
+
+            emitted.add(new Collected(windowEnd, Thread.currentThread().getName(), s));
+        }
+
+        evictIdle(windowStart);
+
+        currentPaneStart += slideMs;
+
+        Pane oldest = panes[paneIndex(currentPaneStart)];
+
+        if (idle.length < oldest.usedCount) {
+
+            idle = new int[Math.max(oldest.usedCount, idle.length * 2)];
+        }
+
+        System.arraycopy(oldest.used, 0, idle, 0, oldest.usedCount);
+        idleCount = oldest.usedCount;
+        oldest.clear();
+    }
+
+    /**
+     * Evicts the keys of the pane cleared last that were not seen since, so had no samples in the window that was just
+     * closed. Those keys have no samples in any pane.
+     */
+    private void evictIdle(long windowStart) {
+
+        for(int i = 0; i < idleCount; i ++) {
+
+            int slot = idle[i];
+
+            if (lastSeen[slot] >= windowStart) {
+
+                continue;
+            }
+
+            keys.remove(slot);
+
+            for(Pane p: panes) {
+
+                if (slot < p.capacity()) {
+
+                    p.samples[slot] = null;
+                }
+            }
+        }
+
+        idleCount = 0;
+    }
+
+    private double[] percentiles(int slot, int sampleCount) {
+
+        double[] result = new double[percentileLevels.length];
+
+        if (result.length == 0) {
+
+            return result;
+        }
+
+        if (merged.length < sampleCount) {
+
+            merged = new double[sampleCount];
+        }
+
+        int n = 0;
+
+        for(Pane p: panes) {
+
+            if (slot < p.capacity() && p.sampleCount[slot] > 0) {
+
+                System.arraycopy(p.samples[slot], 0, merged, n, p.sampleCount[slot]);
+                n += p.sampleCount[slot];
+            }
+        }
+
+        Arrays.sort(merged, 0, n);
+
+        for(int i = 0; i < result.length; i ++) {
+
+            // nearest rank
+            int rank = (int)Math.ceil(percentileLevels[i] / 100.0 * n);
+            result[i] = merged[Math.max(0, rank - 1)];
+        }
+
+        return result;
+    }
+
+    private boolean isEmpty() {
+
+        for(Pane p: panes) {
+
+            if (!p.isEmpty()) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Sends the queued summaries downstream.
+     */
+    private void emit() {
+
+        if (emitted.isEmpty()) {
+
+            return;
+        }
+
+        emittedCount += emitted.size();
+        downstream.processBatch(emitted);
+        emitted.clear();
+    }
+
+    private long align(long timestamp) {
+
+        return Math.floorDiv(timestamp, slideMs) * slideMs;
+    }
+
+    private int paneIndex(long paneStart) {
+
+        return (int)Math.floorMod(Math.floorDiv(paneStart, slideMs), (long)panes.length);
+    }
+
+    private long nextRandom() {
+
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return random;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * The statistics of one slide interval, in parallel arrays indexed by key slot.
+     */
+    private static class Pane {
+
+        long[] count = new long[0];
+        double[] sum = new double[0];
+        double[] min = new double[0];
+        double[] max = new double[0];
+        double[][] samples = new double[0][];
+        int[] sampleCount = new int[0];
+
+        // the slots that have samples, so clearing does not have to walk all keys
+        int[] used = new int[0];
+        int usedCount;
+
+        int capacity() {
+
+            return count.length;
+        }
+
+        void ensureCapacity(int slots) {
+
+            if (slots <= count.length) {
+
+                return;
+            }
+
+            int c = Math.max(slots, count.length * 2);
+
+            count = Arrays.copyOf(count, c);
+            sum = Arrays.copyOf(sum, c);
+            min = Arrays.copyOf(min, c);
+            max = Arrays.copyOf(max, c);
+            samples = Arrays.copyOf(samples, c);
+            sampleCount = Arrays.copyOf(sampleCount, c);
+            used = Arrays.copyOf(used, c);
+        }
+
+        void add(int slot, double value, int sampleLimit, long random) {
+
+            long n = ++ count[slot];
+
+            if (n == 1) {
+
+                used[usedCount ++] = slot;
+                sum[slot] = value;
+                min[slot] = value;
+                max[slot] = value;
+            }
+            else {
+
+                sum[slot] += value;
+
+                if (value < min[slot]) {
+
+                    min[slot] = value;
+                }
+
+                if (value > max[slot]) {
+
+                    max[slot] = value;
+                }
+            }
+
+            double[] s = samples[slot];
+            int sc = sampleCount[slot];
+
+            if (sc < sampleLimit) {
+
+                if (s == null || s.length == sc) {
+
+                    int length = Math.min(sampleLimit, Math.max(8, sc * 2));
+                    s = samples[slot] = s == null ? new double[length] : Arrays.copyOf(s, length);
+                }
+
+                s[sc] = value;
+                sampleCount[slot] = sc + 1;
+            }
+            else {
+
+                // reservoir sampling: the value replaces a random sample with probability sampleLimit/n
+                long j = (random >>> 1) % n;
+
+                if (j < sc) {
+
+                    s[(int)j] = value;
+                }
+            }
+        }
+
+        boolean isEmpty() {
+
+            return usedCount == 0;
+        }
+
+        void clear() {
+
+            for(int i = 0; i < usedCount; i ++) {
+
+                int slot = used[i];
+                count[slot] = 0L;
+                sampleCount[slot] = 0;
+            }
+
+            usedCount = 0;
+        }
+    }
+
+    /**
+     * Assigns a dense slot to each key, on its first occurrence. The slots of removed keys are reused. Open addressing
+     * with linear probing; removal shifts the following entries back, so lookups never need tombstones.
+     */
+    private static class KeyIndex {
+
+        private Object[] table;
+        private int[] tableSlots;
+
+        // null for free slots
+        private Object[] slotKeys;
+
+        // the number of slots ever assigned, including the free ones
+        private int slotCount;
+
+        private int[] free;
+        private int freeCount;
+
+        private int size;
+
+        KeyIndex() {
+
+            this.table = new Object[16];
+            this.tableSlots = new int[16];
+            this.slotKeys = new Object[8];
+            this.free = new int[8];
+        }
+
+        /**
+         * @return the number of keys.
+         */
+        int size() {
+
+            return size;
+        }
+
+        /**
+         * @return an upper bound of the slots in use.
+         */
+        int slotCount() {
+
+            return slotCount;
+        }
+
+        Object key(int slot) {
+
+            return slotKeys[slot];
+        }
+
+        int slot(Object key) {
+
+            int mask = table.length - 1;
+            int i = index(key, mask);
+
+            Object k;
+
+            while((k = table[i]) != null) {
+
+                if (k.equals(key)) {
+
+                    return tableSlots[i];
+                }
+
+                i = (i + 1) & mask;
+            }
+
+            int slot;
+
+            if (freeCount > 0) {
+
+                slot = free[-- freeCount];
+            }
+            else {
+
+                slot = slotCount ++;
+
+                if (slot == slotKeys.length) {
+
+                    slotKeys = Arrays.copyOf(slotKeys, slotKeys.length * 2);
+                    free = Arrays.copyOf(free, slotKeys.length);
+                }
+            }
+
+            size ++;
+            slotKeys[slot] = key;
+            table[i] = key;
+            tableSlots[i] = slot;
+
+            // keep the load factor under 0.5
+            if (size * 2 > table.length) {
+
+                rehash();
+            }
+
+            return slot;
+        }
+
+        void remove(int slot) {
+
+            Object key = slotKeys[slot];
+            int mask = table.length - 1;
+            int i = index(key, mask);
+
+            while(table[i] == null || tableSlots[i] != slot) {
+
+                i = (i + 1) & mask;
+            }
+
+            // shift back the entries that would become unreachable through the hole
+            int j = i;
+
+            while(true) {
+
+                j = (j + 1) & mask;
+
+                Object k = table[j];
+
+                if (k == null) {
+
+                    break;
+                }
+
+                int home = index(k, mask);
+
+                // the entry stays if its home is cyclically in (i, j]
+                boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+
+                if (!stays) {
+
+                    table[i] = k;
+                    tableSlots[i] = tableSlots[j];
+                    i = j;
+                }
+            }
+
+            table[i] = null;
+            slotKeys[slot] = null;
+            free[freeCount ++] = slot;
+            size --;
+        }
+
+        private void rehash() {
+
+            Object[] newTable = new Object[table.length * 2];
+            int[] newTableSlots = new int[newTable.length];
+            int mask = newTable.length - 1;
+
+            for(int slot = 0; slot < slotCount; slot ++) {
+
+                Object key = slotKeys[slot];
+
+                if (key == null) {
+
+                    continue;
+                }
+
+                int i = index(key, mask);
+
+                while(newTable[i] != null) {
+
+                    i = (i + 1) & mask;
+                }
+
+                newTable[i] = key;
+                newTableSlots[i] = slot;
+            }
+
+            table = newTable;
+            tableSlots = newTableSlots;
+        }
+
+        private static int index(Object key, int mask) {
+
+            int h = key.hashCode();
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
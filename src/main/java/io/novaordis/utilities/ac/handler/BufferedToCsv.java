@@ -0,0 +1,529 @@
+package io.novaordis.utilities.ac.handler;
+
+import io.novaordis.utilities.ac.BatchHandler;
+import io.novaordis.utilities.ac.Collected;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A CSV file handler meant for high event rates. It writes the same "timestamp, thread name, payload" lines as ToCsv,
+ * but:
+ *
+ * 1. Lines are encoded directly into a large, reusable direct buffer which is written to a FileChannel according to an
+ *    explicit flush policy, instead of issuing a write and a flush per event.
+ * 2. Timestamps are rendered by a TimestampFormatter that caches the second-level prefix and does not allocate.
+ * 3. The file can be rotated by size and by time. Rotated files are renamed to <file-name>.1, <file-name>.2, ... in
+ *    rotation order, and a new file is started under the original name. Existing rotated files, such as the ones left
+ *    by a previous run, are never overwritten: the numbering continues after the highest suffix found on disk. If the
+ *    rename fails, the handler keeps appending to the current file, and tries again after another interval or
+ *    another maxFileSize bytes.
+ * 4. With a time-based flush policy, a daemon flusher thread owned by the handler writes the buffer out once the
+ *    interval expires, even if no more events arrive, so buffered lines are never older than the interval. The thread
+ *    is stopped by close().
+ *
+ * Thread names and CharSequence payloads are encoded without allocating. Other payloads are rendered with toString().
+ *
+ * The methods are synchronized, so the handler can be used with collectors that invoke handlers from several pumps.
+ * Write failures are reported on stderr and do not propagate, as it is not allowed for the pump to stop.
+ *
+ * @see FlushPolicy
+ * @see TimestampFormatter
+ */
+public class BufferedToCsv implements BatchHandler {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    public static final String FLUSHER_THREAD_NAME = "BufferedToCsv Flusher";
+
+    private static final byte[] SEPARATOR = { ',', ' ' };
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final File file;
+
+    private final ByteBuffer buffer;
+
+    private final FlushPolicy flushPolicy;
+
+    private final TimestampFormatter timestampFormatter;
+
+    private FileChannel channel;
+
+    // 0 means no size-based rotation
+    private long maxFileSize;
+
+    // 0 means no time-based rotation
+    private long rotationIntervalMs;
+
+    // bytes written to the current file, not including what is still in the buffer
+    private long currentFileSize;
+    private long currentFileOpenedAt;
+    private int rotationCount;
+
+    // the suffix of the next rotated file
+    private int nextSuffix;
+
+    private int eventsSinceFlush;
+    private long lastFlush;
+
+    private boolean closed;
+
+    // null unless the flush policy is time-based, with a positive interval
+    private final ScheduledExecutorService flusher;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Uses a DEFAULT_BUFFER_SIZE buffer, flushed at the end of each batch.
+     */
+    public BufferedToCsv(File file) throws IOException {
+
+        this(file, DEFAULT_BUFFER_SIZE, FlushPolicy.onBatchEnd());
+    }
+
+    /**
+     * The file is truncated if it exists. A time-based flush policy with a positive interval starts the flusher thread.
+     */
+    public BufferedToCsv(File file, int bufferSize, FlushPolicy flushPolicy) throws IOException {
+
+        if (file == null) {
+
+            throw new IllegalArgumentException("null file");
+        }
+
+        if (bufferSize < TimestampFormatter.LENGTH + 8) {
+
+            throw new IllegalArgumentException("buffer too small: " + bufferSize);
+        }
+
+        if (flushPolicy == null) {
+
+            throw new IllegalArgumentException("null flush policy");
+        }
+
+        this.file = file;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.flushPolicy = flushPolicy;
+        this.timestampFormatter = new TimestampFormatter();
+        this.nextSuffix = highestRotatedSuffix() + 1;
+
+        open(System.currentTimeMillis(), StandardOpenOption.TRUNCATE_EXISTING);
+
+        long intervalMs = flushPolicy.getIntervalMs();
+
+        if (intervalMs > 0) {
+
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+
+                Thread t = new Thread(r, FLUSHER_THREAD_NAME);
+                t.setDaemon(true);
+                return t;
+            });
+
+            flusher.schedule(this::flushOnTime, intervalMs, TimeUnit.MILLISECONDS);
+        }
+        else {
+
+            this.flusher = null;
+        }
+    }
+
+    // BatchHandler implementation -------------------------------------------------------------------------------------
+
+    @Override
+    public synchronized void handleBatch(List<Collected> batch) {
+
+        //noinspection ForLoopReplaceableByForEach
+        for(int i = 0; i < batch.size(); i ++) {
+
+            Collected c = batch.get(i);
+            write(c.getTimeStamp(), c.getThreadName(), c.getPayload());
+        }
+
+        if (flushPolicy.isBatchEnd() || isFlushIntervalExpired()) {
+
+            flush();
+        }
+    }
+
+    // Handler implementation ------------------------------------------------------------------------------------------
+
+    @Override
+    public boolean canHandle(Object o) {
+
+        return true;
+    }
+
+    @Override
+    public synchronized void handle(long timestamp, String originatorThreadName, Object o) {
+
+        write(timestamp, originatorThreadName, o);
+
+        // an individual event is a batch of one
+        if (flushPolicy.isBatchEnd()) {
+
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+
+        if (closed) {
+
+            return;
+        }
+
+        flush();
+
+        try {
+
+            channel.close();
+        }
+        catch(IOException e) {
+
+            System.err.println("[warning] " + this + " failed to close: " + e);
+        }
+
+        closed = true;
+
+        if (flusher != null) {
+
+            flusher.shutdownNow();
+        }
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @param maxFileSize the size in bytes above which the file is rotated. 0 disables size-based rotation.
+     */
+    public synchronized void setMaxFileSize(long maxFileSize) {
+
+        if (maxFileSize < 0) {
+
+            throw new IllegalArgumentException("invalid maximum file size " + maxFileSize);
+        }
+
+        this.maxFileSize = maxFileSize;
+    }
+
+    public synchronized long getMaxFileSize() {
+
+        return maxFileSize;
+    }
+
+    /**
+     * @param rotationIntervalMs the file is rotated when an event timestamp is more than rotationIntervalMs past the
+     *                           moment the current file was opened. 0 disables time-based rotation.
+     */
+    public synchronized void setRotationIntervalMs(long rotationIntervalMs) {
+
+        if (rotationIntervalMs < 0) {
+
+            throw new IllegalArgumentException("invalid rotation interval " + rotationIntervalMs);
+        }
+
+        this.rotationIntervalMs = rotationIntervalMs;
+    }
+
+    public synchronized long getRotationIntervalMs() {
+
+        return rotationIntervalMs;
+    }
+
+    /**
+     * @return the number of times the file was rotated.
+     */
+    public synchronized int getRotationCount() {
+
+        return rotationCount;
+    }
+
+    public FlushPolicy getFlushPolicy() {
+
+        return flushPolicy;
+    }
+
+    /**
+     * Writes the buffered content to the file.
+     */
+    public synchronized void flush() {
+
+        if (closed) {
+
+            return;
+        }
+
+        buffer.flip();
+
+        try {
+
+            while(buffer.hasRemaining()) {
+
+                currentFileSize += channel.write(buffer);
+            }
+        }
+        catch(IOException e) {
+
+            System.err.println("[warning] " + this + " failed to write to " + file + ": " + e);
+        }
+        finally {
+
+            buffer.clear();
+        }
+
+        eventsSinceFlush = 0;
+        lastFlush = System.currentTimeMillis();
+    }
+
+    @Override
+    public String toString() {
+
+        return "BufferedToCsv[" + file + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void write(long timestamp, String threadName, Object payload) {
+
+        if (closed) {
+
+            return;
+        }
+
+        if ((rotationIntervalMs > 0 && timestamp - currentFileOpenedAt >= rotationIntervalMs) ||
+                (maxFileSize > 0 && currentFileSize + buffer.position() >= maxFileSize)) {
+
+            rotate(timestamp);
+        }
+
+        ensureRemaining(TimestampFormatter.LENGTH);
+        timestampFormatter.format(timestamp, buffer);
+        put(SEPARATOR);
+        put(threadName == null ? "null" : threadName);
+        put(SEPARATOR);
+        put(payload instanceof CharSequence ? (CharSequence)payload : String.valueOf(payload));
+        put((byte)'\n');
+
+        eventsSinceFlush ++;
+
+        if ((flushPolicy.getEvents() > 0 && eventsSinceFlush >= flushPolicy.getEvents()) || isFlushIntervalExpired()) {
+
+            flush();
+        }
+    }
+
+    /**
+     * Runs on the flusher thread. Flushes if the interval expired since the last flush, then schedules itself for the
+     * moment the interval expires again.
+     */
+    private synchronized void flushOnTime() {
+
+        if (closed) {
+
+            return;
+        }
+
+        if (isFlushIntervalExpired()) {
+
+            flush();
+        }
+
+        long delay = Math.max(0L, lastFlush + flushPolicy.getIntervalMs() - System.currentTimeMillis());
+        flusher.schedule(this::flushOnTime, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean isFlushIntervalExpired() {
+
+        long intervalMs = flushPolicy.getIntervalMs();
+        return intervalMs >= 0 && System.currentTimeMillis() - lastFlush >= intervalMs;
+    }
+
+    /**
+     * Flushes the buffer if it does not have room for the given number of bytes.
+     */
+    private void ensureRemaining(int bytes) {
+
+        if (buffer.remaining() < bytes) {
+
+            flush();
+        }
+    }
+
+    private void put(byte b) {
+
+        ensureRemaining(1);
+        buffer.put(b);
+    }
+
+    private void put(byte[] bytes) {
+
+        ensureRemaining(bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * UTF-8 encodes the characters directly into the buffer.
+     */
+    private void put(CharSequence s) {
+
+        int length = s.length();
+
+        for(int i = 0; i < length; i ++) {
+
+            char c = s.charAt(i);
+
+            // a code point never takes more than 4 bytes
+            ensureRemaining(4);
+
+            if (c < 0x80) {
+
+                buffer.put((byte)c);
+            }
+            else if (c < 0x800) {
+
+                buffer.put((byte)(0xc0 | (c >> 6)));
+                buffer.put((byte)(0x80 | (c & 0x3f)));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+
+                int cp = Character.toCodePoint(c, s.charAt(++ i));
+                buffer.put((byte)(0xf0 | (cp >> 18)));
+                buffer.put((byte)(0x80 | ((cp >> 12) & 0x3f)));
+                buffer.put((byte)(0x80 | ((cp >> 6) & 0x3f)));
+                buffer.put((byte)(0x80 | (cp & 0x3f)));
+            }
+            else if (Character.isSurrogate(c)) {
+
+                // malformed, same replacement the standard encoder uses
+                buffer.put((byte)'?');
+            }
+            else {
+
+                buffer.put((byte)(0xe0 | (c >> 12)));
+                buffer.put((byte)(0x80 | ((c >> 6) & 0x3f)));
+                buffer.put((byte)(0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    /**
+     * @param mode TRUNCATE_EXISTING or APPEND.
+     */
+    private void open(long timestamp, StandardOpenOption mode) throws IOException {
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode);
+
+        // after a failed rotation, the size is counted from the reopening, so the next attempt is made after another
+        // maxFileSize bytes
+        currentFileSize = 0;
+        currentFileOpenedAt = timestamp;
+        lastFlush = System.currentTimeMillis();
+    }
+
+    private void rotate(long timestamp) {
+
+        flush();
+
+        // if the rename fails, the events written so far are kept and the new ones are appended to them
+        StandardOpenOption mode = StandardOpenOption.APPEND;
+
+        try {
+
+            channel.close();
+
+            while(true) {
+
+                File rotated = new File(file.getPath() + "." + nextSuffix);
+
+                try {
+
+                    // no REPLACE_EXISTING, an existing file is never overwritten
+                    Files.move(file.toPath(), rotated.toPath());
+                    break;
+                }
+                catch(FileAlreadyExistsException e) {
+
+                    // created since the handler looked
+                    nextSuffix ++;
+                }
+            }
+
+            nextSuffix ++;
+            rotationCount ++;
+            mode = StandardOpenOption.TRUNCATE_EXISTING;
+        }
+        catch(IOException e) {
+
+            System.err.println("[warning] " + this + " failed to rotate, appending to the current file: " + e);
+        }
+
+        try {
+
+            open(timestamp, mode);
+        }
+        catch(IOException e) {
+
+            System.err.println("[warning] " + this + " failed to reopen, no further events will be written: " + e);
+            closed = true;
+        }
+    }
+
+    /**
+     * @return the highest numeric suffix of the rotated files found next to the file, 0 if there are none.
+     */
+    private int highestRotatedSuffix() {
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        String prefix = file.getName() + ".";
+        String[] names = dir == null ? null : dir.list();
+        int highest = 0;
+
+        if (names == null) {
+
+            return highest;
+        }
+
+        for(String n: names) {
+
+            if (!n.startsWith(prefix) || n.length() == prefix.length() || n.length() - prefix.length() > 9) {
+
+                continue;
+            }
+
+            int suffix = 0;
+
+            for(int i = prefix.length(); i < n.length() && suffix >= 0; i ++) {
+
+                char c = n.charAt(i);
+                suffix = c >= '0' && c <= '9' ? suffix * 10 + (c - '0') : -1;
+            }
+
+            highest = Math.max(highest, suffix);
+        }
+
+        return highest;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,108 @@
+package io.novaordis.utilities.ac.handler;
+
+/**
+ * Decides when a buffering handler writes its buffer out. Regardless of the policy, the buffer is written when it is
+ * full, when the file is rotated and when the handler is closed.
+ *
+ * Time-based flushing is evaluated when events arrive, at the end of each batch and, when events stop coming, by a
+ * timer, so the buffered data is never older than the interval.
+ */
+public class FlushPolicy {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Flush after every n events.
+     */
+    public static FlushPolicy everyEvents(int n) {
+
+        if (n <= 0) {
+
+            throw new IllegalArgumentException("invalid event count " + n);
+        }
+
+        return new FlushPolicy(n, -1L, false);
+    }
+
+    /**
+     * Flush if more than the given number of milliseconds passed since the last flush, whether events keep arriving or
+     * not. 0 means flush after every event.
+     */
+    public static FlushPolicy everyMillis(long ms) {
+
+        if (ms < 0) {
+
+            throw new IllegalArgumentException("invalid interval " + ms);
+        }
+
+        return new FlushPolicy(-1, ms, false);
+    }
+
+    /**
+     * Flush at the end of each batch. Events delivered individually, outside a batch, are flushed right away.
+     */
+    public static FlushPolicy onBatchEnd() {
+
+        return new FlushPolicy(-1, -1L, true);
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private int events;
+    private long intervalMs;
+    private boolean batchEnd;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private FlushPolicy(int events, long intervalMs, boolean batchEnd) {
+
+        this.events = events;
+        this.intervalMs = intervalMs;
+        this.batchEnd = batchEnd;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the number of events after which to flush, or -1 if the policy is not event count based.
+     */
+    public int getEvents() {
+
+        return events;
+    }
+
+    /**
+     * @return the flush interval, or -1 if the policy is not time based.
+     */
+    public long getIntervalMs() {
+
+        return intervalMs;
+    }
+
+    public boolean isBatchEnd() {
+
+        return batchEnd;
+    }
+
+    @Override
+    public String toString() {
+
+        if (events > 0) {
+
+            return "every " + events + " events";
+        }
+
+        return intervalMs >= 0 ? "every " + intervalMs + " ms" : "on batch end";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
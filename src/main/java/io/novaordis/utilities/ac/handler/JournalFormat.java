@@ -0,0 +1,108 @@
+package io.novaordis.utilities.ac.handler;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The binary journal layout, shared by JournalHandler and JournalReader.
+ *
+ * A journal is a sequence of segment files named <prefix>-<index>.journal, with a zero-padded, increasing index. Each
+ * segment starts with a fixed size header:
+ *
+ *   int magic, int version, long first timestamp, long last timestamp
+ *
+ * followed by length-prefixed records:
+ *
+ *   int length (of what follows, not including the length itself), byte type, type-specific body
+ *
+ * A THREAD record (short id, UTF-8 name) defines a thread name, which subsequent EVENT records in the same segment
+ * refer to by id. An EVENT record contains the timestamp, the thread id (-1 for no thread name) and the serialized
+ * payload. A zero length, or the end of the file, marks the end of the data.
+ */
+final class JournalFormat {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    static final int MAGIC = 0x4e4f4a4c;
+    static final int VERSION = 1;
+
+    static final int HEADER_LENGTH = 24;
+    static final int FIRST_TIMESTAMP_OFFSET = 8;
+    static final int LAST_TIMESTAMP_OFFSET = 16;
+
+    static final byte THREAD = 1;
+    static final byte EVENT = 2;
+
+    // length + type
+    static final int RECORD_OVERHEAD = 5;
+
+    // timestamp + thread id
+    static final int EVENT_FIXED_LENGTH = 10;
+
+    static final int MAX_THREAD_ID = Short.MAX_VALUE;
+
+    static final String SEGMENT_SUFFIX = ".journal";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    static String segmentName(String prefix, long index) {
+
+        return prefix + "-" + String.format("%010d", index) + SEGMENT_SUFFIX;
+    }
+
+    /**
+     * @return the index encoded in the segment name, or -1 if the name is not a segment name for the given prefix.
+     */
+    static long segmentIndex(String prefix, String name) {
+
+        if (!name.startsWith(prefix + "-") || !name.endsWith(SEGMENT_SUFFIX)) {
+
+            return -1L;
+        }
+
+        String s = name.substring(prefix.length() + 1, name.length() - SEGMENT_SUFFIX.length());
+
+        try {
+
+            return Long.parseLong(s);
+        }
+        catch(NumberFormatException e) {
+
+            return -1L;
+        }
+    }
+
+    /**
+     * @return the segments found in the directory, in index order. An empty list if the directory does not exist.
+     */
+    static List<File> segments(File directory, String prefix) {
+
+        File[] files = directory.listFiles();
+
+        if (files == null) {
+
+            return Collections.emptyList();
+        }
+
+        List<File> result = new ArrayList<>();
+
+        for(File f: files) {
+
+            if (f.isFile() && segmentIndex(prefix, f.getName()) >= 0) {
+
+                result.add(f);
+            }
+        }
+
+        result.sort((f1, f2) -> Long.compare(segmentIndex(prefix, f1.getName()), segmentIndex(prefix, f2.getName())));
+        return result;
+    }
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private JournalFormat() {
+    }
+
+}
@@ -0,0 +1,399 @@
+package io.novaordis.utilities.ac.handler;
+
+import io.novaordis.utilities.ac.BatchHandler;
+import io.novaordis.utilities.ac.Collected;
+import io.novaordis.utilities.ac.PayloadSerializer;
+import io.novaordis.utilities.ac.PayloadSerializers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes events into a compact binary journal, for post-mortem analysis: timestamps are stored as longs, thread names
+ * are stored once per segment and referred to by id, and payloads are stored in the form produced by a
+ * PayloadSerializer. The records are written through a MappedByteBuffer, so writing an event is a memory copy.
+ *
+ * The journal is split in fixed size segments. When a record does not fit in the current segment, the segment is
+ * forced to disk and a new one is started. A new handler never overwrites an existing journal, it starts a new segment
+ * after the last segment found in the directory. The segment files are created with their full size, but the space
+ * that was not written to is not allocated on file systems that support sparse files.
+ *
+ * The methods are synchronized, so the handler can be used with collectors that invoke handlers from several pumps.
+ * Failures are reported on stderr and do not propagate, as it is not allowed for the pump to stop.
+ *
+ * @see JournalReader
+ * @see JournalFormat
+ */
+public class JournalHandler implements BatchHandler {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final String DEFAULT_PREFIX = "journal";
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final File directory;
+
+    private final String prefix;
+
+    private final int segmentSize;
+
+    private final PayloadSerializer serializer;
+
+    private MappedByteBuffer segment;
+
+    private File segmentFile;
+
+    private long segmentIndex;
+
+    // thread name to id, for the current segment
+    private final Map<String, Integer> threadIds;
+
+    private long firstTimestamp;
+    private long lastTimestamp;
+
+    private long writtenCount;
+    private long failedCount;
+
+    private boolean closed;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Uses the default prefix, the default segment size and the toString() serializer.
+     */
+    public JournalHandler(File directory) throws IOException {
+
+        this(directory, DEFAULT_PREFIX, DEFAULT_SEGMENT_SIZE, PayloadSerializers.toStringSerializer());
+    }
+
+    /**
+     * @param directory will be created if it does not exist.
+     * @param segmentSize the size of a segment file, in bytes.
+     */
+    public JournalHandler(File directory, String prefix, int segmentSize, PayloadSerializer serializer)
+            throws IOException {
+
+        if (directory == null) {
+
+            throw new IllegalArgumentException("null directory");
+        }
+
+        if (prefix == null || prefix.isEmpty()) {
+
+            throw new IllegalArgumentException("null or empty prefix");
+        }
+
+        if (segmentSize <= JournalFormat.HEADER_LENGTH) {
+
+            throw new IllegalArgumentException("invalid segment size " + segmentSize);
+        }
+
+        if (serializer == null) {
+
+            throw new IllegalArgumentException("null serializer");
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+
+            throw new IOException("failed to create directory " + directory);
+        }
+
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentSize = segmentSize;
+        this.serializer = serializer;
+        this.threadIds = new HashMap<>();
+
+        List<File> existing = JournalFormat.segments(directory, prefix);
+
+        this.segmentIndex = existing.isEmpty() ?
+                -1L : JournalFormat.segmentIndex(prefix, existing.get(existing.size() - 1).getName());
+
+        openNextSegment();
+    }
+
+    // BatchHandler implementation -------------------------------------------------------------------------------------
+
+    @Override
+    public synchronized void handleBatch(List<Collected> batch) {
+
+        //noinspection ForLoopReplaceableByForEach
+        for(int i = 0; i < batch.size(); i ++) {
+
+            Collected c = batch.get(i);
+            write(c.getTimeStamp(), c.getThreadName(), c.getPayload());
+        }
+    }
+
+    // Handler implementation ------------------------------------------------------------------------------------------
+
+    @Override
+    public boolean canHandle(Object o) {
+
+        return true;
+    }
+
+    @Override
+    public synchronized void handle(long timestamp, String originatorThreadName, Object o) {
+
+        write(timestamp, originatorThreadName, o);
+    }
+
+    @Override
+    public synchronized void close() {
+
+        if (closed) {
+
+            return;
+        }
+
+        force();
+        closed = true;
+
+        // the mapping is released when the buffer is garbage collected
+        segment = null;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Forces the content of the current segment to disk. Not needed for the data to be visible to readers on the same
+     * host, only for durability.
+     */
+    public synchronized void force() {
+
+        if (segment != null) {
+
+            segment.force();
+        }
+    }
+
+    public File getDirectory() {
+
+        return directory;
+    }
+
+    public String getPrefix() {
+
+        return prefix;
+    }
+
+    public int getSegmentSize() {
+
+        return segmentSize;
+    }
+
+    public PayloadSerializer getSerializer() {
+
+        return serializer;
+    }
+
+    /**
+     * @return the segment file currently being written, null if closed.
+     */
+    public synchronized File getCurrentSegment() {
+
+        return closed ? null : segmentFile;
+    }
+
+    /**
+     * @return the number of events written to the journal.
+     */
+    public synchronized long getWrittenCount() {
+
+        return writtenCount;
+    }
+
+    /**
+     * @return the number of events that could not be written: events whose payload could not be serialized, events
+     *         too large for a segment, events that arrived while no segment could be opened.
+     */
+    public synchronized long getFailedCount() {
+
+        return failedCount;
+    }
+
+    @Override
+    public String toString() {
+
+        return "JournalHandler[" + directory + "/" + prefix + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void write(long timestamp, String threadName, Object payload) {
+
+        if (closed) {
+
+            return;
+        }
+
+        if (segment == null) {
+
+            // a previous roll over failed, try again
+            try {
+
+                openNextSegment();
+            }
+            catch(IOException e) {
+
+                failedCount ++;
+                return;
+            }
+        }
+
+        byte[] serialized;
+
+        try {
+
+            serialized = serializer.serialize(payload);
+        }
+        catch(Throwable t) {
+
+            System.err.println("[warning] " + this + " failed to serialize " + payload + ": " + t);
+            failedCount ++;
+            return;
+        }
+
+        int eventLength = JournalFormat.EVENT_FIXED_LENGTH + serialized.length + 1;
+
+        if (JournalFormat.HEADER_LENGTH + eventLength + 4 + threadRecordLength(threadName) > segmentSize) {
+
+            System.err.println(
+                    "[warning] " + this + " dropping event, " + serialized.length + " byte payload does not fit in a " +
+                            segmentSize + " byte segment");
+            failedCount ++;
+            return;
+        }
+
+        Integer threadId = threadName == null ? null : threadIds.get(threadName);
+
+        int required = eventLength + 4 + (threadName != null && threadId == null ? threadRecordLength(threadName) : 0);
+
+        if (segment.remaining() < required || (threadId == null && threadIds.size() > JournalFormat.MAX_THREAD_ID)) {
+
+            try {
+
+                openNextSegment();
+            }
+            catch(IOException e) {
+
+                failedCount ++;
+                return;
+            }
+
+            threadId = null;
+        }
+
+        if (threadName != null && threadId == null) {
+
+            threadId = threadIds.size();
+            threadIds.put(threadName, threadId);
+
+            byte[] name = threadName.getBytes(StandardCharsets.UTF_8);
+            int start = segment.position();
+            segment.position(start + 4);
+            segment.put(JournalFormat.THREAD);
+            segment.putShort((short)threadId.intValue());
+            segment.put(name);
+            publish(start);
+        }
+
+        int start = segment.position();
+        segment.position(start + 4);
+        segment.put(JournalFormat.EVENT);
+        segment.putLong(timestamp);
+        segment.putShort(threadId == null ? (short)-1 : (short)threadId.intValue());
+        segment.put(serialized);
+        publish(start);
+
+        if (timestamp < firstTimestamp) {
+
+            firstTimestamp = timestamp;
+            segment.putLong(JournalFormat.FIRST_TIMESTAMP_OFFSET, timestamp);
+        }
+
+        if (timestamp > lastTimestamp) {
+
+            lastTimestamp = timestamp;
+            segment.putLong(JournalFormat.LAST_TIMESTAMP_OFFSET, timestamp);
+        }
+
+        writtenCount ++;
+    }
+
+    /**
+     * Writes the length of the record that starts at the given position, and that ends at the current position. The
+     * length is written last, so a reader never sees a partially written record.
+     */
+    private void publish(int start) {
+
+        segment.putInt(start, segment.position() - start - 4);
+    }
+
+    private static int threadRecordLength(String threadName) {
+
+        if (threadName == null) {
+
+            return 0;
+        }
+
+        // length + type + id + name; the name length is overestimated, to avoid encoding it twice
+        return 4 + 1 + 2 + 3 * threadName.length();
+    }
+
+    private void openNextSegment() throws IOException {
+
+        if (segment != null) {
+
+            segment.force();
+            segment = null;
+        }
+
+        threadIds.clear();
+        firstTimestamp = Long.MAX_VALUE;
+        lastTimestamp = Long.MIN_VALUE;
+
+        segmentIndex ++;
+        File f = new File(directory, JournalFormat.segmentName(prefix, segmentIndex));
+
+        try (FileChannel channel = FileChannel.open(
+                f.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            // the mapping remains valid after the channel is closed
+            MappedByteBuffer b = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+
+            b.putInt(JournalFormat.MAGIC);
+            b.putInt(JournalFormat.VERSION);
+            b.putLong(firstTimestamp);
+            b.putLong(lastTimestamp);
+
+            segment = b;
+            segmentFile = f;
+        }
+        catch(IOException e) {
+
+            System.err.println("[warning] " + this + " failed to open segment " + f + ": " + e);
+            throw e;
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
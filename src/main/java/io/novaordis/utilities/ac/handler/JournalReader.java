@@ -0,0 +1,391 @@
+package io.novaordis.utilities.ac.handler;
+
+import io.novaordis.utilities.ac.Collected;
+import io.novaordis.utilities.ac.PayloadSerializer;
+import io.novaordis.utilities.ac.PayloadSerializers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the events written by a JournalHandler, segment by segment, in the order they were written. The segments are
+ * memory mapped read-only.
+ *
+ * A timestamp range can be specified. Segments whose header shows no events in the range are skipped without being
+ * read, and the events of the other segments are filtered by timestamp.
+ *
+ * Corrupted or truncated segments are read up to the first invalid record, the problem is reported on stderr and
+ * reading continues with the next segment. Failing to read a segment file is reported as an UncheckedIOException by
+ * the iterator.
+ *
+ * Instances are not thread safe, but they can create any number of independent iterators.
+ *
+ * @see JournalHandler
+ */
+public class JournalReader implements Iterable<Collected> {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // marks a record that was read, but does not produce an event
+    private static final Collected SKIPPED = new Collected(0L, null, null);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final File directory;
+
+    private final String prefix;
+
+    private final PayloadSerializer serializer;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Uses the default prefix and the toString() serializer.
+     */
+    public JournalReader(File directory) {
+
+        this(directory, JournalHandler.DEFAULT_PREFIX, PayloadSerializers.toStringSerializer());
+    }
+
+    /**
+     * @param serializer must be compatible with the serializer the journal was written with.
+     */
+    public JournalReader(File directory, String prefix, PayloadSerializer serializer) {
+
+        if (directory == null) {
+
+            throw new IllegalArgumentException("null directory");
+        }
+
+        if (prefix == null || prefix.isEmpty()) {
+
+            throw new IllegalArgumentException("null or empty prefix");
+        }
+
+        if (serializer == null) {
+
+            throw new IllegalArgumentException("null serializer");
+        }
+
+        this.directory = directory;
+        this.prefix = prefix;
+        this.serializer = serializer;
+    }
+
+    // Iterable implementation -----------------------------------------------------------------------------------------
+
+    /**
+     * Iterates over all events, in the order they were written. The segments are listed when the iterator is created.
+     */
+    @Override
+    public Iterator<Collected> iterator() {
+
+        return iterator(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Iterates over the events with from <= timestamp < to, in the order they were written. The segments are listed
+     * when the iterator is created.
+     */
+    public Iterator<Collected> iterator(long from, long to) {
+
+        if (from > to) {
+
+            throw new IllegalArgumentException("invalid range [" + from + ", " + to + ")");
+        }
+
+        return new EventIterator(getSegments(), from, to);
+    }
+
+    /**
+     * @return the segment files currently present in the directory, in order.
+     */
+    public List<File> getSegments() {
+
+        return JournalFormat.segments(directory, prefix);
+    }
+
+    public File getDirectory() {
+
+        return directory;
+    }
+
+    public String getPrefix() {
+
+        return prefix;
+    }
+
+    @Override
+    public String toString() {
+
+        return "JournalReader[" + directory + "/" + prefix + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private class EventIterator implements Iterator<Collected> {
+
+        private final List<File> segments;
+        private final long from;
+        private final long to;
+
+        private int segmentIndex;
+        private File segmentFile;
+        private MappedByteBuffer segment;
+
+        // indexed by thread id, for the current segment
+        private final List<String> threadNames;
+
+        // buffer the payloads are copied into before being deserialized
+        private byte[] payloadBuffer;
+
+        private Collected next;
+
+        EventIterator(List<File> segments, long from, long to) {
+
+            this.segments = segments;
+            this.from = from;
+            this.to = to;
+            this.threadNames = new ArrayList<>();
+            this.payloadBuffer = new byte[1024];
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            if (next == null) {
+
+                next = advance();
+            }
+
+            return next != null;
+        }
+
+        @Override
+        public Collected next() {
+
+            if (!hasNext()) {
+
+                throw new NoSuchElementException();
+            }
+
+            Collected c = next;
+            next = null;
+            return c;
+        }
+
+        /**
+         * @return the next event in range, or null if there are no more events.
+         */
+        private Collected advance() {
+
+            while(true) {
+
+                if (segment == null && !openNextSegment()) {
+
+                    return null;
+                }
+
+                Collected c = readRecord();
+
+                if (c == null) {
+
+                    segment = null;
+                    continue;
+                }
+
+                if (c != SKIPPED) {
+
+                    return c;
+                }
+            }
+        }
+
+        /**
+         * @return false if there are no more segments.
+         */
+        private boolean openNextSegment() {
+
+            while(segmentIndex < segments.size()) {
+
+                File f = segments.get(segmentIndex ++);
+
+                MappedByteBuffer b;
+
+                try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+
+                    b = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+                catch(IOException e) {
+
+                    throw new UncheckedIOException("failed to read " + f, e);
+                }
+
+                b.order(ByteOrder.BIG_ENDIAN);
+
+                if (b.remaining() < JournalFormat.HEADER_LENGTH) {
+
+                    System.err.println("[warning] " + JournalReader.this + ": " + f + " is not a journal segment");
+                    continue;
+                }
+
+                int magic = b.getInt();
+                int version = b.getInt();
+
+                if (magic != JournalFormat.MAGIC || version != JournalFormat.VERSION) {
+
+                    System.err.println(
+                            "[warning] " + JournalReader.this + ": " + f + " is not a version " +
+                                    JournalFormat.VERSION + " journal segment");
+                    continue;
+                }
+
+                long first = b.getLong();
+                long last = b.getLong();
+
+                if (last < from || first >= to) {
+
+                    // nothing in range, this includes the empty segments
+                    continue;
+                }
+
+                segment = b;
+                segmentFile = f;
+                threadNames.clear();
+                return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * @return the next event in the current segment, SKIPPED if the next record is not an event in range, or null
+         *         if the end of the segment was reached.
+         */
+        private Collected readRecord() {
+
+            if (segment.remaining() < 4) {
+
+                return null;
+            }
+
+            int position = segment.position();
+            int length = segment.getInt();
+
+            if (length == 0) {
+
+                return null;
+            }
+
+            if (length < 0 || length > segment.remaining()) {
+
+                return corrupted(position, "invalid record length " + length);
+            }
+
+            int end = segment.position() + length;
+            byte type = segment.get();
+
+            if (type == JournalFormat.THREAD) {
+
+                if (length < 3) {
+
+                    return corrupted(position, "invalid thread record length " + length);
+                }
+
+                int id = segment.getShort();
+
+                if (id != threadNames.size()) {
+
+                    return corrupted(position, "unexpected thread id " + id);
+                }
+
+                int nameLength = end - segment.position();
+                threadNames.add(new String(read(nameLength), 0, nameLength, StandardCharsets.UTF_8));
+                return SKIPPED;
+            }
+
+            if (type != JournalFormat.EVENT || length < 1 + JournalFormat.EVENT_FIXED_LENGTH) {
+
+                return corrupted(position, "invalid record type " + type + " or length " + length);
+            }
+
+            long timestamp = segment.getLong();
+
+            if (timestamp < from || timestamp >= to) {
+
+                segment.position(end);
+                return SKIPPED;
+            }
+
+            int threadId = segment.getShort();
+
+            if (threadId < -1 || threadId >= threadNames.size()) {
+
+                return corrupted(position, "unknown thread id " + threadId);
+            }
+
+            String threadName = threadId == -1 ? null : threadNames.get(threadId);
+
+            int payloadLength = end - segment.position();
+            byte[] bytes = read(payloadLength);
+
+            Object payload;
+
+            try {
+
+                payload = serializer.deserialize(bytes, 0, payloadLength);
+            }
+            catch(IllegalArgumentException e) {
+
+                System.err.println(
+                        "[warning] " + JournalReader.this + " failed to deserialize payload at " + segmentFile + ":" +
+                                position + ": " + e);
+                payload = null;
+            }
+
+            return new Collected(timestamp, threadName, payload);
+        }
+
+        /**
+         * Copies length bytes from the segment into the reusable payload buffer.
+         */
+        private byte[] read(int length) {
+
+            if (payloadBuffer.length < length) {
+
+                payloadBuffer = new byte[Math.max(length, 2 * payloadBuffer.length)];
+            }
+
+            segment.get(payloadBuffer, 0, length);
+            return payloadBuffer;
+        }
+
+        private Collected corrupted(int position, String message) {
+
+            System.err.println(
+                    "[warning] " + JournalReader.this + ": " + segmentFile + " corrupted at " + position + ", " +
+                            message + ", skipping the rest of the segment");
+            return null;
+        }
+    }
+}
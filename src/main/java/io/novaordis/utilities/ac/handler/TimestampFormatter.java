@@ -0,0 +1,154 @@
+package io.novaordis.utilities.ac.handler;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Formats millisecond timestamps as "yyyy/MM/dd HH:mm:ss.SSS" ASCII bytes, the same format ToCsv uses, without
+ * allocating. The "yyyy/MM/dd HH:mm:ss." prefix is computed once per second and cached, so formatting consecutive
+ * timestamps that fall in the same second only renders the milliseconds.
+ *
+ * Not thread safe, each thread or handler is supposed to use its own instance.
+ */
+public class TimestampFormatter {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    /**
+     * The length, in bytes, of a formatted timestamp.
+     */
+    public static final int LENGTH = 23;
+
+    private static final int PREFIX_LENGTH = 20;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final Calendar calendar;
+
+    // "yyyy/MM/dd HH:mm:ss."
+    private final byte[] prefix;
+
+    // the second the prefix was computed for
+    private long cachedSecond;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Uses the default time zone.
+     */
+    public TimestampFormatter() {
+
+        this(TimeZone.getDefault());
+    }
+
+    public TimestampFormatter(TimeZone timeZone) {
+
+        this.calendar = Calendar.getInstance(timeZone);
+        this.prefix = new byte[PREFIX_LENGTH];
+        this.cachedSecond = Long.MIN_VALUE;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Writes LENGTH bytes into the array.
+     *
+     * @return the offset right after the formatted timestamp.
+     *
+     * @exception ArrayIndexOutOfBoundsException if the array does not have LENGTH bytes available at offset.
+     */
+    public int format(long timestamp, byte[] destination, int offset) {
+
+        long second = Math.floorDiv(timestamp, 1000L);
+        int millis = (int)Math.floorMod(timestamp, 1000L);
+
+        if (second != cachedSecond) {
+
+            renderPrefix(second);
+        }
+
+        System.arraycopy(prefix, 0, destination, offset, PREFIX_LENGTH);
+
+        offset += PREFIX_LENGTH;
+        destination[offset ++] = (byte)('0' + millis / 100);
+        destination[offset ++] = (byte)('0' + (millis / 10) % 10);
+        destination[offset ++] = (byte)('0' + millis % 10);
+        return offset;
+    }
+
+    /**
+     * Writes LENGTH bytes at the buffer's current position, and advances the position.
+     *
+     * @exception java.nio.BufferOverflowException if the buffer does not have LENGTH bytes remaining.
+     */
+    public void format(long timestamp, ByteBuffer destination) {
+
+        long second = Math.floorDiv(timestamp, 1000L);
+        int millis = (int)Math.floorMod(timestamp, 1000L);
+
+        if (second != cachedSecond) {
+
+            renderPrefix(second);
+        }
+
+        destination.put(prefix);
+        destination.put((byte)('0' + millis / 100));
+        destination.put((byte)('0' + (millis / 10) % 10));
+        destination.put((byte)('0' + millis % 10));
+    }
+
+    /**
+     * Convenience method, allocates.
+     */
+    public String format(long timestamp) {
+
+        byte[] b = new byte[LENGTH];
+        format(timestamp, b, 0);
+        return new String(b, 0, LENGTH, StandardCharsets.US_ASCII);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void renderPrefix(long second) {
+
+        calendar.setTimeInMillis(second * 1000L);
+
+        int i = 0;
+        i = digits(calendar.get(Calendar.YEAR), 4, i);
+        prefix[i ++] = '/';
+        i = digits(calendar.get(Calendar.MONTH) + 1, 2, i);
+        prefix[i ++] = '/';
+        i = digits(calendar.get(Calendar.DAY_OF_MONTH), 2, i);
+        prefix[i ++] = ' ';
+        i = digits(calendar.get(Calendar.HOUR_OF_DAY), 2, i);
+        prefix[i ++] = ':';
+        i = digits(calendar.get(Calendar.MINUTE), 2, i);
+        prefix[i ++] = ':';
+        i = digits(calendar.get(Calendar.SECOND), 2, i);
+        prefix[i] = '.';
+
+        cachedSecond = second;
+    }
+
+    private int digits(int value, int width, int offset) {
+
+        for(int i = offset + width - 1; i >= offset; i --) {
+
+            prefix[i] = (byte)('0' + value % 10);
+            value /= 10;
+        }
+
+        return offset + width;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
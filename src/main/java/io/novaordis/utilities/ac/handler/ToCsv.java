@@ -1,17 +1,21 @@
 package io.novaordis.utilities.ac.handler;
 
-import io.novaordis.utilities.ac.Handler;
+import io.novaordis.utilities.ac.BatchHandler;
+import io.novaordis.utilities.ac.Collected;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.PrintWriter;
 import java.text.Format;
 import java.text.SimpleDateFormat;
+import java.util.List;
 
 /**
  * An example of CSV file handler.
+ *
+ * @see BufferedToCsv for a handler suitable for high event rates.
  */
-public class ToCsv implements Handler {
+public class ToCsv implements BatchHandler {
 
     // Constants -------------------------------------------------------------------------------------------------------
 
@@ -48,6 +52,24 @@ public class ToCsv implements Handler {
         }
     }
 
+    // BatchHandler implementation -------------------------------------------------------------------------------------
+
+    /**
+     * Writes all lines of the batch and flushes once, at the end of the batch.
+     */
+    @Override
+    public void handleBatch(List<Collected> batch) {
+
+        //noinspection ForLoopReplaceableByForEach
+        for(int i = 0; i < batch.size(); i ++) {
+
+            Collected c = batch.get(i);
+            pw.println(TIMESTAMP_FORMAT.format(c.getTimeStamp()) + ", " + c.getThreadName() + ", " + c.getPayload());
+        }
+
+        pw.flush();
+    }
+
     // Handler implementation ------------------------------------------------------------------------------------------
 
     @Override
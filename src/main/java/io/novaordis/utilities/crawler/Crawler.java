@@ -1,5 +1,7 @@
 package io.novaordis.utilities.crawler;
 
+import java.util.function.Predicate;
+
 /**
  * A crawler can walk a tree in 4 ways, by choosing a different order of visiting:
  *
@@ -9,6 +11,10 @@ package io.novaordis.utilities.crawler;
  * 4. Crawler.LEVELORDER (Crawler.BREADTH_FIRST): It means visit on the same horizontal level first
  *    all childs, then proceed to the next horizontal level.
  *
+ * The crawl can be narrowed down with a filter, which prunes the frames that do not match it together with their
+ * subtrees, and with a maximum depth. A Visitor can also skip the subtree of the frame it is visiting, or terminate
+ * the crawl. The children of the pruned frames are never requested.
+ *
  * @author <a href="mailto:ovidiu@feodorov.com">Ovidiu Feodorov</a>
  *
  * Copyright 2008 Ovidiu Feodorov
@@ -25,6 +31,11 @@ public interface Crawler
     public static final byte LEVELORDER = 3;
     public static final byte BREADTH_FIRST = 3;
 
+    /**
+     * The default maximum depth.
+     */
+    public static final int UNLIMITED_DEPTH = Integer.MAX_VALUE;
+
     /**
      * @return the Collector instance that has been passed in, but after the whole frame was crawled
      *         over, and all that needed collected was collected.
@@ -32,4 +43,62 @@ public interface Crawler
     Collector crawl(Frame frame, Collector in) throws Exception;
 
     byte getVisitingOrder();
+
+    /**
+     * The frames, including the root, for which the filter returns false are not visited, and neither are their
+     * descendants. Null, the default, means no filtering. The filter may be invoked concurrently by parallel crawlers.
+     *
+     * The default implementation, for crawlers that do not filter, only accepts null.
+     *
+     * @exception UnsupportedOperationException if the crawler does not filter.
+     *
+     * @see CrawlerBase
+     */
+    default void setFilter(Predicate<? super Frame> filter)
+    {
+        if (filter != null)
+        {
+            throw new UnsupportedOperationException(getClass().getName() + " does not support filtering");
+        }
+    }
+
+    /**
+     * The default implementation returns null, no filtering.
+     */
+    default Predicate<? super Frame> getFilter()
+    {
+        return null;
+    }
+
+    /**
+     * Only the frames found at most 'maxDepth' levels below the root are visited. The root is at depth 0, so a
+     * maximum depth of 0 visits the root only.
+     *
+     * The default implementation, for crawlers that do not limit the depth, only accepts UNLIMITED_DEPTH.
+     *
+     * @exception IllegalArgumentException on negative values.
+     * @exception UnsupportedOperationException if the crawler does not limit the depth.
+     *
+     * @see CrawlerBase
+     */
+    default void setMaxDepth(int maxDepth)
+    {
+        if (maxDepth < 0)
+        {
+            throw new IllegalArgumentException("Invalid maximum depth " + maxDepth);
+        }
+
+        if (maxDepth != UNLIMITED_DEPTH)
+        {
+            throw new UnsupportedOperationException(getClass().getName() + " does not support a maximum depth");
+        }
+    }
+
+    /**
+     * The default implementation returns UNLIMITED_DEPTH.
+     */
+    default int getMaxDepth()
+    {
+        return UNLIMITED_DEPTH;
+    }
 }
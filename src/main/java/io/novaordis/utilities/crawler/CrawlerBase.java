@@ -0,0 +1,88 @@
+package io.novaordis.utilities.crawler;
+
+import java.util.function.Predicate;
+
+/**
+ * The state and the pruning logic shared by the crawler implementations.
+ */
+public abstract class CrawlerBase implements Crawler
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    // Static --------------------------------------------------------------------------------------
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    private volatile Predicate<? super Frame> filter;
+
+    private volatile int maxDepth;
+
+    // Constructors --------------------------------------------------------------------------------
+
+    protected CrawlerBase()
+    {
+        this.maxDepth = UNLIMITED_DEPTH;
+    }
+
+    // Crawler implementation ----------------------------------------------------------------------
+
+    public void setFilter(Predicate<? super Frame> filter)
+    {
+        this.filter = filter;
+    }
+
+    public Predicate<? super Frame> getFilter()
+    {
+        return filter;
+    }
+
+    public void setMaxDepth(int maxDepth)
+    {
+        if (maxDepth < 0)
+        {
+            throw new IllegalArgumentException("Invalid maximum depth " + maxDepth);
+        }
+
+        this.maxDepth = maxDepth;
+    }
+
+    public int getMaxDepth()
+    {
+        return maxDepth;
+    }
+
+    // Public --------------------------------------------------------------------------------------
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    /**
+     * @return true if the frame, found at the given depth, must be visited. The filter is not applied to the frames
+     *         that are too deep.
+     */
+    protected boolean accept(Frame frame, int depth)
+    {
+        if (depth > maxDepth)
+        {
+            return false;
+        }
+
+        Predicate<? super Frame> f = filter;
+
+        return f == null || f.test(frame);
+    }
+
+    /**
+     * @return true if the children of a frame found at the given depth may be visited. If false, the children are
+     *         not even requested.
+     */
+    protected boolean expand(int depth)
+    {
+        return depth < maxDepth;
+    }
+
+    // Private -------------------------------------------------------------------------------------
+
+    // Inner classes -------------------------------------------------------------------------------
+}
@@ -0,0 +1,258 @@
+package io.novaordis.utilities.crawler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A Crawler that visits the children of a frame in parallel, as ForkJoin tasks. Only PREORDER and POSTORDER are
+ * supported, with the same guarantees as the single threaded crawler regarding a frame and its subtree: in PREORDER a
+ * frame is used before any of its descendants, and in POSTORDER a frame is used only after all its descendants were,
+ * so a POSTORDER crawl can still delete a directory tree. There is no ordering guarantee between siblings and their
+ * subtrees.
+ *
+ * The collector is invoked concurrently from the pool threads, so it must be thread safe. The collector returned by
+ * Frame.use() is the one passed to the frame's children, as with the single threaded crawler.
+ *
+ * If a frame fails, no further frames are used, the tasks already running finish, and crawl() throws the first
+ * failure. In POSTORDER, the ancestors of a failed frame are never used. A Visitor that returns TERMINATE stops the
+ * crawl in the same way, except that crawl() returns normally. As the subtrees are visited concurrently, the tasks
+ * that were already running may still visit a few frames of other subtrees after the terminating one.
+ */
+public class ForkJoinCrawler extends CrawlerBase
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    // Static --------------------------------------------------------------------------------------
+
+    /**
+     * @exception IllegalArgumentException
+     */
+    private static byte validateVisitingOrder(byte b)
+    {
+        if (b != PREORDER && b != POSTORDER)
+        {
+            throw new IllegalArgumentException(
+                "Invalid visiting order, only PREORDER and POSTORDER can be crawled in parallel");
+        }
+
+        return b;
+    }
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    private byte visitingOrder;
+
+    private ForkJoinPool pool;
+
+    // Constructors --------------------------------------------------------------------------------
+
+    /**
+     * Default visiting order is PREORDER, default parallelism is the number of available processors.
+     */
+    public ForkJoinCrawler()
+    {
+        this(PREORDER);
+    }
+
+    /**
+     * @param visitingOrder - Crawler.PREORDER or Crawler.POSTORDER.
+     */
+    public ForkJoinCrawler(byte visitingOrder)
+    {
+        this(visitingOrder, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param visitingOrder - Crawler.PREORDER or Crawler.POSTORDER.
+     * @param parallelism - the number of threads that use frames concurrently. Crawls that are latency bound on file
+     *        system calls may benefit from more threads than processors.
+     */
+    public ForkJoinCrawler(byte visitingOrder, int parallelism)
+    {
+        this.visitingOrder = validateVisitingOrder(visitingOrder);
+
+        if (parallelism <= 0)
+        {
+            throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+        }
+
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    // Crawler implementation ----------------------------------------------------------------------
+
+    public Collector crawl(Frame frame, Collector in) throws Exception
+    {
+        if (!accept(frame, 0))
+        {
+            return in;
+        }
+
+        CrawlState state = new CrawlState();
+        CrawlTask root = new CrawlTask(frame, 0, in, state);
+
+        pool.invoke(root);
+
+        if (state.failure.get() != null)
+        {
+            throw state.failure.get();
+        }
+
+        // a terminated crawl may not have used the root
+        return root.result == null ? in : root.result;
+    }
+
+    public byte getVisitingOrder()
+    {
+        return visitingOrder;
+    }
+
+    // Public --------------------------------------------------------------------------------------
+
+    public int getParallelism()
+    {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Stops the pool threads. The crawler cannot be used afterwards. Idle pool threads exit by themselves, so it
+     * is not mandatory.
+     */
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    // Inner classes -------------------------------------------------------------------------------
+
+    private static class CrawlState
+    {
+        // the first failure
+        private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+        // set when a visitor returned TERMINATE
+        private final AtomicBoolean terminated = new AtomicBoolean();
+
+        boolean isStopped()
+        {
+            return failure.get() != null || terminated.get();
+        }
+    }
+
+    private class CrawlTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Frame frame;
+        private final int depth;
+        private final Collector in;
+        private final CrawlState state;
+
+        // the collector returned by the frame
+        private Collector result;
+
+        CrawlTask(Frame frame, int depth, Collector in, CrawlState state)
+        {
+            this.frame = frame;
+            this.depth = depth;
+            this.in = in;
+            this.state = state;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (state.isStopped())
+            {
+                return;
+            }
+
+            try
+            {
+                if (visitingOrder == PREORDER)
+                {
+                    if (visit() == VisitResult.CONTINUE)
+                    {
+                        crawlChildren(result);
+                    }
+                }
+                else
+                {
+                    crawlChildren(in);
+
+                    // the frame must not be used if any of its descendants failed, or the crawl was terminated
+                    if (!state.isStopped())
+                    {
+                        visit();
+                    }
+                }
+            }
+            catch(Exception e)
+            {
+                state.failure.compareAndSet(null, e);
+            }
+        }
+
+        /**
+         * Uses the frame, or passes it to the visitor.
+         */
+        private VisitResult visit() throws Exception
+        {
+            VisitResult r = VisitResult.CONTINUE;
+
+            if (in instanceof Visitor)
+            {
+                result = in;
+                r = ((Visitor)in).visit(frame);
+            }
+            else
+            {
+                result = frame.use(in);
+            }
+
+            if (r == VisitResult.TERMINATE)
+            {
+                state.terminated.set(true);
+            }
+
+            return r == null ? VisitResult.CONTINUE : r;
+        }
+
+        private void crawlChildren(Collector c)
+        {
+            if (!expand(depth))
+            {
+                return;
+            }
+
+            List<Frame> children = frame.children();
+
+            if (children.isEmpty())
+            {
+                return;
+            }
+
+            List<CrawlTask> tasks = new ArrayList<CrawlTask>(children.size());
+
+            for(Frame child: children)
+            {
+                if (accept(child, depth + 1))
+                {
+                    tasks.add(new CrawlTask(child, depth + 1, c, state));
+                }
+            }
+
+            invokeAll(tasks);
+        }
+    }
+}
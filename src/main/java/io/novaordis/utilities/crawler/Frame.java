@@ -15,5 +15,17 @@ public interface Frame
 {
     List<Frame> children();
 
+    /**
+     * The children, possibly produced as the iteration advances, so frames with many children do not have to
+     * materialize them all. If the iterator is Closeable, the crawlers that use this method close it when they are
+     * done with it, whether the iteration completed or not.
+     *
+     * The default implementation iterates over children().
+     */
+    default Iterable<Frame> lazyChildren()
+    {
+        return children();
+    }
+
     Collector use(Collector in) throws Exception;
 }
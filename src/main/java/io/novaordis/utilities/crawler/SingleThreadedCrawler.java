@@ -1,6 +1,30 @@
 package io.novaordis.utilities.crawler;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
+ * Walks the tree without recursion: the depth first orders keep the path from the root to the current frame on an
+ * explicit deque, and LEVELORDER keeps the frames discovered but not yet visited on a queue, so the depth of the tree
+ * is limited by the heap, not by the thread stack. Memory is proportional to the depth of the tree for PREORDER,
+ * INORDER and POSTORDER, and to its widest level for LEVELORDER.
+ *
+ * As the frames may have any number of children, INORDER visits the subtree of the first child, then the frame, then
+ * the subtrees of the remaining children.
+ *
+ * The children of a frame are not requested before the frame is used in PREORDER and LEVELORDER. The depth first
+ * orders iterate over Frame.lazyChildren(), so a frame's children are not required to be all in memory at the same
+ * time, and close the iterators that are Closeable as soon as they are exhausted.
+ *
  * @author <a href="mailto:ovidiu@feodorov.com">Ovidiu Feodorov</a>
  *
  * Copyright 2008 Ovidiu Feodorov
@@ -9,7 +33,7 @@ package io.novaordis.utilities.crawler;
  *
  * $Id$
  */
-public class SingleThreadedCrawler implements Crawler
+public class SingleThreadedCrawler extends CrawlerBase
 {
     // Constants -----------------------------------------------------------------------------------
 
@@ -34,7 +58,7 @@ public class SingleThreadedCrawler implements Crawler
 
     // Attributes ----------------------------------------------------------------------------------
 
-    // stateless, with the exception of the visiting order
+    // stateless, with the exception of the visiting order, the filter and the maximum depth
 
     private byte visitingOrder;
 
@@ -50,7 +74,7 @@ public class SingleThreadedCrawler implements Crawler
     }
 
     /**
-     * @param visitingOrder - one of Crawler.INORDER, Crawler.POSTORDER, Crawler.LEVELORDER (or
+     * @param visitingOrder - one of Crawler.PREORDER, Crawler.INORDER, Crawler.POSTORDER, Crawler.LEVELORDER (or
      *        Crawler.BREADTH_FIRST)
      */
     public SingleThreadedCrawler(byte visitingOrder)
@@ -62,30 +86,40 @@ public class SingleThreadedCrawler implements Crawler
 
     public Collector crawl(Frame frame, Collector in) throws Exception
     {
-        if (visitingOrder == PREORDER)
-        {
-            in = frame.use(in);
+        Traversal t = new Traversal(frame);
 
-            for(Frame child: frame.children())
-            {
-                in = crawl(child, in);
-            }
-        }
-        else if (visitingOrder == POSTORDER)
+        try
         {
-            for(Frame child: frame.children())
+            while(t.hasNext())
             {
-                in = crawl(child, in);
+                Frame f = t.next();
+                VisitResult r = VisitResult.CONTINUE;
+
+                if (in instanceof Visitor)
+                {
+                    r = ((Visitor)in).visit(f);
+                }
+                else
+                {
+                    in = f.use(in);
+                }
+
+                if (r == VisitResult.TERMINATE)
+                {
+                    break;
+                }
+                else if (r == VisitResult.SKIP_SUBTREE)
+                {
+                    t.skipSubtree();
+                }
             }
 
-            in = frame.use(in);
+            return in;
         }
-        else
+        finally
         {
-            throw new Exception("NOT YET IMPLEMENTED");
+            t.close();
         }
-
-        return in;
     }
 
     public byte getVisitingOrder()
@@ -95,6 +129,46 @@ public class SingleThreadedCrawler implements Crawler
 
     // Public --------------------------------------------------------------------------------------
 
+    /**
+     * Pull style traversal: returns the frames of the tree in visiting order, without using them. The tree is walked
+     * lazily, as the iterator advances, and pruned according to the filter and the maximum depth. The iterator is not
+     * thread safe.
+     *
+     * The iterator is Closeable: an iteration that is abandoned before the last frame should be closed, so the
+     * children iterators of the frames on the current path are closed (for example, open directory streams).
+     */
+    public Iterator<Frame> iterator(Frame root)
+    {
+        if (root == null)
+        {
+            throw new IllegalArgumentException("null root");
+        }
+
+        return new Traversal(root);
+    }
+
+    /**
+     * @see SingleThreadedCrawler#iterator(Frame)
+     */
+    public Spliterator<Frame> spliterator(Frame root)
+    {
+        return Spliterators.spliteratorUnknownSize(iterator(root), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * @return a sequential stream of the frames of the tree, in visiting order. Closing the stream closes the
+     *         underlying iterator.
+     *
+     * @see SingleThreadedCrawler#iterator(Frame)
+     */
+    public Stream<Frame> stream(Frame root)
+    {
+        final Traversal t = (Traversal)iterator(root);
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(t, Spliterator.ORDERED | Spliterator.NONNULL),
+            false).onClose(t::close);
+    }
+
     // Package protected ---------------------------------------------------------------------------
 
     // Protected -----------------------------------------------------------------------------------
@@ -102,4 +176,183 @@ public class SingleThreadedCrawler implements Crawler
     // Private -------------------------------------------------------------------------------------
 
     // Inner classes -------------------------------------------------------------------------------
+
+    private class Traversal implements Iterator<Frame>, Closeable
+    {
+        // PREORDER, INORDER and POSTORDER: the path from the root to the current frame
+        private final Deque<Step> path = new ArrayDeque<Step>();
+
+        // LEVELORDER: the frames discovered, but not returned yet
+        private final Deque<Step> queue = new ArrayDeque<Step>();
+
+        // LEVELORDER: the step returned last, whose children were not queued yet
+        private Step last;
+
+        // the step whose frame was returned last
+        private Step current;
+
+        private Step next;
+
+        Traversal(Frame root)
+        {
+            if (!accept(root, 0))
+            {
+                return;
+            }
+
+            if (visitingOrder == LEVELORDER)
+            {
+                queue.add(new Step(root, 0));
+            }
+            else
+            {
+                path.push(new Step(root, 0));
+            }
+        }
+
+        public boolean hasNext()
+        {
+            if (next == null)
+            {
+                next = visitingOrder == LEVELORDER ? advanceLevel() : advanceDepth();
+            }
+
+            return next != null;
+        }
+
+        public Frame next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            current = next;
+            next = null;
+            return current.frame;
+        }
+
+        /**
+         * Do not walk the children of the frame returned last that were not walked yet.
+         */
+        void skipSubtree()
+        {
+            if (current != null)
+            {
+                current.skip = true;
+            }
+        }
+
+        private Step advanceLevel()
+        {
+            if (last != null && !last.skip && expand(last.depth))
+            {
+                for(Frame child: last.frame.children())
+                {
+                    if (accept(child, last.depth + 1))
+                    {
+                        queue.add(new Step(child, last.depth + 1));
+                    }
+                }
+            }
+
+            return last = queue.poll();
+        }
+
+        private Step advanceDepth()
+        {
+            while(!path.isEmpty())
+            {
+                Step s = path.peek();
+
+                if (visitingOrder == PREORDER && !s.returned)
+                {
+                    s.returned = true;
+                    return s;
+                }
+
+                if (s.children == null)
+                {
+                    // the children of a skipped frame are not requested
+                    s.children = !s.skip && expand(s.depth) ?
+                        s.frame.lazyChildren().iterator() : Collections.<Frame>emptyIterator();
+                }
+
+                if (visitingOrder == INORDER && s.descended && !s.returned)
+                {
+                    // the first child's subtree was walked
+                    s.returned = true;
+                    return s;
+                }
+
+                if (!s.skip && s.children.hasNext())
+                {
+                    Frame child = s.children.next();
+
+                    if (accept(child, s.depth + 1))
+                    {
+                        s.descended = true;
+                        path.push(new Step(child, s.depth + 1));
+                    }
+
+                    continue;
+                }
+
+                path.pop();
+                s.close();
+
+                if (!s.returned)
+                {
+                    // POSTORDER, or INORDER leaf
+                    s.returned = true;
+                    return s;
+                }
+            }
+
+            return null;
+        }
+
+        public void close()
+        {
+            while(!path.isEmpty())
+            {
+                path.pop().close();
+            }
+
+            queue.clear();
+            last = null;
+            next = null;
+        }
+    }
+
+    private static class Step
+    {
+        private final Frame frame;
+        private final int depth;
+        private Iterator<Frame> children;
+        private boolean descended;
+        private boolean returned;
+        private boolean skip;
+
+        Step(Frame frame, int depth)
+        {
+            this.frame = frame;
+            this.depth = depth;
+        }
+
+        void close()
+        {
+            if (children instanceof Closeable)
+            {
+                try
+                {
+                    ((Closeable)children).close();
+                }
+                catch(IOException e)
+                {
+                    System.err.println("[warning] failed to close the children of " + frame + ": " + e);
+                }
+            }
+        }
+    }
 }
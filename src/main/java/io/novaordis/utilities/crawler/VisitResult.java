@@ -0,0 +1,26 @@
+package io.novaordis.utilities.crawler;
+
+/**
+ * Tells the crawler how to proceed after a frame was visited.
+ *
+ * @see Visitor
+ */
+public enum VisitResult
+{
+    /**
+     * Proceed with the crawl.
+     */
+    CONTINUE,
+
+    /**
+     * Do not visit the descendants of the frame that were not visited yet. In POSTORDER the descendants of a frame
+     * are visited before the frame, so the result is the same as CONTINUE. In INORDER, the subtrees of the
+     * children that follow the first one are skipped.
+     */
+    SKIP_SUBTREE,
+
+    /**
+     * Stop the crawl: no other frame is visited, and crawl() returns normally.
+     */
+    TERMINATE
+}
@@ -0,0 +1,18 @@
+package io.novaordis.utilities.crawler;
+
+/**
+ * A Collector that steers the crawl. When the collector passed to a crawler is a Visitor, the crawler calls visit()
+ * for every frame instead of Frame.use(), so the same visitor is used for all the frames of the tree.
+ */
+public interface Visitor extends Collector
+{
+    /**
+     * @return how the crawler should proceed. A null result is handled as CONTINUE.
+     */
+    VisitResult visit(Frame frame) throws Exception;
+
+    default void collect(Frame frame) throws Exception
+    {
+        visit(frame);
+    }
+}
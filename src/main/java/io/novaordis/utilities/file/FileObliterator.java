@@ -4,8 +4,17 @@ import io.novaordis.utilities.crawler.Collector;
 import io.novaordis.utilities.crawler.Frame;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
+ * Deletes the files and directories it is handed. Must be used with a POSTORDER crawl, so a directory is deleted after
+ * its content. Stateless, so it can be used by a parallel crawler.
+ *
+ * Handles both FileFrames and PathFrames. The PathFrames are deleted based on the attributes they carry, without
+ * querying the file system again, and a symbolic link is deleted, not followed.
+ *
  * @author <a href="mailto:ovidiu@feodorov.com">Ovidiu Feodorov</a>
  *
  * Copyright 2008 Ovidiu Feodorov
@@ -24,6 +33,7 @@ public class FileObliterator implements Collector
 
     private File root;
     private boolean rootItself;
+    private Path rootPath;
 
     // Constructors --------------------------------------------------------------------------------
 
@@ -39,12 +49,19 @@ public class FileObliterator implements Collector
     {
         this.root = root;
         this.rootItself = rootItself;
+        this.rootPath = root == null ? null : root.toPath();
     }
 
     // Collector implementation --------------------------------------------------------------------
 
     public void collect(Frame frame) throws Exception
     {
+        if (frame instanceof PathFrame)
+        {
+            collect((PathFrame)frame);
+            return;
+        }
+
         File f = ((FileFrame)frame).getDelegate();
 
         if (f.equals(root) && f.isFile())
@@ -71,6 +88,29 @@ public class FileObliterator implements Collector
 
     // Private -------------------------------------------------------------------------------------
 
+    private void collect(PathFrame frame) throws Exception
+    {
+        Path p = frame.getPath();
+        boolean isRoot = p.equals(rootPath);
+
+        if (isRoot && frame.isRegularFile())
+        {
+            throw new Exception(p + " is a file, cannot rmdir");
+        }
+        else if (!isRoot || rootItself)
+        {
+            try
+            {
+                Files.delete(p);
+            }
+            catch(IOException e)
+            {
+                throw new Exception(
+                    "Cannot delete " + (frame.isDirectory() ? "directory" : "file") + " " + p + ": " + e, e);
+            }
+        }
+    }
+
     // Inner classes -------------------------------------------------------------------------------
 
 }
@@ -0,0 +1,76 @@
+package io.novaordis.utilities.file;
+
+import io.novaordis.utilities.crawler.Frame;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Crawler filters for FileFrames and PathFrames. The filters only look at the names, so they do not query the file
+ * system, and the pruned directories are never listed.
+ *
+ * @see io.novaordis.utilities.crawler.Crawler#setFilter(Predicate)
+ */
+public class FrameFilters
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    // Static --------------------------------------------------------------------------------------
+
+    /**
+     * @return a filter that prunes the files and directories with the given names, for example ".git" or "target".
+     *         Frames other than FileFrames and PathFrames are accepted.
+     */
+    public static Predicate<Frame> excludeNames(String... names)
+    {
+        final Set<String> excluded = new HashSet<String>(Arrays.asList(names));
+
+        return new Predicate<Frame>()
+        {
+            public boolean test(Frame frame)
+            {
+                String name = getName(frame);
+                return name == null || !excluded.contains(name);
+            }
+        };
+    }
+
+    /**
+     * @return the file name of a FileFrame or a PathFrame, or null for other frames and for file system roots.
+     */
+    public static String getName(Frame frame)
+    {
+        if (frame instanceof PathFrame)
+        {
+            Path name = ((PathFrame)frame).getPath().getFileName();
+            return name == null ? null : name.toString();
+        }
+        else if (frame instanceof FileFrame)
+        {
+            return ((FileFrame)frame).getDelegate().getName();
+        }
+
+        return null;
+    }
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    // Constructors --------------------------------------------------------------------------------
+
+    private FrameFilters()
+    {
+    }
+
+    // Public --------------------------------------------------------------------------------------
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    // Inner classes -------------------------------------------------------------------------------
+}
@@ -0,0 +1,265 @@
+package io.novaordis.utilities.file;
+
+import io.novaordis.utilities.crawler.Collector;
+import io.novaordis.utilities.crawler.Frame;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A Frame for Paths that reads the file attributes once, when the frame is created, and carries them, so the
+ * collectors do not have to query the file system again for the type, size or modification time of the entry.
+ *
+ * The children are listed with a DirectoryStream and produced as the iteration over lazyChildren() advances, so a
+ * large directory is never fully materialized by a depth first crawl. Creating a child costs one stat call, and
+ * regular files are not listed at all. FileFrame, by comparison, lists every entry, files included, and leaves the
+ * collectors to stat the File as many times as they need its attributes.
+ *
+ * The attributes are read without following symbolic links, so a symbolic link is a leaf, whatever it points to.
+ *
+ * An I/O error while listing a directory is thrown as UncheckedIOException. The entries that disappear between the
+ * moment they are listed and the moment their attributes are read are skipped.
+ */
+public class PathFrame implements Frame
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    // Static --------------------------------------------------------------------------------------
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    private final Path path;
+    private final BasicFileAttributes attributes;
+
+    // Constructors --------------------------------------------------------------------------------
+
+    /**
+     * Reads the attributes of the path.
+     *
+     * @exception IOException if the attributes cannot be read, for example if the path does not exist.
+     */
+    public PathFrame(Path path) throws IOException
+    {
+        this(path, Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+    }
+
+    /**
+     * @param attributes - the already read attributes of the path.
+     */
+    public PathFrame(Path path, BasicFileAttributes attributes)
+    {
+        if (path == null)
+        {
+            throw new IllegalArgumentException("null path");
+        }
+
+        if (attributes == null)
+        {
+            throw new IllegalArgumentException("null attributes");
+        }
+
+        this.path = path;
+        this.attributes = attributes;
+    }
+
+    // Frame implementation ------------------------------------------------------------------------
+
+    public List<Frame> children()
+    {
+        if (!attributes.isDirectory())
+        {
+            return Collections.emptyList();
+        }
+
+        List<Frame> children = new ArrayList<Frame>();
+
+        for(Frame f: lazyChildren())
+        {
+            children.add(f);
+        }
+
+        return children;
+    }
+
+    /**
+     * Each iterator opens its own directory stream, which is closed when the iterator is exhausted, when an I/O error
+     * is thrown, or when the iterator is closed.
+     */
+    @Override
+    public Iterable<Frame> lazyChildren()
+    {
+        if (!attributes.isDirectory())
+        {
+            return Collections.emptyList();
+        }
+
+        return new Iterable<Frame>()
+        {
+            public Iterator<Frame> iterator()
+            {
+                return new ChildIterator(path);
+            }
+        };
+    }
+
+    public Collector use(Collector in) throws Exception
+    {
+        in.collect(this);
+        return in;
+    }
+
+    // Public --------------------------------------------------------------------------------------
+
+    public Path getPath()
+    {
+        return path;
+    }
+
+    /**
+     * @return the attributes read when the frame was created.
+     */
+    public BasicFileAttributes getAttributes()
+    {
+        return attributes;
+    }
+
+    public boolean isDirectory()
+    {
+        return attributes.isDirectory();
+    }
+
+    public boolean isRegularFile()
+    {
+        return attributes.isRegularFile();
+    }
+
+    public boolean isSymbolicLink()
+    {
+        return attributes.isSymbolicLink();
+    }
+
+    public long size()
+    {
+        return attributes.size();
+    }
+
+    @Override
+    public String toString()
+    {
+        return path.toString();
+    }
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    // Inner classes -------------------------------------------------------------------------------
+
+    private static class ChildIterator implements Iterator<Frame>, Closeable
+    {
+        // null after the iterator was closed
+        private DirectoryStream<Path> stream;
+        private Iterator<Path> entries;
+
+        private PathFrame next;
+
+        ChildIterator(Path directory)
+        {
+            try
+            {
+                stream = Files.newDirectoryStream(directory);
+                entries = stream.iterator();
+            }
+            catch(NoSuchFileException e)
+            {
+                // the directory was removed since it was listed, it has no children
+            }
+            catch(IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public boolean hasNext()
+        {
+            while(next == null && stream != null)
+            {
+                try
+                {
+                    if (!entries.hasNext())
+                    {
+                        close();
+                        break;
+                    }
+
+                    next = new PathFrame(entries.next());
+                }
+                catch(NoSuchFileException e)
+                {
+                    // the entry was removed since it was listed
+                }
+                catch(IOException e)
+                {
+                    close();
+                    throw new UncheckedIOException(e);
+                }
+                catch(DirectoryIteratorException e)
+                {
+                    close();
+                    throw new UncheckedIOException(e.getCause());
+                }
+            }
+
+            return next != null;
+        }
+
+        public Frame next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            Frame f = next;
+            next = null;
+            return f;
+        }
+
+        public void close()
+        {
+            if (stream == null)
+            {
+                return;
+            }
+
+            try
+            {
+                stream.close();
+            }
+            catch(IOException e)
+            {
+                System.err.println("[warning] failed to close directory stream: " + e);
+            }
+            finally
+            {
+                stream = null;
+                entries = null;
+            }
+        }
+    }
+}
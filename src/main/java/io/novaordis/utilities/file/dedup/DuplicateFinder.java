@@ -0,0 +1,411 @@
+package io.novaordis.utilities.file.dedup;
+
+import io.novaordis.utilities.crawler.Collector;
+import io.novaordis.utilities.crawler.Frame;
+import io.novaordis.utilities.file.FileFrame;
+import io.novaordis.utilities.file.PathFrame;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Collector that finds the duplicate regular files of FileFrame and PathFrame trees. The files are grouped by size
+ * as they are collected, and only the files that share their size with at least another file are read: as soon as
+ * a size group gets its second file, both are hashed, and so is every further file of the group. The hashing runs on
+ * a pool of worker threads, concurrently with the crawl. getReport() waits for the hashing to complete and groups the
+ * files by size and fingerprint.
+ *
+ * Files of MAP_THRESHOLD bytes or more are memory mapped, in windows of at most MAP_WINDOW bytes; the smaller ones
+ * are read into a direct buffer owned by the worker thread. The fingerprint is CRC32, CRC32C (Java 9 or newer) or a
+ * MessageDigest algorithm. The checksums are much faster, but as they are only 32 bit wide, unrelated files of the
+ * same size may end up in the same group: use a SHA family algorithm when the report must be trusted without
+ * comparing the files.
+ *
+ * The collector is thread safe, so it can be used with a parallel crawler. Symbolic links are not followed with
+ * PathFrames, which carry the attributes of the links themselves. Empty files are ignored by default.
+ */
+public class DuplicateFinder implements Collector, Closeable
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    public static final String DEFAULT_ALGORITHM = "SHA-256";
+
+    public static final long MAP_THRESHOLD = 4L * 1024 * 1024;
+
+    public static final long MAP_WINDOW = 256L * 1024 * 1024;
+
+    public static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    // Static --------------------------------------------------------------------------------------
+
+    private static String hex(byte[] bytes)
+    {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+
+        for(byte b: bytes)
+        {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return sb.toString();
+    }
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    private final String algorithm;
+
+    private final ExecutorService workers;
+
+    // the direct buffer of each worker thread
+    private final ThreadLocal<ByteBuffer> buffers;
+
+    private volatile long minimumSize;
+
+    // size - the files collected so far with that size
+    private final Map<Long, List<Path>> bySize;
+
+    private final Queue<Future<Hashed>> hashing;
+
+    private final AtomicLong fileCount;
+
+    // Constructors --------------------------------------------------------------------------------
+
+    /**
+     * SHA-256, with as many worker threads as available processors.
+     */
+    public DuplicateFinder()
+    {
+        this(DEFAULT_ALGORITHM, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param algorithm - "CRC32", "CRC32C" (Java 9 or newer) or a MessageDigest algorithm, such as "SHA-256".
+     * @param threads - the number of worker threads that read and hash files.
+     *
+     * @exception IllegalArgumentException if the algorithm is not available, or the number of threads is invalid.
+     */
+    public DuplicateFinder(String algorithm, int threads)
+    {
+        // fail early
+        Fingerprinter.create(algorithm);
+
+        if (threads <= 0)
+        {
+            throw new IllegalArgumentException("invalid number of threads " + threads);
+        }
+
+        this.algorithm = algorithm;
+        this.minimumSize = 1L;
+        this.bySize = new ConcurrentHashMap<Long, List<Path>>();
+        this.hashing = new ConcurrentLinkedQueue<Future<Hashed>>();
+        this.fileCount = new AtomicLong();
+
+        this.buffers = new ThreadLocal<ByteBuffer>()
+        {
+            @Override
+            protected ByteBuffer initialValue()
+            {
+                return ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            }
+        };
+
+        final AtomicInteger counter = new AtomicInteger();
+
+        this.workers = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "duplicate-finder-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    // Collector implementation --------------------------------------------------------------------
+
+    /**
+     * Ignores the frames that are not regular files, and the files smaller than the minimum size.
+     */
+    public void collect(Frame frame) throws Exception
+    {
+        Path path;
+        long size;
+
+        if (frame instanceof PathFrame)
+        {
+            PathFrame f = (PathFrame)frame;
+
+            if (!f.isRegularFile())
+            {
+                return;
+            }
+
+            path = f.getPath();
+            size = f.size();
+        }
+        else if (frame instanceof FileFrame)
+        {
+            File f = ((FileFrame)frame).getDelegate();
+
+            if (!f.isFile())
+            {
+                return;
+            }
+
+            path = f.toPath();
+            size = f.length();
+        }
+        else
+        {
+            return;
+        }
+
+        if (size < minimumSize)
+        {
+            return;
+        }
+
+        fileCount.incrementAndGet();
+
+        List<Path> group = bySize.computeIfAbsent(size, k -> new ArrayList<Path>(2));
+
+        synchronized(group)
+        {
+            group.add(path);
+
+            if (group.size() == 2)
+            {
+                // the first file of the size was not hashed yet
+                submit(group.get(0), size);
+                submit(path, size);
+            }
+            else if (group.size() > 2)
+            {
+                submit(path, size);
+            }
+        }
+    }
+
+    // Public --------------------------------------------------------------------------------------
+
+    /**
+     * @param minimumSize - the files smaller than this are ignored. The default is 1, which ignores empty files. Must
+     *        be set before the crawl.
+     */
+    public void setMinimumSize(long minimumSize)
+    {
+        if (minimumSize < 0)
+        {
+            throw new IllegalArgumentException("invalid minimum size " + minimumSize);
+        }
+
+        this.minimumSize = minimumSize;
+    }
+
+    public long getMinimumSize()
+    {
+        return minimumSize;
+    }
+
+    public String getAlgorithm()
+    {
+        return algorithm;
+    }
+
+    /**
+     * Waits for the files collected so far to be hashed, and groups them. Must be called after the crawl completed.
+     */
+    public DuplicateReport getReport() throws InterruptedException
+    {
+        // size - fingerprint - paths
+        Map<Long, Map<String, List<Path>>> byFingerprint = new HashMap<Long, Map<String, List<Path>>>();
+        Map<Path, IOException> failures = new TreeMap<Path, IOException>();
+        long hashedCount = 0L;
+
+        for(Future<Hashed> f: hashing)
+        {
+            Hashed h;
+
+            try
+            {
+                h = f.get();
+            }
+            catch(ExecutionException e)
+            {
+                // hash() reports I/O failures in its result
+                throw new IllegalStateException(e.getCause());
+            }
+
+            hashedCount ++;
+
+            if (h.failure != null)
+            {
+                failures.put(h.path, h.failure);
+                continue;
+            }
+
+            byFingerprint.
+                computeIfAbsent(h.size, k -> new HashMap<String, List<Path>>()).
+                computeIfAbsent(h.fingerprint, k -> new ArrayList<Path>()).
+                add(h.path);
+        }
+
+        List<DuplicateGroup> groups = new ArrayList<DuplicateGroup>();
+
+        for(Map.Entry<Long, Map<String, List<Path>>> s: byFingerprint.entrySet())
+        {
+            for(Map.Entry<String, List<Path>> e: s.getValue().entrySet())
+            {
+                List<Path> paths = e.getValue();
+
+                if (paths.size() > 1)
+                {
+                    Collections.sort(paths);
+                    groups.add(new DuplicateGroup(s.getKey(), e.getKey(), paths));
+                }
+            }
+        }
+
+        Collections.sort(groups, new Comparator<DuplicateGroup>()
+        {
+            public int compare(DuplicateGroup g, DuplicateGroup g2)
+            {
+                int c = Long.compare(g2.getWastedBytes(), g.getWastedBytes());
+                return c != 0 ? c : g.getPaths().get(0).compareTo(g2.getPaths().get(0));
+            }
+        });
+
+        return new DuplicateReport(algorithm, fileCount.get(), hashedCount, groups, failures);
+    }
+
+    /**
+     * Stops the worker threads. The hashing in progress is abandoned.
+     */
+    public void close()
+    {
+        workers.shutdownNow();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DuplicateFinder[" + algorithm + "]";
+    }
+
+    // Package protected ---------------------------------------------------------------------------
+
+    /**
+     * Reads the file through a mapping, or through the worker thread's direct buffer.
+     *
+     * @return the fingerprint, in hexadecimal.
+     *
+     * @exception IOException also if the size of the file is not the expected one.
+     */
+    String fingerprint(Path path, long expectedSize) throws IOException
+    {
+        Fingerprinter fingerprinter = Fingerprinter.create(algorithm);
+
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+
+            if (size != expectedSize)
+            {
+                throw new IOException("size changed from " + expectedSize + " to " + size + " since collected");
+            }
+
+            if (size >= MAP_THRESHOLD)
+            {
+                for(long position = 0; position < size; position += MAP_WINDOW)
+                {
+                    MappedByteBuffer b =
+                        channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+
+                    fingerprinter.update(b);
+                }
+            }
+            else
+            {
+                ByteBuffer b = buffers.get();
+
+                while(true)
+                {
+                    b.clear();
+
+                    if (channel.read(b) < 0)
+                    {
+                        break;
+                    }
+
+                    b.flip();
+                    fingerprinter.update(b);
+                }
+            }
+        }
+
+        return hex(fingerprinter.digest());
+    }
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    private void submit(final Path path, final long size)
+    {
+        hashing.add(workers.submit(() -> hash(path, size)));
+    }
+
+    private Hashed hash(Path path, long size)
+    {
+        try
+        {
+            return new Hashed(path, size, fingerprint(path, size), null);
+        }
+        catch(IOException e)
+        {
+            return new Hashed(path, size, null, e);
+        }
+    }
+
+    // Inner classes -------------------------------------------------------------------------------
+
+    private static class Hashed
+    {
+        private final Path path;
+        private final long size;
+        private final String fingerprint;
+        private final IOException failure;
+
+        Hashed(Path path, long size, String fingerprint, IOException failure)
+        {
+            this.path = path;
+            this.size = size;
+            this.fingerprint = fingerprint;
+            this.failure = failure;
+        }
+    }
+}
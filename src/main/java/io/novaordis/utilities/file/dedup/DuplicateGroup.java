@@ -0,0 +1,75 @@
+package io.novaordis.utilities.file.dedup;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Files of the same size and the same fingerprint.
+ */
+public class DuplicateGroup
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    // Static --------------------------------------------------------------------------------------
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    private final long size;
+    private final String fingerprint;
+    private final List<Path> paths;
+
+    // Constructors --------------------------------------------------------------------------------
+
+    DuplicateGroup(long size, String fingerprint, List<Path> paths)
+    {
+        this.size = size;
+        this.fingerprint = fingerprint;
+        this.paths = Collections.unmodifiableList(paths);
+    }
+
+    // Public --------------------------------------------------------------------------------------
+
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the fingerprint, in hexadecimal.
+     */
+    public String getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    /**
+     * @return the paths, sorted.
+     */
+    public List<Path> getPaths()
+    {
+        return paths;
+    }
+
+    /**
+     * @return the space that would be reclaimed by keeping only one of the files.
+     */
+    public long getWastedBytes()
+    {
+        return size * (paths.size() - 1);
+    }
+
+    @Override
+    public String toString()
+    {
+        return paths.size() + " x " + size + " bytes, " + fingerprint;
+    }
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    // Inner classes -------------------------------------------------------------------------------
+}
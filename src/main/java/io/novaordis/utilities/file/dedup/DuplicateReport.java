@@ -0,0 +1,133 @@
+package io.novaordis.utilities.file.dedup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of a DuplicateFinder: the groups of duplicate files, sorted by wasted space, largest first, and the
+ * files that could not be read.
+ */
+public class DuplicateReport
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    // Static --------------------------------------------------------------------------------------
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    private final String algorithm;
+    private final long fileCount;
+    private final long hashedCount;
+    private final List<DuplicateGroup> groups;
+    private final Map<Path, IOException> failures;
+
+    // Constructors --------------------------------------------------------------------------------
+
+    DuplicateReport(String algorithm, long fileCount, long hashedCount, List<DuplicateGroup> groups,
+                    Map<Path, IOException> failures)
+    {
+        this.algorithm = algorithm;
+        this.fileCount = fileCount;
+        this.hashedCount = hashedCount;
+        this.groups = Collections.unmodifiableList(groups);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    // Public --------------------------------------------------------------------------------------
+
+    public String getAlgorithm()
+    {
+        return algorithm;
+    }
+
+    /**
+     * @return the number of regular files collected.
+     */
+    public long getFileCount()
+    {
+        return fileCount;
+    }
+
+    /**
+     * @return the number of files that were read, because at least another file had the same size.
+     */
+    public long getHashedCount()
+    {
+        return hashedCount;
+    }
+
+    public List<DuplicateGroup> getGroups()
+    {
+        return groups;
+    }
+
+    /**
+     * @return the files that could not be read, or whose size changed since they were collected.
+     */
+    public Map<Path, IOException> getFailures()
+    {
+        return failures;
+    }
+
+    public long getWastedBytes()
+    {
+        long total = 0L;
+
+        for(DuplicateGroup g: groups)
+        {
+            total += g.getWastedBytes();
+        }
+
+        return total;
+    }
+
+    /**
+     * @return the human readable report: a summary line, then each group with its files, then the failures.
+     */
+    public String format()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(this).append('\n');
+
+        for(DuplicateGroup g: groups)
+        {
+            sb.append('\n').append(g).append('\n');
+
+            for(Path p: g.getPaths())
+            {
+                sb.append("    ").append(p).append('\n');
+            }
+        }
+
+        if (!failures.isEmpty())
+        {
+            sb.append("\nfailures:\n");
+
+            for(Map.Entry<Path, IOException> e: failures.entrySet())
+            {
+                sb.append("    ").append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+            }
+        }
+
+        return sb.toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        return fileCount + " files, " + hashedCount + " hashed (" + algorithm + "), " + groups.size() +
+            " duplicate groups, " + getWastedBytes() + " bytes wasted, " + failures.size() + " failures";
+    }
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    // Inner classes -------------------------------------------------------------------------------
+}
@@ -0,0 +1,139 @@
+package io.novaordis.utilities.file.dedup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Checksum;
+
+/**
+ * Computes the fingerprint of a content fed as ByteBuffers, heap, direct or mapped. Not thread safe.
+ */
+abstract class Fingerprinter
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    // Static --------------------------------------------------------------------------------------
+
+    /**
+     * @param algorithm - "CRC32", "CRC32C" (requires Java 9 or newer) or a MessageDigest algorithm, such as "SHA-256".
+     *
+     * @exception IllegalArgumentException if the algorithm is not available.
+     */
+    static Fingerprinter create(String algorithm)
+    {
+        if (algorithm == null)
+        {
+            throw new IllegalArgumentException("null algorithm");
+        }
+
+        if ("CRC32".equals(algorithm) || "CRC32C".equals(algorithm))
+        {
+            return new ChecksumFingerprinter(algorithm);
+        }
+
+        try
+        {
+            return new DigestFingerprinter(MessageDigest.getInstance(algorithm));
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            throw new IllegalArgumentException("unknown algorithm " + algorithm, e);
+        }
+    }
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    // Constructors --------------------------------------------------------------------------------
+
+    // Package protected ---------------------------------------------------------------------------
+
+    /**
+     * Consumes the remaining bytes of the buffer.
+     */
+    abstract void update(ByteBuffer buffer);
+
+    /**
+     * @return the fingerprint of the content fed since the previous digest() call.
+     */
+    abstract byte[] digest();
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    // Inner classes -------------------------------------------------------------------------------
+
+    private static class DigestFingerprinter extends Fingerprinter
+    {
+        private final MessageDigest md;
+
+        DigestFingerprinter(MessageDigest md)
+        {
+            this.md = md;
+        }
+
+        void update(ByteBuffer buffer)
+        {
+            md.update(buffer);
+        }
+
+        byte[] digest()
+        {
+            return md.digest();
+        }
+    }
+
+    /**
+     * CRC32 and CRC32C update straight from direct and mapped buffers. CRC32C is looked up reflectively, as it is
+     * not available on Java 8.
+     */
+    private static class ChecksumFingerprinter extends Fingerprinter
+    {
+        private final Checksum checksum;
+
+        // update(ByteBuffer)
+        private final MethodHandle update;
+
+        ChecksumFingerprinter(String algorithm)
+        {
+            try
+            {
+                Class<?> c = Class.forName("java.util.zip." + algorithm);
+                checksum = (Checksum)c.getConstructor().newInstance();
+                update = MethodHandles.publicLookup().findVirtual(
+                    c, "update", MethodType.methodType(void.class, ByteBuffer.class)).bindTo(checksum);
+            }
+            catch(ReflectiveOperationException e)
+            {
+                throw new IllegalArgumentException(algorithm + " is not available on this JVM", e);
+            }
+        }
+
+        void update(ByteBuffer buffer)
+        {
+            try
+            {
+                update.invokeExact(buffer);
+            }
+            catch(RuntimeException | Error e)
+            {
+                throw e;
+            }
+            catch(Throwable t)
+            {
+                throw new IllegalStateException(t);
+            }
+        }
+
+        byte[] digest()
+        {
+            long value = checksum.getValue();
+            checksum.reset();
+
+            return new byte[] { (byte)(value >>> 24), (byte)(value >>> 16), (byte)(value >>> 8), (byte)value };
+        }
+    }
+}
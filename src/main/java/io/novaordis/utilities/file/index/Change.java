@@ -0,0 +1,72 @@
+package io.novaordis.utilities.file.index;
+
+/**
+ * A difference between the index and the file system, found by a scan.
+ */
+public class Change
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    // Static --------------------------------------------------------------------------------------
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    private final ChangeType type;
+    private final IndexEntry before;
+    private final IndexEntry after;
+
+    // Constructors --------------------------------------------------------------------------------
+
+    /**
+     * @param before - null for ADDED.
+     * @param after - null for REMOVED.
+     */
+    Change(ChangeType type, IndexEntry before, IndexEntry after)
+    {
+        this.type = type;
+        this.before = before;
+        this.after = after;
+    }
+
+    // Public --------------------------------------------------------------------------------------
+
+    public ChangeType getType()
+    {
+        return type;
+    }
+
+    public String getPath()
+    {
+        return after == null ? before.getPath() : after.getPath();
+    }
+
+    /**
+     * @return the indexed entry, or null if the entry was added.
+     */
+    public IndexEntry getBefore()
+    {
+        return before;
+    }
+
+    /**
+     * @return the entry as found on the file system, or null if the entry was removed.
+     */
+    public IndexEntry getAfter()
+    {
+        return after;
+    }
+
+    @Override
+    public String toString()
+    {
+        return type + " " + getPath();
+    }
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    // Inner classes -------------------------------------------------------------------------------
+}
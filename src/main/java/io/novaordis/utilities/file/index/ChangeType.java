@@ -0,0 +1,12 @@
+package io.novaordis.utilities.file.index;
+
+public enum ChangeType
+{
+    ADDED,
+    REMOVED,
+
+    /**
+     * The type, the size or the modification time changed.
+     */
+    MODIFIED
+}
@@ -0,0 +1,769 @@
+package io.novaordis.utilities.file.index;
+
+import io.novaordis.utilities.crawler.Crawler;
+import io.novaordis.utilities.crawler.Frame;
+import io.novaordis.utilities.crawler.SingleThreadedCrawler;
+import io.novaordis.utilities.crawler.VisitResult;
+import io.novaordis.utilities.crawler.Visitor;
+import io.novaordis.utilities.file.PathFrame;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An index of a directory tree: the path, type, size, modification time and, optionally, the content hash of every
+ * entry. A scan crawls the tree, compares it with the index, updates the index and reports only the entries that
+ * were added, removed or modified since the previous scan. The first scan reports every entry as added.
+ *
+ * The index can be saved to, and loaded from, a compact binary file: the entries are written in path order, each
+ * path as the length of the prefix it shares with the previous path plus the remaining suffix, and the numbers as
+ * variable length integers, the modification times as differences from the previous entry's.
+ *
+ * The symbolic links are indexed, but not followed. The index is thread safe; IndexWatcher keeps it up to date
+ * between scans.
+ *
+ * @see ScanMode
+ * @see IndexWatcher
+ */
+public class DirectoryIndex
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    // "NOIX"
+    private static final int MAGIC = 0x4e4f4958;
+    private static final byte VERSION = 1;
+
+    /**
+     * TRUST_DIRECTORY_MTIME scans list the directories modified less than this before the previous scan started,
+     * as their modification time may have not changed when they were modified again, on file systems with coarse
+     * time granularity.
+     */
+    public static final long TRUST_MARGIN_MS = 2000L;
+
+    // Static --------------------------------------------------------------------------------------
+
+    /**
+     * @exception IOException if the file cannot be read, or it is not a directory index.
+     */
+    public static DirectoryIndex load(Path file) throws IOException
+    {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+        {
+            if (in.readInt() != MAGIC)
+            {
+                throw new IOException(file + " is not a directory index");
+            }
+
+            byte version = in.readByte();
+
+            if (version != VERSION)
+            {
+                throw new IOException("unsupported directory index version " + version);
+            }
+
+            DirectoryIndex index = new DirectoryIndex(Paths.get(in.readUTF()));
+            String algorithm = in.readUTF();
+            index.hashAlgorithm = algorithm.isEmpty() ? null : algorithm;
+            index.lastScanStart = in.readLong();
+
+            long count = readVarLong(in);
+            String previousPath = "";
+            long previousModified = 0L;
+            EntryType[] types = EntryType.values();
+
+            for(long i = 0; i < count; i ++)
+            {
+                int shared = (int)readVarLong(in);
+
+                if (shared > previousPath.length())
+                {
+                    throw new IOException("corrupted directory index " + file);
+                }
+
+                String path = previousPath.substring(0, shared) + in.readUTF();
+                int type = in.readByte();
+
+                if (type < 0 || type >= types.length)
+                {
+                    throw new IOException("corrupted directory index " + file);
+                }
+
+                long size = readVarLong(in);
+                long modified = previousModified + unzigzag(readVarLong(in));
+                int hashLength = (int)readVarLong(in);
+                byte[] hash = null;
+
+                if (hashLength > 0)
+                {
+                    hash = new byte[hashLength];
+                    in.readFully(hash);
+                }
+
+                index.entries.put(path, new IndexEntry(path, types[type], size, modified, hash));
+
+                previousPath = path;
+                previousModified = modified;
+            }
+
+            return index;
+        }
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException
+    {
+        while((value & ~0x7fL) != 0)
+        {
+            out.writeByte((int)((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+
+        out.writeByte((int)value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException
+    {
+        long value = 0L;
+
+        for(int shift = 0; shift < 64; shift += 7)
+        {
+            byte b = in.readByte();
+            value |= (long)(b & 0x7f) << shift;
+
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+
+        throw new IOException("malformed variable length integer");
+    }
+
+    private static long zigzag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static String child(String parent, String name)
+    {
+        return parent.isEmpty() ? name : parent + "/" + name;
+    }
+
+    /**
+     * @return the attributes, not following symbolic links, or null if the path does not exist.
+     */
+    private static BasicFileAttributes readAttributes(Path p) throws IOException
+    {
+        try
+        {
+            return Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        }
+        catch(NoSuchFileException e)
+        {
+            return null;
+        }
+    }
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    private final Path root;
+
+    // relative path - entry; the subtree of "a/b" is the ["a/b/", "a/b0") range, as '0' follows '/'
+    private final NavigableMap<String, IndexEntry> entries;
+
+    private String hashAlgorithm;
+
+    // the start of the last FULL or TRUST_DIRECTORY_MTIME scan, in nanoseconds since the epoch, 0 if none
+    private long lastScanStart;
+
+    // Constructors --------------------------------------------------------------------------------
+
+    /**
+     * Creates an empty index. Nothing is read from the file system until the first scan.
+     */
+    public DirectoryIndex(Path root)
+    {
+        if (root == null)
+        {
+            throw new IllegalArgumentException("null root");
+        }
+
+        this.root = root.toAbsolutePath().normalize();
+        this.entries = new TreeMap<String, IndexEntry>();
+    }
+
+    // Public --------------------------------------------------------------------------------------
+
+    public Path getRoot()
+    {
+        return root;
+    }
+
+    /**
+     * @param algorithm - a MessageDigest algorithm, such as "SHA-256", used to hash the content of the regular files,
+     *        or null, the default, not to hash content. Hashing requires reading the files that are added or whose
+     *        size or modification time changed.
+     *
+     * @exception IllegalArgumentException if the algorithm is not available.
+     * @exception IllegalStateException if the index is not empty.
+     */
+    public synchronized void setHashAlgorithm(String algorithm)
+    {
+        if (!entries.isEmpty())
+        {
+            throw new IllegalStateException("the hash algorithm of a non-empty index cannot be changed");
+        }
+
+        if (algorithm != null)
+        {
+            try
+            {
+                MessageDigest.getInstance(algorithm);
+            }
+            catch(NoSuchAlgorithmException e)
+            {
+                throw new IllegalArgumentException("unknown hash algorithm " + algorithm, e);
+            }
+        }
+
+        this.hashAlgorithm = algorithm;
+    }
+
+    public synchronized String getHashAlgorithm()
+    {
+        return hashAlgorithm;
+    }
+
+    /**
+     * A FULL scan.
+     *
+     * @see DirectoryIndex#scan(ScanMode)
+     */
+    public List<Change> scan() throws IOException
+    {
+        return scan(ScanMode.FULL);
+    }
+
+    /**
+     * Crawls the tree, updates the index and returns the changes, in crawl order. If the root does not exist
+     * anymore, all the entries are reported as removed.
+     *
+     * A directory that cannot be listed is reported on stderr, and its indexed content is kept.
+     */
+    public synchronized List<Change> scan(ScanMode mode) throws IOException
+    {
+        if (mode == null)
+        {
+            throw new IllegalArgumentException("null scan mode");
+        }
+
+        long start = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        long trustLimit = lastScanStart - TimeUnit.MILLISECONDS.toNanos(TRUST_MARGIN_MS);
+
+        List<Change> changes = new Scan(mode, false, trustLimit).run(root, "");
+
+        lastScanStart = start;
+        return changes;
+    }
+
+    /**
+     * @param path - relative to the root, '/' separated. The root is "".
+     *
+     * @return the entry, or null if the path is not indexed.
+     */
+    public synchronized IndexEntry get(String path)
+    {
+        return entries.get(path);
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * @return a copy of the entries, in path order.
+     */
+    public synchronized List<IndexEntry> getEntries()
+    {
+        return new ArrayList<IndexEntry>(entries.values());
+    }
+
+    /**
+     * Writes the index to a temporary file, which then replaces the given file.
+     */
+    public synchronized void save(Path file) throws IOException
+    {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp))))
+        {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(root.toString());
+            out.writeUTF(hashAlgorithm == null ? "" : hashAlgorithm);
+            out.writeLong(lastScanStart);
+            writeVarLong(out, entries.size());
+
+            String previousPath = "";
+            long previousModified = 0L;
+
+            for(IndexEntry e: entries.values())
+            {
+                String path = e.getPath();
+                int shared = 0;
+                int max = Math.min(path.length(), previousPath.length());
+
+                while(shared < max && path.charAt(shared) == previousPath.charAt(shared))
+                {
+                    shared ++;
+                }
+
+                writeVarLong(out, shared);
+                out.writeUTF(path.substring(shared));
+                out.writeByte(e.getType().ordinal());
+                writeVarLong(out, e.getSize());
+                writeVarLong(out, zigzag(e.getLastModified() - previousModified));
+
+                byte[] hash = e.getHash();
+                writeVarLong(out, hash == null ? 0 : hash.length);
+
+                if (hash != null)
+                {
+                    out.write(hash);
+                }
+
+                previousPath = path;
+                previousModified = e.getLastModified();
+            }
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DirectoryIndex[" + root + "]";
+    }
+
+    // Package protected ---------------------------------------------------------------------------
+
+    /**
+     * Lists the given directory, compares its entries with the index and updates the index. The indexed
+     * subdirectories are not walked, but the directories that are new to the index are, with their whole subtree.
+     *
+     * @return the changes, or an empty list if the directory is not indexed as a directory.
+     */
+    synchronized List<Change> rescanDirectory(Path directory) throws IOException
+    {
+        String path = relativize(directory);
+        IndexEntry e = entries.get(path);
+
+        if (e == null || !e.isDirectory())
+        {
+            return Collections.emptyList();
+        }
+
+        return new Scan(ScanMode.FULL, true, 0L).run(resolve(path), path);
+    }
+
+    /**
+     * @return the path relative to the root, '/' separated.
+     *
+     * @exception IllegalArgumentException if the path is not under the root.
+     */
+    String relativize(Path p)
+    {
+        Path absolute = p.toAbsolutePath().normalize();
+
+        if (!absolute.startsWith(root))
+        {
+            throw new IllegalArgumentException(p + " is not under " + root);
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        for(Path name: root.relativize(absolute))
+        {
+            if (name.toString().isEmpty())
+            {
+                continue;
+            }
+
+            if (sb.length() > 0)
+            {
+                sb.append('/');
+            }
+
+            sb.append(name);
+        }
+
+        return sb.toString();
+    }
+
+    Path resolve(String path)
+    {
+        return path.isEmpty() ? root : root.resolve(path);
+    }
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    /**
+     * @return the indexed children of the given path, in path order, without walking their subtrees.
+     */
+    private List<IndexEntry> directChildren(String path)
+    {
+        String prefix = path.isEmpty() ? "" : path + "/";
+        List<IndexEntry> children = new ArrayList<IndexEntry>();
+
+        String key = prefix.isEmpty() ? entries.higherKey("") : entries.ceilingKey(prefix);
+
+        while(key != null && key.startsWith(prefix))
+        {
+            int slash = key.indexOf('/', prefix.length());
+
+            if (slash < 0)
+            {
+                children.add(entries.get(key));
+                key = entries.higherKey(key);
+            }
+            else
+            {
+                // jump over the subtree
+                key = entries.ceilingKey(key.substring(0, slash) + "0");
+            }
+        }
+
+        return children;
+    }
+
+    // Inner classes -------------------------------------------------------------------------------
+
+    /**
+     * A single scan, which visits the tree in PREORDER: the visitor compares each frame with the index, and decides
+     * which of the frame's children must be visited.
+     */
+    private class Scan implements Visitor
+    {
+        private final ScanMode mode;
+
+        // list the start directory only, do not walk the indexed subdirectories
+        private final boolean singleDirectory;
+
+        // TRUST_DIRECTORY_MTIME: the directories modified after this moment are listed
+        private final long trustLimit;
+
+        private final List<Change> changes;
+
+        private byte[] buffer;
+
+        Scan(ScanMode mode, boolean singleDirectory, long trustLimit)
+        {
+            this.mode = mode;
+            this.singleDirectory = singleDirectory;
+            this.trustLimit = trustLimit;
+            this.changes = new ArrayList<Change>();
+        }
+
+        List<Change> run(Path start, String path) throws IOException
+        {
+            BasicFileAttributes attributes = readAttributes(start);
+
+            if (attributes == null)
+            {
+                remove(path);
+                return changes;
+            }
+
+            Crawler crawler = new SingleThreadedCrawler(Crawler.PREORDER);
+
+            try
+            {
+                crawler.crawl(new ScanFrame(start, path, attributes, true), this);
+            }
+            catch(UncheckedIOException e)
+            {
+                throw e.getCause();
+            }
+            catch(IOException | RuntimeException e)
+            {
+                throw e;
+            }
+            catch(Exception e)
+            {
+                throw new IOException(e);
+            }
+
+            return changes;
+        }
+
+        public VisitResult visit(Frame frame) throws Exception
+        {
+            ScanFrame f = (ScanFrame)frame;
+
+            IndexEntry before = entries.get(f.key);
+            IndexEntry after = toEntry(f, before);
+
+            if (before == null)
+            {
+                changes.add(new Change(ChangeType.ADDED, null, after));
+            }
+            else if (!before.sameMetadata(after))
+            {
+                if (before.isDirectory() && !after.isDirectory())
+                {
+                    removeDescendants(f.key);
+                }
+
+                changes.add(new Change(ChangeType.MODIFIED, before, after));
+            }
+
+            entries.put(f.key, after);
+
+            if (after.isDirectory() && f.expand)
+            {
+                f.children = children(f, before, after);
+            }
+
+            return VisitResult.CONTINUE;
+        }
+
+        private IndexEntry toEntry(ScanFrame f, IndexEntry before) throws IOException
+        {
+            BasicFileAttributes a = f.getAttributes();
+            EntryType type = EntryType.of(a);
+            long modified = a.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            byte[] hash = null;
+
+            if (type == EntryType.FILE && hashAlgorithm != null)
+            {
+                if (before != null && before.getHash() != null &&
+                    before.getType() == type && before.getSize() == a.size() && before.getLastModified() == modified)
+                {
+                    hash = before.getHash();
+                }
+                else
+                {
+                    hash = hash(f.getPath());
+                }
+            }
+
+            return new IndexEntry(f.key, type, a.size(), modified, hash);
+        }
+
+        private List<Frame> children(ScanFrame f, IndexEntry before, IndexEntry after) throws IOException
+        {
+            List<Frame> children = new ArrayList<Frame>();
+
+            if (mode == ScanMode.TRUST_DIRECTORY_MTIME && before != null && before.isDirectory() &&
+                before.getLastModified() == after.getLastModified() && after.getLastModified() < trustLimit)
+            {
+                // same entries as indexed: the files are kept, the subdirectories are visited
+                for(IndexEntry child: directChildren(f.key))
+                {
+                    if (!child.isDirectory())
+                    {
+                        continue;
+                    }
+
+                    Path p = resolve(child.getPath());
+                    BasicFileAttributes attributes = readAttributes(p);
+
+                    if (attributes == null)
+                    {
+                        remove(child.getPath());
+                    }
+                    else
+                    {
+                        children.add(new ScanFrame(p, child.getPath(), attributes, true));
+                    }
+                }
+
+                return children;
+            }
+
+            Set<String> listed = new HashSet<String>();
+
+            try(DirectoryStream<Path> ds = Files.newDirectoryStream(f.getPath()))
+            {
+                for(Path p: ds)
+                {
+                    BasicFileAttributes attributes = readAttributes(p);
+
+                    if (attributes == null)
+                    {
+                        // removed since listed
+                        continue;
+                    }
+
+                    String path = child(f.key, p.getFileName().toString());
+                    listed.add(path);
+
+                    boolean expand = true;
+
+                    if (singleDirectory)
+                    {
+                        IndexEntry e = entries.get(path);
+                        expand = e == null || !e.isDirectory();
+                    }
+
+                    children.add(new ScanFrame(p, path, attributes, expand));
+                }
+            }
+            catch(NoSuchFileException e)
+            {
+                // removed since its attributes were read, the next scan will find it
+                return children;
+            }
+            catch(IOException | DirectoryIteratorException e)
+            {
+                System.err.println("[warning] cannot list " + f.getPath() + ", keeping its indexed content: " + e);
+                return children;
+            }
+
+            for(IndexEntry child: directChildren(f.key))
+            {
+                if (!listed.contains(child.getPath()))
+                {
+                    remove(child.getPath());
+                }
+            }
+
+            return children;
+        }
+
+        /**
+         * Removes the entry and its subtree.
+         */
+        private void remove(String path)
+        {
+            IndexEntry e = entries.remove(path);
+
+            if (e != null)
+            {
+                changes.add(new Change(ChangeType.REMOVED, e, null));
+            }
+
+            removeDescendants(path);
+        }
+
+        private void removeDescendants(String path)
+        {
+            SortedMap<String, IndexEntry> subtree =
+                path.isEmpty() ? entries.tailMap("", false) : entries.subMap(path + "/", path + "0");
+
+            for(IndexEntry e: subtree.values())
+            {
+                changes.add(new Change(ChangeType.REMOVED, e, null));
+            }
+
+            subtree.clear();
+        }
+
+        /**
+         * @return the hash, or null if the file cannot be read.
+         */
+        private byte[] hash(Path p)
+        {
+            MessageDigest md;
+
+            try
+            {
+                md = MessageDigest.getInstance(hashAlgorithm);
+            }
+            catch(NoSuchAlgorithmException e)
+            {
+                // validated when set
+                throw new IllegalStateException(e);
+            }
+
+            if (buffer == null)
+            {
+                buffer = new byte[65536];
+            }
+
+            try(InputStream is = Files.newInputStream(p))
+            {
+                int n;
+
+                while((n = is.read(buffer)) != -1)
+                {
+                    md.update(buffer, 0, n);
+                }
+
+                return md.digest();
+            }
+            catch(IOException e)
+            {
+                System.err.println("[warning] cannot hash " + p + ": " + e);
+                return null;
+            }
+        }
+    }
+
+    private static class ScanFrame extends PathFrame
+    {
+        // the path relative to the index root
+        private final String key;
+
+        // whether the children of the frame are visited
+        private final boolean expand;
+
+        // decided by the visitor, before the crawler asks for them
+        private List<Frame> children;
+
+        ScanFrame(Path p, String key, BasicFileAttributes attributes, boolean expand)
+        {
+            super(p, attributes);
+            this.key = key;
+            this.expand = expand;
+            this.children = Collections.emptyList();
+        }
+
+        @Override
+        public List<Frame> children()
+        {
+            return children;
+        }
+
+        @Override
+        public Iterable<Frame> lazyChildren()
+        {
+            return children;
+        }
+    }
+}
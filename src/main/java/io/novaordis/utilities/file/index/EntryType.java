@@ -0,0 +1,32 @@
+package io.novaordis.utilities.file.index;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+public enum EntryType
+{
+    FILE,
+    DIRECTORY,
+    SYMBOLIC_LINK,
+    OTHER;
+
+    /**
+     * @param attributes - attributes read without following symbolic links.
+     */
+    public static EntryType of(BasicFileAttributes attributes)
+    {
+        if (attributes.isRegularFile())
+        {
+            return FILE;
+        }
+        else if (attributes.isDirectory())
+        {
+            return DIRECTORY;
+        }
+        else if (attributes.isSymbolicLink())
+        {
+            return SYMBOLIC_LINK;
+        }
+
+        return OTHER;
+    }
+}
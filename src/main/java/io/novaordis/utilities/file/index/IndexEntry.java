@@ -0,0 +1,130 @@
+package io.novaordis.utilities.file.index;
+
+import java.util.Arrays;
+
+/**
+ * An immutable record of a file system entry: its path relative to the index root, with '/' as separator (the root
+ * itself is ""), its type, size, modification time and, for regular files, the optional content hash.
+ */
+public class IndexEntry
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    // Static --------------------------------------------------------------------------------------
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    private final String path;
+    private final EntryType type;
+    private final long size;
+    private final long lastModified;
+    private final byte[] hash;
+
+    // Constructors --------------------------------------------------------------------------------
+
+    /**
+     * @param lastModified - the modification time, in nanoseconds since the epoch.
+     * @param hash - may be null.
+     */
+    public IndexEntry(String path, EntryType type, long size, long lastModified, byte[] hash)
+    {
+        if (path == null)
+        {
+            throw new IllegalArgumentException("null path");
+        }
+
+        if (type == null)
+        {
+            throw new IllegalArgumentException("null type");
+        }
+
+        this.path = path;
+        this.type = type;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.hash = hash;
+    }
+
+    // Public --------------------------------------------------------------------------------------
+
+    /**
+     * @return the path relative to the index root, '/' separated. The root is "".
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+    public EntryType getType()
+    {
+        return type;
+    }
+
+    public boolean isDirectory()
+    {
+        return type == EntryType.DIRECTORY;
+    }
+
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the modification time, in nanoseconds since the epoch.
+     */
+    public long getLastModified()
+    {
+        return lastModified;
+    }
+
+    /**
+     * @return the content hash, or null if the index does not hash content, or the entry is not a regular file. The
+     *         caller must not modify the array.
+     */
+    public byte[] getHash()
+    {
+        return hash;
+    }
+
+    /**
+     * @return true if the type, size and modification time are the same. The hash is not compared.
+     */
+    public boolean sameMetadata(IndexEntry other)
+    {
+        return type == other.type && size == other.size && lastModified == other.lastModified;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof IndexEntry))
+        {
+            return false;
+        }
+
+        IndexEntry that = (IndexEntry)o;
+
+        return path.equals(that.path) && sameMetadata(that) && Arrays.equals(hash, that.hash);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return path.hashCode() * 31 + (int)(lastModified ^ (lastModified >>> 32));
+    }
+
+    @Override
+    public String toString()
+    {
+        return (path.isEmpty() ? "." : path) + "[" + type + ", " + size + "]";
+    }
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    // Inner classes -------------------------------------------------------------------------------
+}
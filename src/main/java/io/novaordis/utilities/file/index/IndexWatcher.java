@@ -0,0 +1,242 @@
+package io.novaordis.utilities.file.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a DirectoryIndex up to date between scans: every indexed directory is registered with a WatchService, and a
+ * background thread lists again the directories the events come from, so the index catches up with the changes
+ * without crawling the tree. The changes are passed to a listener, on the watcher thread.
+ *
+ * The directories that appear are registered as they are found. If the WatchService overflows, the watcher falls
+ * back to a FULL scan. The WatchService implementation determines how fast the changes are seen: native ones
+ * (inotify on Linux) deliver the events right away, polling ones only periodically. Watching a large tree may
+ * require raising the operating system limit on the number of watches (fs.inotify.max_user_watches on Linux).
+ */
+public class IndexWatcher implements Closeable
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    // Static --------------------------------------------------------------------------------------
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    private final DirectoryIndex index;
+
+    private final Consumer<List<Change>> listener;
+
+    private WatchService watchService;
+
+    private Thread thread;
+
+    private volatile boolean running;
+
+    // Constructors --------------------------------------------------------------------------------
+
+    /**
+     * @param index - an index that was scanned at least once.
+     * @param listener - receives the non-empty lists of changes. May be null.
+     */
+    public IndexWatcher(DirectoryIndex index, Consumer<List<Change>> listener)
+    {
+        if (index == null)
+        {
+            throw new IllegalArgumentException("null index");
+        }
+
+        this.index = index;
+        this.listener = listener;
+    }
+
+    // Public --------------------------------------------------------------------------------------
+
+    /**
+     * Registers the indexed directories and starts the watcher thread. The changes made before start() returns may
+     * not be seen; a scan that follows start() catches them.
+     *
+     * @exception IllegalStateException if the watcher was already started.
+     */
+    public synchronized void start() throws IOException
+    {
+        if (watchService != null)
+        {
+            throw new IllegalStateException(this + " already started");
+        }
+
+        watchService = index.getRoot().getFileSystem().newWatchService();
+
+        for(IndexEntry e: index.getEntries())
+        {
+            if (e.isDirectory())
+            {
+                register(index.resolve(e.getPath()));
+            }
+        }
+
+        running = true;
+
+        thread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                loop();
+            }
+        }, "index-watcher");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    /**
+     * Stops the watcher thread and releases the watches. Does not wait for a listener invocation in progress to
+     * complete.
+     */
+    public synchronized void close() throws IOException
+    {
+        running = false;
+
+        if (watchService != null)
+        {
+            watchService.close();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "IndexWatcher[" + index.getRoot() + "]";
+    }
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    private void loop()
+    {
+        try
+        {
+            while(running)
+            {
+                WatchKey key;
+
+                try
+                {
+                    key = watchService.take();
+                }
+                catch(ClosedWatchServiceException | InterruptedException e)
+                {
+                    return;
+                }
+
+                boolean overflow = false;
+
+                for(WatchEvent<?> e: key.pollEvents())
+                {
+                    if (e.kind() == StandardWatchEventKinds.OVERFLOW)
+                    {
+                        overflow = true;
+                    }
+                }
+
+                // an invalid key belongs to a removed directory, which is handled by its parent's events
+                key.reset();
+
+                try
+                {
+                    List<Change> changes = overflow ?
+                        index.scan(ScanMode.FULL) : index.rescanDirectory((Path)key.watchable());
+
+                    changes = registerNewDirectories(changes);
+
+                    if (listener != null && !changes.isEmpty())
+                    {
+                        listener.accept(changes);
+                    }
+                }
+                catch(ClosedWatchServiceException e)
+                {
+                    return;
+                }
+                catch(Exception e)
+                {
+                    System.err.println("[warning] " + this + " failed to update the index: " + e);
+                }
+            }
+        }
+        finally
+        {
+            running = false;
+        }
+    }
+
+    /**
+     * Registers the added directories, then lists them again, as entries may have been created in them before they
+     * were registered.
+     *
+     * @return the changes, including those found by listing the new directories again.
+     */
+    private List<Change> registerNewDirectories(List<Change> changes) throws IOException
+    {
+        List<Change> result = new ArrayList<Change>(changes);
+        Deque<Change> pending = new ArrayDeque<Change>(changes);
+
+        while(!pending.isEmpty())
+        {
+            Change c = pending.poll();
+            IndexEntry before = c.getBefore();
+            IndexEntry after = c.getAfter();
+
+            boolean newDirectory = after != null && after.isDirectory() && (before == null || !before.isDirectory());
+
+            if (!newDirectory)
+            {
+                continue;
+            }
+
+            Path directory = index.resolve(after.getPath());
+            register(directory);
+
+            List<Change> missed = index.rescanDirectory(directory);
+            result.addAll(missed);
+            pending.addAll(missed);
+        }
+
+        return result;
+    }
+
+    private void register(Path directory) throws IOException
+    {
+        try
+        {
+            directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        catch(NoSuchFileException e)
+        {
+            // removed in the meantime
+        }
+    }
+
+    // Inner classes -------------------------------------------------------------------------------
+}
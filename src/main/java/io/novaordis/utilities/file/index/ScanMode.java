@@ -0,0 +1,21 @@
+package io.novaordis.utilities.file.index;
+
+public enum ScanMode
+{
+    /**
+     * Every directory is listed and every entry is read. All the changes are found.
+     */
+    FULL,
+
+    /**
+     * A directory whose modification time did not change since it was indexed is assumed to hold the same entries,
+     * with the same attributes: it is not listed, and its files are not read. Its subdirectories are still read,
+     * because an entry added, removed or renamed deep in the tree only changes the modification time of the directory
+     * that directly holds it. Much cheaper than FULL, as the cost is proportional to the number of directories, but
+     * the files modified in place, which do not change the modification time of their directory, are not found.
+     *
+     * To protect against coarse modification time granularity, the directories modified shortly before the previous
+     * scan started are listed anyway.
+     */
+    TRUST_DIRECTORY_MTIME
+}
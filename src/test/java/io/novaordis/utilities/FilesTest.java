@@ -837,6 +837,101 @@ public class FilesTest {
         assertFalse(root.exists());
     }
 
+    @Test
+    public void testRmdir_Parallel() throws Exception {
+        File root = new File(Tests.getScratchDirectory(), getRandomFileName("testrmdir-root"));
+
+        for(int i = 0; i < 5; i ++) {
+            File dir = new File(root, "dir" + i);
+            for(int j = 0; j < 5; j ++) {
+                File subdir = new File(dir, "subdir" + j);
+                assertTrue(subdir.mkdirs());
+                for(int k = 0; k < 5; k ++) {
+                    assertTrue(new File(subdir, "file" + k + ".txt").createNewFile());
+                }
+            }
+        }
+
+        assertTrue(Files.rmdir(root, false, 4));
+        assertTrue(root.isDirectory());
+        assertTrue(Files.isEmpty(root));
+
+        assertTrue(Files.rmdir(root, true, 4));
+        assertFalse(root.exists());
+    }
+
+    @Test
+    public void testRmdir_Parallel_File() throws Exception {
+        File file = new File(Tests.getScratchDirectory(), getRandomFileName("testrm", "txt"));
+        assertTrue(file.createNewFile());
+
+        assertFalse(Files.rmdir(file, true, 4));
+        assertTrue(file.isFile());
+    }
+
+    @Test
+    public void testRmdir_SymbolicLinkIsNotFollowed() throws Exception {
+        File scratchDir = Tests.getScratchDirectory();
+
+        File target = new File(scratchDir, getRandomFileName("testrmdir-target"));
+        assertTrue(target.mkdir());
+        File precious = new File(target, "precious.txt");
+        assertTrue(precious.createNewFile());
+
+        File root = new File(scratchDir, getRandomFileName("testrmdir-root"));
+        assertTrue(root.mkdir());
+        File link = new File(root, "link");
+        java.nio.file.Files.createSymbolicLink(link.toPath(), target.toPath());
+
+        assertTrue(Files.rmdir(root, true));
+
+        assertFalse(root.exists());
+        assertTrue(precious.isFile());
+
+        assertTrue(Files.rmdir(target, true));
+    }
+
+    @Test
+    public void testRmdir_SymbolicLinkRootIsResolved() throws Exception {
+        File scratchDir = Tests.getScratchDirectory();
+
+        File target = new File(scratchDir, getRandomFileName("testrmdir-target"));
+        File dir = new File(target, "dir");
+        assertTrue(dir.mkdirs());
+        File file = new File(dir, "file.txt");
+        assertTrue(file.createNewFile());
+
+        File outside = new File(scratchDir, getRandomFileName("testrmdir-outside"));
+        assertTrue(outside.mkdir());
+        File precious = new File(outside, "precious.txt");
+        assertTrue(precious.createNewFile());
+        java.nio.file.Files.createSymbolicLink(new File(target, "link").toPath(), outside.toPath());
+
+        File root = new File(scratchDir, getRandomFileName("testrmdir-root"));
+        java.nio.file.Files.createSymbolicLink(root.toPath(), target.toPath());
+
+        // the content of the directory the root points to is deleted, the links inside it are not followed
+        assertTrue(Files.rmdir(root, false));
+
+        assertTrue(java.nio.file.Files.isSymbolicLink(root.toPath()));
+        assertTrue(target.isDirectory());
+        assertEquals(0, target.list().length);
+        assertTrue(precious.isFile());
+
+        File file2 = new File(target, "file2.txt");
+        assertTrue(Files.write(file2, "something", false));
+
+        // the root link is deleted too, the directory it points to is left in place, empty
+        assertTrue(Files.rmdir(root, true));
+
+        assertFalse(java.nio.file.Files.exists(root.toPath(), java.nio.file.LinkOption.NOFOLLOW_LINKS));
+        assertTrue(target.isDirectory());
+        assertFalse(file2.exists());
+
+        assertTrue(Files.rmdir(target, true));
+        assertTrue(Files.rmdir(outside, true));
+    }
+
     @Test
     public void testRmdir_ButNoRoot() throws Exception {
         File scratchDir = Tests.getScratchDirectory();
@@ -0,0 +1,139 @@
+package io.novaordis.utilities.ac;
+
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CoarseClockTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = Logger.getLogger(CoarseClockTest.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void invalidResolution() throws Exception {
+
+        try {
+
+            new CoarseClock(0L);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void advances() throws Exception {
+
+        CoarseClock c = new CoarseClock(5L);
+
+        try {
+
+            assertEquals(5L, c.getResolutionMs());
+            assertTrue(c.isRunning());
+
+            long t0 = c.millis();
+            assertTrue(t0 <= System.currentTimeMillis());
+
+            Thread.sleep(100L);
+
+            long t1 = c.millis();
+            assertTrue(t1 > t0);
+            assertTrue(t1 <= System.currentTimeMillis());
+        }
+        finally {
+
+            c.stop();
+        }
+
+        assertFalse(c.isRunning());
+    }
+
+    @Test
+    public void stopped() throws Exception {
+
+        CoarseClock c = new CoarseClock(5L);
+        c.stop();
+
+        // give the refreshing thread the chance to exit
+        Thread.sleep(50L);
+
+        long t = c.millis();
+        Thread.sleep(50L);
+        assertEquals(t, c.millis());
+    }
+
+    @Test
+    public void defaultInstance() throws Exception {
+
+        CoarseClock c = CoarseClock.getDefault();
+
+        assertSame(c, CoarseClock.getDefault());
+        assertEquals(CoarseClock.DEFAULT_RESOLUTION_MS, c.getResolutionMs());
+        assertSame(c, new CollectorConfiguration().getCoarseClock());
+    }
+
+    @Test
+    public void threadNameResolution() throws Exception {
+
+        Thread t = Thread.currentThread();
+
+        assertEquals(t.getName(), new Collected(0L, t.getId(), "x").getThreadName());
+        assertEquals(t.getId(), new Collected(0L, t.getId(), "x").getThreadId());
+
+        // no such thread
+        assertEquals("thread-" + Long.MAX_VALUE, new Collected(0L, Long.MAX_VALUE, "x").getThreadName());
+
+        // captured by name
+        Collected c = new Collected(0L, "something", "x");
+        assertEquals(-1L, c.getThreadId());
+        assertEquals("something", c.getThreadName());
+
+        assertTrue(ThreadNames.getCacheSize() > 0);
+    }
+
+    @Test
+    public void threadNameResolution_DeadThreadIsResolvedOnce() throws Exception {
+
+        Thread t = new Thread(() -> {});
+        t.start();
+        t.join();
+
+        // may have been cached while alive, by a concurrent resolution
+        String name = ThreadNames.resolve(t.getId());
+        assertTrue(name, name.equals(t.getName()) || name.equals("thread-" + t.getId()));
+
+        long refreshes = ThreadNames.getRefreshCount();
+
+        for(int i = 0; i < 100; i ++) {
+
+            assertEquals(name, ThreadNames.resolve(t.getId()));
+        }
+
+        assertEquals(refreshes, ThreadNames.getRefreshCount());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
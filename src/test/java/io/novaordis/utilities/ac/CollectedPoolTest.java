@@ -0,0 +1,194 @@
+package io.novaordis.utilities.ac;
+
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class CollectedPoolTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = Logger.getLogger(CollectedPoolTest.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_InvalidCapacity() throws Exception {
+
+        try {
+
+            new CollectedPool(0);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void acquireAndRelease() throws Exception {
+
+        CollectedPool pool = new CollectedPool(2);
+
+        assertEquals(2, pool.getCapacity());
+        assertEquals(2, pool.size());
+
+        Collected a = pool.acquire();
+        Collected b = pool.acquire();
+
+        assertNotNull(a);
+        assertNotNull(b);
+        assertNull(pool.acquire());
+        assertEquals(0, pool.size());
+
+        a.set(1L, "thread-a", "A");
+        pool.release(Collections.singletonList(a));
+
+        assertEquals(1, pool.size());
+
+        // released instances are cleared, so the pool does not keep the payloads reachable
+        Collected c = pool.acquire();
+        assertSame(a, c);
+        assertNull(c.getPayload());
+        assertNull(c.getThreadName());
+        assertEquals(-1L, c.getThreadId());
+    }
+
+    @Test
+    public void release_IntoFullPool() throws Exception {
+
+        CollectedPool pool = new CollectedPool(1);
+
+        Collected extra = new Collected(1L, "t", "A");
+        pool.release(Arrays.asList(extra, new Collected(2L, "t", "B")));
+
+        // the extra instances are left to the garbage collector, but they are cleared nonetheless
+        assertEquals(1, pool.size());
+        assertNull(extra.getPayload());
+    }
+
+    @Test
+    public void acquire_ProducerCachesAreCountedAsAvailable() throws Exception {
+
+        CollectedPool pool = new CollectedPool(64 * CollectedPool.MAX_REFILL_SIZE);
+
+        Collected c = pool.acquire();
+        assertNotNull(c);
+
+        // the rest of the instances the producer took are still available
+        assertEquals(pool.getCapacity() - 1, pool.size());
+
+        pool.release(Collections.singletonList(c));
+        assertEquals(pool.getCapacity(), pool.size());
+    }
+
+    @Test
+    public void concurrentProducersAndPump() throws Exception {
+
+        int capacity = 1024;
+        CollectedPool pool = new CollectedPool(capacity);
+
+        int producers = 4;
+        int events = 100000;
+        BlockingQueue<Collected> queue = new ArrayBlockingQueue<>(capacity);
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[producers];
+
+        for(int i = 0; i < producers; i ++) {
+
+            String name = "producer-" + i;
+
+            threads[i] = new Thread(() -> {
+
+                for(int j = 0; j < events; j ++) {
+
+                    Collected c;
+
+                    while((c = pool.acquire()) == null) {
+
+                        Thread.yield();
+                    }
+
+                    if (c.getPayload() != null) {
+
+                        failure.compareAndSet(null, "not cleared: " + c.getPayload());
+                    }
+
+                    c.set(j, name, name);
+
+                    try {
+
+                        queue.put(c);
+                    }
+                    catch(InterruptedException e) {
+
+                        return;
+                    }
+                }
+            }, name);
+
+            threads[i].start();
+        }
+
+        List<Collected> batch = new ArrayList<>();
+        Set<Collected> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for(long received = 0; received < (long)producers * events; received += batch.size()) {
+
+            batch.clear();
+            batch.add(queue.take());
+            queue.drainTo(batch, 255);
+
+            for(Collected c: batch) {
+
+                // an instance is never handed to two producers at the same time
+                if (!seen.add(c)) {
+
+                    failure.compareAndSet(null, "handed out twice: " + c);
+                }
+            }
+
+            seen.removeAll(batch);
+            pool.release(batch);
+        }
+
+        for(Thread t: threads) {
+
+            t.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(capacity, pool.size());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,183 @@
+package io.novaordis.utilities.ac;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The behavior of the Collector methods an implementation written against the original interface inherits.
+ */
+public class CollectorDefaultMethodsTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void handOverWithOutcome() throws Exception {
+
+        MinimalCollector c = new MinimalCollector();
+
+        assertEquals(HandOverOutcome.ACCEPTED, c.handOverWithOutcome("A"));
+
+        c.dispose();
+
+        assertEquals(HandOverOutcome.REJECTED_DISPOSED, c.handOverWithOutcome("B"));
+
+        List<Object> expected = new ArrayList<>();
+        expected.add("A");
+        assertEquals(expected, c.handedOver);
+    }
+
+    @Test
+    public void handOverWithOutcome_Priority() throws Exception {
+
+        MinimalCollector c = new MinimalCollector();
+
+        assertEquals(HandOverOutcome.ACCEPTED, c.handOverWithOutcome("A", Priority.HIGH));
+
+        List<Object> expected = new ArrayList<>();
+        expected.add("A");
+        assertEquals(expected, c.handedOver);
+
+        try {
+
+            c.handOverWithOutcome("B", null);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            // expected
+        }
+    }
+
+    @Test
+    public void flush() throws Exception {
+
+        MinimalCollector c = new MinimalCollector();
+
+        assertTrue(c.handOver("A"));
+        assertEquals(HandOverOutcome.ACCEPTED, c.flush());
+    }
+
+    @Test
+    public void primitiveHandOver_NotSupported() throws Exception {
+
+        MinimalCollector c = new MinimalCollector();
+
+        assertFalse(c.handOverLong(1, 1L));
+        assertFalse(c.handOverDouble(1, 1.0d));
+        assertTrue(c.handedOver.isEmpty());
+    }
+
+    @Test
+    public void outcomeCounters() throws Exception {
+
+        MinimalCollector c = new MinimalCollector();
+
+        assertTrue(c.handOver("A"));
+
+        assertEquals(0L, c.getOutcomeCount(HandOverOutcome.ACCEPTED));
+        assertEquals(0L, c.getDroppedCount());
+    }
+
+    @Test
+    public void metrics() throws Exception {
+
+        MinimalCollector c = new MinimalCollector();
+
+        assertNull(c.getMetrics());
+    }
+
+    @Test
+    public void drainingDispose() throws Exception {
+
+        MinimalCollector c = new MinimalCollector();
+
+        try {
+
+            c.dispose(-1L);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            // expected
+        }
+
+        assertFalse(c.disposed);
+
+        DisposeReport r = c.dispose(10L);
+
+        assertTrue(c.disposed);
+        assertFalse(r.isCountKnown());
+        assertFalse(r.isComplete());
+        assertEquals(DisposeReport.UNKNOWN_COUNT, r.getFlushedCount());
+        assertEquals(DisposeReport.UNKNOWN_COUNT, r.getAbandonedCount());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * Implements only the methods of the original interface.
+     */
+    private static class MinimalCollector implements Collector {
+
+        private final List<Object> handedOver = new ArrayList<>();
+        private boolean disposed;
+
+        @Override
+        public String getName() {
+
+            return "minimal";
+        }
+
+        @Override
+        public String getThreadName() {
+
+            return null;
+        }
+
+        @Override
+        public boolean handOver(Object o) {
+
+            return !disposed && handedOver.add(o);
+        }
+
+        @Override
+        public boolean registerHandler(Handler h) {
+
+            return false;
+        }
+
+        @Override
+        public boolean unregisterHandler(Handler h) {
+
+            return false;
+        }
+
+        @Override
+        public void dispose() {
+
+            disposed = true;
+        }
+    }
+}
@@ -3,7 +3,11 @@ package io.novaordis.utilities.ac;
 import org.apache.log4j.Logger;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class CollectorFactoryTest {
 
@@ -29,6 +33,84 @@ public class CollectorFactoryTest {
         c.dispose();
     }
 
+    @Test
+    public void factory_DefaultConfiguration() throws Exception {
+
+        Collector c = CollectorFactory.getInstance("TEST", new CollectorConfiguration());
+
+        assertTrue(c instanceof CollectorImpl);
+
+        c.dispose();
+    }
+
+    @Test
+    public void factory_RingBuffer() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setType(CollectorType.RING_BUFFER);
+        configuration.setRingBufferCapacity(100);
+        configuration.setWaitStrategy(WaitStrategy.YIELD);
+
+        RingBufferCollector c = (RingBufferCollector)CollectorFactory.getInstance("TEST", configuration);
+
+        assertEquals("TEST", c.getName());
+        assertEquals(128, c.getCapacity());
+        assertEquals(WaitStrategy.YIELD, c.getWaitStrategy());
+
+        c.dispose();
+    }
+
+    @Test
+    public void factory_Partitioned() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setType(CollectorType.PARTITIONED);
+        configuration.setPartitionCount(3);
+        configuration.setKeyExtractor(new KeyExtractor() {
+
+            @Override
+            public Object getKey(Object payload) {
+
+                return payload;
+            }
+        });
+
+        PartitionedCollector c = (PartitionedCollector)CollectorFactory.getInstance("TEST", configuration);
+
+        assertEquals(3, c.getPartitionCount());
+        assertTrue(c.getThreadName().contains("TEST"));
+
+        c.dispose();
+    }
+
+    @Test
+    public void factory_Executor() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setType(CollectorType.EXECUTOR);
+
+        ExecutorCollector c = (ExecutorCollector)CollectorFactory.getInstance("TEST", configuration);
+
+        assertEquals("TEST", c.getName());
+        assertSame(CollectorExecutors.getDefaultExecutor(), c.getExecutor());
+
+        c.dispose();
+    }
+
+    @Test
+    public void factory_NullConfiguration() throws Exception {
+
+        try {
+
+            CollectorFactory.getInstance("TEST", (CollectorConfiguration)null);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
     // Package protected -----------------------------------------------------------------------------------------------
 
     // Protected -------------------------------------------------------------------------------------------------------
@@ -1,6 +1,29 @@
 package io.novaordis.utilities.ac;
 
+import io.novaordis.utilities.ac.mock.MockBatchHandler;
+import io.novaordis.utilities.ac.mock.MockHandler;
+import io.novaordis.utilities.testing.Tests;
 import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class CollectorImplTest extends CollectorTest {
 
@@ -16,6 +39,780 @@ public class CollectorImplTest extends CollectorTest {
 
     // Public ----------------------------------------------------------------------------------------------------------
 
+    @After
+    public void scratchCleanup() throws Exception {
+
+        Tests.cleanup();
+    }
+
+    @Test
+    public void unboundedByDefault() throws Exception {
+
+        CollectorImpl c = new CollectorImpl("test");
+
+        assertEquals(Integer.MAX_VALUE, c.getCapacity());
+
+        c.dispose();
+    }
+
+    @Test
+    public void bounded_DropNewest() throws Exception {
+
+        CollectorImpl c = new CollectorImpl("test", -1, 2, OverflowPolicies.dropNewest());
+
+        assertEquals(2, c.getCapacity());
+
+        // stall the pump so the queue fills up
+        final CountDownLatch handling = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        MockHandler h = new MockHandler() {
+
+            @Override
+            public void handle(long timestamp, String threadName, Object o) {
+
+                handling.countDown();
+
+                try {
+
+                    release.await();
+                }
+                catch(InterruptedException e) {
+
+                    log.error(e);
+                }
+
+                super.handle(timestamp, threadName, o);
+            }
+        };
+
+        h.setCanHandle(true);
+        assertTrue(c.registerHandler(h));
+
+        // this one is picked up by the pump, which stalls
+        assertEquals(HandOverOutcome.ACCEPTED, c.handOverWithOutcome("A"));
+        handling.await();
+
+        assertEquals(HandOverOutcome.ACCEPTED, c.handOverWithOutcome("B"));
+        assertEquals(HandOverOutcome.ACCEPTED, c.handOverWithOutcome("C"));
+        assertEquals(HandOverOutcome.DROPPED_QUEUE_FULL, c.handOverWithOutcome("D"));
+        assertEquals(HandOverOutcome.DROPPED_QUEUE_FULL, c.handOverWithOutcome("E"));
+
+        assertEquals(3, c.getOutcomeCount(HandOverOutcome.ACCEPTED));
+        assertEquals(2, c.getOutcomeCount(HandOverOutcome.DROPPED_QUEUE_FULL));
+        assertEquals(2, c.getDroppedCount());
+
+        release.countDown();
+
+        c.dispose();
+    }
+
+    @Test
+    public void bounded_BlockedProducerIsReleasedOnDispose() throws Exception {
+
+        final CollectorImpl c = new CollectorImpl("test", -1, 1, OverflowPolicies.block());
+
+        final CountDownLatch handling = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        MockHandler h = new MockHandler() {
+
+            @Override
+            public void handle(long timestamp, String threadName, Object o) {
+
+                handling.countDown();
+
+                try {
+
+                    release.await();
+                }
+                catch(InterruptedException e) {
+
+                    log.error(e);
+                }
+            }
+        };
+
+        h.setCanHandle(true);
+        assertTrue(c.registerHandler(h));
+
+        c.handOver("A");
+        handling.await();
+        c.handOver("B");
+
+        // the queue is full, this producer blocks
+        Thread producer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                c.handOver("C");
+            }
+        });
+
+        producer.start();
+
+        Thread.sleep(100L);
+        assertTrue(producer.isAlive());
+
+        c.dispose();
+
+        producer.join(5000L);
+        assertTrue(!producer.isAlive());
+
+        release.countDown();
+    }
+
+    @Test
+    public void spill_HighWatermarkExceedsCapacity() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setCapacity(10);
+        SpillConfiguration sc = new SpillConfiguration(new File(Tests.getScratchDir(), "spill"));
+        sc.setHighWatermark(11);
+        configuration.setSpill(sc);
+
+        try {
+
+            new CollectorImpl("test", configuration);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void spill_EventsAreReplayedInOrder() throws Exception {
+
+        File dir = new File(Tests.getScratchDir(), "spill");
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        SpillConfiguration sc = new SpillConfiguration(dir);
+        sc.setHighWatermark(5);
+        sc.setSegmentSize(1024);
+        configuration.setSpill(sc);
+        configuration.setMaxBatchSize(3);
+
+        CollectorImpl c = new CollectorImpl("test", configuration);
+
+        assertTrue(c.isSpillEnabled());
+
+        CountDownLatch handling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GatedHandler h = new GatedHandler(handling, release);
+        assertTrue(c.registerHandler(h));
+
+        try {
+
+            // the pump picks up the first event and blocks in the handler
+            c.handOver(0);
+            handling.await();
+
+            int count = 100;
+
+            for(int i = 1; i < count; i ++) {
+
+                assertTrue(c.handOver(i));
+            }
+
+            // 5 events in memory, the rest on disk
+            assertEquals(count - 1 - 5, c.getSpillSize());
+            assertEquals(count - 1, c.getQueueSize());
+            assertTrue(c.getSpillSegmentCount() > 1);
+
+            CollectorMetrics m = c.getMetrics();
+            assertEquals(count - 1 - 5, m.getSpilledCount());
+            assertTrue(m.getSpilledBytes() > 0);
+            assertEquals(0L, m.getReplayedCount());
+
+            release.countDown();
+
+            waitForReceived(h, count);
+
+            List<Collected> received = h.getReceived();
+
+            for(int i = 0; i < count; i ++) {
+
+                assertEquals(i, received.get(i).getPayload());
+            }
+
+            assertEquals(0L, c.getSpillSize());
+            assertEquals(0, c.getSpillSegmentCount());
+            assertEquals(m.getSpilledCount(), m.getReplayedCount());
+            assertEquals(m.getSpilledBytes(), m.getReplayedBytes());
+            assertEquals(count, c.getOutcomeCount(HandOverOutcome.ACCEPTED));
+
+            // the pump caught up, events go to memory again
+            assertTrue(c.handOver(count));
+            waitForReceived(h, count + 1);
+            assertEquals(count - 1 - 5, m.getSpilledCount());
+        }
+        finally {
+
+            c.dispose();
+        }
+    }
+
+    @Test
+    public void producerBatching_SweepDoesNotWaitForAFullQueue() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setCapacity(1);
+        configuration.setOverflowPolicy(OverflowPolicies.block());
+        configuration.setProducerBatchSize(10);
+        configuration.setProducerFlushDeadlineMs(10L);
+
+        CollectorImpl c = new CollectorImpl("test", configuration);
+
+        CountDownLatch handling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GatedHandler h = new GatedHandler(handling, release);
+        assertTrue(c.registerHandler(h));
+
+        try {
+
+            // the pump blocks in the handler, then the queue fills up
+            assertTrue(c.handOver("A"));
+            assertEquals(HandOverOutcome.ACCEPTED, c.flush());
+            handling.await();
+            assertTrue(c.handOver("B"));
+            assertEquals(HandOverOutcome.ACCEPTED, c.flush());
+
+            // expires in the buffer, the sweep has no room for it
+            assertTrue(c.handOver("C"));
+
+            // the scheduler shared by all collectors is not held up
+            CountDownLatch ran = new CountDownLatch(1);
+            CollectorExecutors.getMaintenanceScheduler().schedule(ran::countDown, 100L, TimeUnit.MILLISECONDS);
+            assertTrue(ran.await(5L, TimeUnit.SECONDS));
+            assertEquals(1, c.getProducerBufferedCount());
+
+            // once there is room, the sweep publishes the run
+            release.countDown();
+            waitForReceived(h, 3);
+
+            List<Collected> received = h.getReceived();
+            assertEquals("A", received.get(0).getPayload());
+            assertEquals("B", received.get(1).getPayload());
+            assertEquals("C", received.get(2).getPayload());
+            waitForOutcomeCount(c, HandOverOutcome.ACCEPTED, 3L);
+        }
+        finally {
+
+            release.countDown();
+            c.dispose();
+        }
+    }
+
+    @Test
+    public void producerBatching_TimedDisposeDoesNotWaitForAFullQueue() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setCapacity(1);
+        configuration.setOverflowPolicy(OverflowPolicies.block());
+        configuration.setProducerBatchSize(10);
+        configuration.setProducerFlushDeadlineMs(60000L);
+
+        CollectorImpl c = new CollectorImpl("test", configuration);
+
+        CountDownLatch handling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GatedHandler h = new GatedHandler(handling, release);
+        assertTrue(c.registerHandler(h));
+
+        try {
+
+            // the pump blocks in the handler, then the queue fills up
+            assertTrue(c.handOver("A"));
+            assertEquals(HandOverOutcome.ACCEPTED, c.flush());
+            handling.await();
+            assertTrue(c.handOver("B"));
+            assertEquals(HandOverOutcome.ACCEPTED, c.flush());
+
+            // stays in the producer buffer, the queue has no room for it
+            assertTrue(c.handOver("C"));
+
+            DisposeReport[] report = new DisposeReport[1];
+            Thread disposer = new Thread(() -> report[0] = c.dispose(100L));
+            disposer.start();
+            disposer.join(5000L);
+
+            assertFalse(disposer.isAlive());
+            assertFalse(report[0].isComplete());
+
+            // B in the queue and C in the producer buffer
+            assertEquals(2L, report[0].getAbandonedCount());
+        }
+        finally {
+
+            release.countDown();
+            c.dispose();
+        }
+    }
+
+    @Test
+    public void pump_EveryWakeUpIsFilteredOut() throws Exception {
+
+        CollectorImpl c = new CollectorImpl("test");
+        MockBatchHandler h = new MockBatchHandler();
+        assertTrue(c.registerHandler(h));
+
+        BlockingQueue<Collected> queue = new LinkedBlockingQueue<>();
+        QueuePump pump = new QueuePump(c, queue);
+
+        // as if the pump was woken up twice while blocked, before it got to run
+        Field f = QueuePump.class.getDeclaredField("waiting");
+        f.setAccessible(true);
+        f.set(pump, true);
+        pump.wakeUp();
+        pump.wakeUp();
+        f.set(pump, false);
+
+        queue.add(new Collected(0L, "producer", "A"));
+
+        Thread t = new Thread(pump);
+        t.start();
+
+        try {
+
+            waitForReceived(h, 1);
+
+            List<Collected> received = h.getReceived();
+            assertEquals(1, received.size());
+            assertEquals("A", received.get(0).getPayload());
+        }
+        finally {
+
+            pump.stop();
+            queue.add(new Collected(0L, "producer", "stop"));
+            t.join(5000L);
+            c.dispose();
+        }
+    }
+
+    @Test
+    public void spill_HandOverDoesNotLockWhileNotSpilling() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        SpillConfiguration sc = new SpillConfiguration(new File(Tests.getScratchDir(), "spill"));
+        sc.setHighWatermark(10);
+        configuration.setSpill(sc);
+
+        CollectorImpl c = new CollectorImpl("test", configuration);
+        MockBatchHandler h = new MockBatchHandler();
+        assertTrue(c.registerHandler(h));
+
+        // the lock the pump holds while it replays from disk
+        Field f = CollectorImpl.class.getDeclaredField("spill");
+        f.setAccessible(true);
+        Object spill = f.get(c);
+
+        try {
+
+            Thread producer = new Thread(() -> c.handOver("A"));
+
+            synchronized(spill) {
+
+                producer.start();
+                producer.join(5000L);
+                assertFalse(producer.isAlive());
+            }
+
+            waitForReceived(h, 1);
+        }
+        finally {
+
+            c.dispose();
+        }
+    }
+
+    @Test
+    public void spill_UnserializablePayloadIsDropped() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        SpillConfiguration sc = new SpillConfiguration(new File(Tests.getScratchDir(), "spill"));
+        sc.setHighWatermark(1);
+        configuration.setSpill(sc);
+
+        CollectorImpl c = new CollectorImpl("test", configuration);
+
+        CountDownLatch handling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GatedHandler h = new GatedHandler(handling, release);
+        assertTrue(c.registerHandler(h));
+
+        try {
+
+            c.handOver("A");
+            handling.await();
+
+            assertTrue(c.handOver("B"));
+            assertFalse(c.handOver(new Object()));
+            assertTrue(c.handOver("C"));
+
+            assertEquals(1L, c.getOutcomeCount(HandOverOutcome.DROPPED_SPILL_FAILED));
+            assertEquals(1L, c.getDroppedCount());
+
+            release.countDown();
+            waitForReceived(h, 3);
+
+            assertEquals("C", h.getReceived().get(2).getPayload());
+        }
+        finally {
+
+            c.dispose();
+        }
+    }
+
+    @Test
+    public void spill_DisposeDeletesTheSpill() throws Exception {
+
+        File dir = new File(Tests.getScratchDir(), "spill");
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        SpillConfiguration sc = new SpillConfiguration(dir);
+        sc.setHighWatermark(1);
+        configuration.setSpill(sc);
+
+        CollectorImpl c = new CollectorImpl("test", configuration);
+
+        CountDownLatch handling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        assertTrue(c.registerHandler(new GatedHandler(handling, release)));
+
+        c.handOver("A");
+        handling.await();
+        c.handOver("B");
+        c.handOver("C");
+
+        assertEquals(1L, c.getSpillSize());
+        assertEquals(1, c.getSpillSegmentCount());
+
+        c.dispose();
+        release.countDown();
+
+        assertEquals(0L, c.getSpillSize());
+        String[] files = dir.list();
+        assertTrue(files != null && files.length == 0);
+    }
+
+    @Test
+    public void pooled_InstancesAreRecycled() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setPoolCapacity(8);
+
+        CollectorImpl c = new CollectorImpl("test", configuration);
+
+        try {
+
+            CollectedPool pool = c.getPool();
+            assertNotNull(pool);
+            assertEquals(8, pool.size());
+
+            MockBatchHandler h = new MockBatchHandler();
+            h.setCanHandle(true);
+            assertTrue(c.registerHandler(h));
+
+            int events = 1000;
+
+            for(int i = 0; i < events; i ++) {
+
+                assertTrue(c.handOver("event-" + i));
+            }
+
+            waitForReceived(h, events);
+
+            List<Collected> received = h.getReceived();
+
+            for(int i = 0; i < events; i ++) {
+
+                assertEquals("event-" + i, received.get(i).getPayload());
+            }
+
+            // the instances are released after the handlers return
+            long t0 = System.currentTimeMillis();
+
+            while(pool.size() < 8 && System.currentTimeMillis() - t0 < 5000L) {
+
+                Thread.sleep(10L);
+            }
+
+            assertEquals(8, pool.size());
+            assertTrue(c.getMetrics().getPoolMissCount() <= events);
+        }
+        finally {
+
+            c.dispose();
+        }
+    }
+
+    @Test
+    public void pooled_RetainedInstancesAreReused() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setPoolCapacity(1);
+
+        CollectorImpl c = new CollectorImpl("test", configuration);
+
+        try {
+
+            RetainingHandler h = new RetainingHandler();
+            assertTrue(c.registerHandler(h));
+
+            assertTrue(c.handOver("A"));
+            h.waitFor(1);
+
+            // a handler that retains the instance instead of a copy sees it cleared, then reused
+
+            Collected retained = h.retained.get(0);
+            Collected copy = h.copies.get(0);
+
+            assertNull(retained.getPayload());
+            assertEquals("A", copy.getPayload());
+
+            assertTrue(c.handOver("B"));
+            h.waitFor(2);
+
+            assertSame(retained, h.retained.get(1));
+            assertEquals("A", copy.getPayload());
+            assertEquals("B", h.copies.get(1).getPayload());
+        }
+        finally {
+
+            c.dispose();
+        }
+    }
+
+    @Test
+    public void pooled_BoundedQueueDoesNotAllocateOnHandOver() throws Exception {
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (!(bean instanceof com.sun.management.ThreadMXBean) ||
+                !((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported()) {
+
+            log.warn("per-thread allocation counters not available, skipping");
+            return;
+        }
+
+        com.sun.management.ThreadMXBean mxBean = (com.sun.management.ThreadMXBean)bean;
+        mxBean.setThreadAllocatedMemoryEnabled(true);
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setCaptureMode(CaptureMode.COARSE);
+        configuration.setCapacity(1024);
+        // accommodates the full queue plus the batch the pump is processing
+        configuration.setPoolCapacity(2048);
+
+        CollectorImpl c = new CollectorImpl("test", configuration);
+
+        try {
+
+            MockHandler h = new DiscardingHandler();
+            assertTrue(c.registerHandler(h));
+
+            int events = 100000;
+            String payload = "A";
+
+            // warm up, so the measurement does not include class loading and compilation
+
+            handOver(c, payload, events);
+
+            long before = mxBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+
+            handOver(c, payload, events);
+
+            long allocated = mxBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+            log.info("producer allocated " + allocated + " bytes for " + events + " events");
+
+            // allow for the odd allocation done by the JVM on behalf of the thread (parking, safepoints)
+            assertTrue(allocated < events / 10);
+            assertEquals(0L, c.getMetrics().getPoolMissCount());
+        }
+        finally {
+
+            c.dispose();
+        }
+    }
+
+    @Test
+    public void pooled_InvalidCapacity() throws Exception {
+
+        try {
+
+            new CollectorConfiguration().setPoolCapacity(-1);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void priorityLanes_HighPriorityOvertakesTheBacklog() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setPriorityLanes(true);
+
+        CollectorImpl c = new CollectorImpl("test", configuration);
+
+        CountDownLatch handling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GatedHandler h = new GatedHandler(handling, release);
+        assertTrue(c.registerHandler(h));
+
+        try {
+
+            assertTrue(c.isPriorityLanes());
+
+            assertTrue(c.handOver("normal-0"));
+            handling.await();
+
+            for(int i = 1; i <= 100; i ++) {
+
+                assertTrue(c.handOver("normal-" + i));
+                assertEquals(HandOverOutcome.ACCEPTED, c.handOverWithOutcome("low-" + i, Priority.LOW));
+            }
+
+            assertEquals(HandOverOutcome.ACCEPTED, c.handOverWithOutcome("urgent", Priority.HIGH));
+
+            CollectorMetrics metrics = c.getMetrics();
+            assertEquals(1, metrics.getHighPriorityQueueDepth());
+            assertEquals(100, metrics.getNormalPriorityQueueDepth());
+            assertEquals(100, metrics.getLowPriorityQueueDepth());
+            assertEquals(201, metrics.getQueueDepth());
+
+            release.countDown();
+
+            waitForReceived(h, 202);
+
+            List<Collected> received = h.getReceived();
+
+            assertEquals("normal-0", received.get(0).getPayload());
+            assertEquals("urgent", received.get(1).getPayload());
+
+            // the order is preserved within a lane
+            int normal = 0;
+            int low = 0;
+
+            for(Collected e: received) {
+
+                String s = (String)e.getPayload();
+
+                if (s.startsWith("normal-")) {
+
+                    assertEquals("normal-" + normal ++, s);
+                }
+                else if (s.startsWith("low-")) {
+
+                    assertEquals("low-" + ++ low, s);
+                }
+            }
+
+            assertEquals(101, normal);
+            assertEquals(100, low);
+        }
+        finally {
+
+            release.countDown();
+            c.dispose();
+        }
+    }
+
+    @Test
+    public void priorityLanes_LowerLaneIsNotStarved() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setPriorityLanes(true);
+        configuration.setStarvationLimit(2);
+        configuration.setMaxBatchSize(1);
+
+        CollectorImpl c = new CollectorImpl("test", configuration);
+
+        CountDownLatch handling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GatedHandler h = new GatedHandler(handling, release);
+        assertTrue(c.registerHandler(h));
+
+        try {
+
+            c.handOverWithOutcome("high-0", Priority.HIGH);
+            handling.await();
+
+            for(int i = 1; i <= 10; i ++) {
+
+                c.handOverWithOutcome("high-" + i, Priority.HIGH);
+            }
+
+            c.handOverWithOutcome("low", Priority.LOW);
+
+            release.countDown();
+
+            waitForReceived(h, 12);
+
+            List<Collected> received = h.getReceived();
+
+            // the low lane is passed over twice, then served
+            assertEquals("high-0", received.get(0).getPayload());
+            assertEquals("high-1", received.get(1).getPayload());
+            assertEquals("high-2", received.get(2).getPayload());
+            assertEquals("low", received.get(3).getPayload());
+            assertEquals("high-3", received.get(4).getPayload());
+        }
+        finally {
+
+            release.countDown();
+            c.dispose();
+        }
+    }
+
+    @Test
+    public void priorityLanes_DrainingDispose() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setPriorityLanes(true);
+
+        CollectorImpl c = new CollectorImpl("test", configuration);
+
+        MockBatchHandler h = new MockBatchHandler();
+        h.setCanHandle(true);
+        assertTrue(c.registerHandler(h));
+
+        for(int i = 0; i < 100; i ++) {
+
+            c.handOverWithOutcome(i, Priority.values()[i % 3]);
+        }
+
+        DisposeReport report = c.dispose(10000L);
+
+        assertTrue(report.isComplete());
+        assertEquals(100, h.getReceivedCount());
+        assertEquals(0, c.getQueueSize());
+    }
+
+    @Test
+    public void priorityLanes_SpillingIsRejected() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setPriorityLanes(true);
+        configuration.setSpill(new SpillConfiguration(new File(Tests.getScratchDir(), "spill")));
+
+        try {
+
+            new CollectorImpl("test", configuration);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
     // Package protected -----------------------------------------------------------------------------------------------
 
     @Override
@@ -26,10 +823,79 @@ public class CollectorImplTest extends CollectorTest {
         return result;
     }
 
+    @Override
+    protected Collector getCollectorToTest(String name, CollectorConfiguration configuration) {
+
+        return new CollectorImpl(name, configuration);
+    }
+
     // Protected -------------------------------------------------------------------------------------------------------
 
     // Private ---------------------------------------------------------------------------------------------------------
 
+    private static void handOver(CollectorImpl c, Object payload, int events) throws InterruptedException {
+
+        for(int i = 0; i < events; i ++) {
+
+            c.handOver(payload);
+        }
+
+        while(c.getQueueSize() > 0) {
+
+            Thread.sleep(10L);
+        }
+    }
+
     // Inner classes ---------------------------------------------------------------------------------------------------
 
+    /**
+     * Does not retain the events, so it does not allocate.
+     */
+    private static class DiscardingHandler extends MockHandler {
+
+        DiscardingHandler() {
+
+            setCanHandle(true);
+        }
+
+        @Override
+        public void handle(long timestamp, String originatorThreadName, Object o) {
+
+            // discard
+        }
+    }
+
+    /**
+     * Retains both the instances it receives, which breaks the ownership contract, and their copies.
+     */
+    private static class RetainingHandler extends MockHandler implements BatchHandler {
+
+        final List<Collected> retained = new CopyOnWriteArrayList<>();
+        final List<Collected> copies = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void handleBatch(List<Collected> batch) {
+
+            for(Collected c: batch) {
+
+                retained.add(c);
+                copies.add(c.copy());
+            }
+        }
+
+        void waitFor(int count) throws InterruptedException {
+
+            long t0 = System.currentTimeMillis();
+
+            while(copies.size() < count && System.currentTimeMillis() - t0 < 5000L) {
+
+                Thread.sleep(10L);
+            }
+
+            assertEquals(count, copies.size());
+
+            // the instances are released after handleBatch() returns
+            Thread.sleep(50L);
+        }
+    }
 }
@@ -0,0 +1,196 @@
+package io.novaordis.utilities.ac;
+
+import io.novaordis.utilities.ac.mock.MockHandler;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CollectorMetricsTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = Logger.getLogger(CollectorMetricsTest.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void counters() throws Exception {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch processed = new CountDownLatch(5);
+
+        CollectorImpl c = new CollectorImpl("test", -1, 2, OverflowPolicies.dropNewest());
+
+        try {
+
+            c.registerHandler(new Handler() {
+
+                @Override
+                public boolean canHandle(Object o) {
+                    return true;
+                }
+
+                @Override
+                public void handle(long timestamp, String threadName, Object o) {
+
+                    try {
+
+                        release.await();
+                    }
+                    catch(InterruptedException e) {
+
+                        throw new IllegalStateException(e);
+                    }
+
+                    processed.countDown();
+
+                    if ("fail".equals(o)) {
+
+                        throw new RuntimeException("SYNTHETIC");
+                    }
+                }
+
+                @Override
+                public void close() {
+                }
+            });
+
+            CollectorMetrics m = c.getMetrics();
+
+            assertEquals("test", m.getName());
+
+            // the pump takes the first event and blocks in the handler, two more fill the queue, the rest are dropped
+            c.handOver("fail");
+
+            while(m.getDequeuedCount() < 1) {
+
+                Thread.sleep(5L);
+            }
+
+            c.handOver(2);
+            c.handOver(3);
+            c.handOver(4);
+
+            assertEquals(4, m.getEnqueuedCount() + m.getDroppedCount());
+            assertEquals(2, m.getQueueDepth());
+            assertTrue(m.getPeakQueueDepth() >= 2);
+
+            release.countDown();
+
+            while(m.getDequeuedCount() < m.getEnqueuedCount()) {
+
+                Thread.sleep(5L);
+            }
+
+            assertEquals(0, m.getQueueDepth());
+            assertEquals(3, m.getEnqueuedCount());
+            assertEquals(1, m.getDroppedCount());
+            assertEquals(c.getDroppedCount(), m.getDroppedCount());
+            assertEquals(1, m.getOutcomeCount(HandOverOutcome.DROPPED_QUEUE_FULL));
+
+            while(m.getHandlerMetrics().get(0).getInvocationCount() < 3) {
+
+                Thread.sleep(5L);
+            }
+
+            assertEquals(1, m.getHandlerFailureCount());
+            assertEquals(1, m.getHandlerMetrics().get(0).getFailureCount());
+            assertEquals(2, m.getHandlerMetrics().get(0).getLatency().getCount());
+
+            // the events waited in the queue while the handler was blocked
+            assertEquals(3, m.getLag().getCount());
+            assertTrue(m.getMaxLagMs() >= m.getLastLagMs());
+
+            m.resetPeaks();
+            assertEquals(0, m.getLag().getCount());
+        }
+        finally {
+
+            release.countDown();
+            c.dispose();
+        }
+
+        c.handOver(5);
+        assertEquals(1, c.getMetrics().getRejectedCount());
+    }
+
+    @Test
+    public void jmx() throws Exception {
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        CollectorImpl c = new CollectorImpl("jmx test, with \"special\" characters");
+        CollectorImpl c2 = new CollectorImpl(c.getName());
+
+        ObjectName on = c.getMetrics().getObjectName();
+        assertNotNull(on);
+        assertTrue(server.isRegistered(on));
+        assertTrue(server.isRegistered(c2.getMetrics().getObjectName()));
+        assertEquals(c.getName(), server.getAttribute(on, "Name"));
+        assertEquals(0L, server.getAttribute(on, "EnqueuedCount"));
+
+        MockHandler h = new MockHandler();
+        h.setCanHandle(true);
+
+        c.registerHandler(h);
+        c.registerHandler(h);
+
+        ObjectName pattern = new ObjectName(
+                CollectorMetrics.JMX_DOMAIN + ":type=CollectorHandler,collector=" + ObjectName.quote(c.getName()) +
+                        ",id=" + on.getKeyProperty("id") + ",*");
+
+        Set<ObjectName> handlerNames = server.queryNames(pattern, null);
+        assertEquals(2, handlerNames.size());
+
+        c.handOver("something");
+
+        while(h.getReceived().size() < 2) {
+
+            Thread.sleep(5L);
+        }
+
+        for(ObjectName hon: handlerNames) {
+
+            log.info(hon);
+            assertEquals(1L, server.getAttribute(hon, "InvocationCount"));
+            assertEquals(h.toString(), server.getAttribute(hon, "Handler"));
+        }
+
+        c.unregisterHandler(h);
+        assertEquals(1, server.queryNames(pattern, null).size());
+
+        c.dispose();
+
+        assertNull(c.getMetrics().getObjectName());
+        assertTrue(!server.isRegistered(on));
+        assertEquals(0, server.queryNames(pattern, null).size());
+        assertTrue(server.isRegistered(c2.getMetrics().getObjectName()));
+
+        c2.dispose();
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -1,13 +1,20 @@
 package io.novaordis.utilities.ac;
 
+import io.novaordis.utilities.ac.mock.MockBatchHandler;
 import io.novaordis.utilities.ac.mock.MockHandler;
+import io.novaordis.utilities.ac.mock.MockPrimitiveHandler;
 
 import org.apache.log4j.Logger;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public abstract class CollectorTest {
 
@@ -29,7 +36,15 @@ public abstract class CollectorTest {
         Collector c = getCollectorToTest("blah");
 
         assertEquals("blah", c.getName());
-        assertTrue(c.getThreadName().contains("blah"));
+
+        if (hasDrainingThread()) {
+
+            assertTrue(c.getThreadName().contains("blah"));
+        }
+        else {
+
+            assertNull(c.getThreadName());
+        }
 
         MockHandler mh = new MockHandler();
 
@@ -40,6 +55,9 @@ public abstract class CollectorTest {
         assertTrue(mh.wasCloseCalled());
 
         assertFalse(c.handOver(new Object()));
+        assertEquals(HandOverOutcome.REJECTED_DISPOSED, c.handOverWithOutcome(new Object()));
+        assertEquals(2, c.getOutcomeCount(HandOverOutcome.REJECTED_DISPOSED));
+        assertEquals(0, c.getDroppedCount());
 
         assertFalse(c.registerHandler(new MockHandler()));
 
@@ -47,14 +65,700 @@ public abstract class CollectorTest {
         assertFalse(c.unregisterHandler(mh));
     }
 
+    @Test
+    public void batchHandlerReceivesEverythingInOrder() throws Exception {
+
+        Collector c = getCollectorToTest("blah");
+
+        MockBatchHandler h = new MockBatchHandler();
+        assertTrue(c.registerHandler(h));
+
+        int count = 5000;
+
+        for(int i = 0; i < count; i ++) {
+
+            assertTrue(c.handOver(i));
+        }
+
+        long t0 = System.currentTimeMillis();
+
+        while(h.getReceivedCount() < count && System.currentTimeMillis() - t0 < 10000L) {
+
+            Thread.sleep(10L);
+        }
+
+        c.dispose();
+
+        List<List<Collected>> batches = h.getBatches();
+
+        int expected = 0;
+
+        for(List<Collected> batch: batches) {
+
+            assertTrue(batch.size() <= CollectorBase.DEFAULT_MAX_BATCH_SIZE);
+
+            for(Collected e: batch) {
+
+                assertEquals(expected ++, e.getPayload());
+            }
+        }
+
+        assertEquals(count, expected);
+
+        log.debug(count + " events received in " + batches.size() + " batches");
+    }
+
+    @Test
+    public void coarseCapture() throws Exception {
+
+        CoarseClock clock = new CoarseClock(5L);
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setCaptureMode(CaptureMode.COARSE);
+        configuration.setCoarseClock(clock);
+
+        final Collector c = getCollectorToTest("blah", configuration);
+
+        try {
+
+            assertEquals(CaptureMode.COARSE, ((CollectorBase)c).getCaptureMode());
+
+            MockBatchHandler h = new MockBatchHandler();
+            assertTrue(c.registerHandler(h));
+
+            final CountDownLatch received = new CountDownLatch(1);
+
+            long t0 = System.currentTimeMillis();
+
+            // the producer stays alive until the events are processed, so its name can be resolved
+            Thread producer = new Thread(() -> {
+
+                c.handOver("A");
+                c.handOver("B");
+
+                try {
+
+                    received.await();
+                }
+                catch(InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+                }
+
+            }, "coarse producer 7bH2");
+
+            producer.start();
+
+            while(h.getReceivedCount() < 2 && System.currentTimeMillis() - t0 < 10000L) {
+
+                Thread.sleep(10L);
+            }
+
+            long t1 = System.currentTimeMillis();
+            received.countDown();
+            producer.join();
+
+            List<Collected> events = h.getReceived();
+            assertEquals(2, events.size());
+
+            for(Collected e: events) {
+
+                assertEquals("coarse producer 7bH2", e.getThreadName());
+
+                // the clock lags by at most its resolution, plus scheduling slack
+                assertTrue(e.getTimeStamp() >= t0 - 1000L);
+                assertTrue(e.getTimeStamp() <= t1);
+            }
+        }
+        finally {
+
+            c.dispose();
+            clock.stop();
+        }
+    }
+
+    @Test
+    public void producerBatching_PublishedWhenFullOrFlushed() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setProducerBatchSize(3);
+        configuration.setProducerFlushDeadlineMs(60000L);
+
+        Collector c = getCollectorToTest("blah", configuration);
+
+        try {
+
+            assertEquals(3, ((CollectorBase)c).getProducerBatchSize());
+
+            MockBatchHandler h = new MockBatchHandler();
+            assertTrue(c.registerHandler(h));
+
+            long t0 = System.currentTimeMillis();
+
+            assertEquals(HandOverOutcome.ACCEPTED, c.handOverWithOutcome("A"));
+            assertEquals(HandOverOutcome.ACCEPTED, c.handOverWithOutcome("B"));
+
+            // buffered on this thread, not published yet
+            assertEquals(2, ((CollectorBase)c).getProducerBufferedCount());
+            Thread.sleep(100L);
+            assertEquals(0, h.getReceivedCount());
+
+            // fills the buffer
+            assertEquals(HandOverOutcome.ACCEPTED, c.handOverWithOutcome("C"));
+            assertEquals(0, ((CollectorBase)c).getProducerBufferedCount());
+
+            assertTrue(c.handOver("D"));
+            assertEquals(HandOverOutcome.ACCEPTED, c.flush());
+
+            // nothing left to flush
+            assertEquals(HandOverOutcome.ACCEPTED, c.flush());
+
+            waitForReceived(h, 4);
+            long t1 = System.currentTimeMillis();
+
+            List<Collected> received = h.getReceived();
+            assertEquals(4, received.size());
+
+            String[] expected = { "A", "B", "C", "D" };
+
+            for(int i = 0; i < expected.length; i ++) {
+
+                Collected e = received.get(i);
+                assertEquals(expected[i], e.getPayload());
+                assertEquals(Thread.currentThread().getName(), e.getThreadName());
+                assertTrue(e.getTimeStamp() >= t0);
+                assertTrue(e.getTimeStamp() <= t1);
+            }
+
+            assertEquals(4, c.getOutcomeCount(HandOverOutcome.ACCEPTED));
+            assertEquals(4, c.getMetrics().getDequeuedCount());
+        }
+        finally {
+
+            c.dispose();
+        }
+
+        assertEquals(HandOverOutcome.REJECTED_DISPOSED, c.flush());
+        assertEquals(HandOverOutcome.REJECTED_DISPOSED, c.handOverWithOutcome("E"));
+    }
+
+    @Test
+    public void producerBatching_PublishedWhenDeadlineExpires() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setProducerBatchSize(100);
+        configuration.setProducerFlushDeadlineMs(20L);
+
+        Collector c = getCollectorToTest("blah", configuration);
+
+        try {
+
+            MockBatchHandler h = new MockBatchHandler();
+            assertTrue(c.registerHandler(h));
+
+            // the producer does not hand over anything else, the sweep publishes the buffer
+            assertTrue(c.handOver("A"));
+
+            waitForReceived(h, 1);
+
+            assertEquals("A", h.getReceived().get(0).getPayload());
+        }
+        finally {
+
+            c.dispose();
+        }
+    }
+
+    @Test
+    public void producerBatching_PerThreadOrderIsPreserved() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setProducerBatchSize(16);
+        configuration.setProducerFlushDeadlineMs(5L);
+
+        final Collector c = getCollectorToTest("blah", configuration);
+
+        try {
+
+            MockBatchHandler h = new MockBatchHandler();
+            assertTrue(c.registerHandler(h));
+
+            int producerCount = 4;
+            final int eventsPerProducer = 1000;
+
+            Thread[] producers = new Thread[producerCount];
+
+            for(int i = 0; i < producerCount; i ++) {
+
+                final int producerId = i;
+
+                producers[i] = new Thread(() -> {
+
+                    for(int j = 0; j < eventsPerProducer; j ++) {
+
+                        c.handOver(new int[] { producerId, j });
+                    }
+
+                    c.flush();
+                });
+
+                producers[i].start();
+            }
+
+            for(Thread t: producers) {
+
+                t.join();
+            }
+
+            waitForReceived(h, producerCount * eventsPerProducer);
+
+            int[] next = new int[producerCount];
+
+            for(Collected e: h.getReceived()) {
+
+                int[] payload = (int[])e.getPayload();
+                assertEquals(next[payload[0]] ++, payload[1]);
+            }
+
+            for(int i = 0; i < producerCount; i ++) {
+
+                assertEquals(eventsPerProducer, next[i]);
+            }
+        }
+        finally {
+
+            c.dispose();
+        }
+    }
+
+    @Test
+    public void handlerIsolation_SlowHandlerDoesNotStallTheOthers() throws Exception {
+
+        LaneConfiguration lanes = new LaneConfiguration();
+        lanes.setLatencyBudgetMs(60000L);
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setHandlerIsolation(lanes);
+
+        Collector c = getCollectorToTest("blah", configuration);
+
+        HandlerLaneTest.SlowHandler slow = new HandlerLaneTest.SlowHandler(10000L);
+        HandlerLaneTest.SlowHandler fast = new HandlerLaneTest.SlowHandler(0L);
+
+        try {
+
+            assertTrue(c.registerHandler(slow));
+            assertTrue(c.registerHandler(fast));
+
+            List<Handler> registered = ((CollectorBase)c).handlers.getHandlers();
+            assertEquals(2, registered.size());
+            assertEquals(slow, ((HandlerLane)registered.get(0)).getHandler());
+
+            for(int i = 0; i < 20; i ++) {
+
+                c.handOver(i);
+            }
+
+            // the slow handler is still on its first event
+            fast.waitFor(20);
+            slow.waitForInvocation();
+            assertEquals(0, slow.received.size());
+
+            assertEquals(fast.invokingThread, ((HandlerLane)registered.get(1)).getThreadName());
+
+            // the lane is found by the handler it isolates
+            assertTrue(c.unregisterHandler(slow));
+            assertEquals(1, ((CollectorBase)c).handlers.getHandlers().size());
+        }
+        finally {
+
+            c.dispose();
+        }
+
+        long t0 = System.currentTimeMillis();
+
+        while(!fast.closed && System.currentTimeMillis() - t0 < 10000L) {
+
+            Thread.sleep(5L);
+        }
+
+        assertTrue(fast.closed);
+        assertFalse(slow.closed);
+    }
+
+    @Test
+    public void primitiveHandOver() throws Exception {
+
+        Collector c = getCollectorToTest("blah");
+
+        try {
+
+            MockPrimitiveHandler ph = new MockPrimitiveHandler(10);
+            ph.setCanHandle(true);
+            MockBatchHandler bh = new MockBatchHandler();
+            bh.setCanHandle(true);
+
+            assertTrue(c.registerHandler(ph));
+            assertTrue(c.registerHandler(bh));
+
+            long t0 = System.currentTimeMillis();
+
+            assertTrue(c.handOverLong(1, 42L));
+            assertTrue(c.handOverDouble(2, 3.5));
+            assertTrue(c.handOverLong(1, -7L));
+            assertTrue(c.handOver("A"));
+
+            waitForReceived(bh, 1);
+
+            long t1 = System.currentTimeMillis();
+
+            while(ph.getCount() < 3 && System.currentTimeMillis() - t1 < 10000L) {
+
+                Thread.sleep(10L);
+            }
+
+            assertEquals(3, ph.getCount());
+
+            // the order is only guaranteed per key, partitioned collectors may deliver different keys out of order
+            int first = -1;
+            int second = -1;
+            int other = -1;
+
+            for(int i = 0; i < 3; i ++) {
+
+                if (ph.getKey(i) == 1) {
+
+                    if (first == -1) {
+
+                        first = i;
+                    }
+                    else {
+
+                        second = i;
+                    }
+                }
+                else {
+
+                    other = i;
+                }
+            }
+
+            assertTrue(first != -1 && second != -1 && other != -1);
+            assertFalse(ph.isDouble(first));
+            assertEquals(42L, ph.getLongValue(first));
+            assertFalse(ph.isDouble(second));
+            assertEquals(-7L, ph.getLongValue(second));
+            assertEquals(2, ph.getKey(other));
+            assertTrue(ph.isDouble(other));
+            assertEquals(3.5, ph.getDoubleValue(other), 0.0);
+
+            for(int i = 0; i < 3; i ++) {
+
+                assertEquals(Thread.currentThread().getId(), ph.getThreadId(i));
+                assertTrue(ph.getTimestamp(i) >= t0);
+                assertTrue(ph.getTimestamp(i) <= t1);
+            }
+
+            // the samples do not reach the other handlers, the regular events reach all handlers
+            assertEquals(1, bh.getReceivedCount());
+            assertEquals("A", bh.getReceived().get(0).getPayload());
+            assertEquals(1, ph.getReceived().size());
+
+            assertEquals(4, c.getOutcomeCount(HandOverOutcome.ACCEPTED));
+        }
+        finally {
+
+            c.dispose();
+        }
+
+        assertFalse(c.handOverLong(1, 1L));
+        assertFalse(c.handOverDouble(1, 1.0));
+    }
+
+    @Test
+    public void handOverWithPriority() throws Exception {
+
+        Collector c = getCollectorToTest("blah");
+
+        MockBatchHandler h = new MockBatchHandler();
+        h.setCanHandle(true);
+        assertTrue(c.registerHandler(h));
+
+        try {
+
+            for(Priority p: Priority.values()) {
+
+                assertEquals(HandOverOutcome.ACCEPTED, c.handOverWithOutcome(p.name(), p));
+            }
+
+            waitForReceived(h, Priority.values().length);
+
+            try {
+
+                c.handOverWithOutcome("A", null);
+                fail("should have thrown exception");
+            }
+            catch(IllegalArgumentException e) {
+
+                log.info(e.getMessage());
+            }
+        }
+        finally {
+
+            c.dispose();
+        }
+
+        assertEquals(HandOverOutcome.REJECTED_DISPOSED, c.handOverWithOutcome("A", Priority.HIGH));
+    }
+
+    @Test
+    public void drainingDispose_FlushesTheBacklog() throws Exception {
+
+        Collector c = getCollectorToTest("blah");
+
+        CountDownLatch handling = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        GatedHandler h = new GatedHandler(handling, release);
+        assertTrue(c.registerHandler(h));
+
+        // the pump picks up the first event and blocks in the handler
+        assertTrue(c.handOver(0));
+        handling.await();
+
+        int count = 50;
+
+        for(int i = 1; i < count; i ++) {
+
+            assertTrue(c.handOver(i));
+        }
+
+        Thread releaser = new Thread(() -> {
+
+            try {
+
+                Thread.sleep(200L);
+            }
+            catch(InterruptedException e) {
+
+                log.error(e);
+            }
+
+            release.countDown();
+        });
+
+        releaser.start();
+
+        DisposeReport report = c.dispose(10000L);
+
+        log.info(report);
+
+        assertTrue(report.isComplete());
+        assertEquals(0L, report.getAbandonedCount());
+        assertEquals(count - 1, report.getFlushedCount());
+        assertTrue(report.getDurationMs() >= 100L);
+
+        // the handlers were closed after the backlog was processed
+        assertEquals(count, h.getReceivedWhenClosed());
+        assertTrue(h.wasCloseCalled());
+
+        List<Collected> received = h.getReceived();
+
+        for(int i = 0; i < count; i ++) {
+
+            assertEquals(i, received.get(i).getPayload());
+        }
+
+        assertFalse(c.handOver(count));
+
+        // a second dispose is a noop
+        report = c.dispose(1000L);
+        assertEquals(0L, report.getFlushedCount());
+        assertEquals(0L, report.getAbandonedCount());
+
+        releaser.join();
+    }
+
+    @Test
+    public void drainingDispose_DeadlineExpires() throws Exception {
+
+        Collector c = getCollectorToTest("blah");
+
+        CountDownLatch handling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GatedHandler h = new GatedHandler(handling, release);
+        assertTrue(c.registerHandler(h));
+
+        try {
+
+            assertTrue(c.handOver(0));
+            handling.await();
+
+            for(int i = 1; i < 10; i ++) {
+
+                assertTrue(c.handOver(i));
+            }
+
+            DisposeReport report = c.dispose(100L);
+
+            log.info(report);
+
+            assertFalse(report.isComplete());
+            // the event being handled may be counted as well, depending on the implementation
+            assertTrue(report.getAbandonedCount() == 9L || report.getAbandonedCount() == 10L);
+            assertEquals(0L, report.getFlushedCount());
+            assertTrue(report.getDurationMs() >= 100L);
+            assertTrue(h.wasCloseCalled());
+        }
+        finally {
+
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void drainingDispose_InvalidTimeout() throws Exception {
+
+        Collector c = getCollectorToTest("blah");
+
+        try {
+
+            c.dispose(-1L);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+        finally {
+
+            c.dispose();
+        }
+    }
+
+    @Test
+    public void drainingDispose_PublishesProducerBuffers() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setProducerBatchSize(100);
+        configuration.setProducerFlushDeadlineMs(60000L);
+
+        Collector c = getCollectorToTest("blah", configuration);
+
+        MockBatchHandler h = new MockBatchHandler();
+        h.setCanHandle(true);
+        assertTrue(c.registerHandler(h));
+
+        for(int i = 0; i < 5; i ++) {
+
+            assertTrue(c.handOver(i));
+        }
+
+        assertEquals(0, h.getReceivedCount());
+
+        DisposeReport report = c.dispose(10000L);
+
+        assertTrue(report.isComplete());
+        assertEquals(5L, report.getFlushedCount());
+        assertEquals(5, h.getReceivedCount());
+        assertEquals(5L, c.getOutcomeCount(HandOverOutcome.ACCEPTED));
+    }
+
     // Package protected -----------------------------------------------------------------------------------------------
 
     // Protected -------------------------------------------------------------------------------------------------------
 
     protected abstract Collector getCollectorToTest(String name);
 
+    /**
+     * @param configuration the implementation may add the settings it requires.
+     */
+    protected abstract Collector getCollectorToTest(String name, CollectorConfiguration configuration);
+
+    /**
+     * Override for implementations that do not own a draining thread.
+     */
+    protected boolean hasDrainingThread() {
+
+        return true;
+    }
+
+    protected static void waitForReceived(MockBatchHandler h, int count) throws InterruptedException {
+
+        long t0 = System.currentTimeMillis();
+
+        while(h.getReceivedCount() < count && System.currentTimeMillis() - t0 < 10000L) {
+
+            Thread.sleep(10L);
+        }
+
+        assertEquals(count, h.getReceivedCount());
+    }
+
+    /**
+     * The outcome of an event may be recorded after the event becomes visible to the pump, so after it is received.
+     */
+    protected static void waitForOutcomeCount(Collector c, HandOverOutcome outcome, long count)
+            throws InterruptedException {
+
+        long t0 = System.currentTimeMillis();
+
+        while(c.getOutcomeCount(outcome) < count && System.currentTimeMillis() - t0 < 10000L) {
+
+            Thread.sleep(10L);
+        }
+
+        assertEquals(count, c.getOutcomeCount(outcome));
+    }
+
     // Private ---------------------------------------------------------------------------------------------------------
 
     // Inner classes ---------------------------------------------------------------------------------------------------
 
+    /**
+     * Blocks the pump on the first batch, until released. Records the number of events received when it was closed.
+     */
+    protected static class GatedHandler extends MockBatchHandler {
+
+        private final CountDownLatch handling;
+        private final CountDownLatch release;
+
+        private volatile int receivedWhenClosed;
+
+        public GatedHandler(CountDownLatch handling, CountDownLatch release) {
+
+            this.handling = handling;
+            this.release = release;
+            this.receivedWhenClosed = -1;
+            setCanHandle(true);
+        }
+
+        @Override
+        public void handleBatch(List<Collected> batch) {
+
+            handling.countDown();
+
+            try {
+
+                release.await();
+            }
+            catch(InterruptedException e) {
+
+                log.error(e);
+            }
+
+            super.handleBatch(batch);
+        }
+
+        @Override
+        public void close() {
+
+            receivedWhenClosed = getReceivedCount();
+            super.close();
+        }
+
+        public int getReceivedWhenClosed() {
+
+            return receivedWhenClosed;
+        }
+    }
 }
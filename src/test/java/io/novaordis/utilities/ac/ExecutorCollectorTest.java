@@ -0,0 +1,283 @@
+package io.novaordis.utilities.ac;
+
+import io.novaordis.utilities.ac.mock.MockHandler;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutorCollectorTest extends CollectorTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = Logger.getLogger(ExecutorCollectorTest.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void collectorsDoNotOwnThreads() throws Exception {
+
+        // make sure the shared threads exist before counting
+        new ExecutorCollector("warm-up").dispose();
+
+        int threadsBefore = Thread.activeCount();
+
+        List<ExecutorCollector> collectors = new ArrayList<>();
+
+        for(int i = 0; i < 200; i ++) {
+
+            collectors.add(new ExecutorCollector("tenant-" + i));
+        }
+
+        final AtomicInteger received = new AtomicInteger();
+
+        for(ExecutorCollector c: collectors) {
+
+            assertNull(c.getThreadName());
+
+            c.registerHandler(new MockHandler() {
+
+                @Override
+                public boolean canHandle(Object o) {
+                    return true;
+                }
+
+                @Override
+                public void handle(long timestamp, String threadName, Object o) {
+                    received.incrementAndGet();
+                }
+            });
+
+            c.handOver("something");
+        }
+
+        long t0 = System.currentTimeMillis();
+
+        while(received.get() < collectors.size() && System.currentTimeMillis() - t0 < 10000L) {
+
+            Thread.sleep(10L);
+        }
+
+        assertEquals(collectors.size(), received.get());
+
+        // the pool threads are started lazily, so some may have been started by this test
+        int threadsAfter = Thread.activeCount();
+        int limit = threadsBefore + CollectorExecutors.DEFAULT_EXECUTOR_THREADS;
+        assertTrue(threadsAfter + " threads", threadsAfter <= limit);
+
+        for(ExecutorCollector c: collectors) {
+
+            c.dispose();
+        }
+    }
+
+    @Test
+    public void eventsAreDeliveredInOrderAndNeverConcurrently() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+
+            CollectorConfiguration configuration = new CollectorConfiguration();
+            configuration.setType(CollectorType.EXECUTOR);
+            configuration.setExecutor(executor);
+            configuration.setMaxBatchSize(7);
+
+            final ExecutorCollector c = new ExecutorCollector("test", configuration);
+
+            final int producerCount = 3;
+            final int eventsPerProducer = 5000;
+            final CountDownLatch latch = new CountDownLatch(producerCount * eventsPerProducer);
+            final List<int[]> received = Collections.synchronizedList(new ArrayList<>());
+            final AtomicBoolean inHandler = new AtomicBoolean();
+            final AtomicBoolean overlap = new AtomicBoolean();
+
+            c.registerHandler(new MockHandler() {
+
+                @Override
+                public boolean canHandle(Object o) {
+                    return true;
+                }
+
+                @Override
+                public void handle(long timestamp, String threadName, Object o) {
+
+                    if (!inHandler.compareAndSet(false, true)) {
+
+                        overlap.set(true);
+                    }
+
+                    received.add((int[])o);
+                    inHandler.set(false);
+                    latch.countDown();
+                }
+            });
+
+            List<Thread> producers = new ArrayList<>();
+
+            for(int i = 0; i < producerCount; i ++) {
+
+                final int producerId = i;
+
+                Thread t = new Thread(() -> {
+
+                    for(int j = 0; j < eventsPerProducer; j ++) {
+
+                        c.handOver(new int[] { producerId, j });
+                    }
+                });
+
+                producers.add(t);
+                t.start();
+            }
+
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+            for(Thread t: producers) {
+
+                t.join();
+            }
+
+            assertFalse(overlap.get());
+            assertEquals(producerCount * eventsPerProducer, received.size());
+
+            // per-producer order is preserved
+            int[] next = new int[producerCount];
+
+            for(int[] e: received) {
+
+                assertEquals(next[e[0]] ++, e[1]);
+            }
+
+            c.dispose();
+        }
+        finally {
+
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void rejectedExecution() throws Exception {
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setType(CollectorType.EXECUTOR);
+        configuration.setExecutor(executor);
+
+        ExecutorCollector c = new ExecutorCollector("test", configuration);
+
+        // the event is accepted, but it can't be drained
+        assertEquals(HandOverOutcome.ACCEPTED, c.handOverWithOutcome("something"));
+        assertEquals(1, c.getQueueSize());
+
+        c.dispose();
+        assertEquals(0, c.getQueueSize());
+    }
+
+    @Test
+    public void bounded() throws Exception {
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setType(CollectorType.EXECUTOR);
+        configuration.setCapacity(2);
+        configuration.setOverflowPolicy(OverflowPolicies.dropNewest());
+        configuration.setMaxBatchSize(1);
+
+        ExecutorCollector c = new ExecutorCollector("test", configuration);
+
+        assertEquals(2, c.getCapacity());
+
+        c.registerHandler(new MockHandler() {
+
+            @Override
+            public boolean canHandle(Object o) {
+                return true;
+            }
+
+            @Override
+            public void handle(long timestamp, String threadName, Object o) {
+
+                try {
+
+                    release.await();
+                }
+                catch(InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        try {
+
+            // the first event is picked up and blocks the handler
+            c.handOver(1);
+
+            while(c.getQueueSize() > 0) {
+
+                Thread.sleep(5L);
+            }
+
+            assertEquals(HandOverOutcome.ACCEPTED, c.handOverWithOutcome(2));
+            assertEquals(HandOverOutcome.ACCEPTED, c.handOverWithOutcome(3));
+            assertEquals(HandOverOutcome.DROPPED_QUEUE_FULL, c.handOverWithOutcome(4));
+        }
+        finally {
+
+            release.countDown();
+            c.dispose();
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    @Override
+    protected Collector getCollectorToTest(String name) {
+
+        return new ExecutorCollector(name);
+    }
+
+    @Override
+    protected Collector getCollectorToTest(String name, CollectorConfiguration configuration) {
+
+        configuration.setType(CollectorType.EXECUTOR);
+        return new ExecutorCollector(name, configuration);
+    }
+
+    @Override
+    protected boolean hasDrainingThread() {
+
+        return false;
+    }
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,372 @@
+package io.novaordis.utilities.ac;
+
+import io.novaordis.utilities.ac.mock.MockBatchHandler;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HandlerLaneTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = Logger.getLogger(HandlerLaneTest.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private List<HandlerLane> lanes = new ArrayList<>();
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @After
+    public void cleanup() {
+
+        for(HandlerLane l: lanes) {
+
+            l.stop();
+        }
+    }
+
+    @Test
+    public void constructor_NullHandler() throws Exception {
+
+        try {
+
+            new HandlerLane(null, new LaneConfiguration());
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void constructor_NullConfiguration() throws Exception {
+
+        try {
+
+            new HandlerLane(new SlowHandler(0L), null);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void eventsAreProcessedInOrderOnTheLaneThread() throws Exception {
+
+        SlowHandler h = new SlowHandler(0L);
+        HandlerLane lane = lane(h, new LaneConfiguration());
+
+        assertEquals(h, lane.getHandler());
+        assertEquals(HandlerLane.CircuitState.CLOSED, lane.getCircuitState());
+
+        List<Collected> batch = new ArrayList<>();
+
+        for(int i = 0; i < 10; i ++) {
+
+            batch.add(new Collected(i, "producer", i));
+        }
+
+        lane.handleBatch(batch);
+        lane.handle(10L, "producer", 10);
+
+        h.waitFor(11);
+
+        for(int i = 0; i < 11; i ++) {
+
+            assertEquals(i, h.received.get(i).getPayload());
+            assertEquals(i, h.received.get(i).getTimeStamp());
+            assertEquals("producer", h.received.get(i).getThreadName());
+        }
+
+        assertEquals(lane.getThreadName(), h.invokingThread);
+        assertNotEquals(Thread.currentThread().getName(), h.invokingThread);
+        assertEquals(11, lane.getProcessedCount());
+    }
+
+    @Test
+    public void canHandleIsHonored() throws Exception {
+
+        SlowHandler h = new SlowHandler(0L);
+        h.accepted = String.class;
+        HandlerLane lane = lane(h, new LaneConfiguration());
+
+        assertTrue(lane.canHandle("A"));
+        assertFalse(lane.canHandle(1));
+
+        lane.handleBatch(Collections.singletonList(new Collected(1L, "producer", 1)));
+        lane.handleBatch(Collections.singletonList(new Collected(2L, "producer", "B")));
+
+        h.waitFor(1);
+        Thread.sleep(50L);
+
+        assertEquals(1, h.received.size());
+        assertEquals("B", h.received.get(0).getPayload());
+    }
+
+    @Test
+    public void batchHandlerGetsBatches() throws Exception {
+
+        MockBatchHandler h = new MockBatchHandler();
+        HandlerLane lane = lane(h, new LaneConfiguration());
+
+        assertTrue(lane.canHandle("anything"));
+
+        List<Collected> batch = new ArrayList<>();
+
+        for(int i = 0; i < 5; i ++) {
+
+            batch.add(new Collected(i, "producer", i));
+        }
+
+        lane.handleBatch(batch);
+
+        long t0 = System.currentTimeMillis();
+
+        while(h.getReceivedCount() < 5 && System.currentTimeMillis() - t0 < 10000L) {
+
+            Thread.sleep(10L);
+        }
+
+        assertEquals(5, h.getReceivedCount());
+    }
+
+    @Test
+    public void fullLaneAppliesTheOverflowPolicy() throws Exception {
+
+        SlowHandler h = new SlowHandler(10000L);
+
+        LaneConfiguration configuration = new LaneConfiguration();
+        configuration.setCapacity(2);
+        configuration.setMaxBatchSize(1);
+        configuration.setLatencyBudgetMs(60000L);
+
+        HandlerLane lane = lane(h, configuration);
+
+        // the first event is picked up by the worker, which blocks in the handler
+        lane.handle(1L, "producer", 1);
+        h.waitForInvocation();
+
+        lane.handle(2L, "producer", 2);
+        lane.handle(3L, "producer", 3);
+        lane.handle(4L, "producer", 4);
+
+        assertEquals(2, lane.getQueueSize());
+        assertEquals(1, lane.getDroppedCount());
+    }
+
+    @Test
+    public void circuitBreaker() throws Exception {
+
+        SlowHandler h = new SlowHandler(30L);
+
+        LaneConfiguration configuration = new LaneConfiguration();
+        configuration.setMaxBatchSize(1);
+        configuration.setLatencyBudgetMs(5L);
+        configuration.setBreakerThreshold(2);
+        configuration.setBreakerOpenMs(300L);
+
+        HandlerLane lane = lane(h, configuration);
+
+        for(int i = 0; i < 5; i ++) {
+
+            lane.handle(i, "producer", i);
+        }
+
+        long t0 = System.currentTimeMillis();
+
+        while(lane.getCircuitState() != HandlerLane.CircuitState.OPEN && System.currentTimeMillis() - t0 < 10000L) {
+
+            Thread.sleep(5L);
+        }
+
+        assertEquals(HandlerLane.CircuitState.OPEN, lane.getCircuitState());
+        assertEquals(2, lane.getBudgetViolationCount());
+
+        // the events that were queued are discarded, the incoming ones are shed
+        lane.handle(5L, "producer", 5);
+        Thread.sleep(50L);
+        assertEquals(2, h.received.size());
+        assertEquals(4, lane.getShedCount());
+        assertEquals(0, lane.getQueueSize());
+
+        // the handler recovers; after the open interval the breaker lets one event through on probation
+        h.delayMs = 0L;
+        Thread.sleep(300L);
+
+        lane.handle(6L, "producer", 6);
+        h.waitFor(3);
+
+        t0 = System.currentTimeMillis();
+
+        while(lane.getCircuitState() != HandlerLane.CircuitState.CLOSED && System.currentTimeMillis() - t0 < 10000L) {
+
+            Thread.sleep(5L);
+        }
+
+        assertEquals(HandlerLane.CircuitState.CLOSED, lane.getCircuitState());
+        assertEquals(6, h.received.get(2).getPayload());
+    }
+
+    @Test
+    public void failuresOpenTheBreaker() throws Exception {
+
+        SlowHandler h = new SlowHandler(0L);
+        h.fail = true;
+
+        LaneConfiguration configuration = new LaneConfiguration();
+        configuration.setBreakerThreshold(3);
+
+        HandlerLane lane = lane(h, configuration);
+
+        for(int i = 0; i < 3; i ++) {
+
+            lane.handle(i, "producer", i);
+        }
+
+        long t0 = System.currentTimeMillis();
+
+        while(lane.getCircuitState() != HandlerLane.CircuitState.OPEN && System.currentTimeMillis() - t0 < 10000L) {
+
+            Thread.sleep(5L);
+        }
+
+        assertEquals(HandlerLane.CircuitState.OPEN, lane.getCircuitState());
+        assertEquals(3, lane.getFailureCount());
+        assertEquals(0, lane.getBudgetViolationCount());
+    }
+
+    @Test
+    public void closeProcessesTheQueuedEventsThenClosesTheHandler() throws Exception {
+
+        SlowHandler h = new SlowHandler(10L);
+        HandlerLane lane = lane(h, new LaneConfiguration());
+
+        for(int i = 0; i < 5; i ++) {
+
+            lane.handle(i, "producer", i);
+        }
+
+        lane.close();
+
+        // events handed over after close are shed
+        lane.handle(5L, "producer", 5);
+
+        long t0 = System.currentTimeMillis();
+
+        while(!h.closed && System.currentTimeMillis() - t0 < 10000L) {
+
+            Thread.sleep(5L);
+        }
+
+        assertTrue(h.closed);
+        assertEquals(5, h.received.size());
+        assertEquals(1, lane.getShedCount());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private HandlerLane lane(Handler h, LaneConfiguration configuration) {
+
+        HandlerLane lane = new HandlerLane(h, configuration);
+        lanes.add(lane);
+        return lane;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    static class SlowHandler implements Handler {
+
+        final List<Collected> received = Collections.synchronizedList(new ArrayList<>());
+
+        volatile long delayMs;
+        volatile boolean fail;
+        volatile boolean closed;
+        volatile String invokingThread;
+        volatile Class<?> accepted = Object.class;
+
+        SlowHandler(long delayMs) {
+
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public boolean canHandle(Object o) {
+
+            return accepted.isInstance(o);
+        }
+
+        @Override
+        public void handle(long timestamp, String threadName, Object o) {
+
+            invokingThread = Thread.currentThread().getName();
+
+            if (fail) {
+
+                throw new RuntimeException("SYNTHETIC");
+            }
+
+            try {
+
+                Thread.sleep(delayMs);
+            }
+            catch(InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+            }
+
+            received.add(new Collected(timestamp, threadName, o));
+        }
+
+        @Override
+        public void close() {
+
+            closed = true;
+        }
+
+        void waitFor(int count) throws InterruptedException {
+
+            long t0 = System.currentTimeMillis();
+
+            while(received.size() < count && System.currentTimeMillis() - t0 < 10000L) {
+
+                Thread.sleep(5L);
+            }
+
+            assertEquals(count, received.size());
+        }
+
+        void waitForInvocation() throws InterruptedException {
+
+            long t0 = System.currentTimeMillis();
+
+            while(invokingThread == null && System.currentTimeMillis() - t0 < 10000L) {
+
+                Thread.sleep(5L);
+            }
+
+            assertTrue(invokingThread != null);
+        }
+    }
+}
@@ -1,13 +1,20 @@
 package io.novaordis.utilities.ac;
 
+import io.novaordis.utilities.ac.mock.MockBatchHandler;
 import io.novaordis.utilities.ac.mock.MockHandler;
+import io.novaordis.utilities.ac.mock.MockTypedHandler;
 import org.apache.log4j.Logger;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class HandlersTest {
@@ -175,12 +182,396 @@ public class HandlersTest {
         assertTrue(h2.wasCloseCalled());
     }
 
+    @Test
+    public void processBatch_PlainHandler() throws Exception {
+
+        Handlers handlers = new Handlers();
+
+        MockHandler h = new MockHandler() {
+
+            @Override
+            public boolean canHandle(Object o) {
+
+                return !"B".equals(o);
+            }
+        };
+
+        assertTrue(handlers.add(h));
+
+        handlers.processBatch(Arrays.asList(new Collected(1L, "A"), new Collected(2L, "B"), new Collected(3L, "C")));
+
+        List<Collected> received = h.getReceived();
+        assertEquals(2, received.size());
+        assertEquals("A", received.get(0).getPayload());
+        assertEquals(1L, received.get(0).getTimeStamp());
+        assertEquals("C", received.get(1).getPayload());
+        assertEquals(3L, received.get(1).getTimeStamp());
+
+        // the plain handler is removed even if internally it is wrapped in an adapter
+        assertTrue(handlers.remove(h));
+        assertFalse(handlers.remove(h));
+    }
+
+    @Test
+    public void processBatch_BatchHandler() throws Exception {
+
+        Handlers handlers = new Handlers();
+
+        MockBatchHandler h = new MockBatchHandler();
+
+        assertTrue(handlers.add(h));
+
+        handlers.processBatch(Arrays.asList(new Collected(1L, "A"), new Collected(2L, "B")));
+        handlers.processBatch(Arrays.asList(new Collected(3L, "C")));
+
+        List<List<Collected>> batches = h.getBatches();
+        assertEquals(2, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertEquals("A", batches.get(0).get(0).getPayload());
+        assertEquals("B", batches.get(0).get(1).getPayload());
+        assertEquals(1, batches.get(1).size());
+        assertEquals("C", batches.get(1).get(0).getPayload());
+
+        assertTrue(handlers.remove(h));
+        assertFalse(handlers.remove(h));
+    }
+
+    @Test
+    public void processBatch_FailureInBatchHandler() throws Exception {
+
+        Handlers handlers = new Handlers();
+
+        BatchHandler h = new MockBatchHandler() {
+
+            @Override
+            public void handleBatch(List<Collected> batch) {
+
+                throw new RuntimeException("SYNTHETIC");
+            }
+        };
+
+        MockHandler h2 = new MockHandler();
+        h2.setCanHandle(true);
+
+        assertTrue(handlers.add(h));
+        assertTrue(handlers.add(h2));
+
+        // this must not fail
+        handlers.processBatch(Arrays.asList(new Collected(-1L, "A"), new Collected(-1L, "B")));
+
+        // the other handler must be notified
+        assertEquals(2, h2.getReceived().size());
+    }
+
+    @Test
+    public void processBatch_FailureOnOneEventDoesNotAffectTheRestOfTheBatch() throws Exception {
+
+        Handlers handlers = new Handlers();
+
+        MockHandler h = new MockHandler() {
+
+            @Override
+            public void handle(long timestamp, String threadName, Object o) {
+
+                if ("A".equals(o)) {
+
+                    throw new RuntimeException("SYNTHETIC");
+                }
+
+                super.handle(timestamp, threadName, o);
+            }
+        };
+
+        h.setCanHandle(true);
+        assertTrue(handlers.add(h));
+
+        handlers.processBatch(Arrays.asList(new Collected(-1L, "A"), new Collected(-1L, "B")));
+
+        assertEquals(1, h.getReceived().size());
+        assertEquals("B", h.getReceived().get(0).getPayload());
+    }
+
+    @Test
+    public void typedHandlerRouting() throws Exception {
+
+        Handlers handlers = new Handlers();
+
+        MockTypedHandler numbers = new MockTypedHandler(Number.class);
+        MockTypedHandler strings = new MockTypedHandler(String.class, StringBuilder.class);
+
+        assertTrue(handlers.add(numbers));
+        assertTrue(handlers.add(strings));
+
+        handlers.process(new Collected(1L, 10));
+        handlers.process(new Collected(2L, 2.5d));
+        handlers.process(new Collected(3L, "A"));
+        handlers.process(new Collected(4L, new Object()));
+        handlers.process(new Collected(5L, null));
+        handlers.processBatch(Arrays.asList(new Collected(6L, 11L), new Collected(7L, "B")));
+
+        assertEquals(3, numbers.getReceived().size());
+        assertEquals(10, numbers.getReceived().get(0).getPayload());
+        assertEquals(2.5d, numbers.getReceived().get(1).getPayload());
+        assertEquals(11L, numbers.getReceived().get(2).getPayload());
+
+        assertEquals(2, strings.getReceived().size());
+        assertEquals("A", strings.getReceived().get(0).getPayload());
+        assertEquals("B", strings.getReceived().get(1).getPayload());
+
+        // the routing index answers for typed handlers
+        assertEquals(0, numbers.getCanHandleInvocations());
+        assertEquals(0, strings.getCanHandleInvocations());
+    }
+
+    @Test
+    public void untypedHandlersAreStillAskedOnEachEvent() throws Exception {
+
+        Handlers handlers = new Handlers();
+
+        final int[] canHandleInvocations = new int[1];
+
+        MockHandler h = new MockHandler() {
+
+            @Override
+            public boolean canHandle(Object o) {
+
+                canHandleInvocations[0] ++;
+
+                // the decision is not a function of type
+                return !"B".equals(o);
+            }
+        };
+
+        assertTrue(handlers.add(h));
+
+        handlers.process(new Collected(1L, "A"));
+        handlers.process(new Collected(2L, "B"));
+        handlers.process(new Collected(3L, null));
+
+        assertEquals(3, canHandleInvocations[0]);
+        assertEquals(2, h.getReceived().size());
+        assertEquals("A", h.getReceived().get(0).getPayload());
+        assertEquals(null, h.getReceived().get(1).getPayload());
+    }
+
+    @Test
+    public void routingIndexIsInvalidatedOnRegistrationChanges() throws Exception {
+
+        Handlers handlers = new Handlers();
+
+        MockTypedHandler h = new MockTypedHandler(String.class);
+        assertTrue(handlers.add(h));
+
+        handlers.process(new Collected(1L, "A"));
+        handlers.process(new Collected(2L, 1));
+        assertEquals(2, handlers.getRouteCount());
+
+        MockTypedHandler h2 = new MockTypedHandler(Integer.class);
+        assertTrue(handlers.add(h2));
+        assertEquals(0, handlers.getRouteCount());
+
+        handlers.process(new Collected(3L, 2));
+        assertEquals(1, h2.getReceived().size());
+        assertEquals(1, h.getReceived().size());
+
+        assertTrue(handlers.remove(h2));
+        assertEquals(0, handlers.getRouteCount());
+
+        handlers.process(new Collected(4L, 3));
+        assertEquals(1, h2.getReceived().size());
+    }
+
+    @Test
+    public void registrationChangesWhileDispatching() throws Exception {
+
+        final Handlers handlers = new Handlers();
+
+        MockHandler permanent = new MockHandler() {
+
+            int count;
+
+            @Override
+            public void handle(long timestamp, String threadName, Object o) {
+
+                count ++;
+            }
+
+            @Override
+            public String toString() {
+
+                return Integer.toString(count);
+            }
+        };
+
+        permanent.setCanHandle(true);
+        assertTrue(handlers.add(permanent));
+
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        // attaches and detaches handlers while the other thread dispatches
+        Thread registrar = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                try {
+
+                    while(!done.get()) {
+
+                        MockTypedHandler h = new MockTypedHandler(Integer.class);
+                        handlers.add(h);
+                        handlers.remove(h);
+                    }
+                }
+                catch(Throwable t) {
+
+                    failure.set(t);
+                }
+            }
+        });
+
+        registrar.start();
+
+        int events = 200000;
+
+        try {
+
+            for(int i = 0; i < events; i ++) {
+
+                if (i % 2 == 0) {
+
+                    handlers.process(new Collected(i, i));
+                }
+                else {
+
+                    handlers.processBatch(Arrays.asList(new Collected(i, i)));
+                }
+            }
+        }
+        finally {
+
+            done.set(true);
+            registrar.join();
+        }
+
+        assertNull(failure.get());
+
+        // the permanent handler saw every event
+        assertEquals(Integer.toString(events), permanent.toString());
+        assertEquals(1, handlers.getHandlers().size());
+    }
+
+    @Test
+    public void handlerMetrics() throws Exception {
+
+        Handlers handlers = new Handlers();
+
+        MockHandler plain = new MockHandler();
+        plain.setCanHandle(true);
+        MockBatchHandler batch = new MockBatchHandler();
+        batch.setCanHandle(true);
+
+        Handler failing = new Handler() {
+
+            @Override
+            public boolean canHandle(Object o) {
+                return true;
+            }
+
+            @Override
+            public void handle(long timestamp, String threadName, Object o) {
+                throw new RuntimeException("SYNTHETIC");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        handlers.add(plain);
+        handlers.add(batch);
+        handlers.add(failing);
+
+        List<HandlerMetrics> metrics = handlers.getHandlerMetrics();
+        assertEquals(3, metrics.size());
+        assertEquals(plain, metrics.get(0).getHandlerInstance());
+        assertEquals(batch, metrics.get(1).getHandlerInstance());
+        assertEquals(failing, metrics.get(2).getHandlerInstance());
+
+        handlers.process(new Collected(0L, "a"));
+        handlers.processBatch(Arrays.asList(new Collected(0L, "b"), new Collected(0L, "c")));
+
+        assertEquals(3, metrics.get(0).getInvocationCount());
+        assertEquals(0, metrics.get(0).getFailureCount());
+        assertEquals(3, metrics.get(0).getLatency().getCount());
+
+        // one individual event, one batch
+        assertEquals(2, metrics.get(1).getInvocationCount());
+
+        assertEquals(3, metrics.get(2).getInvocationCount());
+        assertEquals(3, metrics.get(2).getFailureCount());
+        assertEquals(0, metrics.get(2).getLatency().getCount());
+
+        assertEquals(3, handlers.getFailureCount());
+
+        // the failures are remembered after the handler is gone
+        handlers.remove(failing);
+        assertEquals(2, handlers.getHandlerMetrics().size());
+        assertEquals(3, handlers.getFailureCount());
+
+        // the metrics follow the handler, not the position
+        handlers.remove(plain);
+        assertEquals(batch, handlers.getHandlerMetrics().get(0).getHandlerInstance());
+        assertEquals(2, handlers.getHandlerMetrics().get(0).getInvocationCount());
+    }
+
+    @Test
+    public void remove_ExplicitlyRegisteredLaneIsStoppedWithItsLastRegistration() throws Exception {
+
+        Handlers handlers = new Handlers();
+
+        HandlerLaneTest.SlowHandler h = new HandlerLaneTest.SlowHandler(0L);
+        HandlerLane lane = new HandlerLane(h, new LaneConfiguration());
+
+        assertTrue(handlers.add(lane));
+        assertTrue(handlers.add(lane));
+
+        Thread worker = findThread(lane.getThreadName());
+        assertNotNull(worker);
+
+        // still registered once
+        assertTrue(handlers.remove(lane));
+        worker.join(2 * HandlerLane.WORKER_POLL_INTERVAL_MS + 100L);
+        assertTrue(worker.isAlive());
+
+        assertTrue(handlers.remove(lane));
+        worker.join(10000L);
+        assertFalse(worker.isAlive());
+
+        // unregistering does not close the handler
+        assertFalse(h.closed);
+    }
+
     // Package protected -----------------------------------------------------------------------------------------------
 
     // Protected -------------------------------------------------------------------------------------------------------
 
     // Private ---------------------------------------------------------------------------------------------------------
 
+    private static Thread findThread(String name) {
+
+        for(Thread t: Thread.getAllStackTraces().keySet()) {
+
+            if (t.getName().equals(name)) {
+
+                return t;
+            }
+        }
+
+        return null;
+    }
+
     // Inner classes ---------------------------------------------------------------------------------------------------
 
 }
@@ -0,0 +1,153 @@
+package io.novaordis.utilities.ac;
+
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LatencyHistogramTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = Logger.getLogger(LatencyHistogramTest.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void buckets() throws Exception {
+
+        int previous = -1;
+
+        // the buckets are contiguous and each value lands in a bucket whose upper bound is not smaller than the value
+        for(long v = 0; v < 100000; v ++) {
+
+            int i = LatencyHistogram.bucketIndex(v);
+
+            assertTrue(i == previous || i == previous + 1);
+            assertTrue(v <= LatencyHistogram.bucketUpperBound(i));
+
+            if (i > 0) {
+
+                assertTrue(v > LatencyHistogram.bucketUpperBound(i - 1));
+            }
+
+            previous = i;
+        }
+
+        // exact below 2 * SUB_BUCKETS
+        for(int v = 0; v < 2 * LatencyHistogram.SUB_BUCKETS; v ++) {
+
+            assertEquals(v, LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(v)));
+        }
+
+        int last = LatencyHistogram.bucketIndex(Long.MAX_VALUE);
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, last);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.bucketUpperBound(last));
+    }
+
+    @Test
+    public void relativeError() throws Exception {
+
+        for(long v = 1; v > 0 && v < Long.MAX_VALUE / 3; v = v * 3 + 1) {
+
+            long upper = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(v));
+            assertTrue((double)(upper - v) / v <= 1d / LatencyHistogram.SUB_BUCKETS);
+        }
+    }
+
+    @Test
+    public void statistics() throws Exception {
+
+        LatencyHistogram h = new LatencyHistogram();
+
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+        assertEquals(0d, h.getMean(), 0d);
+        assertEquals(0, h.getValueAtPercentile(99));
+
+        for(int i = 1; i <= 1000; i ++) {
+
+            h.record(i);
+        }
+
+        h.record(-5);
+
+        assertEquals(1001, h.getCount());
+        assertEquals(1000, h.getMax());
+        assertEquals(500500d / 1001, h.getMean(), 0.0001);
+
+        long p50 = h.getValueAtPercentile(50);
+        assertTrue(p50 >= 500 && p50 <= 500 * (1 + 1d / LatencyHistogram.SUB_BUCKETS));
+
+        long p99 = h.getValueAtPercentile(99);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+
+        assertEquals(1000, h.getValueAtPercentile(100));
+        assertEquals(0, h.getValueAtPercentile(0));
+
+        h.reset();
+
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void invalidPercentile() throws Exception {
+
+        try {
+
+            new LatencyHistogram().getValueAtPercentile(100.1);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void concurrentRecording() throws Exception {
+
+        final LatencyHistogram h = new LatencyHistogram();
+
+        Thread[] threads = new Thread[4];
+
+        for(int i = 0; i < threads.length; i ++) {
+
+            threads[i] = new Thread(() -> {
+
+                for(int j = 0; j < 10000; j ++) {
+
+                    h.record(j);
+                }
+            });
+
+            threads[i].start();
+        }
+
+        for(Thread t: threads) {
+
+            t.join();
+        }
+
+        assertEquals(40000, h.getCount());
+        assertEquals(9999, h.getMax());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
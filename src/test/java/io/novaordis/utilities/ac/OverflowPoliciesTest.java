@@ -0,0 +1,215 @@
+package io.novaordis.utilities.ac;
+
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OverflowPoliciesTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = Logger.getLogger(OverflowPoliciesTest.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void block() throws Exception {
+
+        final BlockingQueue<Collected> q = new LinkedBlockingQueue<>(1);
+        OverflowPolicy p = OverflowPolicies.block();
+
+        assertEquals(HandOverOutcome.ACCEPTED, p.enqueue(q, new Collected(0L, "A")));
+
+        // make room after a while
+        new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                try {
+
+                    Thread.sleep(200L);
+                    q.take();
+                }
+                catch(InterruptedException e) {
+
+                    log.error(e);
+                }
+            }
+        }).start();
+
+        long t0 = System.currentTimeMillis();
+        assertEquals(HandOverOutcome.ACCEPTED, p.enqueue(q, new Collected(0L, "B")));
+        assertTrue(System.currentTimeMillis() - t0 >= 100L);
+        assertEquals("B", q.take().getPayload());
+    }
+
+    @Test
+    public void blockWithTimeout() throws Exception {
+
+        BlockingQueue<Collected> q = new LinkedBlockingQueue<>(1);
+        OverflowPolicy p = OverflowPolicies.blockWithTimeout(50L);
+
+        assertEquals(HandOverOutcome.ACCEPTED, p.enqueue(q, new Collected(0L, "A")));
+
+        long t0 = System.currentTimeMillis();
+        assertEquals(HandOverOutcome.DROPPED_TIMEOUT, p.enqueue(q, new Collected(0L, "B")));
+        assertTrue(System.currentTimeMillis() - t0 >= 50L);
+
+        assertEquals(1, q.size());
+        assertEquals("A", q.take().getPayload());
+    }
+
+    @Test
+    public void blockWithTimeout_InvalidTimeout() throws Exception {
+
+        try {
+
+            OverflowPolicies.blockWithTimeout(-1L);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void dropNewest() throws Exception {
+
+        BlockingQueue<Collected> q = new LinkedBlockingQueue<>(2);
+        OverflowPolicy p = OverflowPolicies.dropNewest();
+
+        assertEquals(HandOverOutcome.ACCEPTED, p.enqueue(q, new Collected(0L, "A")));
+        assertEquals(HandOverOutcome.ACCEPTED, p.enqueue(q, new Collected(0L, "B")));
+        assertEquals(HandOverOutcome.DROPPED_QUEUE_FULL, p.enqueue(q, new Collected(0L, "C")));
+
+        assertEquals("A", q.take().getPayload());
+        assertEquals("B", q.take().getPayload());
+        assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void dropOldest() throws Exception {
+
+        BlockingQueue<Collected> q = new LinkedBlockingQueue<>(2);
+        OverflowPolicy p = OverflowPolicies.dropOldest();
+
+        assertEquals(HandOverOutcome.ACCEPTED, p.enqueue(q, new Collected(0L, "A")));
+        assertEquals(HandOverOutcome.ACCEPTED, p.enqueue(q, new Collected(0L, "B")));
+        assertEquals(HandOverOutcome.ACCEPTED_OLDEST_DROPPED, p.enqueue(q, new Collected(0L, "C")));
+
+        assertEquals("B", q.take().getPayload());
+        assertEquals("C", q.take().getPayload());
+        assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void dropOldest_EvictedEventsAreCounted() throws Exception {
+
+        CollectorImpl c = new CollectorImpl("test");
+        CollectorMetrics m = c.getMetrics();
+
+        BlockingQueue<Collected> q = new LinkedBlockingQueue<>(2);
+        OverflowPolicy p = OverflowPolicies.dropOldest();
+
+        Collected[] events = { new Collected(0L, "A"), new Collected(0L, "B"), new Collected(0L, "C") };
+        q.add(new ProducerBatch(events, 3, 0).wrap());
+        q.add(QueuePump.WAKE_UP);
+
+        // the batch goes, with all its events
+        HandOverOutcome outcome = OverflowPolicies.enqueue(p, q, new Collected(0L, "D"), m);
+        assertEquals(HandOverOutcome.ACCEPTED_OLDEST_DROPPED, outcome);
+        assertEquals(3L, m.getEvictedCount());
+
+        // the sentinel is neither dropped nor counted, D makes room for E
+        outcome = OverflowPolicies.enqueue(p, q, new Collected(0L, "E"), m);
+        assertEquals(HandOverOutcome.ACCEPTED_OLDEST_DROPPED, outcome);
+        assertEquals(4L, m.getEvictedCount());
+        assertEquals("E", q.take().getPayload());
+        assertSame(QueuePump.WAKE_UP, q.take());
+
+        // the outcomes are not counted as drops on top of the evicted events
+        m.recordOutcome(HandOverOutcome.ACCEPTED_OLDEST_DROPPED, 2);
+        assertEquals(4L, m.getDroppedCount());
+
+        c.dispose();
+    }
+
+    @Test
+    public void sample_BelowThreshold() throws Exception {
+
+        BlockingQueue<Collected> q = new LinkedBlockingQueue<>(10);
+
+        // a zero probability drops everything over the threshold
+        OverflowPolicy p = OverflowPolicies.sample(0.0d, 0.5d);
+
+        for(int i = 0; i < 5; i ++) {
+
+            assertEquals(HandOverOutcome.ACCEPTED, p.enqueue(q, new Collected(0L, i)));
+        }
+
+        // 5 is not over 5
+        assertEquals(HandOverOutcome.ACCEPTED, p.enqueue(q, new Collected(0L, 5)));
+        assertEquals(HandOverOutcome.DROPPED_SAMPLING, p.enqueue(q, new Collected(0L, 6)));
+        assertEquals(6, q.size());
+    }
+
+    @Test
+    public void sample_FullQueue() throws Exception {
+
+        BlockingQueue<Collected> q = new LinkedBlockingQueue<>(1);
+
+        // a probability of 1 accepts everything there is space for
+        OverflowPolicy p = OverflowPolicies.sample(1.0d, 0.0d);
+
+        assertEquals(HandOverOutcome.ACCEPTED, p.enqueue(q, new Collected(0L, "A")));
+        assertEquals(HandOverOutcome.DROPPED_QUEUE_FULL, p.enqueue(q, new Collected(0L, "B")));
+    }
+
+    @Test
+    public void sample_InvalidArguments() throws Exception {
+
+        try {
+
+            OverflowPolicies.sample(1.1d, 0.5d);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+
+        try {
+
+            OverflowPolicies.sample(0.5d, -0.1d);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,238 @@
+package io.novaordis.utilities.ac;
+
+import io.novaordis.utilities.ac.mock.MockHandler;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PartitionedCollectorTest extends CollectorTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = Logger.getLogger(PartitionedCollectorTest.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void partition() throws Exception {
+
+        assertEquals(0, PartitionedCollector.partition(null, 4));
+
+        for(int i = -100; i < 100; i ++) {
+
+            int p = PartitionedCollector.partition(i, 4);
+            assertTrue(p >= 0 && p < 4);
+            assertEquals(p, PartitionedCollector.partition(i, 4));
+        }
+
+        int p = PartitionedCollector.partition(Integer.MIN_VALUE, 3);
+        assertTrue(p >= 0 && p < 3);
+    }
+
+    @Test
+    public void noKeyExtractor() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setType(CollectorType.PARTITIONED);
+
+        try {
+
+            new PartitionedCollector("test", configuration);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void sameKeyIsOrderedOnTheSamePump() throws Exception {
+
+        PartitionedCollector c = new PartitionedCollector("test", configuration(4));
+
+        assertEquals(4, c.getPartitionCount());
+        assertEquals(4, c.getQueueSizes().length);
+
+        int keys = 16;
+        int eventsPerKey = 500;
+
+        final CountDownLatch latch = new CountDownLatch(keys * eventsPerKey);
+        final Map<Integer, Integer> lastSeen = new HashMap<>();
+        final Map<Integer, String> threadPerKey = new HashMap<>();
+        final Set<String> threads = new HashSet<>();
+        final StringBuffer errors = new StringBuffer();
+
+        MockHandler h = new MockHandler() {
+
+            @Override
+            public synchronized void handle(long timestamp, String threadName, Object o) {
+
+                int[] event = (int[])o;
+                int key = event[0];
+                int sequence = event[1];
+
+                Integer previous = lastSeen.put(key, sequence);
+
+                if (previous != null && previous != sequence - 1) {
+
+                    errors.append("key ").append(key).append(" out of order: ").append(previous).append(", ")
+                            .append(sequence).append("\n");
+                }
+
+                String pumpThread = Thread.currentThread().getName();
+                String previousThread = threadPerKey.put(key, pumpThread);
+
+                if (previousThread != null && !previousThread.equals(pumpThread)) {
+
+                    errors.append("key ").append(key).append(" processed on two threads\n");
+                }
+
+                threads.add(pumpThread);
+                latch.countDown();
+            }
+        };
+
+        h.setCanHandle(true);
+        assertTrue(c.registerHandler(h));
+
+        for(int i = 0; i < eventsPerKey; i ++) {
+
+            for(int k = 0; k < keys; k ++) {
+
+                assertTrue(c.handOver(new int[] { k, i }));
+            }
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        assertEquals("", errors.toString());
+        assertEquals(keys, lastSeen.size());
+
+        // 16 consecutive integer keys spread over more than one partition
+        assertTrue(threads.size() > 1);
+
+        c.dispose();
+    }
+
+    @Test
+    public void perPartitionQueueDepth() throws Exception {
+
+        PartitionedCollector c = new PartitionedCollector("test", configuration(2));
+
+        // stall the pumps so the events stay in the queues
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch stalled = new CountDownLatch(2);
+
+        MockHandler h = new MockHandler() {
+
+            @Override
+            public void handle(long timestamp, String threadName, Object o) {
+
+                stalled.countDown();
+
+                try {
+
+                    release.await();
+                }
+                catch(InterruptedException e) {
+
+                    log.error(e);
+                }
+            }
+        };
+
+        h.setCanHandle(true);
+        assertTrue(c.registerHandler(h));
+
+        int p0Key = keyFor(0, 2);
+        int p1Key = keyFor(1, 2);
+
+        // these two stall the pumps
+        c.handOver(new int[] { p0Key, 0 });
+        c.handOver(new int[] { p1Key, 0 });
+        assertTrue(stalled.await(5, TimeUnit.SECONDS));
+
+        c.handOver(new int[] { p0Key, 1 });
+        c.handOver(new int[] { p0Key, 2 });
+        c.handOver(new int[] { p1Key, 1 });
+
+        assertEquals(2, c.getQueueSize(0));
+        assertEquals(1, c.getQueueSize(1));
+        int[] sizes = c.getQueueSizes();
+        assertEquals(2, sizes[0]);
+        assertEquals(1, sizes[1]);
+        assertEquals(3, c.getQueueSize());
+
+        release.countDown();
+        c.dispose();
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    @Override
+    protected Collector getCollectorToTest(String name) {
+
+        return new PartitionedCollector(name, configuration(3));
+    }
+
+    @Override
+    protected Collector getCollectorToTest(String name, CollectorConfiguration configuration) {
+
+        configuration.setType(CollectorType.PARTITIONED);
+        configuration.setPartitionCount(3);
+        configuration.setKeyExtractor(configuration(3).getKeyExtractor());
+        return new PartitionedCollector(name, configuration);
+    }
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static CollectorConfiguration configuration(int partitions) {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setType(CollectorType.PARTITIONED);
+        configuration.setPartitionCount(partitions);
+        configuration.setKeyExtractor(new KeyExtractor() {
+
+            @Override
+            public Object getKey(Object payload) {
+
+                // int[] { key, sequence } payloads are keyed, everything else goes to partition 0
+                return payload instanceof int[] ? ((int[])payload)[0] : null;
+            }
+        });
+        return configuration;
+    }
+
+    private static int keyFor(int partition, int partitionCount) {
+
+        for(int k = 0; ; k ++) {
+
+            if (PartitionedCollector.partition(k, partitionCount) == partition) {
+
+                return k;
+            }
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,95 @@
+package io.novaordis.utilities.ac;
+
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class PayloadSerializersTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = Logger.getLogger(PayloadSerializersTest.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void toStringSerializer() throws Exception {
+
+        PayloadSerializer s = PayloadSerializers.toStringSerializer();
+
+        assertEquals("7", roundTrip(s, 7));
+        assertEquals("café", roundTrip(s, "café"));
+        assertEquals("", roundTrip(s, ""));
+        assertEquals("null", roundTrip(s, "null"));
+        assertNull(roundTrip(s, null));
+    }
+
+    @Test
+    public void javaSerializer() throws Exception {
+
+        PayloadSerializer s = PayloadSerializers.javaSerializer();
+
+        assertEquals(7, roundTrip(s, 7));
+        assertEquals(Arrays.asList("a", "b"), roundTrip(s, Arrays.asList("a", "b")));
+        assertNull(roundTrip(s, null));
+    }
+
+    @Test
+    public void javaSerializer_NotSerializable() throws Exception {
+
+        try {
+
+            PayloadSerializers.javaSerializer().serialize(new Object());
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void javaSerializer_Garbage() throws Exception {
+
+        try {
+
+            PayloadSerializers.javaSerializer().deserialize(new byte[] { 1, 2, 3 }, 0, 3);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Serializes, then deserializes from the middle of a larger array, to exercise the offset.
+     */
+    private static Object roundTrip(PayloadSerializer s, Object o) {
+
+        byte[] bytes = s.serialize(o);
+        byte[] padded = new byte[bytes.length + 5];
+        System.arraycopy(bytes, 0, padded, 3, bytes.length);
+        return s.deserialize(padded, 3, bytes.length);
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,241 @@
+package io.novaordis.utilities.ac;
+
+import io.novaordis.utilities.ac.mock.MockHandler;
+import io.novaordis.utilities.ac.mock.MockPrimitiveHandler;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RingBufferCollectorTest extends CollectorTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = Logger.getLogger(RingBufferCollectorTest.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void capacityIsRoundedUp() throws Exception {
+
+        RingBufferCollector c = new RingBufferCollector("test", 1000, WaitStrategy.YIELD, -1);
+
+        assertEquals(1024, c.getCapacity());
+        assertEquals(WaitStrategy.YIELD, c.getWaitStrategy());
+
+        c.dispose();
+    }
+
+    @Test
+    public void allEventsAreDelivered_SmallRing() throws Exception {
+
+        for(WaitStrategy ws: WaitStrategy.values()) {
+
+            // a small ring forces the producers to wait for the pump
+            RingBufferCollector c = new RingBufferCollector("test", 4, ws, -1);
+
+            int producerCount = 3;
+            final int eventsPerProducer = 1000;
+            final CountDownLatch latch = new CountDownLatch(producerCount * eventsPerProducer);
+            final List<Object> received = Collections.synchronizedList(new ArrayList<>());
+
+            assertTrue(c.registerHandler(new MockHandler() {
+
+                @Override
+                public boolean canHandle(Object o) {
+
+                    return true;
+                }
+
+                @Override
+                public void handle(long timestamp, String threadName, Object o) {
+
+                    received.add(o);
+                    latch.countDown();
+                }
+            }));
+
+            List<Thread> producers = new ArrayList<>();
+
+            for(int i = 0; i < producerCount; i ++) {
+
+                final int producerId = i;
+
+                Thread t = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+
+                        for(int j = 0; j < eventsPerProducer; j ++) {
+
+                            c.handOver(producerId * eventsPerProducer + j);
+                        }
+                    }
+                });
+
+                producers.add(t);
+                t.start();
+            }
+
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+            for(Thread t: producers) {
+
+                t.join();
+            }
+
+            assertEquals(producerCount * eventsPerProducer, received.size());
+
+            log.debug(ws + " delivered " + received.size() + " events");
+
+            c.dispose();
+        }
+    }
+
+    @Test
+    public void primitiveHandOverDoesNotAllocate() throws Exception {
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+
+            log.warn("per-thread allocation counters not available, skipping");
+            return;
+        }
+
+        com.sun.management.ThreadMXBean mxBean = (com.sun.management.ThreadMXBean)bean;
+
+        if (!mxBean.isThreadAllocatedMemorySupported()) {
+
+            log.warn("per-thread allocation counters not supported, skipping");
+            return;
+        }
+
+        mxBean.setThreadAllocatedMemoryEnabled(true);
+
+        int events = 100000;
+
+        RingBufferCollector c = new RingBufferCollector("test", 1024, WaitStrategy.PARK, -1);
+
+        try {
+
+            MockPrimitiveHandler h = new MockPrimitiveHandler(1);
+            c.registerHandler(h);
+
+            Thread pump = null;
+
+            for(Thread t: Thread.getAllStackTraces().keySet()) {
+
+                if (t.getName().equals(c.getThreadName())) {
+
+                    pump = t;
+                }
+            }
+
+            assertNotNull(pump);
+
+            // warm up, so the measurement does not include class loading and compilation
+
+            handOver(c, h, 0, events);
+
+            long producerBefore = mxBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long pumpBefore = mxBean.getThreadAllocatedBytes(pump.getId());
+
+            handOver(c, h, events, 2 * events);
+
+            long producerAllocated = mxBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - producerBefore;
+            long pumpAllocated = mxBean.getThreadAllocatedBytes(pump.getId()) - pumpBefore;
+
+            log.info("producer allocated " + producerAllocated + " bytes, pump allocated " + pumpAllocated +
+                    " bytes for " + events + " samples");
+
+            // allow for the odd allocation done by the JVM on behalf of the threads (parking, safepoints, logging)
+            assertTrue(producerAllocated < events / 10);
+            assertTrue(pumpAllocated < events / 10);
+        }
+        finally {
+
+            c.dispose();
+        }
+    }
+
+    @Test
+    public void constructor_PoolingIsRejected() throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setType(CollectorType.RING_BUFFER);
+        configuration.setPoolCapacity(16);
+
+        try {
+
+            new RingBufferCollector("test", configuration);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    @Override
+    protected Collector getCollectorToTest(String name) {
+
+        return new RingBufferCollector(name);
+    }
+
+    @Override
+    protected Collector getCollectorToTest(String name, CollectorConfiguration configuration) {
+
+        configuration.setType(CollectorType.RING_BUFFER);
+        return new RingBufferCollector(name, configuration);
+    }
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Hands over samples [from, to), alternating longs and doubles, and waits for the handler to receive them.
+     */
+    private static void handOver(RingBufferCollector c, MockPrimitiveHandler h, int from, int to)
+            throws InterruptedException {
+
+        for(int i = from; i < to; i ++) {
+
+            if ((i & 1) == 0) {
+
+                c.handOverLong(i & 7, i);
+            }
+            else {
+
+                c.handOverDouble(i & 7, i);
+            }
+        }
+
+        while(h.getCount() < to) {
+
+            Thread.sleep(10L);
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,229 @@
+package io.novaordis.utilities.ac;
+
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RingBufferTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = Logger.getLogger(RingBufferTest.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void toPowerOfTwo() throws Exception {
+
+        assertEquals(1, RingBuffer.toPowerOfTwo(1));
+        assertEquals(2, RingBuffer.toPowerOfTwo(2));
+        assertEquals(4, RingBuffer.toPowerOfTwo(3));
+        assertEquals(1024, RingBuffer.toPowerOfTwo(1000));
+        assertEquals(1024, RingBuffer.toPowerOfTwo(1024));
+
+        try {
+
+            RingBuffer.toPowerOfTwo(0);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void emptyRing() throws Exception {
+
+        RingBuffer rb = new RingBuffer(4);
+
+        assertEquals(4, rb.getCapacity());
+        assertEquals(0, rb.size());
+        assertNull(rb.poll());
+    }
+
+    @Test
+    public void claimPublishPollRelease() throws Exception {
+
+        RingBuffer rb = new RingBuffer(2);
+
+        long s = rb.tryClaim();
+        assertEquals(0L, s);
+
+        // claimed but not published, the consumer must not see it
+        assertNull(rb.poll());
+        assertEquals(1, rb.size());
+
+        rb.publish(s, 7L, "T", "A");
+
+        Collected c = rb.poll();
+        assertEquals(7L, c.getTimeStamp());
+        assertEquals("T", c.getThreadName());
+        assertEquals("A", c.getPayload());
+
+        rb.release();
+
+        // the slot was cleared
+        assertNull(c.getPayload());
+        assertNull(c.getThreadName());
+        assertEquals(0, rb.size());
+        assertNull(rb.poll());
+    }
+
+    @Test
+    public void full() throws Exception {
+
+        RingBuffer rb = new RingBuffer(2);
+
+        long s0 = rb.tryClaim();
+        long s1 = rb.tryClaim();
+        assertEquals(-1L, rb.tryClaim());
+
+        // publish out of order, the consumer must still see them in sequence order
+        rb.publish(s1, 1L, "T", "B");
+        assertNull(rb.poll());
+        rb.publish(s0, 0L, "T", "A");
+
+        assertEquals("A", rb.poll().getPayload());
+        rb.release();
+
+        // one slot freed
+        long s2 = rb.tryClaim();
+        assertEquals(2L, s2);
+        rb.publish(s2, 2L, "T", "C");
+
+        assertEquals("B", rb.poll().getPayload());
+        rb.release();
+        assertEquals("C", rb.poll().getPayload());
+        rb.release();
+
+        assertNull(rb.poll());
+    }
+
+    @Test
+    public void peekAndReleaseBatch() throws Exception {
+
+        RingBuffer rb = new RingBuffer(4);
+
+        for(int i = 0; i < 3; i ++) {
+
+            rb.publish(rb.tryClaim(), i, "T", i);
+        }
+
+        assertEquals(0, rb.peek(0).getPayload());
+        assertEquals(1, rb.peek(1).getPayload());
+        assertEquals(2, rb.peek(2).getPayload());
+        assertNull(rb.peek(3));
+
+        // offsets past the capacity are never published
+        assertNull(rb.peek(4));
+
+        rb.release(3);
+        assertEquals(0, rb.size());
+        assertNull(rb.peek(0));
+
+        // wrap around
+        for(int i = 3; i < 7; i ++) {
+
+            rb.publish(rb.tryClaim(), i, "T", i);
+        }
+
+        assertEquals(-1L, rb.tryClaim());
+
+        for(int i = 0; i < 4; i ++) {
+
+            assertEquals(i + 3, rb.peek(i).getPayload());
+        }
+
+        rb.release(4);
+        assertEquals(0, rb.size());
+    }
+
+    @Test
+    public void concurrentProducers() throws Exception {
+
+        final RingBuffer rb = new RingBuffer(16);
+        final int producerCount = 4;
+        final int eventsPerProducer = 10000;
+
+        Thread[] producers = new Thread[producerCount];
+
+        for(int i = 0; i < producerCount; i ++) {
+
+            final int producerId = i;
+
+            producers[i] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    for(int j = 0; j < eventsPerProducer; j ++) {
+
+                        long s;
+
+                        while((s = rb.tryClaim()) < 0) {
+
+                            Thread.yield();
+                        }
+
+                        rb.publish(s, j, "P" + producerId, new int[] { producerId, j });
+                    }
+                }
+            });
+
+            producers[i].start();
+        }
+
+        // per-producer order must be preserved
+        int[] next = new int[producerCount];
+        int total = producerCount * eventsPerProducer;
+
+        for(int received = 0; received < total; ) {
+
+            Collected c = rb.poll();
+
+            if (c == null) {
+
+                Thread.yield();
+                continue;
+            }
+
+            int[] payload = (int[])c.getPayload();
+            assertEquals(next[payload[0]], payload[1]);
+            next[payload[0]] ++;
+            rb.release();
+            received ++;
+        }
+
+        for(Thread t: producers) {
+
+            t.join();
+        }
+
+        for(int n: next) {
+
+            assertEquals(eventsPerProducer, n);
+        }
+
+        assertTrue(rb.poll() == null);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
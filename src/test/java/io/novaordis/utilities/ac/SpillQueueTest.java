@@ -0,0 +1,327 @@
+package io.novaordis.utilities.ac;
+
+import io.novaordis.utilities.testing.Tests;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SpillQueueTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = Logger.getLogger(SpillQueueTest.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @After
+    public void scratchCleanup() throws Exception {
+
+        Tests.cleanup();
+    }
+
+    @Test
+    public void segmentName() throws Exception {
+
+        assertEquals("spill-0000000007.spill", SpillQueue.segmentName("spill", 7L));
+        assertTrue(SpillQueue.isSegmentName("spill", "spill-0000000007.spill"));
+        assertFalse(SpillQueue.isSegmentName("spill", "spill-.spill"));
+        assertFalse(SpillQueue.isSegmentName("spill", "spill-00x.spill"));
+        assertFalse(SpillQueue.isSegmentName("spill", "other-0000000007.spill"));
+        assertFalse(SpillQueue.isSegmentName("spill", "spill-0000000007.journal"));
+    }
+
+    @Test
+    public void appendAndPoll_PreservesOrderAndContent() throws Exception {
+
+        SpillQueue q = new SpillQueue(new SpillConfiguration(dir()));
+
+        q.append(new Collected(1L, "thread-a", "A"));
+        q.append(new Collected(2L, Thread.currentThread().getId(), 10));
+        q.append(Collected.ofLong(3L, 5L, 7, -9L));
+        q.append(Collected.ofDouble(4L, 5L, 8, 2.5));
+        q.append(new Collected(5L, (String)null, null));
+
+        assertEquals(5L, q.size());
+        assertEquals(1, q.getSegmentCount());
+
+        List<Collected> events = new ArrayList<>();
+
+        assertTrue(q.poll(events, 2) > 0);
+        assertEquals(2, events.size());
+        assertEquals(3L, q.size());
+
+        assertTrue(q.poll(events, 10) > 0);
+        assertEquals(5, events.size());
+        assertEquals(0L, q.size());
+
+        Collected c = events.get(0);
+        assertEquals(1L, c.getTimeStamp());
+        assertEquals("thread-a", c.getThreadName());
+        assertEquals("A", c.getPayload());
+
+        c = events.get(1);
+        assertEquals(2L, c.getTimeStamp());
+        assertEquals(Thread.currentThread().getId(), c.getThreadId());
+        assertEquals(Thread.currentThread().getName(), c.getThreadName());
+        assertEquals(10, c.getPayload());
+
+        c = events.get(2);
+        assertTrue(c.isPrimitive());
+        assertFalse(c.isDouble());
+        assertEquals(3L, c.getTimeStamp());
+        assertEquals(5L, c.getThreadId());
+        assertEquals(7, c.getKey());
+        assertEquals(-9L, c.getLongValue());
+
+        c = events.get(3);
+        assertTrue(c.isDouble());
+        assertEquals(8, c.getKey());
+        assertEquals(2.5, c.getDoubleValue(), 0.0);
+
+        c = events.get(4);
+        assertEquals(5L, c.getTimeStamp());
+        assertNull(c.getThreadName());
+        assertNull(c.getPayload());
+
+        // the queue is empty, no files are left behind
+        assertEquals(0, q.getSegmentCount());
+        assertEquals(0, segmentFiles().length);
+
+        q.close();
+    }
+
+    @Test
+    public void segmentsAreDeletedAfterConsumption() throws Exception {
+
+        SpillConfiguration sc = new SpillConfiguration(dir());
+        sc.setSegmentSize(256);
+        sc.setSerializer(PayloadSerializers.toStringSerializer());
+        SpillQueue q = new SpillQueue(sc);
+
+        int bytes = 0;
+
+        for(int i = 0; i < 100; i ++) {
+
+            bytes += q.append(new Collected(i, "t", "event-" + i));
+        }
+
+        int segments = q.getSegmentCount();
+        assertTrue(segments > 1);
+        assertEquals(segments, segmentFiles().length);
+
+        List<Collected> events = new ArrayList<>();
+        int read = 0;
+
+        while(q.size() > 0) {
+
+            int before = q.getSegmentCount();
+            read += q.poll(events, 7);
+            assertTrue(q.getSegmentCount() <= before);
+        }
+
+        assertEquals(bytes, read);
+        assertEquals(100, events.size());
+
+        for(int i = 0; i < 100; i ++) {
+
+            assertEquals("event-" + i, events.get(i).getPayload());
+        }
+
+        assertEquals(0, segmentFiles().length);
+
+        // appending after the queue was emptied starts a new segment
+        q.append(new Collected(100L, "t", "event-100"));
+        assertEquals(1, segmentFiles().length);
+
+        q.close();
+        assertEquals(0, segmentFiles().length);
+    }
+
+    @Test
+    public void interleavedAppendAndPoll() throws Exception {
+
+        SpillConfiguration sc = new SpillConfiguration(dir());
+        sc.setSegmentSize(512);
+        SpillQueue q = new SpillQueue(sc);
+
+        List<Collected> events = new ArrayList<>();
+        int next = 0;
+
+        for(int round = 0; round < 50; round ++) {
+
+            for(int i = 0; i < 3; i ++) {
+
+                q.append(new Collected(next, "t", next));
+                next ++;
+            }
+
+            q.poll(events, 2);
+        }
+
+        q.poll(events, Integer.MAX_VALUE);
+
+        assertEquals(next, events.size());
+
+        for(int i = 0; i < next; i ++) {
+
+            assertEquals(i, events.get(i).getPayload());
+        }
+
+        q.close();
+    }
+
+    @Test
+    public void append_ProducerBatchIsSpilledAsItsEvents() throws Exception {
+
+        SpillQueue q = new SpillQueue(new SpillConfiguration(dir()));
+
+        Collected[] events = new Collected[] { new Collected(1L, "t", "A"), new Collected(2L, "t", "B"), null };
+        ProducerBatch batch = new ProducerBatch(events, 2, 0);
+
+        assertTrue(q.append(batch.wrap()) > 0);
+        assertEquals(2L, q.size());
+
+        List<Collected> replayed = new ArrayList<>();
+        q.poll(replayed, 10);
+
+        assertEquals(2, replayed.size());
+        assertEquals("A", replayed.get(0).getPayload());
+        assertEquals("B", replayed.get(1).getPayload());
+
+        q.close();
+    }
+
+    @Test
+    public void append_UnserializablePayload() throws Exception {
+
+        SpillQueue q = new SpillQueue(new SpillConfiguration(dir()));
+
+        try {
+
+            q.append(new Collected(1L, "t", new Object()));
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+
+        assertEquals(0L, q.size());
+
+        q.close();
+    }
+
+    @Test
+    public void append_ProducerBatchWithUnserializablePayload_NothingIsAppended() throws Exception {
+
+        SpillQueue q = new SpillQueue(new SpillConfiguration(dir()));
+
+        q.append(new Collected(1L, "t", "A"));
+
+        Collected[] events = new Collected[] {
+                new Collected(2L, "t", "B"), new Collected(3L, "t", "C"), new Collected(4L, "t", new Object()) };
+
+        try {
+
+            q.append(new ProducerBatch(events, 3, 0).wrap());
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+
+        assertEquals(1L, q.size());
+
+        q.append(new Collected(5L, "t", "D"));
+
+        List<Collected> replayed = new ArrayList<>();
+        q.poll(replayed, 10);
+
+        assertEquals(2, replayed.size());
+        assertEquals("A", replayed.get(0).getPayload());
+        assertEquals("D", replayed.get(1).getPayload());
+        assertEquals(0L, q.size());
+
+        q.close();
+    }
+
+    @Test
+    public void append_AfterClose() throws Exception {
+
+        SpillQueue q = new SpillQueue(new SpillConfiguration(dir()));
+
+        q.append(new Collected(1L, "t", "A"));
+        q.close();
+
+        assertEquals(0L, q.size());
+        assertEquals(0, segmentFiles().length);
+
+        try {
+
+            q.append(new Collected(2L, "t", "B"));
+            fail("should have thrown exception");
+        }
+        catch(IOException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void staleSegmentsAreDeleted() throws Exception {
+
+        File dir = dir();
+        assertTrue(dir.mkdirs());
+
+        File stale = new File(dir, SpillQueue.segmentName(SpillConfiguration.DEFAULT_PREFIX, 3L));
+        File unrelated = new File(dir, "unrelated.txt");
+        assertTrue(stale.createNewFile());
+        assertTrue(unrelated.createNewFile());
+
+        SpillQueue q = new SpillQueue(new SpillConfiguration(dir));
+
+        assertFalse(stale.exists());
+        assertTrue(unrelated.exists());
+        assertEquals(0L, q.size());
+
+        q.close();
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static File dir() {
+
+        return new File(Tests.getScratchDir(), "spill");
+    }
+
+    private static File[] segmentFiles() {
+
+        File[] files = dir().listFiles((d, name) -> name.endsWith(SpillQueue.SEGMENT_SUFFIX));
+        return files == null ? new File[0] : files;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
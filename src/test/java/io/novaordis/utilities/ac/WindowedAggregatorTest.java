@@ -0,0 +1,532 @@
+package io.novaordis.utilities.ac;
+
+import io.novaordis.utilities.ac.mock.MockBatchHandler;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WindowedAggregatorTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = Logger.getLogger(WindowedAggregatorTest.class);
+
+    private static final KeyExtractor KEY = payload -> payload == null ? null : ((Sample)payload).key;
+
+    private static final ValueExtractor VALUE = payload -> payload == null ? Double.NaN : ((Sample)payload).value;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // in the future, so the periodic check does not close the panes under the test
+    private long base = (System.currentTimeMillis() / 1000L + 3600L) * 1000L;
+
+    private List<WindowedAggregator> aggregators = new ArrayList<>();
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @After
+    public void cleanup() {
+
+        for(WindowedAggregator a: aggregators) {
+
+            a.close();
+        }
+    }
+
+    @Test
+    public void constructor_InvalidWindow() throws Exception {
+
+        try {
+
+            new WindowedAggregator(KEY, VALUE, 1000L, 300L);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void constructor_NullExtractor() throws Exception {
+
+        try {
+
+            new WindowedAggregator(null, VALUE, 1000L, 1000L);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void tumbling() throws Exception {
+
+        WindowedAggregator a = aggregator(1000L, 1000L);
+        MockBatchHandler downstream = downstream(a);
+
+        List<Collected> batch = new ArrayList<>();
+
+        for(int i = 1; i <= 100; i ++) {
+
+            batch.add(new Collected(base + i, "producer", new Sample("A", i)));
+        }
+
+        batch.add(new Collected(base + 500L, "producer", new Sample("B", 10)));
+        batch.add(new Collected(base + 999L, "producer", new Sample("B", 20)));
+
+        a.handleBatch(batch);
+
+        // the window is still open
+        assertEquals(0, downstream.getReceivedCount());
+        assertEquals(2, a.getKeyCount());
+
+        // the first event of the next window closes it
+        a.handle(base + 1000L, "producer", new Sample("A", 1000));
+
+        assertEquals(2, downstream.getReceivedCount());
+        assertEquals(2, a.getEmittedCount());
+
+        Collected c = downstream.getReceived().get(0);
+        assertEquals(base + 1000L, c.getTimeStamp());
+
+        WindowSummary s = (WindowSummary)c.getPayload();
+        assertEquals("A", s.getKey());
+        assertEquals(base, s.getWindowStart());
+        assertEquals(base + 1000L, s.getWindowEnd());
+        assertEquals(100, s.getCount());
+        assertEquals(5050.0, s.getSum(), 0.0);
+        assertEquals(1.0, s.getMin(), 0.0);
+        assertEquals(100.0, s.getMax(), 0.0);
+        assertEquals(50.5, s.getMean(), 0.0);
+        assertEquals(50.0, s.getPercentile(50.0), 0.0);
+        assertEquals(90.0, s.getPercentile(90.0), 0.0);
+        assertEquals(99.0, s.getPercentile(99.0), 0.0);
+
+        WindowSummary s2 = (WindowSummary)downstream.getReceived().get(1).getPayload();
+        assertEquals("B", s2.getKey());
+        assertEquals(2, s2.getCount());
+        assertEquals(30.0, s2.getSum(), 0.0);
+        assertEquals(10.0, s2.getPercentile(50.0), 0.0);
+
+        assertEquals("B, " + base + ", " + (base + 1000L) + ", 2, 30.0, 10.0, 20.0, 15.0, 10.0, 20.0, 20.0",
+                s2.toString());
+
+        try {
+
+            s2.getPercentile(75.0);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void sliding() throws Exception {
+
+        WindowedAggregator a = aggregator(3000L, 1000L);
+        MockBatchHandler downstream = downstream(a);
+
+        a.handle(base, "producer", new Sample("A", 1));
+        a.handle(base + 1000L, "producer", new Sample("A", 2));
+        a.handle(base + 2000L, "producer", new Sample("A", 3));
+        a.handle(base + 3000L, "producer", new Sample("A", 4));
+
+        List<Collected> received = downstream.getReceived();
+        assertEquals(3, received.size());
+
+        long[] expectedCounts = { 1, 2, 3 };
+        double[] expectedSums = { 1.0, 3.0, 6.0 };
+
+        for(int i = 0; i < 3; i ++) {
+
+            WindowSummary s = (WindowSummary)received.get(i).getPayload();
+            assertEquals(base + (i + 1) * 1000L, s.getWindowEnd());
+            assertEquals(s.getWindowEnd() - 3000L, s.getWindowStart());
+            assertEquals(expectedCounts[i], s.getCount());
+            assertEquals(expectedSums[i], s.getSum(), 0.0);
+        }
+
+        // the first pane slides out of the window
+        a.handle(base + 4000L, "producer", new Sample("A", 5));
+
+        WindowSummary s = (WindowSummary)downstream.getReceived().get(3).getPayload();
+        assertEquals(3, s.getCount());
+        assertEquals(2.0, s.getMin(), 0.0);
+        assertEquals(4.0, s.getMax(), 0.0);
+    }
+
+    @Test
+    public void gapsAreSkipped() throws Exception {
+
+        WindowedAggregator a = aggregator(2000L, 1000L);
+        MockBatchHandler downstream = downstream(a);
+
+        a.handle(base, "producer", new Sample("A", 1));
+        a.handle(base + 1000000L, "producer", new Sample("A", 2));
+
+        // the two windows that contain the first sample, nothing for the empty ones
+        assertEquals(2, downstream.getReceivedCount());
+    }
+
+    @Test
+    public void nullKeysAndIgnoredPayloads() throws Exception {
+
+        WindowedAggregator a = aggregator(1000L, 1000L);
+        MockBatchHandler downstream = downstream(a);
+
+        a.handle(base, "producer", new Sample(null, 7));
+        a.handle(base, "producer", new Sample("A", Double.NaN));
+        a.handle(base, "producer", null);
+        a.handle(base + 1000L, "producer", new Sample(null, 1));
+
+        assertEquals(1, downstream.getReceivedCount());
+        WindowSummary s = (WindowSummary)downstream.getReceived().get(0).getPayload();
+        assertNull(s.getKey());
+        assertEquals(1, s.getCount());
+        assertEquals(7.0, s.getSum(), 0.0);
+    }
+
+    @Test
+    public void lateEventsAreCountedIntoTheCurrentPane() throws Exception {
+
+        WindowedAggregator a = aggregator(1000L, 1000L);
+        MockBatchHandler downstream = downstream(a);
+
+        a.handle(base + 1000L, "producer", new Sample("A", 1));
+        a.handle(base, "producer", new Sample("A", 2));
+        a.handle(base + 2000L, "producer", new Sample("A", 3));
+
+        assertEquals(1, a.getLateCount());
+        WindowSummary s = (WindowSummary)downstream.getReceived().get(0).getPayload();
+        assertEquals(base + 1000L, s.getWindowStart());
+        assertEquals(2, s.getCount());
+    }
+
+    @Test
+    public void percentilesAreEstimatedBeyondTheSampleLimit() throws Exception {
+
+        WindowedAggregator a = aggregator(1000L, 1000L);
+        a.setSampleLimit(100);
+        a.setPercentiles(50.0);
+        MockBatchHandler downstream = downstream(a);
+
+        for(int i = 1; i <= 10000; i ++) {
+
+            a.handle(base, "producer", new Sample("A", i));
+        }
+
+        a.close();
+
+        WindowSummary s = (WindowSummary)downstream.getReceived().get(0).getPayload();
+
+        // exact
+        assertEquals(10000, s.getCount());
+        assertEquals(1.0, s.getMin(), 0.0);
+        assertEquals(10000.0, s.getMax(), 0.0);
+        assertEquals(50005000.0, s.getSum(), 0.0);
+
+        // estimated from a uniform sample of 100
+        double median = s.getPercentile(50.0);
+        assertTrue(median + "", median > 3000.0 && median < 7000.0);
+    }
+
+    @Test
+    public void manyKeys() throws Exception {
+
+        WindowedAggregator a = aggregator(1000L, 1000L);
+        MockBatchHandler downstream = downstream(a);
+
+        for(int round = 0; round < 3; round ++) {
+
+            for(int k = 0; k < 1000; k ++) {
+
+                a.handle(base, "producer", new Sample("key-" + k, k));
+            }
+        }
+
+        a.handle(base + 1000L, "producer", new Sample("key-0", 0));
+
+        assertEquals(1000, a.getKeyCount());
+        assertEquals(1000, downstream.getReceivedCount());
+
+        for(int k = 0; k < 1000; k ++) {
+
+            WindowSummary s = (WindowSummary)downstream.getReceived().get(k).getPayload();
+            assertEquals("key-" + k, s.getKey());
+            assertEquals(3, s.getCount());
+            assertEquals(3.0 * k, s.getSum(), 0.0);
+        }
+    }
+
+    @Test
+    public void closeEmitsPendingWindowsAndClosesDownstream() throws Exception {
+
+        WindowedAggregator a = aggregator(2000L, 1000L);
+        MockBatchHandler downstream = downstream(a);
+
+        a.handle(base, "producer", new Sample("A", 1));
+        a.close();
+
+        assertEquals(2, downstream.getReceivedCount());
+        assertTrue(downstream.wasCloseCalled());
+
+        // noop
+        a.handle(base + 5000L, "producer", new Sample("A", 1));
+        a.close();
+        assertEquals(2, downstream.getReceivedCount());
+    }
+
+    @Test
+    public void idleWindowsAreEmittedByThePeriodicCheck() throws Exception {
+
+        WindowedAggregator a = aggregator(100L, 100L);
+        MockBatchHandler downstream = downstream(a);
+
+        a.handle(System.currentTimeMillis(), "producer", new Sample("A", 1));
+
+        long t0 = System.currentTimeMillis();
+
+        while(downstream.getReceivedCount() == 0 && System.currentTimeMillis() - t0 < 10000L) {
+
+            Thread.sleep(10L);
+        }
+
+        assertEquals(1, downstream.getReceivedCount());
+    }
+
+    @Test
+    public void thePeriodicCheckEmitsOnTheAggregatorsOwnThread() throws Exception {
+
+        WindowedAggregator a = aggregator(100L, 100L);
+
+        List<Thread> threads = new ArrayList<>();
+
+        MockBatchHandler downstream = new MockBatchHandler() {
+
+            @Override
+            public synchronized void handleBatch(List<Collected> batch) {
+
+                threads.add(Thread.currentThread());
+                super.handleBatch(batch);
+            }
+        };
+
+        assertTrue(a.addDownstream(downstream));
+
+        a.handle(System.currentTimeMillis(), "producer", new Sample("A", 1));
+
+        long t0 = System.currentTimeMillis();
+
+        while(downstream.getReceivedCount() == 0 && System.currentTimeMillis() - t0 < 10000L) {
+
+            Thread.sleep(10L);
+        }
+
+        assertEquals(1, downstream.getReceivedCount());
+
+        synchronized(downstream) {
+
+            assertEquals(1, threads.size());
+        }
+
+        Thread emitter = threads.get(0);
+        assertTrue(emitter.getName(), emitter.getName().startsWith(WindowedAggregator.EMITTER_THREAD_NAME));
+
+        // closing the aggregator stops its emitter
+        a.close();
+        emitter.join(10000L);
+        assertFalse(emitter.isAlive());
+    }
+
+    @Test
+    public void idleKeysAreEvicted() throws Exception {
+
+        WindowedAggregator a = aggregator(1000L, 1000L);
+        MockBatchHandler downstream = downstream(a);
+
+        a.handle(base, "producer", new Sample("A", 1));
+        a.handle(base, "producer", new Sample("B", 2));
+        a.handle(base + 1000L, "producer", new Sample("A", 3));
+
+        // B was not idle for a whole window yet
+        assertEquals(2, a.getKeyCount());
+        assertEquals(2, downstream.getReceivedCount());
+
+        a.handle(base + 2000L, "producer", new Sample("A", 4));
+
+        assertEquals(1, a.getKeyCount());
+        assertEquals(3, downstream.getReceivedCount());
+        assertEquals("A", ((WindowSummary)downstream.getReceived().get(2).getPayload()).getKey());
+
+        // B comes back with no trace of its previous samples
+        a.handle(base + 2000L, "producer", new Sample("B", 5));
+        a.handle(base + 3000L, "producer", new Sample("A", 6));
+
+        assertEquals(2, a.getKeyCount());
+        assertEquals(5, downstream.getReceivedCount());
+
+        WindowSummary b = (WindowSummary)downstream.getReceived().get(4).getPayload();
+        assertEquals("B", b.getKey());
+        assertEquals(1, b.getCount());
+        assertEquals(5.0, b.getSum(), 0.0);
+    }
+
+    @Test
+    public void manyKeys_HalfOfThemGoIdle() throws Exception {
+
+        WindowedAggregator a = aggregator(1000L, 1000L);
+        MockBatchHandler downstream = downstream(a);
+
+        for(int pane = 0; pane < 3; pane ++) {
+
+            for(int k = 0; k < 1000; k += pane == 0 ? 1 : 2) {
+
+                a.handle(base + pane * 1000L, "producer", new Sample("key-" + k, k));
+            }
+        }
+
+        a.handle(base + 3000L, "producer", new Sample("key-0", 0));
+
+        assertEquals(500, a.getKeyCount());
+
+        for(int k = 0; k < 1000; k ++) {
+
+            a.handle(base + 3000L, "producer", new Sample("key-" + k, k));
+        }
+
+        assertEquals(1000, a.getKeyCount());
+
+        int received = downstream.getReceivedCount();
+        a.handle(base + 4000L, "producer", new Sample("key-0", 0));
+        assertEquals(received + 1000, downstream.getReceivedCount());
+
+        boolean[] seen = new boolean[1000];
+
+        for(Collected c: downstream.getReceived().subList(received, received + 1000)) {
+
+            WindowSummary s = (WindowSummary)c.getPayload();
+            int k = Integer.parseInt(((String)s.getKey()).substring(4));
+            assertEquals(k == 0 ? 2 : 1, s.getCount());
+            assertEquals(k == 0 ? 0.0 : k, s.getSum(), 0.0);
+            seen[k] = true;
+        }
+
+        for(boolean b: seen) {
+
+            assertTrue(b);
+        }
+    }
+
+    @Test
+    public void evictedSlotsAreReused() throws Exception {
+
+        WindowedAggregator a = aggregator(2000L, 1000L);
+        MockBatchHandler downstream = downstream(a);
+
+        // every key is only seen in one pane, so at most three keys are alive at any time
+        for(int i = 0; i < 10000; i ++) {
+
+            a.handle(base + i * 1000L, "producer", new Sample("key-" + i, i));
+            assertTrue(a.getKeyCount() <= 3);
+        }
+
+        // each key is in two windows, except for the last two, whose windows are still open
+        assertEquals(2 * 10000 - 3, downstream.getReceivedCount());
+
+        for(Collected c: downstream.getReceived()) {
+
+            // nothing leaks from the previous key of a reused slot
+            WindowSummary s = (WindowSummary)c.getPayload();
+            assertEquals(1, s.getCount());
+            assertEquals("key-" + (long)s.getSum(), s.getKey());
+        }
+    }
+
+    @Test
+    public void asCollectorHandler() throws Exception {
+
+        Collector c = new CollectorImpl("test");
+
+        try {
+
+            WindowedAggregator a = aggregator(60000L, 60000L);
+            MockBatchHandler downstream = downstream(a);
+
+            assertTrue(c.registerHandler(a));
+
+            for(int i = 0; i < 1000; i ++) {
+
+                c.handOver(new Sample("A", i));
+            }
+
+            long t0 = System.currentTimeMillis();
+
+            while(c.getMetrics().getDequeuedCount() < 1000 && System.currentTimeMillis() - t0 < 10000L) {
+
+                Thread.sleep(10L);
+            }
+
+            c.dispose();
+
+            // closing the collector closes the aggregator, which emits what it has
+            assertEquals(1, downstream.getReceivedCount());
+            assertEquals(1000, ((WindowSummary)downstream.getReceived().get(0).getPayload()).getCount());
+        }
+        finally {
+
+            c.dispose();
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private WindowedAggregator aggregator(long windowMs, long slideMs) {
+
+        WindowedAggregator a = new WindowedAggregator(KEY, VALUE, windowMs, slideMs);
+        aggregators.add(a);
+        return a;
+    }
+
+    private static MockBatchHandler downstream(WindowedAggregator a) {
+
+        MockBatchHandler h = new MockBatchHandler();
+        assertTrue(a.addDownstream(h));
+        return h;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private static class Sample {
+
+        private final String key;
+        private final double value;
+
+        Sample(String key, double value) {
+
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package io.novaordis.utilities.ac.benchmark;
+
+import io.novaordis.utilities.ac.Collector;
+import io.novaordis.utilities.ac.CollectorConfiguration;
+import io.novaordis.utilities.ac.CollectorFactory;
+import io.novaordis.utilities.ac.CollectorType;
+import io.novaordis.utilities.ac.Handler;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares a large number of thread-per-collector (QUEUE) collectors with the same number of executor-drained
+ * (EXECUTOR) collectors: live threads, heap used, context switches and the time it takes to deliver events handed
+ * over round-robin to all collectors.
+ *
+ * Context switches are read from /proc/self/task/[tid]/status, so they are only reported on Linux.
+ *
+ * Usage: ManyCollectorsBenchmark [collector-count] [events-per-collector]
+ */
+public class ManyCollectorsBenchmark {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final int DEFAULT_COLLECTOR_COUNT = 1000;
+    public static final int DEFAULT_EVENTS_PER_COLLECTOR = 1000;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    public static void main(String[] args) throws Exception {
+
+        int collectorCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_COLLECTOR_COUNT;
+        int eventsPerCollector = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_EVENTS_PER_COLLECTOR;
+
+        System.out.println(collectorCount + " collectors, " + eventsPerCollector + " events per collector");
+        System.out.println();
+        System.out.printf("%-10s %10s %14s %20s %12s%n",
+                "type", "threads", "heap used (KB)", "context switches", "time (ms)");
+
+        run(CollectorType.QUEUE, collectorCount, eventsPerCollector);
+        run(CollectorType.EXECUTOR, collectorCount, eventsPerCollector);
+    }
+
+    private static void run(CollectorType type, int collectorCount, int eventsPerCollector) throws Exception {
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+
+        System.gc();
+        int threadsBefore = threadBean.getThreadCount();
+        long heapBefore = memoryBean.getHeapMemoryUsage().getUsed();
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setType(type);
+
+        final AtomicLong delivered = new AtomicLong();
+        Handler handler = new CountingHandler(delivered);
+
+        List<Collector> collectors = new ArrayList<>(collectorCount);
+
+        for(int i = 0; i < collectorCount; i ++) {
+
+            Collector c = CollectorFactory.getInstance(type + "-" + i, configuration);
+            c.registerHandler(handler);
+            collectors.add(c);
+        }
+
+        System.gc();
+        long heap = memoryBean.getHeapMemoryUsage().getUsed() - heapBefore;
+
+        long switchesBefore = contextSwitches();
+        long expected = (long)collectorCount * eventsPerCollector;
+        long t0 = System.nanoTime();
+
+        for(int i = 0; i < eventsPerCollector; i ++) {
+
+            for(Collector c: collectors) {
+
+                c.handOver(i);
+            }
+        }
+
+        while(delivered.get() < expected) {
+
+            Thread.sleep(1L);
+        }
+
+        long elapsed = (System.nanoTime() - t0) / 1000000L;
+
+        // counted after delivery, as the executor threads are started lazily
+        int threads = threadBean.getThreadCount() - threadsBefore;
+        long switches = switchesBefore < 0 ? -1 : contextSwitches() - switchesBefore;
+
+        System.out.printf("%-10s %10d %14d %20s %12d%n",
+                type, threads, heap / 1024, switches < 0 ? "n/a" : Long.toString(switches), elapsed);
+
+        for(Collector c: collectors) {
+
+            c.dispose();
+        }
+
+        // give the draining threads a chance to exit before the next run
+        Thread.sleep(500L);
+    }
+
+    /**
+     * @return the voluntary plus non-voluntary context switches of all threads of this process, or -1 if the
+     *         information is not available.
+     */
+    private static long contextSwitches() {
+
+        File[] tasks = new File("/proc/self/task").listFiles();
+
+        if (tasks == null) {
+
+            return -1L;
+        }
+
+        long total = 0L;
+
+        for(File task: tasks) {
+
+            try {
+
+                for(String line: Files.readAllLines(new File(task, "status").toPath())) {
+
+                    if (line.startsWith("voluntary_ctxt_switches:") ||
+                            line.startsWith("nonvoluntary_ctxt_switches:")) {
+
+                        total += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                    }
+                }
+            }
+            catch(Exception e) {
+
+                // the thread exited in the mean time, ignore
+            }
+        }
+
+        return total;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private static class CountingHandler implements Handler {
+
+        private final AtomicLong delivered;
+
+        CountingHandler(AtomicLong delivered) {
+
+            this.delivered = delivered;
+        }
+
+        @Override
+        public boolean canHandle(Object o) {
+
+            return true;
+        }
+
+        @Override
+        public void handle(long timestamp, String threadName, Object o) {
+
+            delivered.incrementAndGet();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
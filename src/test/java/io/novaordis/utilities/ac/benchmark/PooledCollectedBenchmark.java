@@ -0,0 +1,273 @@
+package io.novaordis.utilities.ac.benchmark;
+
+import io.novaordis.utilities.ac.CaptureMode;
+import io.novaordis.utilities.ac.Collector;
+import io.novaordis.utilities.ac.CollectorConfiguration;
+import io.novaordis.utilities.ac.CollectorFactory;
+import io.novaordis.utilities.ac.Handler;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the GC pressure of a bounded QUEUE collector with and without pooled Collected instances, while one or more
+ * producers hand over events at a fixed aggregate rate: the bytes allocated by the producers and the draining thread
+ * per event, and the number of collections and the collection time during the run. With several producers, it also
+ * shows whether acquiring pooled instances contends.
+ *
+ * Both collectors use COARSE capture mode, as capturing the thread name allocates. Per-thread allocation counters are
+ * only reported on JVMs that support them.
+ *
+ * Usage: PooledCollectedBenchmark [events-per-second] [duration-seconds] [producers]
+ */
+public class PooledCollectedBenchmark {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final int DEFAULT_EVENTS_PER_SECOND = 1000000;
+    public static final int DEFAULT_DURATION_SECONDS = 10;
+    public static final int DEFAULT_PRODUCERS = 1;
+
+    public static final int CAPACITY = 65536;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    public static void main(String[] args) throws Exception {
+
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_EVENTS_PER_SECOND;
+        int duration = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_DURATION_SECONDS;
+        int producers = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PRODUCERS;
+
+        System.out.println(
+                rate + " events/s for " + duration + " s, " + producers + " producer(s), queue capacity " + CAPACITY);
+        System.out.println();
+        System.out.printf("%-10s %12s %16s %16s %10s %14s %12s%n",
+                "mode", "events/s", "producer B/evt", "pump B/evt", "GC count", "GC time (ms)", "pool misses");
+
+        // the first runs warm up the JVM, so the reported runs do not include class loading and compilation
+        run(false, rate, 1, producers, false);
+        run(true, rate, 1, producers, false);
+
+        run(false, rate, duration, producers, true);
+        run(true, rate, duration, producers, true);
+    }
+
+    private static void run(boolean pooled, int rate, int duration, int producers, boolean report)
+            throws Exception {
+
+        CollectorConfiguration configuration = new CollectorConfiguration();
+        configuration.setCaptureMode(CaptureMode.COARSE);
+        configuration.setCapacity(CAPACITY);
+
+        if (pooled) {
+
+            configuration.setPoolCapacity(2 * CAPACITY);
+        }
+
+        AtomicLong delivered = new AtomicLong();
+
+        Collector c = CollectorFactory.getInstance(pooled ? "pooled" : "unpooled", configuration);
+        c.registerHandler(new CountingHandler(delivered));
+
+        Thread pump = findThread(c.getThreadName());
+        long eventsPerProducer = (long)rate * duration / producers;
+        long events = eventsPerProducer * producers;
+        int perMillisecond = Math.max(1, rate / producers / 1000);
+
+        // -1 for the producers that cannot read their allocation counter
+        long[] allocatedByProducer = new long[producers];
+        Thread[] threads = new Thread[producers];
+
+        for(int i = 0; i < producers; i ++) {
+
+            int producer = i;
+
+            threads[i] = new Thread(() -> {
+
+                long before = allocatedBytes(Thread.currentThread());
+                produce(c, eventsPerProducer, perMillisecond);
+                allocatedByProducer[producer] = before < 0 ? -1L : allocatedBytes(Thread.currentThread()) - before;
+
+            }, "producer-" + i);
+        }
+
+        System.gc();
+
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+        long pumpBefore = allocatedBytes(pump);
+        long t0 = System.nanoTime();
+
+        for(Thread t: threads) {
+
+            t.start();
+        }
+
+        for(Thread t: threads) {
+
+            t.join();
+        }
+
+        while(delivered.get() < events) {
+
+            Thread.sleep(1L);
+        }
+
+        long elapsedNs = System.nanoTime() - t0;
+        long producerAllocated = 0L;
+
+        for(long a: allocatedByProducer) {
+
+            producerAllocated = a < 0 || producerAllocated < 0 ? -1L : producerAllocated + a;
+        }
+
+        long pumpAllocated = allocatedBytes(pump) - pumpBefore;
+        long gcCount = gcCount() - gcCountBefore;
+        long gcTime = gcTime() - gcTimeBefore;
+        long poolMisses = c.getMetrics().getPoolMissCount();
+
+        c.dispose();
+
+        if (!report) {
+
+            return;
+        }
+
+        System.out.printf("%-10s %12d %16s %16s %10d %14d %12d%n",
+                pooled ? "pooled" : "unpooled", events * 1000000000L / elapsedNs,
+                perEvent(producerAllocated, producerAllocated, events),
+                perEvent(pumpAllocated, pumpBefore, events), gcCount, gcTime, poolMisses);
+    }
+
+    /**
+     * Hands over the events, paced at perMillisecond events per millisecond.
+     */
+    private static void produce(Collector c, long events, int perMillisecond) {
+
+        Object payload = "event";
+        long next = System.nanoTime();
+
+        for(long i = 0; i < events; ) {
+
+            for(int j = 0; j < perMillisecond && i < events; j ++, i ++) {
+
+                c.handOver(payload);
+            }
+
+            next += 1000000L;
+
+            //noinspection StatementWithEmptyBody
+            while(System.nanoTime() < next) {
+
+                // pace the producer
+            }
+        }
+    }
+
+    private static long gcCount() {
+
+        long total = 0L;
+
+        for(GarbageCollectorMXBean b: ManagementFactory.getGarbageCollectorMXBeans()) {
+
+            total += Math.max(0L, b.getCollectionCount());
+        }
+
+        return total;
+    }
+
+    private static long gcTime() {
+
+        long total = 0L;
+
+        for(GarbageCollectorMXBean b: ManagementFactory.getGarbageCollectorMXBeans()) {
+
+            total += Math.max(0L, b.getCollectionTime());
+        }
+
+        return total;
+    }
+
+    /**
+     * @return the bytes allocated by the thread so far, or -1 if the information is not available.
+     */
+    private static long allocatedBytes(Thread t) {
+
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (t == null || !(bean instanceof com.sun.management.ThreadMXBean)) {
+
+            return -1L;
+        }
+
+        com.sun.management.ThreadMXBean mxBean = (com.sun.management.ThreadMXBean)bean;
+
+        if (!mxBean.isThreadAllocatedMemorySupported()) {
+
+            return -1L;
+        }
+
+        mxBean.setThreadAllocatedMemoryEnabled(true);
+        return mxBean.getThreadAllocatedBytes(t.getId());
+    }
+
+    private static String perEvent(long allocated, long before, long events) {
+
+        return before < 0 ? "n/a" : String.format("%.2f", (double)allocated / events);
+    }
+
+    private static Thread findThread(String name) {
+
+        for(Thread t: Thread.getAllStackTraces().keySet()) {
+
+            if (t.getName().equals(name)) {
+
+                return t;
+            }
+        }
+
+        return null;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private static class CountingHandler implements Handler {
+
+        private final AtomicLong delivered;
+
+        CountingHandler(AtomicLong delivered) {
+
+            this.delivered = delivered;
+        }
+
+        @Override
+        public boolean canHandle(Object o) {
+
+            return true;
+        }
+
+        @Override
+        public void handle(long timestamp, String threadName, Object o) {
+
+            delivered.incrementAndGet();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
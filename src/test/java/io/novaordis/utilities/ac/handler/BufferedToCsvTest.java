@@ -0,0 +1,380 @@
+package io.novaordis.utilities.ac.handler;
+
+import io.novaordis.utilities.ac.Collected;
+import io.novaordis.utilities.testing.Tests;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BufferedToCsvTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = Logger.getLogger(BufferedToCsvTest.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @After
+    public void scratchCleanup() throws Exception {
+
+        Tests.cleanup();
+    }
+
+    @Test
+    public void constructor_InvalidArguments() throws Exception {
+
+        File file = new File(Tests.getScratchDir(), "test.csv");
+
+        try {
+
+            new BufferedToCsv(null);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+
+        try {
+
+            new BufferedToCsv(file, 1, FlushPolicy.onBatchEnd());
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+
+        try {
+
+            new BufferedToCsv(file, 1024, null);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void sameLinesAsToCsv() throws Exception {
+
+        File file = new File(Tests.getScratchDir(), "test.csv");
+
+        BufferedToCsv h = new BufferedToCsv(file);
+
+        long t = System.currentTimeMillis();
+
+        h.handle(t, "thread-1", "something");
+        h.handleBatch(Arrays.asList(new Collected(t + 1, "thread-2", 7), new Collected(t + 2, "thread-3", null)));
+
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+
+        assertEquals(3, lines.size());
+        assertEquals(ToCsv.TIMESTAMP_FORMAT.format(t) + ", thread-1, something", lines.get(0));
+        assertEquals(ToCsv.TIMESTAMP_FORMAT.format(t + 1) + ", thread-2, 7", lines.get(1));
+        assertEquals(ToCsv.TIMESTAMP_FORMAT.format(t + 2) + ", thread-3, null", lines.get(2));
+
+        h.close();
+    }
+
+    @Test
+    public void nonAsciiContent() throws Exception {
+
+        File file = new File(Tests.getScratchDir(), "test.csv");
+
+        // a small buffer, so encoding has to flush in the middle of the line
+        BufferedToCsv h = new BufferedToCsv(file, 32, FlushPolicy.onBatchEnd());
+
+        String payload = "café, €10, 😀 and a tail long enough to overflow the buffer";
+
+        h.handle(0L, "thöread", payload);
+        h.close();
+
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).endsWith(", thöread, " + payload));
+    }
+
+    @Test
+    public void flushPolicy_OnBatchEnd() throws Exception {
+
+        File file = new File(Tests.getScratchDir(), "test.csv");
+
+        BufferedToCsv h = new BufferedToCsv(file, 1024, FlushPolicy.onBatchEnd());
+
+        h.handleBatch(Arrays.asList(new Collected(0L, "t", "a"), new Collected(0L, "t", "b")));
+        assertEquals(2, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+
+        h.close();
+    }
+
+    @Test
+    public void flushPolicy_EveryEvents() throws Exception {
+
+        File file = new File(Tests.getScratchDir(), "test.csv");
+
+        BufferedToCsv h = new BufferedToCsv(file, 1024, FlushPolicy.everyEvents(3));
+
+        h.handle(0L, "t", "a");
+        h.handle(0L, "t", "b");
+        h.handleBatch(Arrays.asList(new Collected(0L, "t", "c"), new Collected(0L, "t", "d")));
+
+        // not at batch end, but after the third event
+        assertEquals(3, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+
+        h.close();
+
+        assertEquals(4, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void flushPolicy_EveryMillis() throws Exception {
+
+        File file = new File(Tests.getScratchDir(), "test.csv");
+
+        BufferedToCsv h = new BufferedToCsv(file, 1024, FlushPolicy.everyMillis(100000L));
+
+        h.handle(0L, "t", "a");
+        h.handleBatch(Arrays.asList(new Collected(0L, "t", "b"), new Collected(0L, "t", "c")));
+
+        assertEquals(0, file.length());
+
+        h.flush();
+
+        assertEquals(3, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+
+        h.close();
+
+        BufferedToCsv h2 = new BufferedToCsv(file, 1024, FlushPolicy.everyMillis(0L));
+        h2.handle(0L, "t", "a");
+        assertEquals(1, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+        h2.close();
+    }
+
+    @Test
+    public void flushPolicy_EveryMillis_QuietSinkIsFlushedByTheTimer() throws Exception {
+
+        File file = new File(Tests.getScratchDir(), "test.csv");
+
+        BufferedToCsv h = new BufferedToCsv(file, 1024, FlushPolicy.everyMillis(100L));
+
+        h.handleBatch(Arrays.asList(new Collected(0L, "t", "a"), new Collected(0L, "t", "b")));
+
+        // no more events arrive
+        long t0 = System.currentTimeMillis();
+
+        while(file.length() == 0 && System.currentTimeMillis() - t0 < 10000L) {
+
+            Thread.sleep(10L);
+        }
+
+        assertEquals(2, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+
+        h.close();
+    }
+
+    @Test
+    public void bufferFull() throws Exception {
+
+        File file = new File(Tests.getScratchDir(), "test.csv");
+
+        BufferedToCsv h = new BufferedToCsv(file, 64, FlushPolicy.everyMillis(100000L));
+
+        for(int i = 0; i < 10; i ++) {
+
+            h.handle(0L, "t", "payload");
+        }
+
+        // the buffer holds less than two lines, most must be on disk already
+        assertTrue(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size() >= 9);
+
+        h.close();
+
+        assertEquals(10, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void sizeBasedRotation() throws Exception {
+
+        File file = new File(Tests.getScratchDir(), "test.csv");
+
+        BufferedToCsv h = new BufferedToCsv(file, 1024, FlushPolicy.onBatchEnd());
+
+        // a line is 23 + 2 + 1 + 2 + 1 + 1 = 30 bytes
+        h.setMaxFileSize(60L);
+        assertEquals(60L, h.getMaxFileSize());
+
+        for(int i = 0; i < 5; i ++) {
+
+            h.handle(0L, "t", i);
+        }
+
+        h.close();
+
+        assertEquals(2, h.getRotationCount());
+
+        File first = new File(file.getPath() + ".1");
+        File second = new File(file.getPath() + ".2");
+        assertFalse(new File(file.getPath() + ".3").exists());
+
+        assertEquals(Arrays.asList(line(0L, 0), line(0L, 1)), read(first));
+        assertEquals(Arrays.asList(line(0L, 2), line(0L, 3)), read(second));
+        assertEquals(Arrays.asList(line(0L, 4)), read(file));
+    }
+
+    @Test
+    public void rotation_ExistingRotatedFilesAreNotOverwritten() throws Exception {
+
+        File file = new File(Tests.getScratchDir(), "test.csv");
+
+        // left by a previous run
+        File previous = new File(file.getPath() + ".1");
+        Files.write(previous.toPath(), Arrays.asList("previous"), StandardCharsets.UTF_8);
+
+        BufferedToCsv h = new BufferedToCsv(file, 1024, FlushPolicy.onBatchEnd());
+        h.setMaxFileSize(60L);
+
+        h.handle(0L, "t", 0);
+        h.handle(0L, "t", 1);
+
+        // appeared since the handler started
+        File taken = new File(file.getPath() + ".2");
+        Files.write(taken.toPath(), Arrays.asList("taken"), StandardCharsets.UTF_8);
+
+        h.handle(0L, "t", 2);
+        h.close();
+
+        assertEquals(1, h.getRotationCount());
+        assertEquals(Arrays.asList("previous"), read(previous));
+        assertEquals(Arrays.asList("taken"), read(taken));
+        assertEquals(Arrays.asList(line(0L, 0), line(0L, 1)), read(new File(file.getPath() + ".3")));
+        assertEquals(Arrays.asList(line(0L, 2)), read(file));
+    }
+
+    @Test
+    public void rotation_FailedRenameKeepsTheFile() throws Exception {
+
+        // the rotated file name is over the usual 255 bytes limit, so the rename fails
+        char[] name = new char[254];
+        Arrays.fill(name, 'x');
+        File file = new File(Tests.getScratchDir(), new String(name));
+
+        BufferedToCsv h = new BufferedToCsv(file, 1024, FlushPolicy.onBatchEnd());
+        h.setMaxFileSize(60L);
+
+        for(int i = 0; i < 3; i ++) {
+
+            h.handle(0L, "t", i);
+        }
+
+        h.close();
+
+        if (h.getRotationCount() == 0) {
+
+            assertEquals(Arrays.asList(line(0L, 0), line(0L, 1), line(0L, 2)), read(file));
+        }
+    }
+
+    @Test
+    public void timeBasedRotation() throws Exception {
+
+        File file = new File(Tests.getScratchDir(), "test.csv");
+
+        BufferedToCsv h = new BufferedToCsv(file, 1024, FlushPolicy.everyMillis(100000L));
+
+        long t = System.currentTimeMillis();
+
+        h.setRotationIntervalMs(1000L);
+
+        h.handle(t, "t", "a");
+        h.handle(t + 500, "t", "b");
+        h.handle(t + 1500, "t", "c");
+
+        h.close();
+
+        assertEquals(1, h.getRotationCount());
+        assertEquals(2, read(new File(file.getPath() + ".1")).size());
+        assertEquals(1, read(file).size());
+    }
+
+    @Test
+    public void invalidRotationSettings() throws Exception {
+
+        BufferedToCsv h = new BufferedToCsv(new File(Tests.getScratchDir(), "test.csv"));
+
+        try {
+
+            h.setMaxFileSize(-1L);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+
+        try {
+
+            h.setRotationIntervalMs(-1L);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+
+        h.close();
+    }
+
+    @Test
+    public void handleAfterClose() throws Exception {
+
+        File file = new File(Tests.getScratchDir(), "test.csv");
+
+        BufferedToCsv h = new BufferedToCsv(file);
+        h.handle(0L, "t", "a");
+        h.close();
+        h.handle(0L, "t", "b");
+        h.close();
+
+        assertEquals(1, read(file).size());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static String line(long timestamp, Object payload) {
+
+        return new TimestampFormatter(TimeZone.getDefault()).format(timestamp) + ", t, " + payload;
+    }
+
+    private static List<String> read(File f) throws Exception {
+
+        return Files.readAllLines(f.toPath(), StandardCharsets.UTF_8);
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,273 @@
+package io.novaordis.utilities.ac.handler;
+
+import io.novaordis.utilities.ac.Collected;
+import io.novaordis.utilities.ac.Collector;
+import io.novaordis.utilities.ac.CollectorFactory;
+import io.novaordis.utilities.ac.PayloadSerializer;
+import io.novaordis.utilities.ac.PayloadSerializers;
+import io.novaordis.utilities.testing.Tests;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JournalHandlerTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = Logger.getLogger(JournalHandlerTest.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @After
+    public void scratchCleanup() throws Exception {
+
+        Tests.cleanup();
+    }
+
+    @Test
+    public void constructor_InvalidArguments() throws Exception {
+
+        File dir = new File(Tests.getScratchDir(), "journal");
+        PayloadSerializer s = PayloadSerializers.toStringSerializer();
+
+        try {
+
+            new JournalHandler(null);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+
+        try {
+
+            new JournalHandler(dir, "", 1024, s);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+
+        try {
+
+            new JournalHandler(dir, "j", JournalFormat.HEADER_LENGTH, s);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+
+        try {
+
+            new JournalHandler(dir, "j", 1024, null);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void writeAndReadBack() throws Exception {
+
+        File dir = new File(Tests.getScratchDir(), "journal");
+
+        JournalHandler h = new JournalHandler(dir);
+
+        assertTrue(dir.isDirectory());
+        assertEquals(new File(dir, "journal-0000000000.journal"), h.getCurrentSegment());
+
+        h.handle(1L, "thread-1", "a");
+        h.handleBatch(Arrays.asList(
+                new Collected(2L, "thread-2", 7), new Collected(3L, "thread-1", null), new Collected(4L, null, "d")));
+        h.close();
+
+        assertEquals(4L, h.getWrittenCount());
+        assertEquals(0L, h.getFailedCount());
+        assertNull(h.getCurrentSegment());
+
+        List<Collected> events = readAll(new JournalReader(dir).iterator());
+
+        assertEquals(4, events.size());
+        assertEvent(events.get(0), 1L, "thread-1", "a");
+        assertEvent(events.get(1), 2L, "thread-2", "7");
+        assertEvent(events.get(2), 3L, "thread-1", null);
+        assertEvent(events.get(3), 4L, null, "d");
+    }
+
+    @Test
+    public void javaSerializer() throws Exception {
+
+        File dir = new File(Tests.getScratchDir(), "journal");
+        PayloadSerializer s = PayloadSerializers.javaSerializer();
+
+        JournalHandler h = new JournalHandler(dir, "j", 4096, s);
+        h.handle(1L, "t", Arrays.asList(1, 2));
+        h.handle(2L, "t", new Object());
+        h.close();
+
+        assertEquals(1L, h.getWrittenCount());
+        assertEquals(1L, h.getFailedCount());
+
+        List<Collected> events = readAll(new JournalReader(dir, "j", s).iterator());
+
+        assertEquals(1, events.size());
+        assertEquals(Arrays.asList(1, 2), events.get(0).getPayload());
+    }
+
+    @Test
+    public void segmentRollOver() throws Exception {
+
+        File dir = new File(Tests.getScratchDir(), "journal");
+
+        // header 24, thread record 4 + 1 + 2 + 1 = 8, event record 4 + 1 + 8 + 2 + 1 + 3 = 19
+        JournalHandler h = new JournalHandler(dir, "j", 24 + 8 + 19 * 3, PayloadSerializers.toStringSerializer());
+
+        for(int i = 0; i < 10; i ++) {
+
+            h.handle(i, "t", "e" + i);
+        }
+
+        h.close();
+
+        JournalReader r = new JournalReader(dir, "j", PayloadSerializers.toStringSerializer());
+
+        // 3 events per segment, and the thread name is redefined in each segment
+        assertEquals(4, r.getSegments().size());
+
+        List<Collected> events = readAll(r.iterator());
+
+        assertEquals(10, events.size());
+
+        for(int i = 0; i < 10; i ++) {
+
+            assertEvent(events.get(i), i, "t", "e" + i);
+        }
+    }
+
+    @Test
+    public void payloadLargerThanSegment() throws Exception {
+
+        File dir = new File(Tests.getScratchDir(), "journal");
+
+        JournalHandler h = new JournalHandler(dir, "j", 128, PayloadSerializers.toStringSerializer());
+
+        char[] large = new char[200];
+        Arrays.fill(large, 'x');
+
+        h.handle(1L, "t", new String(large));
+        h.handle(2L, "t", "small");
+        h.close();
+
+        assertEquals(1L, h.getWrittenCount());
+        assertEquals(1L, h.getFailedCount());
+
+        JournalReader r = new JournalReader(dir, "j", PayloadSerializers.toStringSerializer());
+        List<Collected> events = readAll(r.iterator());
+        assertEquals(1, events.size());
+        assertEvent(events.get(0), 2L, "t", "small");
+    }
+
+    @Test
+    public void newHandlerAppendsNewSegment() throws Exception {
+
+        File dir = new File(Tests.getScratchDir(), "journal");
+
+        JournalHandler h = new JournalHandler(dir);
+        h.handle(1L, "t", "a");
+        h.close();
+
+        JournalHandler h2 = new JournalHandler(dir);
+        assertEquals(new File(dir, "journal-0000000001.journal"), h2.getCurrentSegment());
+        h2.handle(2L, "t", "b");
+        h2.close();
+
+        List<Collected> events = readAll(new JournalReader(dir).iterator());
+
+        assertEquals(2, events.size());
+        assertEvent(events.get(0), 1L, "t", "a");
+        assertEvent(events.get(1), 2L, "t", "b");
+    }
+
+    @Test
+    public void withCollector() throws Exception {
+
+        File dir = new File(Tests.getScratchDir(), "journal");
+
+        JournalHandler h = new JournalHandler(dir);
+
+        Collector c = CollectorFactory.getInstance("journal");
+        c.registerHandler(h);
+
+        for(int i = 0; i < 1000; i ++) {
+
+            c.handOver(i);
+        }
+
+        while(h.getWrittenCount() < 1000) {
+
+            Thread.sleep(10L);
+        }
+
+        c.dispose();
+
+        List<Collected> events = readAll(new JournalReader(dir).iterator());
+
+        assertEquals(1000, events.size());
+
+        for(int i = 0; i < 1000; i ++) {
+
+            assertEquals(Integer.toString(i), events.get(i).getPayload());
+            assertEquals(Thread.currentThread().getName(), events.get(i).getThreadName());
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    static List<Collected> readAll(Iterator<Collected> i) {
+
+        List<Collected> result = new ArrayList<>();
+
+        while(i.hasNext()) {
+
+            result.add(i.next());
+        }
+
+        return result;
+    }
+
+    static void assertEvent(Collected c, long timestamp, String threadName, Object payload) {
+
+        assertEquals(timestamp, c.getTimeStamp());
+        assertEquals(threadName, c.getThreadName());
+        assertEquals(payload, c.getPayload());
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
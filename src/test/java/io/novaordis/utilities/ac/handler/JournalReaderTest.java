@@ -0,0 +1,177 @@
+package io.novaordis.utilities.ac.handler;
+
+import io.novaordis.utilities.ac.Collected;
+import io.novaordis.utilities.ac.PayloadSerializer;
+import io.novaordis.utilities.ac.PayloadSerializers;
+import io.novaordis.utilities.testing.Tests;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static io.novaordis.utilities.ac.handler.JournalHandlerTest.assertEvent;
+import static io.novaordis.utilities.ac.handler.JournalHandlerTest.readAll;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JournalReaderTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = Logger.getLogger(JournalReaderTest.class);
+
+    private static final PayloadSerializer SERIALIZER = PayloadSerializers.toStringSerializer();
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @After
+    public void scratchCleanup() throws Exception {
+
+        Tests.cleanup();
+    }
+
+    @Test
+    public void noJournal() throws Exception {
+
+        JournalReader r = new JournalReader(new File(Tests.getScratchDir(), "no-such-directory"));
+
+        assertTrue(r.getSegments().isEmpty());
+
+        Iterator<Collected> i = r.iterator();
+        assertFalse(i.hasNext());
+
+        try {
+
+            i.next();
+            fail("should have thrown exception");
+        }
+        catch(NoSuchElementException e) {
+
+            log.info("" + e);
+        }
+    }
+
+    @Test
+    public void invalidRange() throws Exception {
+
+        try {
+
+            new JournalReader(Tests.getScratchDir()).iterator(10L, 9L);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            log.info(e.getMessage());
+        }
+    }
+
+    @Test
+    public void timestampRange() throws Exception {
+
+        File dir = new File(Tests.getScratchDir(), "journal");
+
+        // three events per segment
+        JournalHandler h = new JournalHandler(dir, "j", 24 + 8 + 20 * 3, SERIALIZER);
+
+        for(int i = 0; i < 30; i ++) {
+
+            h.handle(100L + i, "t", "e" + i);
+        }
+
+        h.close();
+
+        JournalReader r = new JournalReader(dir, "j", SERIALIZER);
+        assertEquals(10, r.getSegments().size());
+
+        List<Collected> events = readAll(r.iterator(110L, 115L));
+
+        assertEquals(5, events.size());
+
+        for(int i = 0; i < 5; i ++) {
+
+            assertEvent(events.get(i), 110L + i, "t", "e" + (10 + i));
+        }
+
+        assertEquals(30, readAll(r.iterator(Long.MIN_VALUE, Long.MAX_VALUE)).size());
+        assertEquals(0, readAll(r.iterator(0L, 100L)).size());
+        assertEquals(0, readAll(r.iterator(130L, 200L)).size());
+        assertEquals(1, readAll(r.iterator(129L, 200L)).size());
+    }
+
+    @Test
+    public void corruptedSegment() throws Exception {
+
+        File dir = new File(Tests.getScratchDir(), "journal");
+
+        JournalHandler h = new JournalHandler(dir, "j", 24 + 8 + 20 * 3, SERIALIZER);
+
+        for(int i = 0; i < 6; i ++) {
+
+            h.handle(i, "t", "e" + i);
+        }
+
+        h.close();
+
+        JournalReader r = new JournalReader(dir, "j", SERIALIZER);
+        List<File> segments = r.getSegments();
+        assertEquals(2, segments.size());
+
+        // corrupt the length of the second event of the first segment
+        try (RandomAccessFile f = new RandomAccessFile(segments.get(0), "rw")) {
+
+            f.seek(24 + 8 + 20);
+            f.writeInt(-5);
+        }
+
+        List<Collected> events = readAll(r.iterator());
+
+        // the first event of the corrupted segment, then the next segment
+        assertEquals(4, events.size());
+        assertEvent(events.get(0), 0L, "t", "e0");
+        assertEvent(events.get(1), 3L, "t", "e3");
+        assertEvent(events.get(3), 5L, "t", "e5");
+    }
+
+    @Test
+    public void notASegment() throws Exception {
+
+        File dir = new File(Tests.getScratchDir(), "journal");
+
+        JournalHandler h = new JournalHandler(dir, "j", 1024, SERIALIZER);
+        h.handle(1L, "t", "a");
+        h.close();
+
+        Tests.createFile("journal/j-0000000007.journal", "this is not a journal segment");
+        Tests.createFile("journal/unrelated.txt", "");
+
+        JournalReader r = new JournalReader(dir, "j", SERIALIZER);
+        assertEquals(2, r.getSegments().size());
+
+        List<Collected> events = readAll(r.iterator());
+
+        assertEquals(1, events.size());
+        assertEvent(events.get(0), 1L, "t", "a");
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
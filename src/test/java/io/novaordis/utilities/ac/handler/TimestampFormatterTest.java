@@ -0,0 +1,102 @@
+package io.novaordis.utilities.ac.handler;
+
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimestampFormatterTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = Logger.getLogger(TimestampFormatterTest.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void sameOutputAsSimpleDateFormat() throws Exception {
+
+        SimpleDateFormat reference = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss.SSS");
+        TimestampFormatter f = new TimestampFormatter();
+
+        long t = System.currentTimeMillis();
+
+        // cross a few second and minute boundaries, going both forward and backward
+        long[] timestamps = { t, t + 1, t + 999, t + 1000, t - 1, t + 61001, t - 3600000, 0L, 1L, 999L, 1000L };
+
+        for(long ts: timestamps) {
+
+            assertEquals(reference.format(ts), f.format(ts));
+        }
+
+        for(long ts = t; ts < t + 5000; ts += 7) {
+
+            assertEquals(reference.format(ts), f.format(ts));
+        }
+    }
+
+    @Test
+    public void timeZone() throws Exception {
+
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        TimestampFormatter f = new TimestampFormatter(utc);
+
+        assertEquals("1970/01/01 00:00:00.000", f.format(0L));
+        assertEquals("2016/02/29 23:59:59.999", f.format(1456790399999L));
+        assertEquals("2016/03/01 00:00:00.000", f.format(1456790400000L));
+    }
+
+    @Test
+    public void formatIntoByteArray() throws Exception {
+
+        TimestampFormatter f = new TimestampFormatter(TimeZone.getTimeZone("UTC"));
+
+        byte[] destination = new byte[TimestampFormatter.LENGTH + 2];
+        destination[0] = 'x';
+
+        int end = f.format(1456790400123L, destination, 1);
+
+        assertEquals(1 + TimestampFormatter.LENGTH, end);
+        assertEquals('x', destination[0]);
+        assertEquals("2016/03/01 00:00:00.123", new String(destination, 1, end - 1, StandardCharsets.US_ASCII));
+        assertEquals(0, destination[TimestampFormatter.LENGTH + 1]);
+    }
+
+    @Test
+    public void formatIntoByteBuffer() throws Exception {
+
+        TimestampFormatter f = new TimestampFormatter(TimeZone.getTimeZone("UTC"));
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+        f.format(1456790400123L, buffer);
+        f.format(1456790400124L, buffer);
+
+        assertEquals(2 * TimestampFormatter.LENGTH, buffer.position());
+
+        buffer.flip();
+        byte[] content = new byte[buffer.remaining()];
+        buffer.get(content);
+
+        assertEquals("2016/03/01 00:00:00.1232016/03/01 00:00:00.124", new String(content, StandardCharsets.US_ASCII));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2016 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.utilities.ac.mock;
+
+import io.novaordis.utilities.ac.BatchHandler;
+import io.novaordis.utilities.ac.Collected;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the batches it receives. The Collected instances are copied, as the collector may reuse them.
+ */
+public class MockBatchHandler extends MockHandler implements BatchHandler {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final List<List<Collected>> batches;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public MockBatchHandler() {
+
+        this.batches = new ArrayList<>();
+    }
+
+    // BatchHandler interface ------------------------------------------------------------------------------------------
+
+    @Override
+    public synchronized void handleBatch(List<Collected> batch) {
+
+        List<Collected> copy = new ArrayList<>();
+
+        for(Collected c: batch) {
+
+            copy.add(new Collected(c.getTimeStamp(), c.getThreadName(), c.getPayload()));
+        }
+
+        batches.add(copy);
+        getReceived().addAll(copy);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public synchronized List<List<Collected>> getBatches() {
+
+        return new ArrayList<>(batches);
+    }
+
+    public synchronized int getReceivedCount() {
+
+        return getReceived().size();
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,119 @@
+package io.novaordis.utilities.ac.mock;
+
+import io.novaordis.utilities.ac.PrimitiveHandler;
+
+/**
+ * Records the samples it receives in pre-allocated arrays, so it does not allocate while handling them. Samples that
+ * do not fit are only counted.
+ */
+public class MockPrimitiveHandler extends MockHandler implements PrimitiveHandler {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final long[] timestamps;
+    private final long[] threadIds;
+    private final int[] keys;
+    private final long[] longValues;
+    private final double[] doubleValues;
+    private final boolean[] doubles;
+
+    private volatile int count;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public MockPrimitiveHandler(int capacity) {
+
+        this.timestamps = new long[capacity];
+        this.threadIds = new long[capacity];
+        this.keys = new int[capacity];
+        this.longValues = new long[capacity];
+        this.doubleValues = new double[capacity];
+        this.doubles = new boolean[capacity];
+    }
+
+    // PrimitiveHandler interface --------------------------------------------------------------------------------------
+
+    @Override
+    public synchronized void handleLong(long timestamp, long threadId, int key, long value) {
+
+        int i = count;
+
+        if (i < keys.length) {
+
+            timestamps[i] = timestamp;
+            threadIds[i] = threadId;
+            keys[i] = key;
+            longValues[i] = value;
+            doubles[i] = false;
+        }
+
+        count = i + 1;
+    }
+
+    @Override
+    public synchronized void handleDouble(long timestamp, long threadId, int key, double value) {
+
+        int i = count;
+
+        if (i < keys.length) {
+
+            timestamps[i] = timestamp;
+            threadIds[i] = threadId;
+            keys[i] = key;
+            doubleValues[i] = value;
+            doubles[i] = true;
+        }
+
+        count = i + 1;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public int getCount() {
+
+        return count;
+    }
+
+    public synchronized long getTimestamp(int i) {
+
+        return timestamps[i];
+    }
+
+    public synchronized long getThreadId(int i) {
+
+        return threadIds[i];
+    }
+
+    public synchronized int getKey(int i) {
+
+        return keys[i];
+    }
+
+    public synchronized long getLongValue(int i) {
+
+        return longValues[i];
+    }
+
+    public synchronized double getDoubleValue(int i) {
+
+        return doubleValues[i];
+    }
+
+    public synchronized boolean isDouble(int i) {
+
+        return doubles[i];
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2016 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.utilities.ac.mock;
+
+import io.novaordis.utilities.ac.TypedHandler;
+
+/**
+ * Counts the canHandle() invocations, which are not supposed to happen on the dispatching path.
+ */
+public class MockTypedHandler extends MockHandler implements TypedHandler {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private Class<?>[] acceptedTypes;
+    private int canHandleInvocations;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public MockTypedHandler(Class<?>... acceptedTypes) {
+
+        this.acceptedTypes = acceptedTypes;
+    }
+
+    // TypedHandler interface ------------------------------------------------------------------------------------------
+
+    @Override
+    public Class<?>[] getAcceptedTypes() {
+
+        return acceptedTypes;
+    }
+
+    @Override
+    public boolean canHandle(Object o) {
+
+        canHandleInvocations ++;
+        return super.canHandle(o);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public int getCanHandleInvocations() {
+
+        return canHandleInvocations;
+    }
+
+    // Package Protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -3,6 +3,16 @@ package io.novaordis.utilities.crawler;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 /**
  * @author <a href="mailto:ovidiu@feodorov.com">Ovidiu Feodorov</a>
  *
@@ -129,6 +139,411 @@ public class CrawlerTest extends Assert
     }
 
 
+    @Test
+    public void testINORDER() throws Exception
+    {
+        SingleThreadedCrawler c = new SingleThreadedCrawler(Crawler.INORDER);
+
+        Node root = Util.build3By3();
+
+        IDRecorder recorder = new IDRecorder();
+
+        assertSame(recorder, c.crawl(root, recorder));
+
+        // first child subtree, then the frame, then the remaining children subtrees
+        assertEquals("4,1,5,6,0,7,2,8,9,10,3,11,12,", recorder.toString());
+    }
+
+    @Test
+    public void testLEVELORDER() throws Exception
+    {
+        SingleThreadedCrawler c = new SingleThreadedCrawler(Crawler.BREADTH_FIRST);
+
+        assertEquals(Crawler.LEVELORDER, c.getVisitingOrder());
+
+        Node root = Util.build3By3();
+
+        IDRecorder recorder = new IDRecorder();
+
+        c.crawl(root, recorder);
+
+        assertEquals("0,1,2,3,4,5,6,7,8,9,10,11,12,", recorder.toString());
+    }
+
+    @Test
+    public void testSingleFrame() throws Exception
+    {
+        byte[] orders = { Crawler.PREORDER, Crawler.INORDER, Crawler.POSTORDER, Crawler.LEVELORDER };
+
+        for(byte order: orders)
+        {
+            IDRecorder recorder = new IDRecorder();
+
+            new SingleThreadedCrawler(order).crawl(new Node("0", 1), recorder);
+
+            assertEquals("0,", recorder.toString());
+        }
+    }
+
+    @Test
+    public void testDeepTreeDoesNotOverflowTheStack() throws Exception
+    {
+        int depth = 500000;
+
+        // a chain, grown iteratively
+        Node root = new Node(1);
+        Node current = root;
+
+        for(int i = 2; i <= depth; i ++)
+        {
+            Node child = new Node(i);
+            current.add(child);
+            current = child;
+        }
+
+        byte[] orders = { Crawler.PREORDER, Crawler.INORDER, Crawler.POSTORDER, Crawler.LEVELORDER };
+
+        for(byte order: orders)
+        {
+            Counter counter = new Counter();
+
+            new SingleThreadedCrawler(order).crawl(root, counter);
+
+            assertEquals(depth, counter.getCounter());
+        }
+    }
+
+    @Test
+    public void testIterator() throws Exception
+    {
+        SingleThreadedCrawler c = new SingleThreadedCrawler(Crawler.POSTORDER);
+
+        Iterator<Frame> i = c.iterator(Util.build3By3());
+
+        StringBuilder sb = new StringBuilder();
+
+        while(i.hasNext())
+        {
+            sb.append(((Node)i.next()).getID()).append(',');
+        }
+
+        assertEquals("4,5,6,1,7,8,9,2,10,11,12,3,0,", sb.toString());
+
+        try
+        {
+            i.next();
+            fail("should have thrown exception");
+        }
+        catch(NoSuchElementException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testIterator_PREORDER_ChildrenAreRequestedAfterTheFrameIsReturned() throws Exception
+    {
+        final List<String> events = new ArrayList<String>();
+
+        Node root = new Node("0", 1)
+        {
+            @Override
+            public List<Frame> children()
+            {
+                events.add("children");
+                return super.children();
+            }
+        };
+
+        root.add(new Node("1", 2));
+
+        Iterator<Frame> i = new SingleThreadedCrawler().iterator(root);
+
+        assertSame(root, i.next());
+        assertTrue(events.isEmpty());
+
+        assertEquals("1", ((Node)i.next()).getID());
+        assertEquals(1, events.size());
+        assertFalse(i.hasNext());
+    }
+
+    @Test
+    public void testStream() throws Exception
+    {
+        SingleThreadedCrawler c = new SingleThreadedCrawler(Crawler.LEVELORDER);
+
+        List<String> ids = c.stream(Util.build3By3()).
+            map(f -> ((Node)f).getID()).
+            filter(id -> id.length() == 1).
+            limit(4).
+            collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("0", "1", "2", "3"), ids);
+
+        // the stream is lazy: the tree is not walked beyond the frames that are consumed
+        final List<String> visited = new ArrayList<String>();
+        Node root = Util.build3By3();
+        c.stream(root).peek(f -> visited.add(((Node)f).getID())).findFirst();
+        assertEquals(Collections.singletonList("0"), visited);
+    }
+
+    @Test
+    public void testIterator_NullRoot() throws Exception
+    {
+        try
+        {
+            new SingleThreadedCrawler().iterator(null);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testClosableChildrenIteratorsAreClosed() throws Exception
+    {
+        final List<String> closed = new ArrayList<String>();
+
+        Node root = new ClosingNode("0", closed);
+        Node n1 = new ClosingNode("1", closed);
+        root.add(n1);
+        n1.add(new ClosingNode("2", closed));
+        root.add(new ClosingNode("3", closed));
+
+        new SingleThreadedCrawler(Crawler.POSTORDER).crawl(root, new IDRecorder());
+
+        assertEquals(Arrays.asList("2", "1", "3", "0"), closed);
+
+        // an abandoned stream closes the iterators on the current path
+        closed.clear();
+
+        try(Stream<Frame> s = new SingleThreadedCrawler().stream(root))
+        {
+            assertEquals("2", ((Node)s.skip(2).findFirst().get()).getID());
+        }
+
+        assertTrue(closed.contains("0"));
+        assertTrue(closed.contains("1"));
+
+        // a failed crawl closes the iterators on the current path
+        closed.clear();
+
+        try
+        {
+            new SingleThreadedCrawler().crawl(root, new Collector()
+            {
+                public void collect(Frame frame) throws Exception
+                {
+                    if ("2".equals(((Node)frame).getID()))
+                    {
+                        throw new Exception("SYNTHETIC");
+                    }
+                }
+            });
+
+            fail("should have thrown exception");
+        }
+        catch(Exception e)
+        {
+            assertEquals("SYNTHETIC", e.getMessage());
+        }
+
+        assertTrue(closed.contains("0"));
+        assertTrue(closed.contains("1"));
+    }
+
+    @Test
+    public void testFilter_PrunedSubtreesAreNotTouched() throws Exception
+    {
+        Node root = Util.build3By3();
+        root.add(new UntouchableNode("13"));
+
+        byte[] orders = { Crawler.PREORDER, Crawler.INORDER, Crawler.POSTORDER, Crawler.LEVELORDER };
+        String[] expected =
+        {
+            "0,1,4,5,6,3,10,11,12,",
+            "4,1,5,6,0,10,3,11,12,",
+            "4,5,6,1,10,11,12,3,0,",
+            "0,1,3,4,5,6,10,11,12,",
+        };
+
+        for(int i = 0; i < orders.length; i ++)
+        {
+            SingleThreadedCrawler c = new SingleThreadedCrawler(orders[i]);
+            c.setFilter(f -> !"2".equals(((Node)f).getID()) && !"13".equals(((Node)f).getID()));
+
+            IDRecorder recorder = new IDRecorder();
+            c.crawl(root, recorder);
+            assertEquals(expected[i], recorder.toString());
+        }
+    }
+
+    @Test
+    public void testFilter_RootIsFiltered() throws Exception
+    {
+        SingleThreadedCrawler c = new SingleThreadedCrawler();
+        c.setFilter(f -> false);
+
+        IDRecorder recorder = new IDRecorder();
+        assertSame(recorder, c.crawl(Util.build3By3(), recorder));
+        assertEquals("", recorder.toString());
+        assertFalse(c.iterator(Util.build3By3()).hasNext());
+    }
+
+    @Test
+    public void testMaxDepth() throws Exception
+    {
+        // the children of the frames at the maximum depth are not requested
+        Node root = new Node("0", 1);
+        root.add(new UntouchableNode("1"));
+        root.add(new UntouchableNode("2"));
+
+        byte[] orders = { Crawler.PREORDER, Crawler.INORDER, Crawler.POSTORDER, Crawler.LEVELORDER };
+        String[] expected = { "0,1,2,", "1,0,2,", "1,2,0,", "0,1,2," };
+
+        for(int i = 0; i < orders.length; i ++)
+        {
+            SingleThreadedCrawler c = new SingleThreadedCrawler(orders[i]);
+            assertEquals(Crawler.UNLIMITED_DEPTH, c.getMaxDepth());
+            c.setMaxDepth(1);
+
+            IDRecorder recorder = new IDRecorder();
+            c.crawl(root, recorder);
+            assertEquals(expected[i], recorder.toString());
+
+            c.setMaxDepth(0);
+            recorder = new IDRecorder();
+            c.crawl(root, recorder);
+            assertEquals("0,", recorder.toString());
+        }
+
+        try
+        {
+            new SingleThreadedCrawler().setMaxDepth(-1);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testVisitor_SKIP_SUBTREE() throws Exception
+    {
+        byte[] orders = { Crawler.PREORDER, Crawler.INORDER, Crawler.POSTORDER, Crawler.LEVELORDER };
+        String[] expected =
+        {
+            "0,1,2,7,8,9,3,10,11,12,",
+            "4,1,0,7,2,8,9,10,3,11,12,",
+            "4,5,6,1,7,8,9,2,10,11,12,3,0,",
+            "0,1,2,3,7,8,9,10,11,12,",
+        };
+
+        for(int i = 0; i < orders.length; i ++)
+        {
+            Node root = Util.build3By3();
+
+            // the first child of "1" was already visited in INORDER, its other children are skipped
+            if (orders[i] == Crawler.PREORDER || orders[i] == Crawler.LEVELORDER)
+            {
+                ((Node)root.children().get(0)).children().set(0, new UntouchableNode("4"));
+            }
+
+            RecordingVisitor v = new RecordingVisitor("1", VisitResult.SKIP_SUBTREE);
+            assertSame(v, new SingleThreadedCrawler(orders[i]).crawl(root, v));
+            assertEquals(expected[i], v.toString());
+        }
+    }
+
+    @Test
+    public void testVisitor_TERMINATE() throws Exception
+    {
+        byte[] orders = { Crawler.PREORDER, Crawler.INORDER, Crawler.POSTORDER, Crawler.LEVELORDER };
+        String[] expected = { "0,1,4,5,", "4,1,5,", "4,5,", "0,1,2,3,4,5," };
+
+        for(int i = 0; i < orders.length; i ++)
+        {
+            RecordingVisitor v = new RecordingVisitor("5", VisitResult.TERMINATE);
+            new SingleThreadedCrawler(orders[i]).crawl(Util.build3By3(), v);
+            assertEquals(expected[i], v.toString());
+        }
+    }
+
+    @Test
+    public void testVisitor_FrameUseIsNotCalled() throws Exception
+    {
+        Node root = new Node("0", 1)
+        {
+            @Override
+            public Collector use(Collector in) throws Exception
+            {
+                throw new Exception("should not be called");
+            }
+        };
+
+        RecordingVisitor v = new RecordingVisitor(null, null);
+        new SingleThreadedCrawler().crawl(root, v);
+        assertEquals("0,", v.toString());
+    }
+
+    @Test
+    public void testDefaultFilterAndMaxDepth() throws Exception
+    {
+        // a crawler written against the original interface
+        Crawler crawler = new Crawler()
+        {
+            public Collector crawl(Frame frame, Collector in) throws Exception
+            {
+                return frame.use(in);
+            }
+
+            public byte getVisitingOrder()
+            {
+                return PREORDER;
+            }
+        };
+
+        assertNull(crawler.getFilter());
+        assertEquals(Crawler.UNLIMITED_DEPTH, crawler.getMaxDepth());
+
+        // the values that keep the crawl unrestricted are accepted
+        crawler.setFilter(null);
+        crawler.setMaxDepth(Crawler.UNLIMITED_DEPTH);
+
+        try
+        {
+            crawler.setFilter(f -> true);
+            fail("should have thrown exception");
+        }
+        catch(UnsupportedOperationException e)
+        {
+            // ok
+        }
+
+        try
+        {
+            crawler.setMaxDepth(1);
+            fail("should have thrown exception");
+        }
+        catch(UnsupportedOperationException e)
+        {
+            // ok
+        }
+
+        try
+        {
+            crawler.setMaxDepth(-1);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e)
+        {
+            // ok
+        }
+    }
+
     // Package protected ---------------------------------------------------------------------------
 
     // Protected -----------------------------------------------------------------------------------
@@ -152,6 +567,120 @@ public class CrawlerTest extends Assert
         }
     }
 
+    private class ClosingNode extends Node
+    {
+        private final List<String> closed;
+
+        ClosingNode(String id, List<String> closed)
+        {
+            super(id, 1);
+            this.closed = closed;
+        }
+
+        @Override
+        public Iterable<Frame> lazyChildren()
+        {
+            return new Iterable<Frame>()
+            {
+                public Iterator<Frame> iterator()
+                {
+                    return new ClosingIterator(children().iterator(), getID(), closed);
+                }
+            };
+        }
+    }
+
+    private static class ClosingIterator implements Iterator<Frame>, Closeable
+    {
+        private final Iterator<Frame> delegate;
+        private final String id;
+        private final List<String> closed;
+
+        ClosingIterator(Iterator<Frame> delegate, String id, List<String> closed)
+        {
+            this.delegate = delegate;
+            this.id = id;
+            this.closed = closed;
+        }
+
+        public boolean hasNext()
+        {
+            return delegate.hasNext();
+        }
+
+        public Frame next()
+        {
+            return delegate.next();
+        }
+
+        public void close()
+        {
+            closed.add(id);
+        }
+    }
+
+    /**
+     * A frame whose children must not be requested.
+     */
+    private class UntouchableNode extends Node
+    {
+        UntouchableNode(String id)
+        {
+            super(id, 1);
+        }
+
+        @Override
+        public List<Frame> children()
+        {
+            throw new IllegalStateException("children of " + getID() + " should not be requested");
+        }
+    }
+
+    /**
+     * Returns the given result when visiting the given frame, CONTINUE otherwise.
+     */
+    private class RecordingVisitor implements Visitor
+    {
+        private final String id;
+        private final VisitResult result;
+        private final StringBuilder sb = new StringBuilder();
+
+        RecordingVisitor(String id, VisitResult result)
+        {
+            this.id = id;
+            this.result = result;
+        }
+
+        public VisitResult visit(Frame frame) throws Exception
+        {
+            String frameId = ((Node)frame).getID();
+            sb.append(frameId).append(',');
+            return frameId.equals(id) ? result : VisitResult.CONTINUE;
+        }
+
+        @Override
+        public String toString()
+        {
+            return sb.toString();
+        }
+    }
+
+    private class IDRecorder implements Collector
+    {
+        private StringBuilder sb = new StringBuilder();
+
+        public void collect(Frame frame) throws Exception
+        {
+            sb.append(((Node)frame).getID()).append(',');
+        }
+
+        @Override
+        public String toString()
+        {
+            return sb.toString();
+        }
+    }
+
     private class DepthGauge implements Collector
     {
         int depth = 0;
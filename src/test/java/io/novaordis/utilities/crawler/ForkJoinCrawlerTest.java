@@ -0,0 +1,309 @@
+package io.novaordis.utilities.crawler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ForkJoinCrawlerTest extends Assert
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    // Static --------------------------------------------------------------------------------------
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    // Constructors --------------------------------------------------------------------------------
+
+    // Public --------------------------------------------------------------------------------------
+
+    @Test
+    public void testInvalidVisitingOrder() throws Exception
+    {
+        try
+        {
+            new ForkJoinCrawler(Crawler.LEVELORDER);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e)
+        {
+            // expected
+        }
+
+        try
+        {
+            new ForkJoinCrawler(Crawler.PREORDER, 0);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDefaults() throws Exception
+    {
+        ForkJoinCrawler c = new ForkJoinCrawler();
+
+        assertEquals(Crawler.PREORDER, c.getVisitingOrder());
+        assertEquals(Runtime.getRuntime().availableProcessors(), c.getParallelism());
+
+        c.shutdown();
+    }
+
+    @Test
+    public void testCount() throws Exception
+    {
+        ForkJoinCrawler crawler = new ForkJoinCrawler(Crawler.PREORDER, 4);
+
+        Node root = Util.grow(new Node(), 3, 7);
+
+        Counter counter = new Counter();
+
+        assertSame(counter, crawler.crawl(root, counter));
+
+        // 1 + 3 + 9 + ... + 3^6
+        assertEquals(1093, counter.get());
+
+        crawler.shutdown();
+    }
+
+    @Test
+    public void testPREORDER_ParentBeforeChildren() throws Exception
+    {
+        ForkJoinCrawler crawler = new ForkJoinCrawler(Crawler.PREORDER, 4);
+
+        Node root = Util.grow(new Node(), 4, 6);
+
+        final Set<Frame> visited = ConcurrentHashMap.newKeySet();
+        final AtomicInteger violations = new AtomicInteger();
+
+        crawler.crawl(root, new Collector()
+        {
+            public void collect(Frame frame) throws Exception
+            {
+                for(Frame child: frame.children())
+                {
+                    if (visited.contains(child))
+                    {
+                        violations.incrementAndGet();
+                    }
+                }
+
+                visited.add(frame);
+            }
+        });
+
+        assertEquals(1365, visited.size());
+        assertEquals(0, violations.get());
+
+        crawler.shutdown();
+    }
+
+    @Test
+    public void testPOSTORDER_ChildrenBeforeParent() throws Exception
+    {
+        ForkJoinCrawler crawler = new ForkJoinCrawler(Crawler.POSTORDER, 4);
+
+        Node root = Util.grow(new Node(), 4, 6);
+
+        final Set<Frame> visited = ConcurrentHashMap.newKeySet();
+        final AtomicInteger violations = new AtomicInteger();
+
+        crawler.crawl(root, new Collector()
+        {
+            public void collect(Frame frame) throws Exception
+            {
+                for(Frame child: frame.children())
+                {
+                    if (!visited.contains(child))
+                    {
+                        violations.incrementAndGet();
+                    }
+                }
+
+                visited.add(frame);
+            }
+        });
+
+        assertEquals(1365, visited.size());
+        assertEquals(0, violations.get());
+
+        crawler.shutdown();
+    }
+
+    @Test
+    public void testPOSTORDER_FailureIsPropagatedAndAncestorsAreNotUsed() throws Exception
+    {
+        ForkJoinCrawler crawler = new ForkJoinCrawler(Crawler.POSTORDER, 4);
+
+        Node root = Util.build3By3();
+        final Set<String> visited = ConcurrentHashMap.newKeySet();
+
+        try
+        {
+            crawler.crawl(root, new Collector()
+            {
+                public void collect(Frame frame) throws Exception
+                {
+                    String id = ((Node)frame).getID();
+
+                    if ("5".equals(id))
+                    {
+                        throw new Exception("SYNTHETIC " + id);
+                    }
+
+                    visited.add(id);
+                }
+            });
+
+            fail("should have thrown exception");
+        }
+        catch(Exception e)
+        {
+            assertEquals("SYNTHETIC 5", e.getMessage());
+        }
+
+        assertFalse(visited.contains("1"));
+        assertFalse(visited.contains("0"));
+
+        crawler.shutdown();
+    }
+
+    @Test
+    public void testSameResultAsSingleThreadedCrawler() throws Exception
+    {
+        Node root = Util.grow(new Node(), 2, 10);
+
+        DepthSum expected = new DepthSum();
+        new SingleThreadedCrawler(Crawler.POSTORDER).crawl(root, expected);
+
+        ForkJoinCrawler crawler = new ForkJoinCrawler(Crawler.POSTORDER, 3);
+        DepthSum actual = new DepthSum();
+        crawler.crawl(root, actual);
+
+        assertEquals(expected.get(), actual.get());
+
+        crawler.shutdown();
+    }
+
+    @Test
+    public void testFilterAndMaxDepth() throws Exception
+    {
+        ForkJoinCrawler crawler = new ForkJoinCrawler(Crawler.POSTORDER, 4);
+
+        Node root = Util.grow(new Node(), 3, 7);
+
+        // the frames at depth 4 are pruned, with their subtrees
+        crawler.setFilter(f -> ((Node)f).getDepth() != 4);
+        Counter counter = new Counter();
+        crawler.crawl(root, counter);
+        assertEquals(1 + 3 + 9, counter.get());
+
+        crawler.setFilter(null);
+        crawler.setMaxDepth(1);
+        counter = new Counter();
+        crawler.crawl(root, counter);
+        assertEquals(1 + 3, counter.get());
+
+        crawler.setFilter(f -> false);
+        counter = new Counter();
+        assertSame(counter, crawler.crawl(root, counter));
+        assertEquals(0, counter.get());
+
+        crawler.shutdown();
+    }
+
+    @Test
+    public void testVisitor_SKIP_SUBTREE() throws Exception
+    {
+        ForkJoinCrawler crawler = new ForkJoinCrawler(Crawler.PREORDER, 4);
+
+        Node root = Util.grow(new Node(), 3, 7);
+
+        final AtomicInteger visited = new AtomicInteger();
+
+        crawler.crawl(root, new Visitor()
+        {
+            public VisitResult visit(Frame frame) throws Exception
+            {
+                visited.incrementAndGet();
+                return ((Node)frame).getDepth() == 3 ? VisitResult.SKIP_SUBTREE : VisitResult.CONTINUE;
+            }
+        });
+
+        assertEquals(1 + 3 + 9, visited.get());
+
+        crawler.shutdown();
+    }
+
+    @Test
+    public void testVisitor_TERMINATE() throws Exception
+    {
+        ForkJoinCrawler crawler = new ForkJoinCrawler(Crawler.POSTORDER, 4);
+
+        Node root = Util.build3By3();
+        final Set<String> visited = ConcurrentHashMap.newKeySet();
+
+        Visitor v = new Visitor()
+        {
+            public VisitResult visit(Frame frame) throws Exception
+            {
+                String id = ((Node)frame).getID();
+                visited.add(id);
+                return "5".equals(id) ? VisitResult.TERMINATE : VisitResult.CONTINUE;
+            }
+        };
+
+        assertSame(v, crawler.crawl(root, v));
+
+        assertTrue(visited.contains("5"));
+
+        // the ancestors of the terminating frame are not visited
+        assertFalse(visited.contains("1"));
+        assertFalse(visited.contains("0"));
+
+        crawler.shutdown();
+    }
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    // Inner classes -------------------------------------------------------------------------------
+
+    private class Counter implements Collector
+    {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        public void collect(Frame frame) throws Exception
+        {
+            counter.incrementAndGet();
+        }
+
+        public int get()
+        {
+            return counter.get();
+        }
+    }
+
+    private class DepthSum implements Collector
+    {
+        private final AtomicInteger sum = new AtomicInteger();
+
+        public void collect(Frame frame) throws Exception
+        {
+            sum.addAndGet(((Node)frame).getDepth());
+        }
+
+        public int get()
+        {
+            return sum.get();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package io.novaordis.utilities.crawler.benchmark;
+
+import io.novaordis.utilities.Files;
+
+import java.io.File;
+
+/**
+ * Times the recursive delete of a generated directory tree with the single threaded crawler, and with the ForkJoin
+ * crawler at increasing parallelism levels. The tree is generated under the given directory, which must exist.
+ *
+ * Usage: RmdirBenchmark <directory> [directories] [files-per-directory]
+ */
+public class RmdirBenchmark
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    public static final int DEFAULT_DIRECTORIES = 1000;
+    public static final int DEFAULT_FILES_PER_DIRECTORY = 100;
+
+    // Static --------------------------------------------------------------------------------------
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length == 0)
+        {
+            System.err.println("Usage: RmdirBenchmark <directory> [directories] [files-per-directory]");
+            System.exit(1);
+        }
+
+        File base = new File(args[0]);
+        int directories = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_DIRECTORIES;
+        int files = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_FILES_PER_DIRECTORY;
+
+        System.out.println(directories + " directories, " + files + " files per directory");
+        System.out.println();
+        System.out.printf("%-14s %12s%n", "parallelism", "time (ms)");
+
+        int[] levels = { 0, 1, 2, 4, 8, 16, 32 };
+
+        for(int parallelism: levels)
+        {
+            File root = new File(base, "rmdir-benchmark");
+            generate(root, directories, files);
+
+            long t0 = System.nanoTime();
+
+            boolean success = parallelism == 0 ?
+                Files.rmdir(root, true) : Files.rmdir(root, true, parallelism);
+
+            long elapsed = (System.nanoTime() - t0) / 1000000L;
+
+            if (!success)
+            {
+                throw new IllegalStateException("failed to delete " + root);
+            }
+
+            System.out.printf("%-14s %12d%n", parallelism == 0 ? "sequential" : Integer.toString(parallelism), elapsed);
+        }
+    }
+
+    /**
+     * Creates a two level tree: directories grouped by 100 under intermediate directories.
+     */
+    private static void generate(File root, int directories, int files) throws Exception
+    {
+        for(int i = 0; i < directories; i ++)
+        {
+            File dir = new File(root, "group-" + (i / 100) + File.separator + "dir-" + i);
+
+            if (!dir.mkdirs())
+            {
+                throw new IllegalStateException("failed to create " + dir);
+            }
+
+            for(int j = 0; j < files; j ++)
+            {
+                if (!new File(dir, "file-" + j).createNewFile())
+                {
+                    throw new IllegalStateException("failed to create file in " + dir);
+                }
+            }
+        }
+    }
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    // Constructors --------------------------------------------------------------------------------
+
+    // Public --------------------------------------------------------------------------------------
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    // Inner classes -------------------------------------------------------------------------------
+}
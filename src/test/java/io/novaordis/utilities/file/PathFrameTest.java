@@ -0,0 +1,225 @@
+package io.novaordis.utilities.file;
+
+import io.novaordis.utilities.crawler.Collector;
+import io.novaordis.utilities.crawler.Crawler;
+import io.novaordis.utilities.crawler.Frame;
+import io.novaordis.utilities.crawler.SingleThreadedCrawler;
+import io.novaordis.utilities.testing.Tests;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+public class PathFrameTest extends Assert
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    // Static --------------------------------------------------------------------------------------
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    private Path root;
+
+    // Constructors --------------------------------------------------------------------------------
+
+    // Public --------------------------------------------------------------------------------------
+
+    @Before
+    public void setUp() throws Exception
+    {
+        root = new File(Tests.getScratchDirectory(), "pathframe-" + System.nanoTime()).toPath();
+
+        // root/a.txt (3 bytes), root/b/c.txt, root/b/d/
+        Files.createDirectories(root.resolve("b").resolve("d"));
+        Files.write(root.resolve("a.txt"), "abc".getBytes());
+        Files.createFile(root.resolve("b").resolve("c.txt"));
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        io.novaordis.utilities.Files.rmdir(root.toFile(), true);
+    }
+
+    @Test
+    public void testNonExistentPath() throws Exception
+    {
+        try
+        {
+            new PathFrame(root.resolve("no-such-file"));
+            fail("should have thrown exception");
+        }
+        catch(NoSuchFileException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAttributesAreCached() throws Exception
+    {
+        PathFrame f = new PathFrame(root.resolve("a.txt"));
+
+        assertTrue(f.isRegularFile());
+        assertFalse(f.isDirectory());
+        assertEquals(3L, f.size());
+
+        Files.delete(root.resolve("a.txt"));
+
+        // no new file system query
+        assertTrue(f.isRegularFile());
+        assertEquals(3L, f.size());
+        assertTrue(f.children().isEmpty());
+        assertFalse(f.lazyChildren().iterator().hasNext());
+    }
+
+    @Test
+    public void testChildren() throws Exception
+    {
+        PathFrame f = new PathFrame(root);
+
+        assertTrue(f.isDirectory());
+
+        List<String> names = new ArrayList<String>();
+
+        for(Frame child: f.children())
+        {
+            names.add(((PathFrame)child).getPath().getFileName().toString());
+        }
+
+        Collections.sort(names);
+
+        assertEquals(2, names.size());
+        assertEquals("a.txt", names.get(0));
+        assertEquals("b", names.get(1));
+    }
+
+    @Test
+    public void testLazyChildren_IteratorIsClosedWhenExhausted() throws Exception
+    {
+        Iterator<Frame> i = new PathFrame(root).lazyChildren().iterator();
+
+        assertTrue(i instanceof Closeable);
+
+        assertNotNull(i.next());
+        assertNotNull(i.next());
+        assertFalse(i.hasNext());
+
+        // already closed, closing again is a noop
+        ((Closeable)i).close();
+        assertFalse(i.hasNext());
+    }
+
+    @Test
+    public void testLazyChildren_EntryRemovedAfterListing() throws Exception
+    {
+        Iterator<Frame> i = new PathFrame(root.resolve("b")).lazyChildren().iterator();
+
+        assertTrue(i.hasNext());
+        PathFrame first = (PathFrame)i.next();
+
+        // the directory stream may have already read the other entry, its attributes were not read yet
+        Path other = first.isDirectory() ? root.resolve("b").resolve("c.txt") : root.resolve("b").resolve("d");
+        Files.delete(other);
+
+        while(i.hasNext())
+        {
+            assertNotEquals(other, ((PathFrame)i.next()).getPath());
+        }
+    }
+
+    @Test
+    public void testSymbolicLinkIsALeaf() throws Exception
+    {
+        Path link = root.resolve("link");
+        Files.createSymbolicLink(link, root.resolve("b"));
+
+        PathFrame f = new PathFrame(link);
+
+        assertTrue(f.isSymbolicLink());
+        assertFalse(f.isDirectory());
+        assertTrue(f.children().isEmpty());
+    }
+
+    @Test
+    public void testCrawl() throws Exception
+    {
+        final List<String> visited = new ArrayList<String>();
+
+        new SingleThreadedCrawler(Crawler.POSTORDER).crawl(new PathFrame(root), new Collector()
+        {
+            public void collect(Frame frame) throws Exception
+            {
+                visited.add(root.relativize(((PathFrame)frame).getPath()).toString());
+            }
+        });
+
+        assertEquals(5, visited.size());
+        assertEquals("", visited.get(4));
+        assertTrue(visited.indexOf("b/c.txt") < visited.indexOf("b"));
+        assertTrue(visited.indexOf("b/d") < visited.indexOf("b"));
+    }
+
+    @Test
+    public void testExcludeNames() throws Exception
+    {
+        SingleThreadedCrawler c = new SingleThreadedCrawler();
+        c.setFilter(FrameFilters.excludeNames("b", "no-such-name"));
+
+        final List<String> visited = new ArrayList<String>();
+
+        Collector collector = new Collector()
+        {
+            public void collect(Frame frame) throws Exception
+            {
+                visited.add(FrameFilters.getName(frame));
+            }
+        };
+
+        c.crawl(new PathFrame(root), collector);
+
+        assertEquals(2, visited.size());
+        assertTrue(visited.contains("a.txt"));
+        assertFalse(visited.contains("b"));
+
+        visited.clear();
+        c.crawl(new FileFrame(root.toFile()), collector);
+
+        assertEquals(2, visited.size());
+        assertTrue(visited.contains("a.txt"));
+        assertFalse(visited.contains("b"));
+    }
+
+    @Test
+    public void testInvalidArguments() throws Exception
+    {
+        try
+        {
+            new PathFrame(root, null);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    // Inner classes -------------------------------------------------------------------------------
+}
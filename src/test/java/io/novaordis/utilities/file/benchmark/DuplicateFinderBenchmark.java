@@ -0,0 +1,145 @@
+package io.novaordis.utilities.file.benchmark;
+
+import io.novaordis.utilities.crawler.Crawler;
+import io.novaordis.utilities.crawler.ForkJoinCrawler;
+import io.novaordis.utilities.file.PathFrame;
+import io.novaordis.utilities.file.dedup.DuplicateFinder;
+import io.novaordis.utilities.file.dedup.DuplicateReport;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Times the duplicate detection over a generated tree, with CRC32C and SHA-256 at increasing numbers of hashing
+ * threads. Each directory holds a copy of the same file, plus files of the same size and different content, so all
+ * the files are read. The tree is generated under the given directory, which must exist, and is deleted at the end.
+ *
+ * The file contents are in the page cache after the first run, so the numbers are CPU bound; drop the caches between
+ * the runs to measure cold reads.
+ *
+ * Usage: DuplicateFinderBenchmark <directory> [directories] [files-per-directory] [file-size]
+ */
+public class DuplicateFinderBenchmark
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    public static final int DEFAULT_DIRECTORIES = 50;
+    public static final int DEFAULT_FILES_PER_DIRECTORY = 20;
+    public static final int DEFAULT_FILE_SIZE = 256 * 1024;
+
+    // Static --------------------------------------------------------------------------------------
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length == 0)
+        {
+            System.err.println(
+                "Usage: DuplicateFinderBenchmark <directory> [directories] [files-per-directory] [file-size]");
+            System.exit(1);
+        }
+
+        int directories = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_DIRECTORIES;
+        int files = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_FILES_PER_DIRECTORY;
+        int size = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_FILE_SIZE;
+
+        Path root = new File(args[0], "dedup-benchmark").toPath();
+        generate(root, directories, files, size);
+
+        System.out.println(directories + " directories, " + files + " files per directory, " + size + " bytes each");
+        System.out.println();
+        System.out.printf("%-10s %8s %12s %12s%n", "algorithm", "threads", "time (ms)", "MB/s");
+
+        ForkJoinCrawler crawler = new ForkJoinCrawler(Crawler.PREORDER);
+
+        try
+        {
+            // warm up
+            run(crawler, root, size, "SHA-256", 1, false);
+
+            for(String algorithm: new String[] { "CRC32C", "SHA-256" })
+            {
+                for(int threads: new int[] { 1, 2, 4, 8 })
+                {
+                    run(crawler, root, size, algorithm, threads, true);
+                }
+            }
+        }
+        finally
+        {
+            crawler.shutdown();
+            io.novaordis.utilities.Files.rmdir(root.toFile(), true);
+        }
+    }
+
+    private static void run(
+        ForkJoinCrawler crawler, Path root, int size, String algorithm, int threads, boolean report) throws Exception
+    {
+        DuplicateFinder finder;
+
+        try
+        {
+            finder = new DuplicateFinder(algorithm, threads);
+        }
+        catch(IllegalArgumentException e)
+        {
+            System.out.printf("%-10s %8s%n", algorithm, "n/a");
+            return;
+        }
+
+        long t0 = System.nanoTime();
+
+        crawler.crawl(new PathFrame(root), finder);
+        DuplicateReport r = finder.getReport();
+
+        long elapsed = System.nanoTime() - t0;
+        finder.close();
+
+        if (!report)
+        {
+            return;
+        }
+
+        // all the files have the same size
+        long bytes = r.getHashedCount() * size;
+
+        System.out.printf("%-10s %8d %12d %12.1f%n",
+            algorithm, threads, elapsed / 1000000L, bytes / 1048576.0 / (elapsed / 1000000000.0));
+    }
+
+    private static void generate(Path root, int directories, int files, int size) throws Exception
+    {
+        Random random = new Random(0L);
+        byte[] copy = new byte[size];
+        random.nextBytes(copy);
+
+        for(int i = 0; i < directories; i ++)
+        {
+            Path dir = root.resolve("dir-" + i);
+            Files.createDirectories(dir);
+            Files.write(dir.resolve("copy"), copy);
+
+            for(int j = 1; j < files; j ++)
+            {
+                byte[] content = new byte[size];
+                random.nextBytes(content);
+                Files.write(dir.resolve("file-" + j), content);
+            }
+        }
+    }
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    // Constructors --------------------------------------------------------------------------------
+
+    // Public --------------------------------------------------------------------------------------
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    // Inner classes -------------------------------------------------------------------------------
+}
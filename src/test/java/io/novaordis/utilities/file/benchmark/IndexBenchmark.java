@@ -0,0 +1,97 @@
+package io.novaordis.utilities.file.benchmark;
+
+import io.novaordis.utilities.file.index.DirectoryIndex;
+import io.novaordis.utilities.file.index.ScanMode;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Times the initial scan of a generated tree (1000 directories of 1000 files by default), a FULL rescan and a
+ * TRUST_DIRECTORY_MTIME rescan of the unchanged tree, and reports the size of the saved index.
+ *
+ * The tree is generated under the given directory, which must exist, and is reused by subsequent runs.
+ *
+ * Usage: IndexBenchmark <directory> [directories] [files-per-directory]
+ */
+public class IndexBenchmark
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    public static final int DEFAULT_DIRECTORIES = 1000;
+    public static final int DEFAULT_FILES_PER_DIRECTORY = 1000;
+
+    // Static --------------------------------------------------------------------------------------
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length == 0)
+        {
+            System.err.println("Usage: IndexBenchmark <directory> [directories] [files-per-directory]");
+            System.exit(1);
+        }
+
+        int directories = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_DIRECTORIES;
+        int files = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_FILES_PER_DIRECTORY;
+        File root = new File(args[0], "index-benchmark-" + directories + "x" + files);
+
+        if (!root.isDirectory())
+        {
+            System.out.println("generating " + root + " ...");
+            Trees.generate(root, directories, files);
+
+            // the directories modified within the trust margin are not trusted
+            Thread.sleep(DirectoryIndex.TRUST_MARGIN_MS + 500L);
+        }
+
+        DirectoryIndex index = new DirectoryIndex(root.toPath());
+
+        System.out.println(directories + " directories, " + files + " files per directory");
+        System.out.println();
+        System.out.printf("%-24s %10s %10s%n", "scan", "changes", "time (ms)");
+
+        scan(index, "initial", ScanMode.FULL);
+        scan(index, "FULL rescan", ScanMode.FULL);
+        scan(index, "TRUST_DIRECTORY_MTIME", ScanMode.TRUST_DIRECTORY_MTIME);
+
+        Path file = Files.createTempFile("index-benchmark", ".idx");
+
+        try
+        {
+            index.save(file);
+            long size = Files.size(file);
+
+            System.out.println();
+            System.out.printf("index: %d entries, %d bytes, %.1f bytes/entry%n",
+                index.size(), size, (double)size / index.size());
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    private static void scan(DirectoryIndex index, String label, ScanMode mode) throws Exception
+    {
+        long t0 = System.nanoTime();
+        int changes = index.scan(mode).size();
+        long elapsed = (System.nanoTime() - t0) / 1000000L;
+
+        System.out.printf("%-24s %10d %10d%n", label, changes, elapsed);
+    }
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    // Constructors --------------------------------------------------------------------------------
+
+    // Public --------------------------------------------------------------------------------------
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    // Inner classes -------------------------------------------------------------------------------
+}
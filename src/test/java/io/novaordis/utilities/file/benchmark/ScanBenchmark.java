@@ -0,0 +1,149 @@
+package io.novaordis.utilities.file.benchmark;
+
+import io.novaordis.utilities.crawler.Collector;
+import io.novaordis.utilities.crawler.Crawler;
+import io.novaordis.utilities.crawler.Frame;
+import io.novaordis.utilities.crawler.SingleThreadedCrawler;
+import io.novaordis.utilities.file.FileFrame;
+import io.novaordis.utilities.file.PathFrame;
+
+import java.io.File;
+
+/**
+ * Scans a generated tree (1000 directories of 1000 files by default) and reads the type, size and modification time
+ * of every entry, once with FileFrame and once with PathFrame, and reports the scan time and the file system queries
+ * issued per entry.
+ *
+ * The queries are counted where they are issued: with FileFrame, one listFiles() per entry, files included, and one
+ * query per attribute read by the collector; with PathFrame, one attribute read per entry, when its frame is created,
+ * and one directory stream per directory. The count can be confirmed at the system call level by running the
+ * benchmark under "strace -f -c".
+ *
+ * The tree is generated under the given directory, which must exist, and is reused by subsequent runs.
+ *
+ * Usage: ScanBenchmark <directory> [directories] [files-per-directory]
+ */
+public class ScanBenchmark
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    public static final int DEFAULT_DIRECTORIES = 1000;
+    public static final int DEFAULT_FILES_PER_DIRECTORY = 1000;
+
+    // Static --------------------------------------------------------------------------------------
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length == 0)
+        {
+            System.err.println("Usage: ScanBenchmark <directory> [directories] [files-per-directory]");
+            System.exit(1);
+        }
+
+        int directories = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_DIRECTORIES;
+        int files = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_FILES_PER_DIRECTORY;
+        File root = new File(args[0], "scan-benchmark-" + directories + "x" + files);
+
+        if (!root.isDirectory())
+        {
+            System.out.println("generating " + root + " ...");
+            Trees.generate(root, directories, files);
+        }
+
+        Crawler crawler = new SingleThreadedCrawler(Crawler.PREORDER);
+
+        System.out.println(directories + " directories, " + files + " files per directory");
+        System.out.println();
+        System.out.printf("%-10s %10s %10s %14s %14s%n", "frame", "entries", "time (ms)", "entries/s", "queries/entry");
+
+        // the first round warms up the JVM and the file system caches
+        for(int round = 0; round < 2; round ++)
+        {
+            for(boolean nio: new boolean[] { false, true })
+            {
+                Scanner scanner = new Scanner();
+
+                long t0 = System.nanoTime();
+
+                crawler.crawl(nio ? new PathFrame(root.toPath()) : new FileFrame(root), scanner);
+
+                long elapsed = Math.max(1L, (System.nanoTime() - t0) / 1000000L);
+
+                if (round == 0)
+                {
+                    continue;
+                }
+
+                // FileFrame: listFiles() on every entry, plus the collector's queries
+                // PathFrame: one attribute read per entry, plus one directory stream per directory
+                long queries = nio ? scanner.entries + scanner.directories : scanner.entries + scanner.queries;
+
+                System.out.printf("%-10s %10d %10d %14d %14.2f%n",
+                    nio ? "PathFrame" : "FileFrame", scanner.entries, elapsed, scanner.entries * 1000L / elapsed,
+                    (double)queries / scanner.entries);
+            }
+        }
+    }
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    // Constructors --------------------------------------------------------------------------------
+
+    // Public --------------------------------------------------------------------------------------
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    // Inner classes -------------------------------------------------------------------------------
+
+    /**
+     * Reads the type, size and modification time of every entry, the way a disk usage or an indexing collector would.
+     */
+    private static class Scanner implements Collector
+    {
+        long entries;
+        long directories;
+        long queries;
+        long bytes;
+        long newest;
+
+        public void collect(Frame frame) throws Exception
+        {
+            entries ++;
+
+            boolean directory;
+            long size;
+            long modified;
+
+            if (frame instanceof PathFrame)
+            {
+                PathFrame f = (PathFrame)frame;
+                directory = f.isDirectory();
+                size = f.size();
+                modified = f.getAttributes().lastModifiedTime().toMillis();
+            }
+            else
+            {
+                File f = ((FileFrame)frame).getDelegate();
+                directory = f.isDirectory();
+                size = f.length();
+                modified = f.lastModified();
+                queries += 3;
+            }
+
+            if (directory)
+            {
+                directories ++;
+            }
+            else
+            {
+                bytes += size;
+            }
+
+            newest = Math.max(newest, modified);
+        }
+    }
+}
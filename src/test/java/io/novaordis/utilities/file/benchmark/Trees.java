@@ -0,0 +1,55 @@
+package io.novaordis.utilities.file.benchmark;
+
+import java.io.File;
+
+/**
+ * Generates the empty-file trees scanned by the benchmarks.
+ */
+final class Trees
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    // Static --------------------------------------------------------------------------------------
+
+    /**
+     * Creates the given number of directories, grouped by a hundred, each containing the given number of empty files.
+     */
+    static void generate(File root, int directories, int files) throws Exception
+    {
+        for(int i = 0; i < directories; i ++)
+        {
+            File dir = new File(root, "group-" + (i / 100) + File.separator + "dir-" + i);
+
+            if (!dir.mkdirs())
+            {
+                throw new IllegalStateException("failed to create " + dir);
+            }
+
+            for(int j = 0; j < files; j ++)
+            {
+                if (!new File(dir, "file-" + j).createNewFile())
+                {
+                    throw new IllegalStateException("failed to create file in " + dir);
+                }
+            }
+        }
+    }
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    // Constructors --------------------------------------------------------------------------------
+
+    private Trees()
+    {
+    }
+
+    // Public --------------------------------------------------------------------------------------
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    // Inner classes -------------------------------------------------------------------------------
+}
@@ -0,0 +1,290 @@
+package io.novaordis.utilities.file.dedup;
+
+import io.novaordis.utilities.crawler.Crawler;
+import io.novaordis.utilities.crawler.ForkJoinCrawler;
+import io.novaordis.utilities.crawler.SingleThreadedCrawler;
+import io.novaordis.utilities.file.FileFrame;
+import io.novaordis.utilities.file.PathFrame;
+import io.novaordis.utilities.testing.Tests;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+public class DuplicateFinderTest extends Assert
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    // Static --------------------------------------------------------------------------------------
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    private Path root;
+
+    // Constructors --------------------------------------------------------------------------------
+
+    // Public --------------------------------------------------------------------------------------
+
+    @Before
+    public void setUp() throws Exception
+    {
+        root = new File(Tests.getScratchDirectory(), "dedup-" + System.nanoTime()).toPath();
+
+        // a.txt, b/c.txt and b/d/e.txt are identical, f.txt has the same size but different content, g.txt has
+        // a size of its own
+        Files.createDirectories(root.resolve("b").resolve("d"));
+        Files.write(root.resolve("a.txt"), "abc".getBytes());
+        Files.write(root.resolve("b").resolve("c.txt"), "abc".getBytes());
+        Files.write(root.resolve("b").resolve("d").resolve("e.txt"), "abc".getBytes());
+        Files.write(root.resolve("f.txt"), "xyz".getBytes());
+        Files.write(root.resolve("g.txt"), "abcd".getBytes());
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        io.novaordis.utilities.Files.rmdir(root.toFile(), true);
+    }
+
+    @Test
+    public void testInvalidArguments() throws Exception
+    {
+        try
+        {
+            new DuplicateFinder("NO-SUCH-ALGORITHM", 1);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e)
+        {
+            // expected
+        }
+
+        try
+        {
+            new DuplicateFinder("SHA-256", 0);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testOnlySameSizeFilesAreHashed() throws Exception
+    {
+        DuplicateFinder finder = new DuplicateFinder();
+
+        new SingleThreadedCrawler(Crawler.PREORDER).crawl(new FileFrame(root.toFile()), finder);
+
+        DuplicateReport report = finder.getReport();
+        finder.close();
+
+        assertEquals(5L, report.getFileCount());
+
+        // g.txt is not read
+        assertEquals(4L, report.getHashedCount());
+
+        List<DuplicateGroup> groups = report.getGroups();
+        assertEquals(1, groups.size());
+
+        DuplicateGroup g = groups.get(0);
+        assertEquals(3L, g.getSize());
+        assertEquals(6L, g.getWastedBytes());
+        assertEquals(6L, report.getWastedBytes());
+        assertEquals(
+            "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", g.getFingerprint());
+        assertEquals(
+            Arrays.asList(
+                root.resolve("a.txt"), root.resolve("b").resolve("c.txt"),
+                root.resolve("b").resolve("d").resolve("e.txt")),
+            g.getPaths());
+
+        assertTrue(report.getFailures().isEmpty());
+    }
+
+    @Test
+    public void testAllAlgorithms() throws Exception
+    {
+        for(String algorithm: new String[] { "CRC32", "CRC32C", "SHA-1", "SHA-256" })
+        {
+            DuplicateFinder finder;
+
+            try
+            {
+                finder = new DuplicateFinder(algorithm, 2);
+            }
+            catch(IllegalArgumentException e)
+            {
+                // CRC32C on a Java 8 runtime
+                assertEquals("CRC32C", algorithm);
+                continue;
+            }
+
+            new SingleThreadedCrawler(Crawler.PREORDER).crawl(new PathFrame(root), finder);
+
+            DuplicateReport report = finder.getReport();
+            finder.close();
+
+            assertEquals(algorithm, report.getAlgorithm());
+            assertEquals(algorithm, 1, report.getGroups().size());
+            assertEquals(algorithm, 3, report.getGroups().get(0).getPaths().size());
+        }
+    }
+
+    @Test
+    public void testChecksumFingerprints() throws Exception
+    {
+        assertEquals("352441c2", hash("CRC32", "abc".getBytes()));
+    }
+
+    @Test
+    public void testLargeFilesAreMapped() throws Exception
+    {
+        byte[] content = new byte[(int)DuplicateFinder.MAP_THRESHOLD + 1024 * 1024];
+
+        for(int i = 0; i < content.length; i ++)
+        {
+            content[i] = (byte)(i * 31);
+        }
+
+        Files.write(root.resolve("large-1"), content);
+        Files.write(root.resolve("large-2"), content);
+
+        // differs only in the last byte
+        content[content.length - 1] ++;
+        Files.write(root.resolve("large-3"), content);
+
+        DuplicateFinder finder = new DuplicateFinder("SHA-256", 3);
+        new SingleThreadedCrawler(Crawler.PREORDER).crawl(new PathFrame(root), finder);
+        DuplicateReport report = finder.getReport();
+        finder.close();
+
+        assertEquals(2, report.getGroups().size());
+
+        // the largest waste first
+        DuplicateGroup g = report.getGroups().get(0);
+        assertEquals(content.length, g.getSize());
+        assertEquals(Arrays.asList(root.resolve("large-1"), root.resolve("large-2")), g.getPaths());
+
+        // same result as the buffered read
+        assertEquals(hash("SHA-256", content), finder.fingerprint(root.resolve("large-3"), content.length));
+    }
+
+    @Test
+    public void testParallelCrawl() throws Exception
+    {
+        for(int i = 0; i < 50; i ++)
+        {
+            Path dir = root.resolve("dir-" + i);
+            Files.createDirectories(dir);
+            Files.write(dir.resolve("copy"), "abc".getBytes());
+            Files.write(dir.resolve("unique"), ("unique content " + i).getBytes());
+        }
+
+        ForkJoinCrawler crawler = new ForkJoinCrawler(Crawler.PREORDER, 4);
+        DuplicateFinder finder = new DuplicateFinder("SHA-1", 4);
+        crawler.crawl(new PathFrame(root), finder);
+        DuplicateReport report = finder.getReport();
+        finder.close();
+        crawler.shutdown();
+
+        assertEquals(1, report.getGroups().size());
+        assertEquals(53, report.getGroups().get(0).getPaths().size());
+
+        // a.txt, b/c.txt, b/d/e.txt, f.txt, g.txt, 50 copies and 50 unique files
+        assertEquals(105L, report.getFileCount());
+    }
+
+    @Test
+    public void testEmptyFiles() throws Exception
+    {
+        Files.createFile(root.resolve("empty-1"));
+        Files.createFile(root.resolve("empty-2"));
+
+        DuplicateFinder finder = new DuplicateFinder();
+        assertEquals(1L, finder.getMinimumSize());
+        new SingleThreadedCrawler(Crawler.PREORDER).crawl(new PathFrame(root), finder);
+        DuplicateReport report = finder.getReport();
+        finder.close();
+
+        assertEquals(1, report.getGroups().size());
+        assertEquals(5L, report.getFileCount());
+
+        finder = new DuplicateFinder();
+        finder.setMinimumSize(0L);
+        new SingleThreadedCrawler(Crawler.PREORDER).crawl(new PathFrame(root), finder);
+        report = finder.getReport();
+        finder.close();
+
+        assertEquals(2, report.getGroups().size());
+
+        // no wasted bytes
+        DuplicateGroup g = report.getGroups().get(1);
+        assertEquals(0L, g.getSize());
+        assertEquals(Arrays.asList(root.resolve("empty-1"), root.resolve("empty-2")), g.getPaths());
+    }
+
+    @Test
+    public void testSizeChangedAfterCollection() throws Exception
+    {
+        DuplicateFinder finder = new DuplicateFinder();
+
+        try
+        {
+            finder.fingerprint(root.resolve("a.txt"), 10L);
+            fail("should have thrown exception");
+        }
+        catch(IOException e)
+        {
+            assertTrue(e.getMessage().contains("size changed"));
+        }
+
+        finder.close();
+    }
+
+    @Test
+    public void testFormat() throws Exception
+    {
+        DuplicateFinder finder = new DuplicateFinder("CRC32", 1);
+        new SingleThreadedCrawler(Crawler.PREORDER).crawl(new PathFrame(root), finder);
+        String s = finder.getReport().format();
+        finder.close();
+
+        assertTrue(s, s.contains("352441c2"));
+        assertTrue(s, s.contains("    " + root.resolve("b").resolve("c.txt")));
+        assertFalse(s, s.contains("g.txt"));
+        assertFalse(s, s.contains("f.txt"));
+    }
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    private static String hash(String algorithm, byte[] content) throws Exception
+    {
+        Fingerprinter f = Fingerprinter.create(algorithm);
+        f.update(ByteBuffer.wrap(content));
+
+        StringBuilder sb = new StringBuilder();
+
+        for(byte b: f.digest())
+        {
+            sb.append(String.format("%02x", b));
+        }
+
+        return sb.toString();
+    }
+
+    // Inner classes -------------------------------------------------------------------------------
+}
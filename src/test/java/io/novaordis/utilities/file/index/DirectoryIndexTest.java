@@ -0,0 +1,366 @@
+package io.novaordis.utilities.file.index;
+
+import io.novaordis.utilities.testing.Tests;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class DirectoryIndexTest extends Assert
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    // Static --------------------------------------------------------------------------------------
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    private Path root;
+
+    // an hour ago, out of the trust margin
+    private FileTime old;
+
+    // Constructors --------------------------------------------------------------------------------
+
+    // Public --------------------------------------------------------------------------------------
+
+    @Before
+    public void setUp() throws Exception
+    {
+        root = new File(Tests.getScratchDirectory(), "index-" + System.nanoTime()).toPath();
+        old = FileTime.fromMillis(System.currentTimeMillis() - 3600000L);
+
+        // root/a.txt, root/b/c.txt, root/b/d/e.txt
+        Files.createDirectories(root.resolve("b/d"));
+        Files.write(root.resolve("a.txt"), "a".getBytes());
+        Files.write(root.resolve("b/c.txt"), "cc".getBytes());
+        Files.write(root.resolve("b/d/e.txt"), "eee".getBytes());
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        io.novaordis.utilities.Files.rmdir(root.toFile(), true);
+    }
+
+    @Test
+    public void testFirstScanAddsEverything() throws Exception
+    {
+        DirectoryIndex index = new DirectoryIndex(root);
+
+        assertEquals(0, index.size());
+
+        List<Change> changes = index.scan();
+
+        assertEquals(". a.txt b b/c.txt b/d b/d/e.txt", sortedPaths(changes, ChangeType.ADDED));
+        assertEquals(6, changes.size());
+        assertEquals(6, index.size());
+
+        IndexEntry e = index.get("b/d/e.txt");
+        assertEquals(EntryType.FILE, e.getType());
+        assertEquals(3L, e.getSize());
+        assertNull(e.getHash());
+        assertEquals(EntryType.DIRECTORY, index.get("").getType());
+    }
+
+    @Test
+    public void testRescan_NoChanges() throws Exception
+    {
+        DirectoryIndex index = new DirectoryIndex(root);
+        index.scan();
+
+        assertTrue(index.scan().isEmpty());
+        assertTrue(index.scan(ScanMode.TRUST_DIRECTORY_MTIME).isEmpty());
+    }
+
+    @Test
+    public void testRescan_AddedRemovedModified() throws Exception
+    {
+        DirectoryIndex index = new DirectoryIndex(root);
+        index.scan();
+
+        Files.write(root.resolve("b/d/f.txt"), "f".getBytes());
+        Files.delete(root.resolve("b/c.txt"));
+        Files.write(root.resolve("a.txt"), "aaaa".getBytes());
+
+        List<Change> changes = index.scan();
+
+        assertEquals("b/d/f.txt", sortedPaths(changes, ChangeType.ADDED));
+        assertEquals("b/c.txt", sortedPaths(changes, ChangeType.REMOVED));
+
+        // the directories whose entries were added or removed are modified as well
+        assertEquals("a.txt b b/d", sortedPaths(changes, ChangeType.MODIFIED));
+
+        Change modified = find(changes, "a.txt");
+        assertEquals(1L, modified.getBefore().getSize());
+        assertEquals(4L, modified.getAfter().getSize());
+
+        assertNull(index.get("b/c.txt"));
+        assertNotNull(index.get("b/d/f.txt"));
+        assertTrue(index.scan().isEmpty());
+    }
+
+    @Test
+    public void testRescan_RemovedSubtree() throws Exception
+    {
+        DirectoryIndex index = new DirectoryIndex(root);
+        index.scan();
+
+        io.novaordis.utilities.Files.rmdir(root.resolve("b").toFile(), true);
+
+        List<Change> changes = index.scan();
+
+        assertEquals("b b/c.txt b/d b/d/e.txt", sortedPaths(changes, ChangeType.REMOVED));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testRescan_TypeChange() throws Exception
+    {
+        DirectoryIndex index = new DirectoryIndex(root);
+        index.scan();
+
+        // directory replaced by a file, file replaced by a directory
+        io.novaordis.utilities.Files.rmdir(root.resolve("b").toFile(), true);
+        Files.write(root.resolve("b"), "b".getBytes());
+        Files.delete(root.resolve("a.txt"));
+        Files.createDirectories(root.resolve("a.txt/x"));
+
+        List<Change> changes = index.scan();
+
+        assertEquals("b/c.txt b/d b/d/e.txt", sortedPaths(changes, ChangeType.REMOVED));
+        assertEquals("a.txt/x", sortedPaths(changes, ChangeType.ADDED));
+        assertEquals(EntryType.FILE, find(changes, "b").getAfter().getType());
+        assertEquals(EntryType.DIRECTORY, find(changes, "a.txt").getAfter().getType());
+    }
+
+    @Test
+    public void testRescan_RootRemoved() throws Exception
+    {
+        DirectoryIndex index = new DirectoryIndex(root);
+        index.scan();
+
+        io.novaordis.utilities.Files.rmdir(root.toFile(), true);
+
+        assertEquals(6, index.scan().size());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testTrustDirectoryMtime() throws Exception
+    {
+        makeOld(root);
+
+        DirectoryIndex index = new DirectoryIndex(root);
+        index.scan();
+
+        // an in-place modification does not change the directory's modification time, and it is not found
+        Files.write(root.resolve("b/c.txt"), "modified".getBytes());
+        makeOld(root);
+
+        assertTrue(index.scan(ScanMode.TRUST_DIRECTORY_MTIME).isEmpty());
+
+        // an addition deep in the tree changes the modification time of its directory, and it is found
+        Files.write(root.resolve("b/d/g.txt"), "g".getBytes());
+
+        List<Change> changes = index.scan(ScanMode.TRUST_DIRECTORY_MTIME);
+        assertEquals("b/d/g.txt", sortedPaths(changes, ChangeType.ADDED));
+
+        // a full scan finds everything
+        changes = index.scan();
+        assertEquals("b/c.txt", sortedPaths(changes, ChangeType.MODIFIED));
+    }
+
+    @Test
+    public void testTrustDirectoryMtime_RecentDirectoriesAreListed() throws Exception
+    {
+        DirectoryIndex index = new DirectoryIndex(root);
+        index.scan();
+
+        // the directories were modified just before the scan, they are not trusted
+        Files.write(root.resolve("b/c.txt"), "modified".getBytes());
+
+        List<Change> changes = index.scan(ScanMode.TRUST_DIRECTORY_MTIME);
+        assertEquals("b/c.txt", sortedPaths(changes, ChangeType.MODIFIED));
+    }
+
+    @Test
+    public void testHash() throws Exception
+    {
+        DirectoryIndex index = new DirectoryIndex(root);
+        index.setHashAlgorithm("SHA-256");
+        index.scan();
+
+        byte[] expected = MessageDigest.getInstance("SHA-256").digest("eee".getBytes());
+        assertArrayEquals(expected, index.get("b/d/e.txt").getHash());
+        assertNull(index.get("b").getHash());
+
+        try
+        {
+            index.setHashAlgorithm("MD5");
+            fail("should have thrown exception");
+        }
+        catch(IllegalStateException e)
+        {
+            // expected
+        }
+
+        try
+        {
+            new DirectoryIndex(root).setHashAlgorithm("NO-SUCH-ALGORITHM");
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception
+    {
+        DirectoryIndex index = new DirectoryIndex(root);
+        index.setHashAlgorithm("SHA-1");
+        index.scan();
+
+        Path file = new File(Tests.getScratchDirectory(), "index-" + System.nanoTime() + ".idx").toPath();
+
+        try
+        {
+            index.save(file);
+
+            DirectoryIndex loaded = DirectoryIndex.load(file);
+
+            assertEquals(index.getRoot(), loaded.getRoot());
+            assertEquals("SHA-1", loaded.getHashAlgorithm());
+            assertEquals(index.getEntries(), loaded.getEntries());
+
+            // the loaded index is the baseline of the next scan
+            Files.write(root.resolve("h.txt"), "h".getBytes());
+            assertEquals("h.txt", sortedPaths(loaded.scan(), ChangeType.ADDED));
+        }
+        finally
+        {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testLoad_NotAnIndex() throws Exception
+    {
+        try
+        {
+            DirectoryIndex.load(root.resolve("a.txt"));
+            fail("should have thrown exception");
+        }
+        catch(IOException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRescanDirectory() throws Exception
+    {
+        DirectoryIndex index = new DirectoryIndex(root);
+        index.scan();
+
+        Files.createDirectories(root.resolve("b/n/m"));
+        Files.write(root.resolve("b/n/m/o.txt"), "o".getBytes());
+        Files.write(root.resolve("b/d/e.txt"), "modified".getBytes());
+
+        // the new subtree is walked, the indexed subdirectory is not
+        List<Change> changes = index.rescanDirectory(root.resolve("b"));
+        assertEquals("b/n b/n/m b/n/m/o.txt", sortedPaths(changes, ChangeType.ADDED));
+        assertNull(find(changes, "b/d/e.txt"));
+
+        assertEquals("b/d/e.txt", sortedPaths(index.rescanDirectory(root.resolve("b/d")), ChangeType.MODIFIED));
+    }
+
+    @Test
+    public void testRelativize() throws Exception
+    {
+        DirectoryIndex index = new DirectoryIndex(root);
+
+        assertEquals("", index.relativize(root));
+        assertEquals("b/d", index.relativize(root.resolve("b/d")));
+
+        try
+        {
+            index.relativize(root.getParent());
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e)
+        {
+            // expected
+        }
+    }
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    /**
+     * @return the sorted, space separated paths of the changes of the given type. The root is ".".
+     */
+    private static String sortedPaths(List<Change> changes, ChangeType type)
+    {
+        List<String> paths = new ArrayList<String>();
+
+        for(Change c: changes)
+        {
+            if (c.getType() == type)
+            {
+                paths.add(c.getPath().isEmpty() ? "." : c.getPath());
+            }
+        }
+
+        Collections.sort(paths);
+
+        StringBuilder sb = new StringBuilder();
+
+        for(String p: paths)
+        {
+            sb.append(sb.length() == 0 ? "" : " ").append(p);
+        }
+
+        return sb.toString();
+    }
+
+    private static Change find(List<Change> changes, String path)
+    {
+        for(Change c: changes)
+        {
+            if (c.getPath().equals(path))
+            {
+                return c;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Sets the modification time of the tree's directories an hour back, out of the trust margin.
+     */
+    private void makeOld(Path p) throws IOException
+    {
+        for(Path d: Files.walk(p).filter(Files::isDirectory).toArray(Path[]::new))
+        {
+            Files.setLastModifiedTime(d, old);
+        }
+    }
+
+    // Inner classes -------------------------------------------------------------------------------
+}
@@ -0,0 +1,158 @@
+package io.novaordis.utilities.file.index;
+
+import io.novaordis.utilities.testing.Tests;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class IndexWatcherTest extends Assert
+{
+    // Constants -----------------------------------------------------------------------------------
+
+    private static final long TIMEOUT_MS = 20000L;
+
+    // Static --------------------------------------------------------------------------------------
+
+    // Attributes ----------------------------------------------------------------------------------
+
+    private Path root;
+
+    private IndexWatcher watcher;
+
+    // Constructors --------------------------------------------------------------------------------
+
+    // Public --------------------------------------------------------------------------------------
+
+    @Before
+    public void setUp() throws Exception
+    {
+        root = new File(Tests.getScratchDirectory(), "watcher-" + System.nanoTime()).toPath();
+        Files.createDirectories(root.resolve("a"));
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        if (watcher != null)
+        {
+            watcher.close();
+        }
+
+        io.novaordis.utilities.Files.rmdir(root.toFile(), true);
+    }
+
+    @Test
+    public void testLiveUpdates() throws Exception
+    {
+        DirectoryIndex index = new DirectoryIndex(root);
+        index.scan();
+
+        final List<Change> received = new CopyOnWriteArrayList<Change>();
+
+        watcher = new IndexWatcher(index, received::addAll);
+        watcher.start();
+
+        assertTrue(watcher.isRunning());
+
+        Files.write(root.resolve("a/b.txt"), "b".getBytes());
+        waitFor(index, "a/b.txt", true);
+
+        // a new directory is registered, and the entries created in it are found
+        Files.createDirectories(root.resolve("c"));
+        Files.write(root.resolve("c/d.txt"), "d".getBytes());
+        waitFor(index, "c/d.txt", true);
+
+        Files.write(root.resolve("c/e.txt"), "e".getBytes());
+        waitFor(index, "c/e.txt", true);
+
+        Files.delete(root.resolve("a/b.txt"));
+        waitFor(index, "a/b.txt", false);
+
+        // the listener is notified after the index is updated
+        waitFor(received, ChangeType.REMOVED, "a/b.txt");
+
+        watcher.close();
+
+        long t0 = System.currentTimeMillis();
+
+        while(watcher.isRunning() && System.currentTimeMillis() - t0 < TIMEOUT_MS)
+        {
+            Thread.sleep(10L);
+        }
+
+        assertFalse(watcher.isRunning());
+    }
+
+    @Test
+    public void testStartTwice() throws Exception
+    {
+        DirectoryIndex index = new DirectoryIndex(root);
+        index.scan();
+
+        watcher = new IndexWatcher(index, null);
+        watcher.start();
+
+        try
+        {
+            watcher.start();
+            fail("should have thrown exception");
+        }
+        catch(IllegalStateException e)
+        {
+            // expected
+        }
+    }
+
+    // Package protected ---------------------------------------------------------------------------
+
+    // Protected -----------------------------------------------------------------------------------
+
+    // Private -------------------------------------------------------------------------------------
+
+    private static void waitFor(DirectoryIndex index, String path, boolean indexed) throws Exception
+    {
+        long t0 = System.currentTimeMillis();
+
+        while((index.get(path) != null) != indexed)
+        {
+            if (System.currentTimeMillis() - t0 > TIMEOUT_MS)
+            {
+                fail(path + (indexed ? " not indexed" : " still indexed") + " after " + TIMEOUT_MS + " ms");
+            }
+
+            Thread.sleep(10L);
+        }
+    }
+
+    private static void waitFor(List<Change> received, ChangeType type, String path) throws Exception
+    {
+        long t0 = System.currentTimeMillis();
+
+        while(true)
+        {
+            for(Change c: received)
+            {
+                if (c.getType() == type && c.getPath().equals(path))
+                {
+                    return;
+                }
+            }
+
+            if (System.currentTimeMillis() - t0 > TIMEOUT_MS)
+            {
+                fail(type + " " + path + " not received after " + TIMEOUT_MS + " ms");
+            }
+
+            Thread.sleep(10L);
+        }
+    }
+
+    // Inner classes -------------------------------------------------------------------------------
+}